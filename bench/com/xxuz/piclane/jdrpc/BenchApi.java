@@ -0,0 +1,27 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntSupplier;
+
+/**
+ * ベンチマークでリモートに公開するインターフェイス
+ *
+ * @author piclane
+ */
+public interface BenchApi {
+	public void ping();
+
+	public int sum(int a, int b);
+
+	public CompletableFuture<Integer> sumAsync(int a, int b);
+
+	public String echo(String s);
+
+	public byte[] echoBytes(byte[] bytes);
+
+	public int accept(@RpcParam IntSupplier supplier);
+
+	public int apply(@RpcParam IntSupplier supplier);
+
+	public void fill(@RpcParam int[] array, int value);
+}
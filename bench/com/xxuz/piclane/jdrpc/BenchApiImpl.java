@@ -0,0 +1,78 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntSupplier;
+
+/**
+ * {@link BenchApi} の実装<br>
+ * 計測対象が呼び出しの往復になるよう、処理は最小限にしています
+ *
+ * @author piclane
+ */
+public class BenchApiImpl implements BenchApi {
+	/**
+	 * @see com.xxuz.piclane.jdrpc.BenchApi#ping()
+	 */
+	@Override
+	public void ping() {
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.BenchApi#sum(int, int)
+	 */
+	@Override
+	public int sum(int a, int b) {
+		return a + b;
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.BenchApi#sumAsync(int, int)
+	 */
+	@Override
+	public CompletableFuture<Integer> sumAsync(int a, int b) {
+		return CompletableFuture.completedFuture(a + b);
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.BenchApi#echo(java.lang.String)
+	 */
+	@Override
+	public String echo(String s) {
+		return s;
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.BenchApi#echoBytes(byte[])
+	 */
+	@Override
+	public byte[] echoBytes(byte[] bytes) {
+		return bytes;
+	}
+
+	/**
+	 * 参照渡しの登録コストのみを計測するため、supplier は呼び出しません
+	 *
+	 * @see com.xxuz.piclane.jdrpc.BenchApi#accept(java.util.function.IntSupplier)
+	 */
+	@Override
+	public int accept(IntSupplier supplier) {
+		return 0;
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.BenchApi#apply(java.util.function.IntSupplier)
+	 */
+	@Override
+	public int apply(IntSupplier supplier) {
+		return supplier.getAsInt();
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.BenchApi#fill(int[], int)
+	 */
+	@Override
+	public void fill(int[] array, int value) {
+		Arrays.fill(array, value);
+	}
+}
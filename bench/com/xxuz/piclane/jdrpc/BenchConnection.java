@@ -0,0 +1,142 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * ベンチマーク用に 2 つの {@link CommandRunner} を接続します<br>
+ * サーバ側に {@link BenchApiImpl} を "bench" という名前で登録し、クライアント側でそのプロクシを取得します
+ *
+ * @author piclane
+ */
+final class BenchConnection implements AutoCloseable {
+	/** インメモリ ({@link PipedInputStream} / {@link PipedOutputStream}) */
+	public static final String MEMORY = "memory";
+
+	/** ループバックの {@link Socket} 上の {@link DefaultCommandStream} */
+	public static final String SOCKET = "socket";
+
+	/** ループバックの {@link SocketChannel} 上の {@link NioCommandStream} */
+	public static final String NIO = "nio";
+
+	/** パイプのバッファサイズ */
+	private static final int PIPE_SIZE = 64 * 1024;
+
+	/** サーバ側の {@link CommandStream} */
+	private final CommandStream serverStream;
+
+	/** クライアント側の {@link CommandStream} */
+	private final CommandStream clientStream;
+
+	/** サーバ側の {@link CommandRunner} */
+	private final CommandRunner server;
+
+	/** クライアント側の {@link CommandRunner} */
+	private final CommandRunner client;
+
+	/** クライアント側のプロクシ */
+	private final BenchApi api;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param streams サーバ側、クライアント側の順の {@link CommandStream}
+	 * @throws InterruptedException 割込例外が発生した場合
+	 */
+	private BenchConnection(CommandStream[] streams) throws InterruptedException {
+		this.serverStream = streams[0];
+		this.clientStream = streams[1];
+		this.server = new CommandRunner("bench-server", serverStream);
+		this.client = new CommandRunner("bench-client", clientStream);
+		server.register("bench", new BenchApiImpl(), BenchApi.class);
+		this.api = client.get("bench");
+	}
+
+	/**
+	 * 指定されたトランスポートで接続します
+	 *
+	 * @param transport {@link #MEMORY}, {@link #SOCKET}, {@link #NIO} のいずれか
+	 * @return {@link BenchConnection}
+	 * @throws IOException 入出力例外が発生した場合
+	 * @throws InterruptedException 割込例外が発生した場合
+	 * @throws IllegalArgumentException 未知のトランスポートが指定された場合
+	 */
+	public static BenchConnection open(String transport) throws IOException, InterruptedException {
+		switch(transport) {
+		case MEMORY:
+			return new BenchConnection(memoryStreams());
+		case SOCKET:
+			return new BenchConnection(socketStreams());
+		case NIO:
+			return new BenchConnection(nioStreams());
+		default:
+			throw new IllegalArgumentException("Unknown transport: " + transport);
+		}
+	}
+
+	private static CommandStream[] memoryStreams() throws IOException {
+		PipedInputStream is1to2 = new PipedInputStream(PIPE_SIZE);
+		PipedOutputStream os1to2 = new PipedOutputStream(is1to2);
+		PipedInputStream is2to1 = new PipedInputStream(PIPE_SIZE);
+		PipedOutputStream os2to1 = new PipedOutputStream(is2to1);
+		return new CommandStream[] {
+			new DefaultCommandStream("server", is2to1, os1to2),
+			new DefaultCommandStream("client", is1to2, os2to1),
+		};
+	}
+
+	private static CommandStream[] socketStreams() throws IOException {
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		Socket s1, s2;
+		try(ServerSocket ss = new ServerSocket(0, 1, loopback)) {
+			s2 = new Socket(loopback, ss.getLocalPort());
+			s1 = ss.accept();
+		}
+		s1.setTcpNoDelay(true);
+		s2.setTcpNoDelay(true);
+		return new CommandStream[] {
+			new DefaultCommandStream("server", s1.getInputStream(), s1.getOutputStream()),
+			new DefaultCommandStream("client", s2.getInputStream(), s2.getOutputStream()),
+		};
+	}
+
+	private static CommandStream[] nioStreams() throws IOException {
+		SocketChannel ch1, ch2;
+		try(ServerSocketChannel ss = ServerSocketChannel.open()) {
+			ss.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			ch2 = SocketChannel.open(ss.getLocalAddress());
+			ch1 = ss.accept();
+		}
+		return new CommandStream[] {
+			new NioCommandStream("server", ch1),
+			new NioCommandStream("client", ch2),
+		};
+	}
+
+	/**
+	 * クライアント側のプロクシを取得します
+	 *
+	 * @return クライアント側のプロクシ
+	 */
+	public BenchApi api() {
+		return api;
+	}
+
+	/**
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		client.close();
+		server.close();
+		clientStream.close();
+		serverStream.close();
+	}
+}
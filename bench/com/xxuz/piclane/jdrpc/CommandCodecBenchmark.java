@@ -0,0 +1,119 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Command} の種類毎に {@link CommandCodec} の符号化・復号化のコストを計測します<br>
+ * 参照渡しの配列を含むコマンドを生成するため、パッケージプライベートなクラスが見えるこのパッケージに置いています
+ *
+ * @author piclane
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandCodecBenchmark {
+	/** {@link CommandCodec} */
+	@Param({"binary", "serializable"})
+	public String codecType;
+
+	/** コマンドの種類 */
+	@Param({"Register", "Deregister", "Invoke", "InvokeByName", "InvokeResult", "InvokeReferenceArray", "Exit"})
+	public String commandType;
+
+	private CommandCodec codec;
+
+	private Command command;
+
+	private ByteArrayOutputStream bytesOut;
+
+	private DataOutputStream out;
+
+	private ByteArrayInputStream bytesIn;
+
+	private DataInputStream in;
+
+	@Setup
+	public void setUp() throws Exception {
+		codec = "binary".equals(codecType) ? new BinaryCommandCodec() : new SerializableCommandCodec();
+		command = newCommand(commandType);
+
+		bytesOut = new ByteArrayOutputStream(1024);
+		out = new DataOutputStream(bytesOut);
+		codec.encode(command, out);
+		out.flush();
+		bytesIn = new ByteArrayInputStream(bytesOut.toByteArray());
+		in = new DataInputStream(bytesIn);
+	}
+
+	/**
+	 * 計測するコマンドを生成します
+	 *
+	 * @param commandType コマンドの種類
+	 * @return コマンド
+	 * @throws NoSuchMethodException メソッドが存在しない場合
+	 */
+	private static Command newCommand(String commandType) throws NoSuchMethodException {
+		UUID instanceId = UUID.randomUUID();
+		Command cmd;
+		switch(commandType) {
+		case "Register":
+			cmd = new CommandRequest.Register("bench", instanceId, new Class<?>[] {BenchApi.class});
+			break;
+		case "Deregister":
+			cmd = new CommandRequest.Deregister(instanceId);
+			break;
+		case "Invoke":
+			cmd = new CommandRequest.Invoke(instanceId, 3, new Object[] {1, 2});
+			break;
+		case "InvokeByName":
+			cmd = new CommandRequest.Invoke(instanceId, BenchApi.class, "sum", new Class<?>[] {int.class, int.class}, new Object[] {1, 2});
+			break;
+		case "InvokeResult":
+			return new CommandResponse.Invoke(1L, CommandResponse.Invoke.ObjectType.Result, 3);
+		case "InvokeReferenceArray":
+			return new CommandResponse.Invoke(1L, CommandResponse.Invoke.ObjectType.Result, null,
+				new ReferenceArray[] {new ReferenceArray(0, new int[1024])});
+		case "Exit":
+			cmd = new CommandRequest.Exit();
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown command type: " + commandType);
+		}
+		((CommandRequest)cmd).setMessageId(1L);
+		return cmd;
+	}
+
+	@Benchmark
+	public int encode() throws IOException {
+		bytesOut.reset();
+		codec.encode(command, out);
+		return bytesOut.size();
+	}
+
+	@Benchmark
+	public Command decode() throws IOException {
+		bytesIn.reset();
+		return codec.decode(in);
+	}
+}
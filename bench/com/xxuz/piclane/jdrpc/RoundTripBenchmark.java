@@ -0,0 +1,109 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 単一の呼び出し元からプロクシ経由でメソッドを呼び出した時の往復の遅延を計測します<br>
+ * トランスポート毎に計測することで、トランスポートのコストを分けて確認できます
+ *
+ * @author piclane
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundTripBenchmark {
+	/** トランスポート */
+	@Param({BenchConnection.MEMORY, BenchConnection.SOCKET, BenchConnection.NIO})
+	public String transport;
+
+	/** 大きな配列の要素数 */
+	@Param({"65536"})
+	public int arraySize;
+
+	private BenchConnection connection;
+
+	private BenchApi api;
+
+	private byte[] bytes;
+
+	private int[] ints;
+
+	private IntSupplier supplier;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		connection = BenchConnection.open(transport);
+		api = connection.api();
+		bytes = new byte[arraySize];
+		ints = new int[arraySize];
+		supplier = () -> 1;
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		connection.close();
+	}
+
+	@Benchmark
+	public void voidCall() {
+		api.ping();
+	}
+
+	@Benchmark
+	public int primitiveCall() {
+		return api.sum(1, 2);
+	}
+
+	@Benchmark
+	public String stringCall() {
+		return api.echo("The quick brown fox jumps over the lazy dog");
+	}
+
+	@Benchmark
+	public byte[] largeArrayCall() {
+		return api.echoBytes(bytes);
+	}
+
+	/**
+	 * {@link com.xxuz.piclane.jdrpc.RpcParam} の引数をリモートに登録するコスト
+	 */
+	@Benchmark
+	public int callbackRegistration() {
+		return api.accept(supplier);
+	}
+
+	/**
+	 * {@link com.xxuz.piclane.jdrpc.RpcParam} の引数の登録に加えて、リモートから呼び戻されるコスト
+	 */
+	@Benchmark
+	public int callbackInvocation() {
+		return api.apply(supplier);
+	}
+
+	/**
+	 * 参照渡しの配列を送り、書き戻された配列を受け取るコスト
+	 */
+	@Benchmark
+	public int[] referenceArrayCall() {
+		api.fill(ints, 1);
+		return ints;
+	}
+}
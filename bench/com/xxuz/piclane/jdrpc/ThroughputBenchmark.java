@@ -0,0 +1,83 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 複数の呼び出し元が 1 本の接続を共有した時のスループットを計測します<br>
+ * スレッド数は -t オプションで変更できます
+ *
+ * @author piclane
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class ThroughputBenchmark {
+	/** 非同期呼び出しで応答を待たずに送出する呼び出し数 */
+	private static final int PIPELINE_DEPTH = 64;
+
+	/** トランスポート */
+	@Param({BenchConnection.MEMORY, BenchConnection.SOCKET, BenchConnection.NIO})
+	public String transport;
+
+	private BenchConnection connection;
+
+	private BenchApi api;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		connection = BenchConnection.open(transport);
+		api = connection.api();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		connection.close();
+	}
+
+	/**
+	 * 各スレッドが応答を待ってから次の呼び出しを行う
+	 */
+	@Benchmark
+	public int concurrentCall() {
+		return api.sum(1, 2);
+	}
+
+	/**
+	 * 各スレッドが応答を待たずに複数の呼び出しを行う
+	 */
+	@Benchmark
+	@OperationsPerInvocation(PIPELINE_DEPTH)
+	public int pipelinedAsyncCall() {
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		CompletableFuture<Integer>[] futures = new CompletableFuture[PIPELINE_DEPTH];
+		for(int i=0; i<PIPELINE_DEPTH; i++) {
+			futures[i] = api.sumAsync(i, 1);
+		}
+		int sum = 0;
+		for(CompletableFuture<Integer> future: futures) {
+			sum += future.join();
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,315 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.xxuz.piclane.jdrpc.PendingCalls.PendingCall;
+
+/**
+ * {@link CommandStream} の実装の基底クラス<br>
+ * 応答待ちの呼び出しの管理と、受信したコマンドの振り分けを行います。
+ * サブクラスはコマンドの送信と受信のみを実装します
+ *
+ * @author piclane
+ */
+public abstract class AbstractCommandStream implements CommandStream {
+	/** 非同期呼び出しの期限を監視するスケジューラー。全てのストリームで共有します */
+	private static final ScheduledThreadPoolExecutor TIMEOUT_SCHEDULER;
+
+	static {
+		TIMEOUT_SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "CommandStream-Timeout");
+			t.setDaemon(true);
+			return t;
+		});
+		TIMEOUT_SCHEDULER.setRemoveOnCancelPolicy(true);
+	}
+
+	/** 名前 */
+	protected final String name;
+
+	/** {@link CommandCodec} */
+	protected final CommandCodec codec;
+
+	/** 入力コマンドキュー */
+	private final BlockingQueue<CommandRequest> incomingCommands;
+
+	/** 応答待ちの呼び出し */
+	private final PendingCalls pendingCalls;
+
+	/** 論理チャネルのコマンドの振り分け先。多重化されていない場合は <code>null</code> */
+	private volatile CommandMultiplexer multiplexer;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param name 名前
+	 * @param codec {@link CommandCodec}
+	 */
+	protected AbstractCommandStream(String name, CommandCodec codec) {
+		this.name = name != null && !name.isEmpty() ? name + "-" : "";
+		this.codec = codec;
+		this.incomingCommands = new LinkedBlockingQueue<>();
+		this.pendingCalls = new PendingCalls();
+	}
+
+	/**
+	 * コマンドを送信します<br>
+	 * このメソッドは送信の完了を待たずに戻ります
+	 *
+	 * @param cmd {@link Command}
+	 */
+	protected abstract void send(Command cmd);
+
+	/**
+	 * 呼び出し元が送信の完了を待たずに戻るコマンドを送信します<br>
+	 * 既定では {@link #send(Command)} を呼び出します。
+	 * 呼び出し元のバッファーを参照したままフレームを送信するサブクラスは、
+	 * 戻った後にバッファーを変更されても送信内容が変わらないようにオーバーライドしてください
+	 *
+	 * @param cmd {@link Command}
+	 */
+	protected void sendUnawaited(Command cmd) {
+		send(cmd);
+	}
+
+	/**
+	 * コマンドをフレームのペイロードに符号化します<br>
+	 * 符号化済みのコマンドは {@link CommandCodec} を通さず、ペイロードをそのまま書き込みます
+	 *
+	 * @param cmd {@link Command}
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	protected final void encode(Command cmd, DataOutput out) throws IOException {
+		if(cmd instanceof EncodedCommand) {
+			((EncodedCommand)cmd).writeTo(out);
+		} else {
+			codec.encode(cmd, out);
+		}
+	}
+
+	/**
+	 * 受信したコマンドを振り分けます<br>
+	 * 応答コマンドは対応する呼び出しに引き渡し、要求コマンドは入力コマンドキューに追加します
+	 *
+	 * @param cmd 受信したコマンド
+	 * @return 受信を続ける場合 true、終了要求コマンドを受信して新規受付を停止する場合 false
+	 */
+	protected boolean received(Command cmd) {
+		if(cmd.getChannelId() != 0) {
+			CommandMultiplexer multiplexer = this.multiplexer;
+			if(multiplexer != null) {
+				multiplexer.received(cmd);
+			}
+			return true;
+		}
+		return deliver(cmd);
+	}
+
+	/**
+	 * このストリーム宛てのコマンドを振り分けます
+	 *
+	 * @param cmd 受信したコマンド
+	 * @return 受信を続ける場合 true、終了要求コマンドを受信して新規受付を停止する場合 false
+	 */
+	final boolean deliver(Command cmd) {
+		if(cmd instanceof CommandResponse) {
+			pendingCalls.complete((CommandResponse)cmd);
+		} else if(cmd instanceof CommandRequest.Exit) { // 終了要求コマンドで新規受付停止
+			incomingCommands.add((CommandRequest)cmd);
+			return false;
+		} else if(cmd instanceof CommandRequest) {
+			incomingCommands.add((CommandRequest)cmd);
+		}
+		return true;
+	}
+
+	/**
+	 * 応答待ちの全ての呼び出しを失敗させ、以降の呼び出しを拒否します<br>
+	 * 以降の応答を受信できなくなった時点で呼び出してください
+	 */
+	protected void closePendingCalls() {
+		pendingCalls.close();
+		CommandMultiplexer multiplexer = this.multiplexer;
+		if(multiplexer != null) {
+			multiplexer.streamClosed();
+		}
+	}
+
+	/**
+	 * このストリーム自身の終了応答コマンドかどうかを判定します<br>
+	 * 論理チャネルの終了応答コマンドではストリームを終了しません
+	 *
+	 * @param cmd コマンド
+	 * @return このストリーム自身の終了応答コマンドの場合 true
+	 */
+	protected static boolean isExitResponse(Command cmd) {
+		return cmd instanceof CommandResponse.Exit && cmd.getChannelId() == 0;
+	}
+
+	/**
+	 * 論理チャネルのコマンドの振り分け先を設定します
+	 *
+	 * @param multiplexer {@link CommandMultiplexer}
+	 * @throws IllegalStateException 既に設定されている場合
+	 */
+	synchronized void setMultiplexer(CommandMultiplexer multiplexer) {
+		if(this.multiplexer != null) {
+			throw new IllegalStateException("CommandStream is already multiplexed.");
+		}
+		this.multiplexer = multiplexer;
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.CommandStream#take()
+	 */
+	@Override
+	public CommandRequest take() throws InterruptedException {
+		return incomingCommands.take();
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.CommandStream#put(com.xxuz.piclane.jdrpc.CommandResponse)
+	 */
+	@Override
+	public void put(CommandResponse resp) throws InterruptedException {
+		send(resp);
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.CommandStream#call(com.xxuz.piclane.jdrpc.CommandRequest)
+	 */
+	@Override
+	public CommandResponse call(CommandRequest cmd) throws InterruptedException {
+		PendingCall pc = pendingCalls.register(cmd);
+		try {
+			send(cmd);
+		} catch (RuntimeException e) {
+			pendingCalls.abandon(pc);
+			throw e;
+		}
+		try {
+			return pendingCalls.await(pc);
+		} catch (InterruptedException e) {
+			cancel(cmd);
+			throw e;
+		}
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.CommandStream#call(com.xxuz.piclane.jdrpc.CommandRequest, long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public CommandResponse call(CommandRequest cmd, long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		PendingCall pc = pendingCalls.register(cmd);
+		try {
+			send(cmd);
+		} catch (RuntimeException e) {
+			pendingCalls.abandon(pc);
+			throw e;
+		}
+		CommandResponse resp;
+		try {
+			resp = pendingCalls.await(pc, timeout, unit);
+		} catch (InterruptedException e) {
+			cancel(cmd);
+			throw e;
+		}
+		if(resp == null) {
+			cancel(cmd);
+			throw new TimeoutException("No response within " + timeout + " " + unit);
+		}
+		return resp;
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.CommandStream#callAsync(com.xxuz.piclane.jdrpc.CommandRequest)
+	 */
+	@Override
+	public CompletableFuture<CommandResponse> callAsync(CommandRequest cmd) {
+		CompletableFuture<CommandResponse> future = pendingCalls.registerAsync(cmd);
+		try {
+			sendUnawaited(cmd);
+		} catch (RuntimeException e) {
+			future.cancel(false);
+			throw e;
+		}
+		future.whenComplete((resp, t) -> {
+			if(future.isCancelled()) {
+				cancel(cmd);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.CommandStream#callAsync(com.xxuz.piclane.jdrpc.CommandRequest, long, java.util.concurrent.TimeUnit)
+	 */
+	@Override
+	public CompletableFuture<CommandResponse> callAsync(CommandRequest cmd, long timeout, TimeUnit unit) {
+		CompletableFuture<CommandResponse> future = callAsync(cmd);
+		ScheduledFuture<?> expiry = TIMEOUT_SCHEDULER.schedule(() -> {
+			if(pendingCalls.expire(future, new TimeoutException("No response within " + timeout + " " + unit))) {
+				cancel(cmd);
+			}
+		}, timeout, unit);
+		future.whenComplete((resp, t) -> expiry.cancel(false));
+		return future;
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.CommandStream#post(com.xxuz.piclane.jdrpc.CommandRequest)
+	 */
+	@Override
+	public void post(CommandRequest cmd) {
+		send(cmd);
+	}
+
+	/**
+	 * 呼び出し元のスレッドでコマンドを 1 度だけ符号化し、送信時はそのペイロードをそのまま書き込みます<br>
+	 * 呼び出し元のスレッドで符号化するサブクラスは、呼び出し元のバッファーを参照せずに符号化するようオーバーライドしてください
+	 *
+	 * @see com.xxuz.piclane.jdrpc.CommandStream#postDetached(com.xxuz.piclane.jdrpc.CommandRequest)
+	 */
+	@Override
+	public void postDetached(CommandRequest cmd) {
+		EncodedCommand encoded;
+		try {
+			encoded = EncodedCommand.encode(cmd, codec);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		send(encoded);
+	}
+
+	/**
+	 * 応答を待たなくなった要求コマンドの実行の取り消しをリモートに要求します
+	 *
+	 * @param cmd 要求コマンド
+	 */
+	private void cancel(CommandRequest cmd) {
+		try {
+			send(new CommandRequest.Cancel(cmd.getMessageId()));
+		} catch (RuntimeException e) {
+			// 取り消しは最善の努力で行う
+		}
+	}
+
+	/**
+	 * 応答待ちの呼び出しの数を取得します
+	 *
+	 * @return 応答待ちの呼び出しの数
+	 */
+	public int getPendingCallCount() {
+		return pendingCalls.size();
+	}
+}
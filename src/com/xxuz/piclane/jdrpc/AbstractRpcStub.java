@@ -0,0 +1,201 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * {@link RpcStubProcessor} が生成するスタブクラスの基底クラス<br>
+ * スタブクラスはインターフェイスのメソッド毎に {@link Method} を定数として保持し、
+ * {@link java.lang.reflect.InvocationHandler} を経由せずにリモートのメソッドを実行します
+ *
+ * @author piclane
+ */
+public abstract class AbstractRpcStub {
+	/** スタブクラスの名前の接尾辞 */
+	static final String STUB_SUFFIX = "_RpcStub";
+
+	/** スタブクラスのコンストラクタの型 */
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(void.class, CommandRunner.class, UUID.class);
+
+	/** インターフェイス毎のスタブクラスのコンストラクタ。スタブクラスが無い場合は <code>null</code> */
+	private static final ClassValue<MethodHandle[]> CONSTRUCTORS = new ClassValue<MethodHandle[]>() {
+		@Override
+		protected MethodHandle[] computeValue(Class<?> type) {
+			return new MethodHandle[] {findConstructor(type)};
+		}
+	};
+
+	/** {@link CommandRunner} */
+	private final CommandRunner runner;
+
+	/** インスタンスID */
+	private final UUID instanceId;
+
+	/**
+	 * メソッドの番号毎の {@link InvocationPlan}。最初に呼び出された時に取得します<br>
+	 * {@link InvocationPlan} は不変のため、同期せずに読み書きします
+	 */
+	private InvocationPlan[] plans;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param runner {@link CommandRunner}
+	 * @param instanceId インスタンスID
+	 */
+	protected AbstractRpcStub(CommandRunner runner, UUID instanceId) {
+		this.runner = runner;
+		this.instanceId = instanceId;
+	}
+
+	/**
+	 * スタブクラスが保持する {@link Method} を取得します
+	 *
+	 * @param cls インターフェイス
+	 * @param name メソッド名
+	 * @param parameterTypes 引数の型
+	 * @return {@link Method}
+	 * @throws NoSuchMethodError メソッドが存在しない場合
+	 */
+	protected static Method method(Class<?> cls, String name, Class<?>... parameterTypes) {
+		try {
+			return cls.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			throw new NoSuchMethodError(e.getMessage());
+		}
+	}
+
+	/**
+	 * リモートのメソッドを実行します<br>
+	 * メソッドが宣言していない検査例外は {@link UndeclaredThrowableException} に包んで送出します
+	 *
+	 * @param method メソッド
+	 * @param args 引数
+	 * @return 返値
+	 */
+	protected final Object invoke(Method method, Object... args) {
+		try {
+			return runner.invokeProxy(instanceId, runner.planOf(method), args);
+		} catch (Throwable t) {
+			throw rethrow(method, t);
+		}
+	}
+
+	/**
+	 * メソッドの番号毎に保持した {@link InvocationPlan} でリモートのメソッドを実行します<br>
+	 * {@link RpcOverride} が変更された場合は取得し直します
+	 *
+	 * @param slot メソッドの番号
+	 * @param method メソッド
+	 * @param args 引数
+	 * @return 返値
+	 */
+	protected final Object invoke(int slot, Method method, Object... args) {
+		InvocationPlan[] plans = this.plans;
+		if(plans == null || plans.length <= slot) {
+			plans = this.plans = plans == null ? new InvocationPlan[slot + 1] : Arrays.copyOf(plans, slot + 1);
+		}
+		InvocationPlan plan = plans[slot];
+		if(plan == null || !runner.isCurrentPlan(plan)) {
+			plan = plans[slot] = runner.planOf(method);
+		}
+		try {
+			return runner.invokeProxy(instanceId, plan, args);
+		} catch (Throwable t) {
+			throw rethrow(method, t);
+		}
+	}
+
+	/**
+	 * リモートで発生した例外を送出します<br>
+	 * 呼び出し元のスタックトレースを連結する都合上、{@link CommandRunner#invokeProxy(UUID, InvocationPlan, Object[])}
+	 * はスタブクラスのメソッドから 1 段で呼び出す必要があるため、例外の変換のみを分離しています
+	 *
+	 * @param method メソッド
+	 * @param t リモートで発生した例外
+	 * @return 戻りません
+	 */
+	private static RuntimeException rethrow(Method method, Throwable t) {
+		if(t instanceof RuntimeException) {
+			throw (RuntimeException)t;
+		}
+		if(t instanceof Error) {
+			throw (Error)t;
+		}
+		for(Class<?> exceptionType: method.getExceptionTypes()) {
+			if(exceptionType.isInstance(t)) {
+				throw AbstractRpcStub.<RuntimeException>sneakyThrow(t);
+			}
+		}
+		throw new UndeclaredThrowableException(t);
+	}
+
+	/**
+	 * 検査例外を検査せずに送出します
+	 *
+	 * @param t 送出する例外
+	 * @return 戻りません
+	 * @throws T 常に t を送出します
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends Throwable> RuntimeException sneakyThrow(Throwable t) throws T {
+		throw (T)t;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return getClass().getName() + "[" + instanceId + "]";
+	}
+
+	/**
+	 * インターフェイスのスタブクラスを生成します
+	 *
+	 * @param iface インターフェイス
+	 * @param runner {@link CommandRunner}
+	 * @param instanceId インスタンスID
+	 * @return スタブクラスのインスタンス。スタブクラスが無い場合は <code>null</code>
+	 */
+	static Object newStub(Class<?> iface, CommandRunner runner, UUID instanceId) {
+		MethodHandle constructor = CONSTRUCTORS.get(iface)[0];
+		if(constructor == null) {
+			return null;
+		}
+		try {
+			return constructor.invoke(runner, instanceId);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new UndeclaredThrowableException(t);
+		}
+	}
+
+	/**
+	 * インターフェイスのスタブクラスのコンストラクタを探します
+	 *
+	 * @param iface インターフェイス
+	 * @return スタブクラスのコンストラクタ。スタブクラスが無い場合は <code>null</code>
+	 */
+	private static MethodHandle findConstructor(Class<?> iface) {
+		if(!iface.isInterface() || !iface.isAnnotationPresent(RpcStub.class)) {
+			return null;
+		}
+		try {
+			Class<?> stubClass = Class.forName(iface.getName() + STUB_SUFFIX, true, iface.getClassLoader());
+			if(!AbstractRpcStub.class.isAssignableFrom(stubClass) || !iface.isAssignableFrom(stubClass)) {
+				return null;
+			}
+			return MethodHandles.publicLookup().findConstructor(stubClass, CONSTRUCTOR_TYPE);
+		} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+			// 注釈処理が行われていない場合は java.lang.reflect.Proxy を使用する
+			return null;
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.xxuz.piclane.jdrpc;
+
+/**
+ * リモートに内容を送信せずに渡す配列<br>
+ * 引数の型を {@link ArrayView} とすると、配列は呼び出し先に送信されず、
+ * 呼び出し先が読み書きした範囲のみがページ単位で転送されます。
+ * 巨大な配列の一部のみを参照するメソッドに適しています<br>
+ * 呼び出し先が読み込んだページはキャッシュされ、書き込みはメソッドが正常に終了した時点で呼び出し元に反映されます。
+ * メソッドが例外で終了した場合、反映されていない書き込みは破棄されます。
+ * メソッドの終了後に {@link ArrayView} を参照することはできません
+ *
+ * @author piclane
+ * @param <A> 配列の型
+ */
+public interface ArrayView<A> {
+	/**
+	 * 配列の長さを取得します
+	 *
+	 * @return 配列の長さ
+	 */
+	public int length();
+
+	/**
+	 * 配列の要素の型を取得します
+	 *
+	 * @return 配列の要素の型
+	 */
+	public Class<?> getComponentType();
+
+	/**
+	 * 配列の内容を読み込みます
+	 *
+	 * @param index 読み込みを開始する配列のインデックス
+	 * @param dst 読み込み先の配列
+	 * @param offset 読み込み先の配列の開始位置
+	 * @param length 読み込む要素の数
+	 * @throws IndexOutOfBoundsException 範囲が配列の外にある場合
+	 * @throws IllegalStateException メソッドの終了後に呼び出された場合
+	 */
+	public void get(int index, A dst, int offset, int length);
+
+	/**
+	 * 配列に書き込みます
+	 *
+	 * @param index 書き込みを開始する配列のインデックス
+	 * @param src 書き込む内容の配列
+	 * @param offset 書き込む内容の配列の開始位置
+	 * @param length 書き込む要素の数
+	 * @throws IndexOutOfBoundsException 範囲が配列の外にある場合
+	 * @throws IllegalStateException メソッドの終了後に呼び出された場合
+	 */
+	public void set(int index, A src, int offset, int length);
+
+	/**
+	 * 配列を参照する {@link ArrayView} を生成します<br>
+	 * 呼び出し先の書き込みは array に直接反映されます
+	 *
+	 * @param <A> 配列の型
+	 * @param array 配列
+	 * @return {@link ArrayView}
+	 * @throws IllegalArgumentException array が配列でない場合
+	 */
+	public static <A> ArrayView<A> of(A array) {
+		return new LocalArrayView<>(array);
+	}
+}
@@ -0,0 +1,65 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.Serializable;
+
+/**
+ * 呼び出し元の {@link ArrayView} を指す引数<br>
+ * {@link ArrayView} の代わりに送信され、呼び出し先は
+ * {@link CommandRequest.ArrayRead}, {@link CommandRequest.ArrayWrite} で内容を読み書きします
+ *
+ * @author piclane
+ */
+class ArrayViewReference implements Serializable {
+	/** serialVersionUID */
+	private static final long serialVersionUID = 4412969208113590826L;
+
+	/** ビューID。呼び出し元で一意な値です */
+	private final long viewId;
+
+	/** 配列の長さ */
+	private final int length;
+
+	/** 配列の要素の型 */
+	private final Class<?> componentType;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param viewId ビューID
+	 * @param length 配列の長さ
+	 * @param componentType 配列の要素の型
+	 */
+	public ArrayViewReference(long viewId, int length, Class<?> componentType) {
+		super();
+		this.viewId = viewId;
+		this.length = length;
+		this.componentType = componentType;
+	}
+
+	/**
+	 * viewId を取得します
+	 *
+	 * @return ビューID
+	 */
+	public long getViewId() {
+		return viewId;
+	}
+
+	/**
+	 * length を取得します
+	 *
+	 * @return 配列の長さ
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * componentType を取得します
+	 *
+	 * @return 配列の要素の型
+	 */
+	public Class<?> getComponentType() {
+		return componentType;
+	}
+}
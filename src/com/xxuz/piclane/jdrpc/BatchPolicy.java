@@ -0,0 +1,125 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DefaultCommandStream} がコマンドをまとめて送信する方法を表現します<br>
+ * 送信待ちのコマンドを上限に達するまで 1 つのバッファーにエンコードし、1 回の書き込みと 1 回のフラッシュで送信します<br>
+ * 送信されるフレームの形式はバッチの有無に依存しないため、リモートと設定を合わせる必要はありません
+ *
+ * @author piclane
+ */
+public final class BatchPolicy {
+	/** 既定のバッチの最大コマンド数 */
+	private static final int DEFAULT_MAX_COMMANDS = 64;
+
+	/** 既定のバッチの最大バイト数 */
+	private static final int DEFAULT_MAX_BYTES = 64 * 1024;
+
+	/** バッチを行わない {@link BatchPolicy} */
+	private static final BatchPolicy NONE = new BatchPolicy(1, 0, 0L);
+
+	/** 既定の {@link BatchPolicy} */
+	private static final BatchPolicy DEFAULT = new BatchPolicy(DEFAULT_MAX_COMMANDS, DEFAULT_MAX_BYTES, 0L);
+
+	/** バッチの最大コマンド数 */
+	private final int maxCommands;
+
+	/** バッチの最大バイト数 */
+	private final int maxBytes;
+
+	/** 最初のコマンドを取り出してから後続のコマンドを待つ最大時間 (ナノ秒) */
+	private final long maxLatencyNanos;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param maxCommands バッチの最大コマンド数
+	 * @param maxBytes バッチの最大バイト数
+	 * @param maxLatencyNanos 最初のコマンドを取り出してから後続のコマンドを待つ最大時間 (ナノ秒)
+	 */
+	private BatchPolicy(int maxCommands, int maxBytes, long maxLatencyNanos) {
+		this.maxCommands = maxCommands;
+		this.maxBytes = maxBytes;
+		this.maxLatencyNanos = maxLatencyNanos;
+	}
+
+	/**
+	 * コマンド毎にフラッシュする {@link BatchPolicy} を取得します
+	 *
+	 * @return {@link BatchPolicy}
+	 */
+	public static BatchPolicy none() {
+		return NONE;
+	}
+
+	/**
+	 * 既定の {@link BatchPolicy} を取得します<br>
+	 * 送信時点で既にキューにあるコマンドのみをまとめ、後続のコマンドは待ちません。
+	 * そのため単発の呼び出しの遅延は増えません
+	 *
+	 * @return {@link BatchPolicy}
+	 */
+	public static BatchPolicy defaults() {
+		return DEFAULT;
+	}
+
+	/**
+	 * {@link BatchPolicy} を生成します
+	 *
+	 * @param maxCommands バッチの最大コマンド数
+	 * @param maxBytes バッチの最大バイト数。1 つのコマンドがこれを超える場合でも単独で送信されます
+	 * @param maxLatency 最初のコマンドを取り出してから後続のコマンドを待つ最大時間。0 の場合は待ちません
+	 * @param unit maxLatency の単位
+	 * @return {@link BatchPolicy}
+	 * @throws IllegalArgumentException 引数が範囲外の場合
+	 */
+	public static BatchPolicy of(int maxCommands, int maxBytes, long maxLatency, TimeUnit unit) {
+		if(maxCommands < 1) {
+			throw new IllegalArgumentException("maxCommands must be positive: " + maxCommands);
+		}
+		if(maxBytes < 0) {
+			throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+		}
+		if(maxLatency < 0L) {
+			throw new IllegalArgumentException("maxLatency must not be negative: " + maxLatency);
+		}
+		return new BatchPolicy(maxCommands, maxBytes, unit.toNanos(maxLatency));
+	}
+
+	/**
+	 * バッチの最大コマンド数を取得します
+	 *
+	 * @return バッチの最大コマンド数
+	 */
+	public int getMaxCommands() {
+		return maxCommands;
+	}
+
+	/**
+	 * バッチの最大バイト数を取得します
+	 *
+	 * @return バッチの最大バイト数
+	 */
+	public int getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * 最初のコマンドを取り出してから後続のコマンドを待つ最大時間を取得します
+	 *
+	 * @param unit 単位
+	 * @return 最大時間
+	 */
+	public long getMaxLatency(TimeUnit unit) {
+		return unit.convert(maxLatencyNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "BatchPolicy [maxCommands=" + maxCommands + ", maxBytes=" + maxBytes + ", maxLatencyNanos=" + maxLatencyNanos + "]";
+	}
+}
@@ -0,0 +1,1388 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.UUID;
+
+import com.xxuz.piclane.jdrpc.CommandResponse.Invoke.ObjectType;
+
+/**
+ * 組込みの {@link Command} をコンパクトなバイナリ形式で符号化する {@link CommandCodec}<br>
+ * プリミティブ、文字列、配列、主要なコレクションはネイティブに符号化し、
+ * それ以外の値のみ Java のシリアライズにフォールバックします<br>
+ * {@link #BULK_THRESHOLD} 以上のバイト列と {@link ByteBuffer} は、出力先が対応していればフレームにコピーせずに連結します
+ *
+ * @author piclane
+ */
+public class BinaryCommandCodec implements CommandCodec {
+	/** フレームにコピーせずに連結するバイト列の最小の長さ */
+	static final int BULK_THRESHOLD = 16 * 1024;
+
+	/** コマンド種別: Java のシリアライズ */
+	private static final int CMD_SERIALIZED = 0x00;
+
+	/** コマンド種別: {@link CommandRequest.Register} */
+	private static final int REQ_REGISTER = 0x01;
+
+	/** コマンド種別: {@link CommandRequest.Deregister} */
+	private static final int REQ_DEREGISTER = 0x02;
+
+	/** コマンド種別: {@link CommandRequest.Invoke} */
+	private static final int REQ_INVOKE = 0x03;
+
+	/** コマンド種別: {@link CommandRequest.AddRpcOverride} */
+	private static final int REQ_ADD_RPC_OVERRIDE = 0x04;
+
+	/** コマンド種別: {@link CommandRequest.RemoveRpcOverride} */
+	private static final int REQ_REMOVE_RPC_OVERRIDE = 0x05;
+
+	/** コマンド種別: {@link CommandRequest.Exit} */
+	private static final int REQ_EXIT = 0x06;
+
+	/** コマンド種別: {@link CommandRequest.OpenChannel} */
+	private static final int REQ_OPEN_CHANNEL = 0x07;
+
+	/** コマンド種別: {@link CommandRequest.Cancel} */
+	private static final int REQ_CANCEL = 0x08;
+
+	/** コマンド種別: {@link CommandRequest.DeregisterMany} */
+	private static final int REQ_DEREGISTER_MANY = 0x09;
+
+	/** コマンド種別: {@link CommandRequest.StreamCredit} */
+	private static final int REQ_STREAM_CREDIT = 0x0a;
+
+	/** コマンド種別: {@link CommandRequest.StreamChunk} */
+	private static final int REQ_STREAM_CHUNK = 0x0b;
+
+	/** コマンド種別: {@link CommandRequest.StreamClose} */
+	private static final int REQ_STREAM_CLOSE = 0x0c;
+
+	/** コマンド種別: {@link CommandRequest.ArrayRead} */
+	private static final int REQ_ARRAY_READ = 0x0d;
+
+	/** コマンド種別: {@link CommandRequest.ArrayWrite} */
+	private static final int REQ_ARRAY_WRITE = 0x0e;
+
+	/** コマンド種別: {@link CommandRequest.RenewLeases} */
+	private static final int REQ_RENEW_LEASES = 0x0f;
+
+	/** コマンド種別: {@link CommandResponse.Register} */
+	private static final int RESP_REGISTER = 0x41;
+
+	/** コマンド種別: {@link CommandResponse.Deregister} */
+	private static final int RESP_DEREGISTER = 0x42;
+
+	/** コマンド種別: {@link CommandResponse.Invoke} */
+	private static final int RESP_INVOKE = 0x43;
+
+	/** コマンド種別: {@link CommandResponse.AddRpcOverride} */
+	private static final int RESP_ADD_RPC_OVERRIDE = 0x44;
+
+	/** コマンド種別: {@link CommandResponse.RemoveRpcOverride} */
+	private static final int RESP_REMOVE_RPC_OVERRIDE = 0x45;
+
+	/** コマンド種別: {@link CommandResponse.Exit} */
+	private static final int RESP_EXIT = 0x46;
+
+	/** コマンド種別: {@link CommandResponse.ArrayRead} */
+	private static final int RESP_ARRAY_READ = 0x47;
+
+	/** コマンド種別: {@link CommandResponse.ArrayWrite} */
+	private static final int RESP_ARRAY_WRITE = 0x48;
+
+	/** コマンド種別: 論理チャネルのIDを前置したコマンド */
+	private static final int CMD_CHANNEL = 0x7f;
+
+	/** 値の型: null */
+	private static final int T_NULL = 0x00;
+
+	/** 値の型: true */
+	private static final int T_TRUE = 0x01;
+
+	/** 値の型: false */
+	private static final int T_FALSE = 0x02;
+
+	/** 値の型: {@link Byte} */
+	private static final int T_BYTE = 0x03;
+
+	/** 値の型: {@link Short} */
+	private static final int T_SHORT = 0x04;
+
+	/** 値の型: {@link Character} */
+	private static final int T_CHAR = 0x05;
+
+	/** 値の型: {@link Integer} */
+	private static final int T_INT = 0x06;
+
+	/** 値の型: {@link Long} */
+	private static final int T_LONG = 0x07;
+
+	/** 値の型: {@link Float} */
+	private static final int T_FLOAT = 0x08;
+
+	/** 値の型: {@link Double} */
+	private static final int T_DOUBLE = 0x09;
+
+	/** 値の型: {@link String} */
+	private static final int T_STRING = 0x0a;
+
+	/** 値の型: {@link UUID} */
+	private static final int T_UUID = 0x0b;
+
+	/** 値の型: {@link Class} */
+	private static final int T_CLASS = 0x0c;
+
+	/** 値の型: {@link Enum} */
+	private static final int T_ENUM = 0x0d;
+
+	/** 値の型: boolean[] */
+	private static final int T_BOOLEAN_ARRAY = 0x10;
+
+	/** 値の型: byte[] */
+	private static final int T_BYTE_ARRAY = 0x11;
+
+	/** 値の型: short[] */
+	private static final int T_SHORT_ARRAY = 0x12;
+
+	/** 値の型: char[] */
+	private static final int T_CHAR_ARRAY = 0x13;
+
+	/** 値の型: int[] */
+	private static final int T_INT_ARRAY = 0x14;
+
+	/** 値の型: long[] */
+	private static final int T_LONG_ARRAY = 0x15;
+
+	/** 値の型: float[] */
+	private static final int T_FLOAT_ARRAY = 0x16;
+
+	/** 値の型: double[] */
+	private static final int T_DOUBLE_ARRAY = 0x17;
+
+	/** 値の型: Object[] */
+	private static final int T_OBJECT_ARRAY = 0x18;
+
+	/** 値の型: {@link ByteBuffer} */
+	private static final int T_BYTE_BUFFER = 0x19;
+
+	/** 値の型: {@link ArrayList} */
+	private static final int T_ARRAY_LIST = 0x20;
+
+	/** 値の型: {@link LinkedList} */
+	private static final int T_LINKED_LIST = 0x21;
+
+	/** 値の型: {@link HashSet} */
+	private static final int T_HASH_SET = 0x22;
+
+	/** 値の型: {@link LinkedHashSet} */
+	private static final int T_LINKED_HASH_SET = 0x23;
+
+	/** 値の型: {@link HashMap} */
+	private static final int T_HASH_MAP = 0x24;
+
+	/** 値の型: {@link LinkedHashMap} */
+	private static final int T_LINKED_HASH_MAP = 0x25;
+
+	/** 値の型: {@link Reference} */
+	private static final int T_REFERENCE = 0x30;
+
+	/** 値の型: {@link ReferenceArray} */
+	private static final int T_REFERENCE_ARRAY = 0x31;
+
+	/** 値の型: {@link RpcOverride} */
+	private static final int T_RPC_OVERRIDE = 0x32;
+
+	/** 値の型: {@link StreamReference} */
+	private static final int T_STREAM_REFERENCE = 0x33;
+
+	/** 値の型: {@link ArrayViewReference} */
+	private static final int T_ARRAY_VIEW_REFERENCE = 0x34;
+
+	/** 値の型: 登録に必要な情報を含む {@link Reference} */
+	private static final int T_REGISTERING_REFERENCE = 0x35;
+
+	/** 値の型: Java のシリアライズ */
+	private static final int T_SERIALIZED = 0x7f;
+
+	/** クラスの解決に使用するクラスローダー。<code>null</code> の場合はコンテキストクラスローダー */
+	private final ClassLoader classLoader;
+
+	/**
+	 * コンストラクタ
+	 */
+	public BinaryCommandCodec() {
+		this(null);
+	}
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param classLoader クラスの解決に使用するクラスローダー。<code>null</code> の場合はコンテキストクラスローダー
+	 */
+	public BinaryCommandCodec(ClassLoader classLoader) {
+		super();
+		this.classLoader = classLoader;
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.CommandCodec#encode(com.xxuz.piclane.jdrpc.Command, java.io.DataOutput)
+	 */
+	@Override
+	public void encode(Command cmd, DataOutput out) throws IOException {
+		// 多重化されていないコマンドには何も付加しない
+		int channelId = cmd.getChannelId();
+		if(channelId != 0) {
+			out.writeByte(CMD_CHANNEL);
+			writeVarInt(channelId, out);
+		}
+		encodeCommand(cmd, out);
+	}
+
+	/**
+	 * 論理チャネルのIDを除くコマンドを書き込みます
+	 *
+	 * @param cmd コマンド
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private void encodeCommand(Command cmd, DataOutput out) throws IOException {
+		if(cmd instanceof CommandRequest.Register) {
+			CommandRequest.Register req = (CommandRequest.Register)cmd;
+			out.writeByte(REQ_REGISTER);
+			writeVarLong(req.getMessageId(), out);
+			writeString(req.getName(), out);
+			writeUuid(req.getInstanceId(), out);
+			writeClasses(req.getInterfaces(), out);
+			writeInts(req.getMethodBases(), out);
+			writeInts(req.getMethodFingerprints(), out);
+			writeVarLong(req.getLeaseNanos(), out);
+		} else if(cmd instanceof CommandRequest.Deregister) {
+			CommandRequest.Deregister req = (CommandRequest.Deregister)cmd;
+			out.writeByte(REQ_DEREGISTER);
+			writeVarLong(req.getMessageId(), out);
+			writeUuid(req.getInstanceId(), out);
+		} else if(cmd instanceof CommandRequest.Invoke) {
+			CommandRequest.Invoke req = (CommandRequest.Invoke)cmd;
+			out.writeByte(REQ_INVOKE);
+			writeVarLong(req.getMessageId(), out);
+			writeVarLong(req.getTimeoutNanos(), out);
+			writeUuid(req.getInstanceId(), out);
+			writeVarInt(req.getMethodId() + 1, out);
+			if(req.getMethodId() < 0) {
+				writeClass(req.getDeclaringClass(), out);
+				writeString(req.getMethodName(), out);
+				writeClasses(req.getParameterTypes(), out);
+			}
+			writeValues(req.getArguments(), out);
+		} else if(cmd instanceof CommandRequest.AddRpcOverride) {
+			CommandRequest.AddRpcOverride req = (CommandRequest.AddRpcOverride)cmd;
+			out.writeByte(REQ_ADD_RPC_OVERRIDE);
+			writeVarLong(req.getMessageId(), out);
+			writeValue(req.getOverride(), out);
+		} else if(cmd instanceof CommandRequest.RemoveRpcOverride) {
+			CommandRequest.RemoveRpcOverride req = (CommandRequest.RemoveRpcOverride)cmd;
+			out.writeByte(REQ_REMOVE_RPC_OVERRIDE);
+			writeVarLong(req.getMessageId(), out);
+			writeValue(req.getOverride(), out);
+		} else if(cmd instanceof CommandRequest.Exit) {
+			out.writeByte(REQ_EXIT);
+			writeVarLong(cmd.getMessageId(), out);
+		} else if(cmd instanceof CommandRequest.OpenChannel) {
+			out.writeByte(REQ_OPEN_CHANNEL);
+		} else if(cmd instanceof CommandRequest.Cancel) {
+			out.writeByte(REQ_CANCEL);
+			writeVarLong(((CommandRequest.Cancel)cmd).getTargetMessageId(), out);
+		} else if(cmd instanceof CommandRequest.DeregisterMany) {
+			UUID[] instanceIds = ((CommandRequest.DeregisterMany)cmd).getInstanceIds();
+			long[] generations = ((CommandRequest.DeregisterMany)cmd).getGenerations();
+			out.writeByte(REQ_DEREGISTER_MANY);
+			writeVarInt(instanceIds.length, out);
+			for(int i=0; i<instanceIds.length; i++) {
+				writeUuid(instanceIds[i], out);
+				writeVarLong(generations[i], out);
+			}
+		} else if(cmd instanceof CommandRequest.RenewLeases) {
+			UUID[] instanceIds = ((CommandRequest.RenewLeases)cmd).getInstanceIds();
+			out.writeByte(REQ_RENEW_LEASES);
+			writeVarInt(instanceIds.length, out);
+			for(UUID instanceId: instanceIds) {
+				writeUuid(instanceId, out);
+			}
+		} else if(cmd instanceof CommandRequest.StreamCredit) {
+			CommandRequest.StreamCredit req = (CommandRequest.StreamCredit)cmd;
+			out.writeByte(REQ_STREAM_CREDIT);
+			writeVarLong(req.getStreamId(), out);
+			writeVarInt(req.getCredit(), out);
+		} else if(cmd instanceof CommandRequest.StreamChunk) {
+			CommandRequest.StreamChunk req = (CommandRequest.StreamChunk)cmd;
+			out.writeByte(REQ_STREAM_CHUNK);
+			writeVarLong(req.getStreamId(), out);
+			out.writeBoolean(req.isLast());
+			writeValues(req.getElements(), out);
+			writeValue(req.getFailure(), out);
+		} else if(cmd instanceof CommandRequest.StreamClose) {
+			out.writeByte(REQ_STREAM_CLOSE);
+			writeVarLong(((CommandRequest.StreamClose)cmd).getStreamId(), out);
+		} else if(cmd instanceof CommandRequest.ArrayRead) {
+			CommandRequest.ArrayRead req = (CommandRequest.ArrayRead)cmd;
+			out.writeByte(REQ_ARRAY_READ);
+			writeVarLong(req.getMessageId(), out);
+			writeVarLong(req.getViewId(), out);
+			writeVarInt(req.getIndex(), out);
+			writeVarInt(req.getLength(), out);
+		} else if(cmd instanceof CommandRequest.ArrayWrite) {
+			CommandRequest.ArrayWrite req = (CommandRequest.ArrayWrite)cmd;
+			out.writeByte(REQ_ARRAY_WRITE);
+			writeVarLong(req.getMessageId(), out);
+			writeVarLong(req.getViewId(), out);
+			writeVarInt(req.getIndex(), out);
+			writeValue(req.getData(), out);
+		} else if(cmd instanceof CommandResponse.Register) {
+			out.writeByte(RESP_REGISTER);
+			writeVarLong(cmd.getMessageId(), out);
+		} else if(cmd instanceof CommandResponse.Deregister) {
+			out.writeByte(RESP_DEREGISTER);
+			writeVarLong(cmd.getMessageId(), out);
+		} else if(cmd instanceof CommandResponse.Invoke) {
+			CommandResponse.Invoke resp = (CommandResponse.Invoke)cmd;
+			out.writeByte(RESP_INVOKE);
+			writeVarLong(resp.getMessageId(), out);
+			out.writeByte(resp.getObjectType().ordinal());
+			writeValue(resp.getRawValue(), out);
+			ReferenceArray[] refParams = resp.getReferenceParams();
+			writeVarInt(refParams.length, out);
+			for(ReferenceArray refParam: refParams) {
+				writeReferenceArray(refParam, out);
+			}
+		} else if(cmd instanceof CommandResponse.AddRpcOverride) {
+			out.writeByte(RESP_ADD_RPC_OVERRIDE);
+			writeVarLong(cmd.getMessageId(), out);
+		} else if(cmd instanceof CommandResponse.RemoveRpcOverride) {
+			out.writeByte(RESP_REMOVE_RPC_OVERRIDE);
+			writeVarLong(cmd.getMessageId(), out);
+		} else if(cmd instanceof CommandResponse.Exit) {
+			out.writeByte(RESP_EXIT);
+			writeVarLong(cmd.getMessageId(), out);
+		} else if(cmd instanceof CommandResponse.ArrayRead) {
+			CommandResponse.ArrayRead resp = (CommandResponse.ArrayRead)cmd;
+			out.writeByte(RESP_ARRAY_READ);
+			writeVarLong(resp.getMessageId(), out);
+			writeValue(resp.getData(), out);
+			writeValue(resp.getFailure(), out);
+		} else if(cmd instanceof CommandResponse.ArrayWrite) {
+			CommandResponse.ArrayWrite resp = (CommandResponse.ArrayWrite)cmd;
+			out.writeByte(RESP_ARRAY_WRITE);
+			writeVarLong(resp.getMessageId(), out);
+			writeValue(resp.getFailure(), out);
+		} else {
+			out.writeByte(CMD_SERIALIZED);
+			writeBytes(SerializableCommandCodec.serialize(cmd), out);
+		}
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.CommandCodec#decode(java.io.DataInput)
+	 */
+	@Override
+	public Command decode(DataInput in) throws IOException {
+		int type = in.readUnsignedByte();
+		if(type == CMD_CHANNEL) {
+			int channelId = readVarInt(in);
+			Command cmd = decodeCommand(in.readUnsignedByte(), in);
+			cmd.setChannelId(channelId);
+			return cmd;
+		}
+		return decodeCommand(type, in);
+	}
+
+	/**
+	 * 論理チャネルのIDを除くコマンドを読み込みます
+	 *
+	 * @param type コマンド種別
+	 * @param in 入力元
+	 * @return コマンド
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private Command decodeCommand(int type, DataInput in) throws IOException {
+		switch(type) {
+			case REQ_REGISTER:
+				return new CommandRequest.Register(
+					readVarLong(in),
+					readString(in),
+					readUuid(in),
+					readClasses(in),
+					readInts(in),
+					readInts(in),
+					readVarLong(in));
+			case REQ_DEREGISTER:
+				return new CommandRequest.Deregister(
+					readVarLong(in),
+					readUuid(in));
+			case REQ_INVOKE: {
+				long messageId = readVarLong(in);
+				long timeoutNanos = readVarLong(in);
+				UUID instanceId = readUuid(in);
+				int methodId = readVarInt(in) - 1;
+				CommandRequest.Invoke req;
+				if(methodId >= 0) {
+					req = new CommandRequest.Invoke(messageId, instanceId, methodId, null, null, null, readValues(in));
+				} else {
+					req = new CommandRequest.Invoke(
+						messageId,
+						instanceId,
+						-1,
+						readClass(in),
+						readString(in),
+						readClasses(in),
+						readValues(in));
+				}
+				req.setTimeoutNanos(timeoutNanos);
+				return req;
+			}
+			case REQ_ADD_RPC_OVERRIDE:
+				return new CommandRequest.AddRpcOverride(
+					readVarLong(in),
+					(RpcOverride)readValue(in));
+			case REQ_REMOVE_RPC_OVERRIDE:
+				return new CommandRequest.RemoveRpcOverride(
+					readVarLong(in),
+					(RpcOverride)readValue(in));
+			case REQ_EXIT:
+				return new CommandRequest.Exit(readVarLong(in));
+			case REQ_OPEN_CHANNEL:
+				return new CommandRequest.OpenChannel();
+			case REQ_CANCEL:
+				return new CommandRequest.Cancel(readVarLong(in));
+			case REQ_DEREGISTER_MANY: {
+				UUID[] instanceIds = new UUID[readVarInt(in)];
+				long[] generations = new long[instanceIds.length];
+				for(int i=0; i<instanceIds.length; i++) {
+					instanceIds[i] = readUuid(in);
+					generations[i] = readVarLong(in);
+				}
+				return new CommandRequest.DeregisterMany(instanceIds, generations);
+			}
+			case REQ_RENEW_LEASES: {
+				UUID[] instanceIds = new UUID[readVarInt(in)];
+				for(int i=0; i<instanceIds.length; i++) {
+					instanceIds[i] = readUuid(in);
+				}
+				return new CommandRequest.RenewLeases(instanceIds);
+			}
+			case REQ_STREAM_CREDIT:
+				return new CommandRequest.StreamCredit(readVarLong(in), readVarInt(in));
+			case REQ_STREAM_CHUNK: {
+				long streamId = readVarLong(in);
+				boolean last = in.readBoolean();
+				Object[] elements = readValues(in);
+				return new CommandRequest.StreamChunk(streamId, elements, last, (Throwable)readValue(in));
+			}
+			case REQ_STREAM_CLOSE:
+				return new CommandRequest.StreamClose(readVarLong(in));
+			case REQ_ARRAY_READ:
+				return new CommandRequest.ArrayRead(
+					readVarLong(in),
+					readVarLong(in),
+					readVarInt(in),
+					readVarInt(in));
+			case REQ_ARRAY_WRITE:
+				return new CommandRequest.ArrayWrite(
+					readVarLong(in),
+					readVarLong(in),
+					readVarInt(in),
+					readValue(in));
+			case RESP_REGISTER:
+				return new CommandResponse.Register(readVarLong(in));
+			case RESP_DEREGISTER:
+				return new CommandResponse.Deregister(readVarLong(in));
+			case RESP_INVOKE: {
+				long messageId = readVarLong(in);
+				ObjectType objectType = ObjectType.values()[in.readUnsignedByte()];
+				Object returnValue = readValue(in);
+				ReferenceArray[] refParams = new ReferenceArray[readVarInt(in)];
+				for(int i=0; i<refParams.length; i++) {
+					refParams[i] = readReferenceArray(in);
+				}
+				return new CommandResponse.Invoke(messageId, objectType, returnValue, refParams);
+			}
+			case RESP_ADD_RPC_OVERRIDE:
+				return new CommandResponse.AddRpcOverride(readVarLong(in));
+			case RESP_REMOVE_RPC_OVERRIDE:
+				return new CommandResponse.RemoveRpcOverride(readVarLong(in));
+			case RESP_EXIT:
+				return new CommandResponse.Exit(readVarLong(in));
+			case RESP_ARRAY_READ: {
+				long messageId = readVarLong(in);
+				Object data = readValue(in);
+				return new CommandResponse.ArrayRead(messageId, data, (Throwable)readValue(in));
+			}
+			case RESP_ARRAY_WRITE:
+				return new CommandResponse.ArrayWrite(readVarLong(in), (Throwable)readValue(in));
+			case CMD_SERIALIZED:
+				return (Command)SerializableCommandCodec.deserialize(readBytes(in));
+			default:
+				throw new IOException("Unknown command type: " + type);
+		}
+	}
+
+	/**
+	 * 値を書き込みます
+	 *
+	 * @param value 値
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	protected void writeValue(Object value, DataOutput out) throws IOException {
+		if(value == null) {
+			out.writeByte(T_NULL);
+			return;
+		}
+
+		Class<?> cls = value.getClass();
+		if(cls == Boolean.class) {
+			out.writeByte((Boolean)value ? T_TRUE : T_FALSE);
+		} else if(cls == Byte.class) {
+			out.writeByte(T_BYTE);
+			out.writeByte((Byte)value);
+		} else if(cls == Short.class) {
+			out.writeByte(T_SHORT);
+			out.writeShort((Short)value);
+		} else if(cls == Character.class) {
+			out.writeByte(T_CHAR);
+			out.writeChar((Character)value);
+		} else if(cls == Integer.class) {
+			out.writeByte(T_INT);
+			writeVarInt(zigZag((Integer)value), out);
+		} else if(cls == Long.class) {
+			out.writeByte(T_LONG);
+			writeVarLong(zigZag((Long)value), out);
+		} else if(cls == Float.class) {
+			out.writeByte(T_FLOAT);
+			out.writeFloat((Float)value);
+		} else if(cls == Double.class) {
+			out.writeByte(T_DOUBLE);
+			out.writeDouble((Double)value);
+		} else if(cls == String.class) {
+			out.writeByte(T_STRING);
+			writeString((String)value, out);
+		} else if(cls == UUID.class) {
+			out.writeByte(T_UUID);
+			writeUuid((UUID)value, out);
+		} else if(cls == Class.class) {
+			out.writeByte(T_CLASS);
+			writeClass((Class<?>)value, out);
+		} else if(value instanceof Enum) {
+			out.writeByte(T_ENUM);
+			writeClass(((Enum<?>)value).getDeclaringClass(), out);
+			writeString(((Enum<?>)value).name(), out);
+		} else if(cls.isArray()) {
+			writeArray(value, out);
+		} else if(value instanceof ByteBuffer) {
+			// position から limit までを送信し、position は変更しない
+			ByteBuffer buf = (ByteBuffer)value;
+			out.writeByte(T_BYTE_BUFFER);
+			writeVarInt(buf.remaining(), out);
+			writeBulk(buf, out);
+		} else if(cls == ArrayList.class) {
+			out.writeByte(T_ARRAY_LIST);
+			writeCollection((Collection<?>)value, out);
+		} else if(cls == LinkedList.class) {
+			out.writeByte(T_LINKED_LIST);
+			writeCollection((Collection<?>)value, out);
+		} else if(cls == HashSet.class) {
+			out.writeByte(T_HASH_SET);
+			writeCollection((Collection<?>)value, out);
+		} else if(cls == LinkedHashSet.class) {
+			out.writeByte(T_LINKED_HASH_SET);
+			writeCollection((Collection<?>)value, out);
+		} else if(cls == HashMap.class) {
+			out.writeByte(T_HASH_MAP);
+			writeMap((Map<?, ?>)value, out);
+		} else if(cls == LinkedHashMap.class) {
+			out.writeByte(T_LINKED_HASH_MAP);
+			writeMap((Map<?, ?>)value, out);
+		} else if(cls == Reference.class) {
+			Reference ref = (Reference)value;
+			if(ref.getInterfaces() == null) {
+				out.writeByte(T_REFERENCE);
+				writeUuid(ref.getInstanceId(), out);
+			} else {
+				out.writeByte(T_REGISTERING_REFERENCE);
+				writeUuid(ref.getInstanceId(), out);
+				writeClasses(ref.getInterfaces(), out);
+				writeInts(ref.getMethodBases(), out);
+				writeInts(ref.getMethodFingerprints(), out);
+				writeVarLong(ref.getGeneration(), out);
+				writeVarLong(ref.getLeaseNanos(), out);
+			}
+		} else if(cls == ReferenceArray.class) {
+			out.writeByte(T_REFERENCE_ARRAY);
+			writeReferenceArray((ReferenceArray)value, out);
+		} else if(cls == StreamReference.class) {
+			out.writeByte(T_STREAM_REFERENCE);
+			writeVarLong(((StreamReference)value).getStreamId(), out);
+		} else if(cls == ArrayViewReference.class) {
+			ArrayViewReference ref = (ArrayViewReference)value;
+			out.writeByte(T_ARRAY_VIEW_REFERENCE);
+			writeVarLong(ref.getViewId(), out);
+			writeVarInt(ref.getLength(), out);
+			writeClass(ref.getComponentType(), out);
+		} else if(cls == RpcOverride.class) {
+			RpcOverride override = (RpcOverride)value;
+			out.writeByte(T_RPC_OVERRIDE);
+			writeClass(override.getDeclaringClass(), out);
+			writeString(override.getMethodName(), out);
+			writeClasses(override.getParameterTypes(), out);
+			writeVarInt(zigZag(override.getParameterIndex()), out);
+		} else {
+			out.writeByte(T_SERIALIZED);
+			writeBytes(SerializableCommandCodec.serialize(value), out);
+		}
+	}
+
+	/**
+	 * 値を読み込みます
+	 *
+	 * @param in 入力元
+	 * @return 値
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected Object readValue(DataInput in) throws IOException {
+		int type = in.readUnsignedByte();
+		switch(type) {
+			case T_NULL:
+				return null;
+			case T_TRUE:
+				return Boolean.TRUE;
+			case T_FALSE:
+				return Boolean.FALSE;
+			case T_BYTE:
+				return in.readByte();
+			case T_SHORT:
+				return in.readShort();
+			case T_CHAR:
+				return in.readChar();
+			case T_INT:
+				return unZigZag(readVarInt(in));
+			case T_LONG:
+				return unZigZag(readVarLong(in));
+			case T_FLOAT:
+				return in.readFloat();
+			case T_DOUBLE:
+				return in.readDouble();
+			case T_STRING:
+				return readString(in);
+			case T_UUID:
+				return readUuid(in);
+			case T_CLASS:
+				return readClass(in);
+			case T_ENUM:
+				return Enum.valueOf((Class)readClass(in), readString(in));
+			case T_BOOLEAN_ARRAY: {
+				boolean[] a = new boolean[readVarInt(in)];
+				for(int i=0; i<a.length; i++) {
+					a[i] = in.readBoolean();
+				}
+				return a;
+			}
+			case T_BYTE_ARRAY:
+				return readBytes(in);
+			case T_BYTE_BUFFER: {
+				int length = readVarInt(in);
+				if(in instanceof BulkDataInput) {
+					return ((BulkDataInput)in).readBulk(length);
+				}
+				byte[] b = new byte[length];
+				in.readFully(b);
+				return ByteBuffer.wrap(b);
+			}
+			case T_SHORT_ARRAY: {
+				short[] a = new short[readVarInt(in)];
+				for(int i=0; i<a.length; i++) {
+					a[i] = in.readShort();
+				}
+				return a;
+			}
+			case T_CHAR_ARRAY: {
+				char[] a = new char[readVarInt(in)];
+				for(int i=0; i<a.length; i++) {
+					a[i] = in.readChar();
+				}
+				return a;
+			}
+			case T_INT_ARRAY: {
+				int[] a = new int[readVarInt(in)];
+				for(int i=0; i<a.length; i++) {
+					a[i] = in.readInt();
+				}
+				return a;
+			}
+			case T_LONG_ARRAY: {
+				long[] a = new long[readVarInt(in)];
+				for(int i=0; i<a.length; i++) {
+					a[i] = in.readLong();
+				}
+				return a;
+			}
+			case T_FLOAT_ARRAY: {
+				float[] a = new float[readVarInt(in)];
+				for(int i=0; i<a.length; i++) {
+					a[i] = in.readFloat();
+				}
+				return a;
+			}
+			case T_DOUBLE_ARRAY: {
+				double[] a = new double[readVarInt(in)];
+				for(int i=0; i<a.length; i++) {
+					a[i] = in.readDouble();
+				}
+				return a;
+			}
+			case T_OBJECT_ARRAY: {
+				Class<?> componentType = readClass(in);
+				Object[] a = (Object[])Array.newInstance(componentType, readVarInt(in));
+				for(int i=0; i<a.length; i++) {
+					a[i] = readValue(in);
+				}
+				return a;
+			}
+			case T_ARRAY_LIST: {
+				int size = readVarInt(in);
+				return readCollection(new ArrayList<>(size), size, in);
+			}
+			case T_LINKED_LIST:
+				return readCollection(new LinkedList<>(), readVarInt(in), in);
+			case T_HASH_SET: {
+				int size = readVarInt(in);
+				return readCollection(new HashSet<>(capacity(size)), size, in);
+			}
+			case T_LINKED_HASH_SET: {
+				int size = readVarInt(in);
+				return readCollection(new LinkedHashSet<>(capacity(size)), size, in);
+			}
+			case T_HASH_MAP: {
+				int size = readVarInt(in);
+				return readMap(new HashMap<>(capacity(size)), size, in);
+			}
+			case T_LINKED_HASH_MAP: {
+				int size = readVarInt(in);
+				return readMap(new LinkedHashMap<>(capacity(size)), size, in);
+			}
+			case T_REFERENCE:
+				return new Reference(readUuid(in));
+			case T_REGISTERING_REFERENCE:
+				return new Reference(readUuid(in), readClasses(in), readInts(in), readInts(in), readVarLong(in), readVarLong(in));
+			case T_REFERENCE_ARRAY:
+				return readReferenceArray(in);
+			case T_STREAM_REFERENCE:
+				return new StreamReference(readVarLong(in));
+			case T_ARRAY_VIEW_REFERENCE:
+				return new ArrayViewReference(readVarLong(in), readVarInt(in), readClass(in));
+			case T_RPC_OVERRIDE:
+				return new RpcOverride(
+					readClass(in),
+					readString(in),
+					readClasses(in),
+					unZigZag(readVarInt(in)));
+			case T_SERIALIZED:
+				return SerializableCommandCodec.deserialize(readBytes(in));
+			default:
+				throw new IOException("Unknown value type: " + type);
+		}
+	}
+
+	/**
+	 * 配列を書き込みます
+	 *
+	 * @param array 配列
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private void writeArray(Object array, DataOutput out) throws IOException {
+		Class<?> componentType = array.getClass().getComponentType();
+		if(componentType == boolean.class) {
+			boolean[] a = (boolean[])array;
+			out.writeByte(T_BOOLEAN_ARRAY);
+			writeVarInt(a.length, out);
+			for(boolean v: a) {
+				out.writeBoolean(v);
+			}
+		} else if(componentType == byte.class) {
+			out.writeByte(T_BYTE_ARRAY);
+			writeBytes((byte[])array, out);
+		} else if(componentType == short.class) {
+			short[] a = (short[])array;
+			out.writeByte(T_SHORT_ARRAY);
+			writeVarInt(a.length, out);
+			for(short v: a) {
+				out.writeShort(v);
+			}
+		} else if(componentType == char.class) {
+			char[] a = (char[])array;
+			out.writeByte(T_CHAR_ARRAY);
+			writeVarInt(a.length, out);
+			for(char v: a) {
+				out.writeChar(v);
+			}
+		} else if(componentType == int.class) {
+			int[] a = (int[])array;
+			out.writeByte(T_INT_ARRAY);
+			writeVarInt(a.length, out);
+			for(int v: a) {
+				out.writeInt(v);
+			}
+		} else if(componentType == long.class) {
+			long[] a = (long[])array;
+			out.writeByte(T_LONG_ARRAY);
+			writeVarInt(a.length, out);
+			for(long v: a) {
+				out.writeLong(v);
+			}
+		} else if(componentType == float.class) {
+			float[] a = (float[])array;
+			out.writeByte(T_FLOAT_ARRAY);
+			writeVarInt(a.length, out);
+			for(float v: a) {
+				out.writeFloat(v);
+			}
+		} else if(componentType == double.class) {
+			double[] a = (double[])array;
+			out.writeByte(T_DOUBLE_ARRAY);
+			writeVarInt(a.length, out);
+			for(double v: a) {
+				out.writeDouble(v);
+			}
+		} else {
+			Object[] a = (Object[])array;
+			out.writeByte(T_OBJECT_ARRAY);
+			writeClass(componentType, out);
+			writeVarInt(a.length, out);
+			for(Object v: a) {
+				writeValue(v, out);
+			}
+		}
+	}
+
+	/**
+	 * コレクションの要素を書き込みます
+	 *
+	 * @param c コレクション
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private void writeCollection(Collection<?> c, DataOutput out) throws IOException {
+		writeVarInt(c.size(), out);
+		for(Object v: c) {
+			writeValue(v, out);
+		}
+	}
+
+	/**
+	 * コレクションの要素を読み込みます
+	 *
+	 * @param c 要素を格納するコレクション
+	 * @param size 要素数
+	 * @param in 入力元
+	 * @return c
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private Collection<Object> readCollection(Collection<Object> c, int size, DataInput in) throws IOException {
+		for(int i=0; i<size; i++) {
+			c.add(readValue(in));
+		}
+		return c;
+	}
+
+	/**
+	 * マップのエントリーを書き込みます
+	 *
+	 * @param m マップ
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private void writeMap(Map<?, ?> m, DataOutput out) throws IOException {
+		writeVarInt(m.size(), out);
+		for(Map.Entry<?, ?> e: m.entrySet()) {
+			writeValue(e.getKey(), out);
+			writeValue(e.getValue(), out);
+		}
+	}
+
+	/**
+	 * マップのエントリーを読み込みます
+	 *
+	 * @param m エントリーを格納するマップ
+	 * @param size エントリー数
+	 * @param in 入力元
+	 * @return m
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private Map<Object, Object> readMap(Map<Object, Object> m, int size, DataInput in) throws IOException {
+		for(int i=0; i<size; i++) {
+			Object key = readValue(in);
+			m.put(key, readValue(in));
+		}
+		return m;
+	}
+
+	/**
+	 * 値の配列を書き込みます
+	 *
+	 * @param values 値の配列、もしくは <code>null</code>
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private void writeValues(Object[] values, DataOutput out) throws IOException {
+		if(values == null) {
+			writeVarInt(0, out);
+			return;
+		}
+		writeVarInt(values.length + 1, out);
+		for(Object v: values) {
+			writeValue(v, out);
+		}
+	}
+
+	/**
+	 * 値の配列を読み込みます
+	 *
+	 * @param in 入力元
+	 * @return 値の配列、もしくは <code>null</code>
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private Object[] readValues(DataInput in) throws IOException {
+		int length = readVarInt(in) - 1;
+		if(length < 0) {
+			return null;
+		}
+		Object[] values = new Object[length];
+		for(int i=0; i<length; i++) {
+			values[i] = readValue(in);
+		}
+		return values;
+	}
+
+	/**
+	 * 整数の配列を書き込みます
+	 *
+	 * @param values 整数の配列、もしくは <code>null</code>
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private static void writeInts(int[] values, DataOutput out) throws IOException {
+		if(values == null) {
+			writeVarInt(0, out);
+			return;
+		}
+		writeVarInt(values.length + 1, out);
+		for(int v: values) {
+			writeVarInt(v, out);
+		}
+	}
+
+	/**
+	 * 整数の配列を読み込みます
+	 *
+	 * @param in 入力元
+	 * @return 整数の配列、もしくは <code>null</code>
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private static int[] readInts(DataInput in) throws IOException {
+		int length = readVarInt(in) - 1;
+		if(length < 0) {
+			return null;
+		}
+		int[] values = new int[length];
+		for(int i=0; i<length; i++) {
+			values[i] = readVarInt(in);
+		}
+		return values;
+	}
+
+	/**
+	 * {@link ReferenceArray} を書き込みます
+	 *
+	 * @param ref {@link ReferenceArray}
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private void writeReferenceArray(ReferenceArray ref, DataOutput out) throws IOException {
+		writeVarInt(ref.getParameterIndex(), out);
+		out.writeByte(ref.getKind());
+		switch(ref.getKind()) {
+			case ReferenceArray.KIND_FULL:
+				writeValue(ref.getArray(), out);
+				break;
+			case ReferenceArray.KIND_OUTPUT:
+				writeVarInt(ref.length(), out);
+				break;
+			default:
+				writeVarInt(ref.length(), out);
+				writeInts(ref.getRanges(), out);
+				writeValue(ref.getArray(), out);
+				break;
+		}
+	}
+
+	/**
+	 * {@link ReferenceArray} を読み込みます
+	 *
+	 * @param in 入力元
+	 * @return {@link ReferenceArray}
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private ReferenceArray readReferenceArray(DataInput in) throws IOException {
+		int parameterIndex = readVarInt(in);
+		int kind = in.readUnsignedByte();
+		switch(kind) {
+			case ReferenceArray.KIND_FULL:
+				return new ReferenceArray(parameterIndex, readValue(in));
+			case ReferenceArray.KIND_OUTPUT:
+				return ReferenceArray.forOutput(parameterIndex, readVarInt(in));
+			case ReferenceArray.KIND_DELTA:
+			case ReferenceArray.KIND_DELTA_CLEARED: {
+				int length = readVarInt(in);
+				int[] ranges = readInts(in);
+				return new ReferenceArray(parameterIndex, kind, readValue(in), length, ranges);
+			}
+			default:
+				throw new IOException("Unknown reference array kind: " + kind);
+		}
+	}
+
+	/**
+	 * クラスを書き込みます
+	 *
+	 * @param cls クラス、もしくは <code>null</code>
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	protected void writeClass(Class<?> cls, DataOutput out) throws IOException {
+		writeString(cls != null ? cls.getName() : null, out);
+	}
+
+	/**
+	 * クラスを読み込みます
+	 *
+	 * @param in 入力元
+	 * @return クラス、もしくは <code>null</code>
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	protected Class<?> readClass(DataInput in) throws IOException {
+		String name = readString(in);
+		if(name == null) {
+			return null;
+		}
+		switch(name) {
+			case "boolean": return boolean.class;
+			case "byte":    return byte.class;
+			case "short":   return short.class;
+			case "char":    return char.class;
+			case "int":     return int.class;
+			case "long":    return long.class;
+			case "float":   return float.class;
+			case "double":  return double.class;
+			case "void":    return void.class;
+		}
+		ClassLoader cl = classLoader;
+		if(cl == null) {
+			cl = Thread.currentThread().getContextClassLoader();
+		}
+		if(cl == null) {
+			cl = BinaryCommandCodec.class.getClassLoader();
+		}
+		try {
+			return Class.forName(name, false, cl);
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * クラスの配列を書き込みます
+	 *
+	 * @param classes クラスの配列、もしくは <code>null</code>
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private void writeClasses(Class<?>[] classes, DataOutput out) throws IOException {
+		if(classes == null) {
+			writeVarInt(0, out);
+			return;
+		}
+		writeVarInt(classes.length + 1, out);
+		for(Class<?> cls: classes) {
+			writeClass(cls, out);
+		}
+	}
+
+	/**
+	 * クラスの配列を読み込みます
+	 *
+	 * @param in 入力元
+	 * @return クラスの配列、もしくは <code>null</code>
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private Class<?>[] readClasses(DataInput in) throws IOException {
+		int length = readVarInt(in) - 1;
+		if(length < 0) {
+			return null;
+		}
+		Class<?>[] classes = new Class<?>[length];
+		for(int i=0; i<length; i++) {
+			classes[i] = readClass(in);
+		}
+		return classes;
+	}
+
+	/**
+	 * {@link UUID} を書き込みます
+	 *
+	 * @param uuid {@link UUID}、もしくは <code>null</code>
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	protected static void writeUuid(UUID uuid, DataOutput out) throws IOException {
+		if(uuid == null) {
+			out.writeBoolean(false);
+			return;
+		}
+		out.writeBoolean(true);
+		out.writeLong(uuid.getMostSignificantBits());
+		out.writeLong(uuid.getLeastSignificantBits());
+	}
+
+	/**
+	 * {@link UUID} を読み込みます
+	 *
+	 * @param in 入力元
+	 * @return {@link UUID}、もしくは <code>null</code>
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	protected static UUID readUuid(DataInput in) throws IOException {
+		if(!in.readBoolean()) {
+			return null;
+		}
+		long msb = in.readLong();
+		long lsb = in.readLong();
+		return new UUID(msb, lsb);
+	}
+
+	/**
+	 * 文字列を UTF-8 で書き込みます
+	 *
+	 * @param s 文字列、もしくは <code>null</code>
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	protected static void writeString(String s, DataOutput out) throws IOException {
+		if(s == null) {
+			writeVarInt(0, out);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(bytes.length + 1, out);
+		out.write(bytes);
+	}
+
+	/**
+	 * UTF-8 の文字列を読み込みます
+	 *
+	 * @param in 入力元
+	 * @return 文字列、もしくは <code>null</code>
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	protected static String readString(DataInput in) throws IOException {
+		int length = readVarInt(in) - 1;
+		if(length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 長さ付きのバイト列を書き込みます
+	 *
+	 * @param bytes バイト列
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	protected static void writeBytes(byte[] bytes, DataOutput out) throws IOException {
+		writeVarInt(bytes.length, out);
+		if(bytes.length >= BULK_THRESHOLD && out instanceof BulkDataOutput) {
+			((BulkDataOutput)out).writeBulk(ByteBuffer.wrap(bytes));
+		} else {
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * バッファーの残りのバイトを長さを付けずに書き込みます<br>
+	 * {@link #BULK_THRESHOLD} 以上の場合、出力先が対応していればコピーせずに連結します
+	 *
+	 * @param buf バッファー。position は変更されません
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private static void writeBulk(ByteBuffer buf, DataOutput out) throws IOException {
+		if(buf.remaining() >= BULK_THRESHOLD && out instanceof BulkDataOutput) {
+			((BulkDataOutput)out).writeBulk(buf);
+		} else if(buf.hasArray()) {
+			out.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+		} else {
+			ByteBuffer src = buf.duplicate();
+			byte[] tmp = new byte[Math.min(src.remaining(), 8192)];
+			while(src.hasRemaining()) {
+				int n = Math.min(src.remaining(), tmp.length);
+				src.get(tmp, 0, n);
+				out.write(tmp, 0, n);
+			}
+		}
+	}
+
+	/**
+	 * 長さ付きのバイト列を読み込みます
+	 *
+	 * @param in 入力元
+	 * @return バイト列
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	protected static byte[] readBytes(DataInput in) throws IOException {
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * 符号無しの可変長整数を書き込みます
+	 *
+	 * @param v 値
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	protected static void writeVarInt(int v, DataOutput out) throws IOException {
+		while((v & ~0x7f) != 0) {
+			out.writeByte((v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+
+	/**
+	 * 符号無しの可変長整数を読み込みます
+	 *
+	 * @param in 入力元
+	 * @return 値
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	protected static int readVarInt(DataInput in) throws IOException {
+		int v = 0;
+		for(int shift=0; shift<32; shift+=7) {
+			int b = in.readUnsignedByte();
+			v |= (b & 0x7f) << shift;
+			if((b & 0x80) == 0) {
+				return v;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * 符号無しの可変長整数を書き込みます
+	 *
+	 * @param v 値
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	protected static void writeVarLong(long v, DataOutput out) throws IOException {
+		while((v & ~0x7fL) != 0) {
+			out.writeByte((int)(v & 0x7f) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte((int)v);
+	}
+
+	/**
+	 * 符号無しの可変長整数を読み込みます
+	 *
+	 * @param in 入力元
+	 * @return 値
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	protected static long readVarLong(DataInput in) throws IOException {
+		long v = 0;
+		for(int shift=0; shift<64; shift+=7) {
+			int b = in.readUnsignedByte();
+			v |= (long)(b & 0x7f) << shift;
+			if((b & 0x80) == 0) {
+				return v;
+			}
+		}
+		throw new IOException("Malformed varlong");
+	}
+
+	/**
+	 * 符号付き整数を ZigZag 符号化します
+	 *
+	 * @param v 値
+	 * @return 符号化された値
+	 */
+	private static int zigZag(int v) {
+		return (v << 1) ^ (v >> 31);
+	}
+
+	/**
+	 * ZigZag 符号化された整数を復号します
+	 *
+	 * @param v 符号化された値
+	 * @return 値
+	 */
+	private static int unZigZag(int v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/**
+	 * 符号付き整数を ZigZag 符号化します
+	 *
+	 * @param v 値
+	 * @return 符号化された値
+	 */
+	private static long zigZag(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	/**
+	 * ZigZag 符号化された整数を復号します
+	 *
+	 * @param v 符号化された値
+	 * @return 値
+	 */
+	private static long unZigZag(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	/**
+	 * 要素数から {@link HashMap} の初期容量を求めます
+	 *
+	 * @param size 要素数
+	 * @return 初期容量
+	 */
+	private static int capacity(int size) {
+		return size < 3 ? size + 1 : (int)(size / 0.75f + 1.0f);
+	}
+}
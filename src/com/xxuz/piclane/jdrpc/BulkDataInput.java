@@ -0,0 +1,21 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 大きなバイト列をフレームのバッファーからコピーせずに取り出せる入力元
+ *
+ * @author piclane
+ */
+interface BulkDataInput {
+	/**
+	 * 指定した長さのバイト列を読み出します<br>
+	 * フレームのバッファーが再利用されない場合はそのバッファーを共有し、再利用される場合はコピーします
+	 *
+	 * @param length 読み出すバイト数
+	 * @return position が 0、limit が length のバッファー
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	public ByteBuffer readBulk(int length) throws IOException;
+}
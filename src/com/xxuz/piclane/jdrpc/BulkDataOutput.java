@@ -0,0 +1,21 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 大きなバイト列をフレームのバッファーにコピーせずに連結できる出力先<br>
+ * 連結したバイト列は送信時に読み出されます
+ *
+ * @author piclane
+ */
+interface BulkDataOutput {
+	/**
+	 * バッファーの残りのバイトをフレームに連結します<br>
+	 * src の position は変更されません。連結できない場合はコピーします
+	 *
+	 * @param src 連結するバッファー
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	public void writeBulk(ByteBuffer src) throws IOException;
+}
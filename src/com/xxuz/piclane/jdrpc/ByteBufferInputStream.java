@@ -0,0 +1,94 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link ByteBuffer} の残りのバイトを読み出す入力ストリーム<br>
+ * 読み出す {@link ByteBuffer} はフレーム毎に差し替えて再利用します。
+ * 再利用されないバッファーからは {@link #readBulk(int)} でコピーせずにバイト列を取り出します
+ *
+ * @author piclane
+ */
+final class ByteBufferInputStream extends InputStream implements BulkDataInput {
+	/** 読み出すバッファー */
+	private ByteBuffer buf;
+
+	/** {@link #buf} が以降再利用されない場合 true */
+	private boolean detachable;
+
+	/**
+	 * 読み出すバッファーを設定します
+	 *
+	 * @param buf 読み出すバッファー。position から limit までを読み出します
+	 * @param detachable buf が以降再利用されず、読み出したバイト列と共有できる場合 true
+	 */
+	public void reset(ByteBuffer buf, boolean detachable) {
+		this.buf = buf;
+		this.detachable = detachable;
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.BulkDataInput#readBulk(int)
+	 */
+	@Override
+	public ByteBuffer readBulk(int length) throws IOException {
+		if(length > buf.remaining()) {
+			throw new EOFException();
+		}
+		ByteBuffer src = buf.duplicate();
+		src.limit(src.position() + length);
+		buf.position(buf.position() + length);
+		if(detachable) {
+			return src.slice();
+		}
+		ByteBuffer dst = ByteBuffer.allocate(length);
+		dst.put(src);
+		dst.flip();
+		return dst;
+	}
+
+	/**
+	 * @see java.io.InputStream#read()
+	 */
+	@Override
+	public int read() {
+		return buf.hasRemaining() ? buf.get() & 0xff : -1;
+	}
+
+	/**
+	 * @see java.io.InputStream#read(byte[], int, int)
+	 */
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if(len == 0) {
+			return 0;
+		}
+		if(!buf.hasRemaining()) {
+			return -1;
+		}
+		int n = Math.min(len, buf.remaining());
+		buf.get(b, off, n);
+		return n;
+	}
+
+	/**
+	 * @see java.io.InputStream#skip(long)
+	 */
+	@Override
+	public long skip(long n) {
+		int k = (int)Math.max(0L, Math.min(n, buf.remaining()));
+		buf.position(buf.position() + k);
+		return k;
+	}
+
+	/**
+	 * @see java.io.InputStream#available()
+	 */
+	@Override
+	public int available() {
+		return buf.remaining();
+	}
+}
@@ -0,0 +1,155 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link DirectBufferPool} から取得したバッファーの連なりに 1 フレームを書き込む出力ストリーム<br>
+ * 先頭の 4 バイトはフレームの長さのために予約され、{@link #finish()} で書き込まれます。
+ * 指定された場合、{@link #writeBulk(ByteBuffer)} に渡されたダイレクトバッファーはコピーせずにそのまま連なりに加えます
+ *
+ * @author piclane
+ */
+final class ByteBufferOutputStream extends OutputStream implements BulkDataOutput {
+	/** {@link DirectBufferPool} */
+	private final DirectBufferPool pool;
+
+	/** ダイレクトバッファーをコピーせずに連なりに加える場合 true */
+	private final boolean linkDirect;
+
+	/** 書き込んだバッファー */
+	private final List<ByteBuffer> buffers;
+
+	/** {@link #buffers} のうちプールから取得したバッファー */
+	private final List<ByteBuffer> pooled;
+
+	/** 書き込み中のバッファー。連結したバッファーの直後は <code>null</code> */
+	private ByteBuffer current;
+
+	/** 書き込んだバイト数 (長さを含む) */
+	private int size;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param pool {@link DirectBufferPool}
+	 * @param linkDirect ダイレクトバッファーをコピーせずに連なりに加える場合 true。
+	 *                   送信が完了するまで呼び出し元がバッファーを変更しないことが保証できない場合は false
+	 */
+	public ByteBufferOutputStream(DirectBufferPool pool, boolean linkDirect) {
+		this.pool = pool;
+		this.linkDirect = linkDirect;
+		this.buffers = new ArrayList<>(2);
+		this.pooled = new ArrayList<>(2);
+		next();
+		this.current.putInt(0);
+		this.size = 4;
+	}
+
+	/**
+	 * @see java.io.OutputStream#write(int)
+	 */
+	@Override
+	public void write(int b) {
+		if(current == null || !current.hasRemaining()) {
+			next();
+		}
+		current.put((byte)b);
+		size++;
+	}
+
+	/**
+	 * @see java.io.OutputStream#write(byte[], int, int)
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) {
+		size += len;
+		while(len > 0) {
+			if(current == null || !current.hasRemaining()) {
+				next();
+			}
+			int n = Math.min(len, current.remaining());
+			current.put(b, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * ダイレクトバッファーはコピーせずに連なりに加え、ギャザー書き込みで直接送信します。
+	 * 内容は送信時に読み出されるため、送信が完了するまで変更しないでください<br>
+	 * ヒープバッファーは送信時に JDK がダイレクトバッファーにコピーするため、プールのバッファーにコピーします。
+	 * 連なりに加えないよう指定された場合は、ダイレクトバッファーもコピーします
+	 *
+	 * @see com.xxuz.piclane.jdrpc.BulkDataOutput#writeBulk(java.nio.ByteBuffer)
+	 */
+	@Override
+	public void writeBulk(ByteBuffer src) {
+		if(!linkDirect || !src.isDirect()) {
+			ByteBuffer buf = src.duplicate();
+			size += buf.remaining();
+			while(buf.hasRemaining()) {
+				if(current == null || !current.hasRemaining()) {
+					next();
+				}
+				int n = Math.min(buf.remaining(), current.remaining());
+				int limit = buf.limit();
+				buf.limit(buf.position() + n);
+				current.put(buf);
+				buf.limit(limit);
+			}
+			return;
+		}
+		// 書き込み中のバッファーを閉じ、後続の書き込みは新しいバッファーに行う
+		buffers.add(src.slice());
+		size += src.remaining();
+		current = null;
+	}
+
+	/**
+	 * 次のバッファーを取得します
+	 */
+	private void next() {
+		current = pool.acquire();
+		buffers.add(current);
+		pooled.add(current);
+	}
+
+	/**
+	 * フレームの長さを書き込み、送信可能な状態のバッファーを返します
+	 *
+	 * @return 読み出し可能な状態のバッファー
+	 */
+	public ByteBuffer[] finish() {
+		for(ByteBuffer buf: pooled) {
+			buf.flip();
+		}
+		ByteBuffer[] bufs = buffers.toArray(new ByteBuffer[buffers.size()]);
+		bufs[0].putInt(0, size - 4);
+		return bufs;
+	}
+
+	/**
+	 * プールから取得したバッファーを取得します<br>
+	 * 送信後はこれらのバッファーのみをプールに戻してください
+	 *
+	 * @return プールから取得したバッファー
+	 */
+	public ByteBuffer[] pooledBuffers() {
+		return pooled.toArray(new ByteBuffer[pooled.size()]);
+	}
+
+	/**
+	 * 全てのバッファーをプールに戻します<br>
+	 * エンコードに失敗した場合に使用します
+	 */
+	public void discard() {
+		for(ByteBuffer buf: pooled) {
+			pool.release(buf);
+		}
+		buffers.clear();
+		pooled.clear();
+	}
+}
@@ -1,7 +1,6 @@
 package com.xxuz.piclane.jdrpc;
 
 import java.io.Serializable;
-import java.util.UUID;
 
 /**
  * 
@@ -14,5 +13,20 @@ public interface Command extends Serializable {
 	 *
 	 * @return messageId
 	 */
-	public UUID getMessageId();
+	public long getMessageId();
+	
+	/**
+	 * channelId を取得します
+	 *
+	 * @return channelId。多重化されていない場合は 0
+	 */
+	public int getChannelId();
+	
+	/**
+	 * channelId を設定します<br>
+	 * {@link CommandMultiplexer} の論理チャネルが送信時に設定します
+	 *
+	 * @param channelId channelId
+	 */
+	public void setChannelId(int channelId);
 }
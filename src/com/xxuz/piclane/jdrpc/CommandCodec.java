@@ -0,0 +1,31 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * {@link Command} をフレームのペイロードに符号化・復号化します<br>
+ * 実装はスレッドセーフでなければなりません
+ *
+ * @author piclane
+ */
+public interface CommandCodec {
+	/**
+	 * コマンドを符号化します
+	 *
+	 * @param cmd 符号化するコマンド
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	public void encode(Command cmd, DataOutput out) throws IOException;
+
+	/**
+	 * コマンドを復号化します
+	 *
+	 * @param in 入力元。1 フレーム分のペイロードのみを含みます
+	 * @return 復号化されたコマンド
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	public Command decode(DataInput in) throws IOException;
+}
@@ -0,0 +1,269 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * リモートから受け付けた要求コマンドの実行方法を決定します<br>
+ * {@link CommandRunner} は {@link CommandRequest.Invoke} をこのクラスに委譲し、
+ * 実行が完了した順に応答を送信します
+ *
+ * @author piclane
+ */
+public abstract class CommandDispatcher {
+	/**
+	 * 要求コマンドを受信した順に、受信スレッド上で 1 件ずつ実行する {@link CommandDispatcher} を生成します<br>
+	 * 実行中のメソッドから同じ接続へ再入する呼び出しはデッドロックします
+	 *
+	 * @return {@link CommandDispatcher}
+	 */
+	public static CommandDispatcher serial() {
+		return new CommandDispatcher() {
+			@Override
+			public void dispatch(CommandRequest req, Runnable task) {
+				task.run();
+			}
+		};
+	}
+
+	/**
+	 * 必要に応じてスレッドを生成するスレッドプールで並列に実行する {@link CommandDispatcher} を生成します
+	 *
+	 * @return {@link CommandDispatcher}
+	 */
+	public static CommandDispatcher cached() {
+		return new ExecutorDispatcher(Executors.newCachedThreadPool(new DaemonThreadFactory()), true);
+	}
+
+	/**
+	 * 最大スレッド数を制限したスレッドプールで並列に実行する {@link CommandDispatcher} を生成します<br>
+	 * 全てのスレッドが再入する呼び出しの応答を待っている場合、以降の要求コマンドは待たされます
+	 *
+	 * @param nThreads 最大スレッド数
+	 * @return {@link CommandDispatcher}
+	 */
+	public static CommandDispatcher pooled(int nThreads) {
+		return new ExecutorDispatcher(Executors.newFixedThreadPool(nThreads, new DaemonThreadFactory()), true);
+	}
+
+	/**
+	 * 要求コマンド毎に仮想スレッドで実行する {@link CommandDispatcher} を生成します<br>
+	 * JDK 21 以降でのみ使用できます
+	 *
+	 * @return {@link CommandDispatcher}
+	 * @throws UnsupportedOperationException 仮想スレッドが使用できない場合
+	 */
+	public static CommandDispatcher virtualThreads() {
+		ExecutorService es;
+		try {
+			es = (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			throw new UnsupportedOperationException("Virtual threads are not available", e);
+		}
+		return new ExecutorDispatcher(es, true);
+	}
+
+	/**
+	 * 指定された {@link ExecutorService} で並列に実行する {@link CommandDispatcher} を生成します<br>
+	 * {@link ExecutorService} は {@link #shutdown()} ではシャットダウンされません
+	 *
+	 * @param es {@link ExecutorService}
+	 * @return {@link CommandDispatcher}
+	 */
+	public static CommandDispatcher executor(ExecutorService es) {
+		return new ExecutorDispatcher(Objects.requireNonNull(es), false);
+	}
+
+	/**
+	 * インスタンス毎には受信した順に 1 件ずつ、インスタンス間では並列に実行する {@link CommandDispatcher} を生成します
+	 *
+	 * @param nThreads 最大スレッド数
+	 * @return {@link CommandDispatcher}
+	 */
+	public static CommandDispatcher perInstance(int nThreads) {
+		return new PerInstanceDispatcher(Executors.newFixedThreadPool(nThreads, new DaemonThreadFactory()));
+	}
+
+	/**
+	 * 要求コマンドを実行します
+	 *
+	 * @param req 要求コマンド
+	 * @param task 要求コマンドを処理して応答を送信するタスク
+	 */
+	public abstract void dispatch(CommandRequest req, Runnable task);
+
+	/**
+	 * この {@link CommandDispatcher} が所有するスレッドを停止します
+	 */
+	public void shutdown() {
+		// nop
+	}
+
+	/**
+	 * {@link ExecutorService} で実行する {@link CommandDispatcher}
+	 */
+	private static class ExecutorDispatcher extends CommandDispatcher {
+		/** {@link ExecutorService} */
+		private final ExecutorService es;
+
+		/** {@link #shutdown()} で {@link #es} をシャットダウンする場合 true */
+		private final boolean owned;
+
+		/**
+		 * コンストラクタ
+		 *
+		 * @param es {@link ExecutorService}
+		 * @param owned {@link #shutdown()} で es をシャットダウンする場合 true
+		 */
+		public ExecutorDispatcher(ExecutorService es, boolean owned) {
+			this.es = es;
+			this.owned = owned;
+		}
+
+		/**
+		 * @see com.xxuz.piclane.jdrpc.CommandDispatcher#dispatch(com.xxuz.piclane.jdrpc.CommandRequest, java.lang.Runnable)
+		 */
+		@Override
+		public void dispatch(CommandRequest req, Runnable task) {
+			es.execute(task);
+		}
+
+		/**
+		 * @see com.xxuz.piclane.jdrpc.CommandDispatcher#shutdown()
+		 */
+		@Override
+		public void shutdown() {
+			if(owned) {
+				es.shutdownNow();
+			}
+		}
+	}
+
+	/**
+	 * インスタンス毎に直列化して実行する {@link CommandDispatcher}
+	 */
+	private static class PerInstanceDispatcher extends CommandDispatcher {
+		/** static メソッドの呼び出しに使用するキー */
+		private static final UUID STATIC_KEY = new UUID(0L, 0L);
+
+		/** {@link ExecutorService} */
+		private final ExecutorService es;
+
+		/**
+		 * Key:   インスタンスID
+		 * Value: 実行待ちのタスク。実行中のタスクが無いインスタンスは含まれません
+		 */
+		private final Map<UUID, ArrayDeque<Runnable>> lanes;
+
+		/**
+		 * コンストラクタ
+		 *
+		 * @param es {@link ExecutorService}
+		 */
+		public PerInstanceDispatcher(ExecutorService es) {
+			this.es = es;
+			this.lanes = new HashMap<>();
+		}
+
+		/**
+		 * @see com.xxuz.piclane.jdrpc.CommandDispatcher#dispatch(com.xxuz.piclane.jdrpc.CommandRequest, java.lang.Runnable)
+		 */
+		@Override
+		public void dispatch(CommandRequest req, Runnable task) {
+			UUID key = null;
+			if(req instanceof CommandRequest.Invoke) {
+				key = ((CommandRequest.Invoke)req).getInstanceId();
+			}
+			if(key == null) {
+				key = STATIC_KEY;
+			}
+
+			synchronized (lanes) {
+				ArrayDeque<Runnable> lane = lanes.get(key);
+				if(lane != null) {
+					// 実行中のタスクの後に実行する
+					lane.add(task);
+					return;
+				}
+				lanes.put(key, new ArrayDeque<>());
+			}
+			es.execute(new Lane(key, task));
+		}
+
+		/**
+		 * @see com.xxuz.piclane.jdrpc.CommandDispatcher#shutdown()
+		 */
+		@Override
+		public void shutdown() {
+			es.shutdownNow();
+		}
+
+		/**
+		 * 1 インスタンス分のタスクを順に実行します
+		 */
+		private class Lane implements Runnable {
+			/** インスタンスID */
+			private final UUID key;
+
+			/** 最初のタスク */
+			private final Runnable first;
+
+			/**
+			 * コンストラクタ
+			 *
+			 * @param key インスタンスID
+			 * @param first 最初のタスク
+			 */
+			public Lane(UUID key, Runnable first) {
+				this.key = key;
+				this.first = first;
+			}
+
+			/**
+			 * @see java.lang.Runnable#run()
+			 */
+			@Override
+			public void run() {
+				Runnable task = first;
+				while(task != null) {
+					try {
+						task.run();
+					} catch (RuntimeException e) {
+						// 後続のタスクを止めない
+					}
+					synchronized (lanes) {
+						task = lanes.get(key).poll();
+						if(task == null) {
+							lanes.remove(key);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * デーモンスレッドを生成する {@link ThreadFactory}
+	 */
+	private static class DaemonThreadFactory implements ThreadFactory {
+		/** スレッド番号 */
+		private static final AtomicInteger sequence = new AtomicInteger();
+
+		/**
+		 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+		 */
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "CommandDispatcher-" + sequence.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
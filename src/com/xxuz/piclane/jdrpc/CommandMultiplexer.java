@@ -0,0 +1,299 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 1 本の物理ストリーム上で複数の論理チャネルを多重化します<br>
+ * 論理チャネルはそれぞれ独立した {@link CommandStream} で、
+ * 論理チャネル毎に {@link CommandRunner} を生成することでインスタンスの名前空間を分けることができます<br>
+ * 論理チャネルのスレッドは存在せず、送受信は物理ストリームが行います<br>
+ * 両端で異なる {@link Role} を指定してください。チャネルIDの採番が衝突しないよう、
+ * {@link Role#INITIATOR} は奇数、{@link Role#ACCEPTOR} は偶数のIDを使用します
+ *
+ * @author piclane
+ */
+public class CommandMultiplexer implements AutoCloseable {
+	/**
+	 * 多重化する物理ストリームの端の役割
+	 */
+	public enum Role {
+		/** 接続を開始した側 */
+		INITIATOR,
+
+		/** 接続を受け付けた側 */
+		ACCEPTOR,
+	}
+
+	/** 物理ストリーム */
+	private final AbstractCommandStream stream;
+
+	/** 役割 */
+	private final Role role;
+
+	/**
+	 * Key:   チャネルID
+	 * Value: 論理チャネル
+	 */
+	private final ConcurrentHashMap<Integer, Channel> channels;
+
+	/** リモートが開いた論理チャネル */
+	private final BlockingQueue<Channel> accepted;
+
+	/** 最後に採番したチャネルID */
+	private int lastChannelId;
+
+	/** リモートが開いた最大のチャネルID */
+	private int lastRemoteChannelId;
+
+	/** 終了している場合 true */
+	private volatile boolean closed;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param stream 物理ストリーム。リモートが論理チャネルを開く前に多重化する必要があります
+	 * @param role 役割
+	 * @throws IllegalStateException 物理ストリームが既に多重化されている場合
+	 */
+	public CommandMultiplexer(AbstractCommandStream stream, Role role) {
+		this(stream, role, new LinkedBlockingQueue<>());
+	}
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param stream 物理ストリーム
+	 * @param role 役割
+	 * @param accepted リモートが開いた論理チャネルを追加するキュー
+	 * @throws IllegalStateException 物理ストリームが既に多重化されている場合
+	 */
+	CommandMultiplexer(AbstractCommandStream stream, Role role, BlockingQueue<Channel> accepted) {
+		this.stream = stream;
+		this.role = role;
+		this.channels = new ConcurrentHashMap<>();
+		this.accepted = accepted;
+		this.lastChannelId = role == Role.INITIATOR ? -1 : 0;
+		this.lastRemoteChannelId = 0;
+		this.closed = false;
+		stream.setMultiplexer(this);
+	}
+
+	/**
+	 * 論理チャネルを開きます<br>
+	 * リモートでは {@link #accept()} から取得できるようになります
+	 *
+	 * @return 論理チャネル
+	 * @throws IllegalStateException 既に終了している場合
+	 */
+	public Channel openChannel() {
+		Channel channel;
+		synchronized (this) {
+			if(closed) {
+				throw new IllegalStateException("CommandMultiplexer has been closed.");
+			}
+			lastChannelId += 2;
+			channel = new Channel(lastChannelId);
+			channels.put(channel.channelId, channel);
+		}
+		channel.send(new CommandRequest.OpenChannel());
+		return channel;
+	}
+
+	/**
+	 * リモートが開いた論理チャネルを取得します<br>
+	 * このメソッドはリモートが論理チャネルを開くまでブロックします
+	 *
+	 * @return 論理チャネル
+	 * @throws InterruptedException 割込例外が発生した場合
+	 */
+	public Channel accept() throws InterruptedException {
+		return accepted.take();
+	}
+
+	/**
+	 * 開いている論理チャネルの数を取得します
+	 *
+	 * @return 開いている論理チャネルの数
+	 */
+	public int getChannelCount() {
+		return channels.size();
+	}
+
+	/**
+	 * 終了しているかどうかを取得します
+	 *
+	 * @return 終了している場合 true
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * 全ての論理チャネルと物理ストリームを終了します
+	 *
+	 * @throws InterruptedException 割込例外が発生した場合
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		streamClosed();
+		stream.close();
+	}
+
+	/**
+	 * 物理ストリームが受信した論理チャネルのコマンドを振り分けます
+	 *
+	 * @param cmd コマンド
+	 */
+	void received(Command cmd) {
+		int channelId = cmd.getChannelId();
+		if(cmd instanceof CommandRequest.OpenChannel) {
+			acceptChannel(channelId);
+			return;
+		}
+		Channel channel = channels.get(channelId);
+		if(channel == null) {
+			// 終了した論理チャネル宛てのコマンドは破棄する
+			return;
+		}
+		channel.deliver(cmd);
+		
+		// リモートの論理チャネルは終了応答コマンドの送出で終了している
+		if(cmd instanceof CommandResponse.Exit) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * リモートが開いた論理チャネルを受け付けます
+	 *
+	 * @param channelId チャネルID
+	 */
+	private synchronized void acceptChannel(int channelId) {
+		boolean remote = (channelId & 1) == (role == Role.INITIATOR ? 0 : 1);
+		if(closed || !remote || channelId <= lastRemoteChannelId) {
+			return;
+		}
+		lastRemoteChannelId = channelId;
+		Channel channel = new Channel(channelId);
+		channels.put(channelId, channel);
+		accepted.add(channel);
+	}
+
+	/**
+	 * 物理ストリームが終了した時に呼ばれます
+	 */
+	void streamClosed() {
+		synchronized (this) {
+			closed = true;
+		}
+		for(Channel channel: channels.values()) {
+			channel.close();
+		}
+	}
+
+	/**
+	 * 論理チャネル
+	 */
+	public final class Channel extends AbstractCommandStream {
+		/** チャネルID */
+		private final int channelId;
+
+		/** 終了している場合 true */
+		private final AtomicBoolean closed;
+
+		/** 終了を待つための {@link CountDownLatch} */
+		private final CountDownLatch terminated;
+
+		/**
+		 * コンストラクタ
+		 *
+		 * @param channelId チャネルID
+		 */
+		private Channel(int channelId) {
+			super(stream.name + "ch" + channelId, stream.codec);
+			this.channelId = channelId;
+			this.closed = new AtomicBoolean();
+			this.terminated = new CountDownLatch(1);
+		}
+
+		/**
+		 * チャネルIDを取得します
+		 *
+		 * @return チャネルID
+		 */
+		public int getChannelId() {
+			return channelId;
+		}
+
+		/**
+		 * @see com.xxuz.piclane.jdrpc.AbstractCommandStream#send(com.xxuz.piclane.jdrpc.Command)
+		 */
+		@Override
+		protected void send(Command cmd) {
+			if(closed.get()) {
+				return;
+			}
+			cmd.setChannelId(channelId);
+			stream.send(cmd);
+
+			// 終了応答コマンドの送出で終了
+			if(cmd instanceof CommandResponse.Exit) {
+				close();
+			}
+		}
+
+		/**
+		 * @see com.xxuz.piclane.jdrpc.AbstractCommandStream#sendUnawaited(com.xxuz.piclane.jdrpc.Command)
+		 */
+		@Override
+		protected void sendUnawaited(Command cmd) {
+			if(closed.get()) {
+				return;
+			}
+			cmd.setChannelId(channelId);
+			stream.sendUnawaited(cmd);
+		}
+
+		/**
+		 * チャネルIDを設定し、物理ストリームで符号化します
+		 *
+		 * @see com.xxuz.piclane.jdrpc.AbstractCommandStream#postDetached(com.xxuz.piclane.jdrpc.CommandRequest)
+		 */
+		@Override
+		public void postDetached(CommandRequest cmd) {
+			if(closed.get()) {
+				return;
+			}
+			cmd.setChannelId(channelId);
+			stream.postDetached(cmd);
+		}
+
+		/**
+		 * @see com.xxuz.piclane.jdrpc.CommandStream#join()
+		 */
+		@Override
+		public void join() throws InterruptedException {
+			terminated.await();
+		}
+
+		/**
+		 * この論理チャネルを終了します<br>
+		 * 物理ストリームは終了しません
+		 *
+		 * @see com.xxuz.piclane.jdrpc.CommandStream#close()
+		 */
+		@Override
+		public void close() {
+			if(!closed.compareAndSet(false, true)) {
+				return;
+			}
+			channels.remove(channelId, this);
+			closePendingCalls();
+			terminated.countDown();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.xxuz.piclane.jdrpc.CommandMultiplexer.Channel;
+import com.xxuz.piclane.jdrpc.CommandMultiplexer.Role;
+
+/**
+ * 複数の物理ストリームに論理チャネルを分散させます<br>
+ * 論理チャネルは開いている論理チャネルが最も少ない物理ストリーム上に開かれます。
+ * 終了した物理ストリームは以降使用されません
+ *
+ * @author piclane
+ */
+public class CommandMultiplexerPool implements AutoCloseable {
+	/** 物理ストリーム毎の {@link CommandMultiplexer} */
+	private final CommandMultiplexer[] multiplexers;
+
+	/** リモートが開いた論理チャネル */
+	private final BlockingQueue<Channel> accepted;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param streams 物理ストリーム
+	 * @param role 役割
+	 * @throws IllegalArgumentException 物理ストリームが指定されていない場合
+	 * @throws IllegalStateException 物理ストリームが既に多重化されている場合
+	 */
+	public CommandMultiplexerPool(List<? extends AbstractCommandStream> streams, Role role) {
+		if(streams.isEmpty()) {
+			throw new IllegalArgumentException("streams is empty");
+		}
+		this.accepted = new LinkedBlockingQueue<>();
+		this.multiplexers = new CommandMultiplexer[streams.size()];
+		for(int i=0; i<multiplexers.length; i++) {
+			multiplexers[i] = new CommandMultiplexer(streams.get(i), role, accepted);
+		}
+	}
+
+	/**
+	 * 論理チャネルを開きます
+	 *
+	 * @return 論理チャネル
+	 * @throws IllegalStateException 全ての物理ストリームが終了している場合
+	 */
+	public Channel openChannel() {
+		while(true) {
+			CommandMultiplexer selected = null;
+			for(CommandMultiplexer multiplexer: multiplexers) {
+				if(!multiplexer.isClosed() &&
+				   (selected == null || multiplexer.getChannelCount() < selected.getChannelCount())) {
+					selected = multiplexer;
+				}
+			}
+			if(selected == null) {
+				throw new IllegalStateException("All CommandStreams have been closed.");
+			}
+			try {
+				return selected.openChannel();
+			} catch (IllegalStateException e) {
+				// 選択後に終了した場合は選び直す
+			}
+		}
+	}
+
+	/**
+	 * いずれかの物理ストリーム上でリモートが開いた論理チャネルを取得します<br>
+	 * このメソッドはリモートが論理チャネルを開くまでブロックします
+	 *
+	 * @return 論理チャネル
+	 * @throws InterruptedException 割込例外が発生した場合
+	 */
+	public Channel accept() throws InterruptedException {
+		return accepted.take();
+	}
+
+	/**
+	 * 開いている論理チャネルの総数を取得します
+	 *
+	 * @return 開いている論理チャネルの総数
+	 */
+	public int getChannelCount() {
+		int count = 0;
+		for(CommandMultiplexer multiplexer: multiplexers) {
+			count += multiplexer.getChannelCount();
+		}
+		return count;
+	}
+
+	/**
+	 * 全ての論理チャネルと物理ストリームを終了します
+	 *
+	 * @throws InterruptedException 割込例外が発生した場合
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		for(CommandMultiplexer multiplexer: multiplexers) {
+			multiplexer.close();
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package com.xxuz.piclane.jdrpc;
 
+import java.util.Arrays;
 import java.util.UUID;
 
 /**
@@ -11,14 +12,27 @@ public abstract class CommandRequest implements Command {
 	/** serialVersionUID */
 	private static final long serialVersionUID = 8296575831448773457L;
 
-	/** メッセージID */
-	private final UUID messageId = UUID.randomUUID();
+	/** メッセージID。{@link CommandStream} が送信時に採番します */
+	private long messageId;
+	
+	/** 論理チャネルのID。多重化されていない場合は 0 */
+	private int channelId;
 	
 	/**
 	 * コンストラクタ
 	 */
 	private CommandRequest() {
+		this(0L);
+	}
+	
+	/**
+	 * コンストラクタ
+	 * 
+	 * @param messageId メッセージID
+	 */
+	private CommandRequest(long messageId) {
 		super();
+		this.messageId = messageId;
 	}
 	
 	/**
@@ -26,9 +40,35 @@ public abstract class CommandRequest implements Command {
 	 *
 	 * @return messageId
 	 */
-	public UUID getMessageId() {
+	public long getMessageId() {
 		return messageId;
 	}
+	
+	/**
+	 * @see com.xxuz.piclane.jdrpc.Command#getChannelId()
+	 */
+	@Override
+	public int getChannelId() {
+		return channelId;
+	}
+	
+	/**
+	 * @see com.xxuz.piclane.jdrpc.Command#setChannelId(int)
+	 */
+	@Override
+	public void setChannelId(int channelId) {
+		this.channelId = channelId;
+	}
+	
+	/**
+	 * messageId を設定します<br>
+	 * {@link CommandStream} がストリーム内で一意な値を送信時に設定します
+	 *
+	 * @param messageId messageId
+	 */
+	public void setMessageId(long messageId) {
+		this.messageId = messageId;
+	}
 
 	public static final class Register extends CommandRequest {
 		/** serialVersionUID */
@@ -43,6 +83,15 @@ public abstract class CommandRequest implements Command {
 		/** インターフェイスを示すクラス */
 		private final Class<?>[] interfaces;
 		
+		/** インターフェイス毎のメソッドのベースID */
+		private final int[] methodBases;
+		
+		/** インターフェイス毎のフィンガープリント。一致しないインターフェイスのベースIDは使用されません */
+		private final int[] methodFingerprints;
+		
+		/** 名前を付けずに登録する場合のリースの期間 (ナノ秒)。リースが無い場合は 0 */
+		private final long leaseNanos;
+		
 		/**
 		 * コンストラクタ
 		 * 
@@ -51,10 +100,60 @@ public abstract class CommandRequest implements Command {
 		 * @param interfaceCls インターフェイスを示すクラス
 		 */
 		public Register(String name, UUID instanceId, Class<?>[] interfaceCls) {
+			this(name, instanceId, interfaceCls, null);
+		}
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param name インスタンス名
+		 * @param instanceId インスタンスID
+		 * @param interfaceCls インターフェイスを示すクラス
+		 * @param methodBases インターフェイス毎のメソッドのベースID、もしくは <code>null</code>
+		 */
+		public Register(String name, UUID instanceId, Class<?>[] interfaceCls, int[] methodBases) {
+			this(name, instanceId, interfaceCls, methodBases, methodBases != null ? MethodTable.fingerprintsOf(interfaceCls) : null, 0L);
+		}
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param name インスタンス名
+		 * @param instanceId インスタンスID
+		 * @param interfaceCls インターフェイスを示すクラス
+		 * @param methodBases インターフェイス毎のメソッドのベースID、もしくは <code>null</code>
+		 * @param methodFingerprints インターフェイス毎のフィンガープリント、もしくは <code>null</code>
+		 * @param leaseNanos 名前を付けずに登録する場合のリースの期間 (ナノ秒)。リースが無い場合は 0
+		 */
+		public Register(String name, UUID instanceId, Class<?>[] interfaceCls, int[] methodBases, int[] methodFingerprints, long leaseNanos) {
 			super();
 			this.name = name;
 			this.instanceId = instanceId;
 			this.interfaces = interfaceCls;
+			this.methodBases = methodBases;
+			this.methodFingerprints = methodFingerprints;
+			this.leaseNanos = leaseNanos;
+		}
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param messageId メッセージID
+		 * @param name インスタンス名
+		 * @param instanceId インスタンスID
+		 * @param interfaceCls インターフェイスを示すクラス
+		 * @param methodBases インターフェイス毎のメソッドのベースID、もしくは <code>null</code>
+		 * @param methodFingerprints インターフェイス毎のフィンガープリント、もしくは <code>null</code>
+		 * @param leaseNanos 名前を付けずに登録する場合のリースの期間 (ナノ秒)。リースが無い場合は 0
+		 */
+		Register(long messageId, String name, UUID instanceId, Class<?>[] interfaceCls, int[] methodBases, int[] methodFingerprints, long leaseNanos) {
+			super(messageId);
+			this.name = name;
+			this.instanceId = instanceId;
+			this.interfaces = interfaceCls;
+			this.methodBases = methodBases;
+			this.methodFingerprints = methodFingerprints;
+			this.leaseNanos = leaseNanos;
 		}
 		
 		/**
@@ -83,6 +182,33 @@ public abstract class CommandRequest implements Command {
 		public Class<?>[] getInterfaces() {
 			return interfaces;
 		}
+		
+		/**
+		 * methodBases を取得します
+		 *
+		 * @return methodBases
+		 */
+		public int[] getMethodBases() {
+			return methodBases;
+		}
+		
+		/**
+		 * methodFingerprints を取得します
+		 *
+		 * @return インターフェイス毎のフィンガープリント、もしくは <code>null</code>
+		 */
+		public int[] getMethodFingerprints() {
+			return methodFingerprints;
+		}
+		
+		/**
+		 * leaseNanos を取得します
+		 *
+		 * @return 名前を付けずに登録する場合のリースの期間 (ナノ秒)。リースが無い場合は 0
+		 */
+		public long getLeaseNanos() {
+			return leaseNanos;
+		}
 	}
 	
 	/**
@@ -105,6 +231,17 @@ public abstract class CommandRequest implements Command {
 			this.instanceId = instanceId;
 		}
 
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param messageId メッセージID
+		 * @param instanceId インスタンスID
+		 */
+		Deregister(long messageId, UUID instanceId) {
+			super(messageId);
+			this.instanceId = instanceId;
+		}
+
 		/**
 		 * instanceId を取得します
 		 *
@@ -115,6 +252,105 @@ public abstract class CommandRequest implements Command {
 		}
 	}
 	
+	/**
+	 * 複数のインスタンスの登録解除<br>
+	 * 応答は返されません
+	 */
+	public static final class DeregisterMany extends CommandRequest {
+		/** serialVersionUID */
+		private static final long serialVersionUID = 3960127150912475842L;
+
+		/** インスタンスID */
+		private final UUID[] instanceIds;
+
+		/** インスタンス毎の受け取った最大の送信世代 */
+		private final long[] generations;
+
+		/**
+		 * コンストラクタ<br>
+		 * 送信世代に関わらず登録解除します
+		 * 
+		 * @param instanceIds インスタンスID
+		 */
+		public DeregisterMany(UUID[] instanceIds) {
+			this(instanceIds, filled(instanceIds.length, Long.MAX_VALUE));
+		}
+
+		/**
+		 * コンストラクタ<br>
+		 * 渡した側が指定された送信世代より後にインスタンスを送信している場合、そのインスタンスは登録解除されません
+		 * 
+		 * @param instanceIds インスタンスID
+		 * @param generations インスタンス毎の受け取った最大の送信世代
+		 */
+		public DeregisterMany(UUID[] instanceIds, long[] generations) {
+			super();
+			this.instanceIds = instanceIds;
+			this.generations = generations;
+		}
+
+		/**
+		 * 全ての要素が同じ値の配列を生成します
+		 * 
+		 * @param length 長さ
+		 * @param value 値
+		 * @return 配列
+		 */
+		private static long[] filled(int length, long value) {
+			long[] values = new long[length];
+			Arrays.fill(values, value);
+			return values;
+		}
+
+		/**
+		 * instanceIds を取得します
+		 *
+		 * @return instanceIds
+		 */
+		public UUID[] getInstanceIds() {
+			return instanceIds;
+		}
+
+		/**
+		 * generations を取得します
+		 *
+		 * @return インスタンス毎の受け取った最大の送信世代
+		 */
+		public long[] getGenerations() {
+			return generations;
+		}
+	}
+
+	/**
+	 * リモートから渡されたインスタンスのリースの更新<br>
+	 * 保持している側が渡した側に定期的に送ります。応答は返されません
+	 */
+	public static final class RenewLeases extends CommandRequest {
+		/** serialVersionUID */
+		private static final long serialVersionUID = -2359604431934950713L;
+
+		/** インスタンスID */
+		private final UUID[] instanceIds;
+
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param instanceIds インスタンスID
+		 */
+		public RenewLeases(UUID[] instanceIds) {
+			super();
+			this.instanceIds = instanceIds;
+		}
+
+		/**
+		 * instanceIds を取得します
+		 *
+		 * @return instanceIds
+		 */
+		public UUID[] getInstanceIds() {
+			return instanceIds;
+		}
+	}
 
 	@SuppressWarnings("rawtypes")
 	public static final class Invoke extends CommandRequest {
@@ -123,6 +359,9 @@ public abstract class CommandRequest implements Command {
 
 		private final UUID instanceId;
 		
+		/** メソッドID。メソッドをクラスとメソッド名で指定する場合は -1 */
+		private final int methodId;
+		
 		private final Class<?> declaringClass;
 		
 		private final String methodName;
@@ -130,6 +369,9 @@ public abstract class CommandRequest implements Command {
 		private final Class[] parameterTypes;
 		
 		private final Object[] arguments;
+		
+		/** 応答を待つ残り時間 (ナノ秒)。0 の場合は無期限 */
+		private long timeoutNanos;
 
 		/**
 		 * @param instanceId
@@ -140,6 +382,40 @@ public abstract class CommandRequest implements Command {
 		public Invoke(UUID instanceId, Class<?> declaringClass, String methodName, Class[] parameterTypes, Object[] arguments) {
 			super();
 			this.instanceId = instanceId;
+			this.methodId = -1;
+			this.declaringClass = declaringClass;
+			this.methodName = methodName;
+			this.parameterTypes = parameterTypes;
+			this.arguments = arguments;
+		}
+
+		/**
+		 * @param instanceId
+		 * @param methodId
+		 * @param arguments
+		 */
+		public Invoke(UUID instanceId, int methodId, Object[] arguments) {
+			super();
+			this.instanceId = instanceId;
+			this.methodId = methodId;
+			this.declaringClass = null;
+			this.methodName = null;
+			this.parameterTypes = null;
+			this.arguments = arguments;
+		}
+
+		/**
+		 * @param messageId
+		 * @param instanceId
+		 * @param methodId
+		 * @param methodName
+		 * @param parameterTypes
+		 * @param arguments
+		 */
+		Invoke(long messageId, UUID instanceId, int methodId, Class<?> declaringClass, String methodName, Class[] parameterTypes, Object[] arguments) {
+			super(messageId);
+			this.instanceId = instanceId;
+			this.methodId = methodId;
 			this.declaringClass = declaringClass;
 			this.methodName = methodName;
 			this.parameterTypes = parameterTypes;
@@ -155,6 +431,15 @@ public abstract class CommandRequest implements Command {
 			return instanceId;
 		}
 		
+		/**
+		 * methodId を取得します
+		 *
+		 * @return methodId、メソッドをクラスとメソッド名で指定する場合は -1
+		 */
+		public int getMethodId() {
+			return methodId;
+		}
+		
 		/**
 		 * declaringClass を取得します
 		 *
@@ -190,6 +475,35 @@ public abstract class CommandRequest implements Command {
 		public Object[] getArguments() {
 			return arguments;
 		}
+		
+		/**
+		 * timeoutNanos を取得します
+		 *
+		 * @return 応答を待つ残り時間 (ナノ秒)。0 の場合は無期限
+		 */
+		public long getTimeoutNanos() {
+			return timeoutNanos;
+		}
+		
+		/**
+		 * timeoutNanos を設定します<br>
+		 * 呼び出し先は受信時点からこの時間を過ぎた呼び出しを実行しません
+		 *
+		 * @param timeoutNanos 応答を待つ残り時間 (ナノ秒)。0 の場合は無期限
+		 */
+		public void setTimeoutNanos(long timeoutNanos) {
+			this.timeoutNanos = timeoutNanos;
+		}
+		
+		/**
+		 * 応答を返さない一方向呼び出しかどうかを取得します<br>
+		 * {@link CommandStream#post(CommandRequest)} で送信され、メッセージIDが採番されていない呼び出しが該当します
+		 *
+		 * @return 一方向呼び出しの場合 true
+		 */
+		public boolean isOneWay() {
+			return getMessageId() == 0L;
+		}
 	}
 	
 	public static final class AddRpcOverride extends CommandRequest {
@@ -208,6 +522,17 @@ public abstract class CommandRequest implements Command {
 			this.override = override;
 		}
 
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param messageId メッセージID
+		 * @param override {@link RpcOverride}
+		 */
+		AddRpcOverride(long messageId, RpcOverride override) {
+			super(messageId);
+			this.override = override;
+		}
+
 		/**
 		 * override を取得します
 		 *
@@ -234,6 +559,17 @@ public abstract class CommandRequest implements Command {
 			this.override = override;
 		}
 
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param messageId メッセージID
+		 * @param override {@link RpcOverride}
+		 */
+		RemoveRpcOverride(long messageId, RpcOverride override) {
+			super(messageId);
+			this.override = override;
+		}
+
 		/**
 		 * override を取得します
 		 *
@@ -250,5 +586,359 @@ public abstract class CommandRequest implements Command {
 	public static final class Exit extends CommandRequest {
 		/** serialVersionUID */
 		private static final long serialVersionUID = -3485339817046783333L;
+		
+		/**
+		 * コンストラクタ
+		 */
+		public Exit() {
+			super();
+		}
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param messageId メッセージID
+		 */
+		Exit(long messageId) {
+			super(messageId);
+		}
+	}
+	
+	/**
+	 * 論理チャネルの開始<br>
+	 * 応答は返されません
+	 */
+	public static final class OpenChannel extends CommandRequest {
+		/** serialVersionUID */
+		private static final long serialVersionUID = 2470719532457931067L;
+		
+		/**
+		 * コンストラクタ
+		 */
+		public OpenChannel() {
+			super();
+		}
+	}
+	
+	/**
+	 * 実行中の呼び出しの取り消し<br>
+	 * 応答は返されません
+	 */
+	public static final class Cancel extends CommandRequest {
+		/** serialVersionUID */
+		private static final long serialVersionUID = -1745412480964617326L;
+		
+		/** 取り消す呼び出しのメッセージID */
+		private final long targetMessageId;
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param targetMessageId 取り消す呼び出しのメッセージID
+		 */
+		public Cancel(long targetMessageId) {
+			super();
+			this.targetMessageId = targetMessageId;
+		}
+		
+		/**
+		 * targetMessageId を取得します
+		 *
+		 * @return 取り消す呼び出しのメッセージID
+		 */
+		public long getTargetMessageId() {
+			return targetMessageId;
+		}
+	}
+	
+	/**
+	 * ストリームの要素の送信を許可する要求コマンド<br>
+	 * 受信側が送信側に送り、送信側は許可された数まで要素を送信します。応答はありません
+	 */
+	public static final class StreamCredit extends CommandRequest {
+		/** serialVersionUID */
+		private static final long serialVersionUID = 4113640914380431267L;
+		
+		/** ストリームID */
+		private final long streamId;
+		
+		/** 追加で送信を許可する要素の数 */
+		private final int credit;
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param streamId ストリームID
+		 * @param credit 追加で送信を許可する要素の数
+		 */
+		public StreamCredit(long streamId, int credit) {
+			super();
+			this.streamId = streamId;
+			this.credit = credit;
+		}
+		
+		/**
+		 * streamId を取得します
+		 *
+		 * @return ストリームID
+		 */
+		public long getStreamId() {
+			return streamId;
+		}
+		
+		/**
+		 * credit を取得します
+		 *
+		 * @return 追加で送信を許可する要素の数
+		 */
+		public int getCredit() {
+			return credit;
+		}
+	}
+	
+	/**
+	 * ストリームの要素を送信する要求コマンド<br>
+	 * 送信側が受信側に送ります。応答はありません
+	 */
+	public static final class StreamChunk extends CommandRequest {
+		/** serialVersionUID */
+		private static final long serialVersionUID = -8310597371683958035L;
+		
+		/** ストリームID */
+		private final long streamId;
+		
+		/** 要素 */
+		private final Object[] elements;
+		
+		/** 最後の要素を含む場合 true */
+		private final boolean last;
+		
+		/** 要素の取得中に発生した例外。発生していない場合は <code>null</code> */
+		private final Throwable failure;
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param streamId ストリームID
+		 * @param elements 要素
+		 * @param last 最後の要素を含む場合 true
+		 * @param failure 要素の取得中に発生した例外。発生していない場合は <code>null</code>
+		 */
+		public StreamChunk(long streamId, Object[] elements, boolean last, Throwable failure) {
+			super();
+			this.streamId = streamId;
+			this.elements = elements;
+			this.last = last;
+			this.failure = failure;
+		}
+		
+		/**
+		 * streamId を取得します
+		 *
+		 * @return ストリームID
+		 */
+		public long getStreamId() {
+			return streamId;
+		}
+		
+		/**
+		 * elements を取得します
+		 *
+		 * @return 要素
+		 */
+		public Object[] getElements() {
+			return elements;
+		}
+		
+		/**
+		 * last を取得します
+		 *
+		 * @return 最後の要素を含む場合 true
+		 */
+		public boolean isLast() {
+			return last;
+		}
+		
+		/**
+		 * failure を取得します
+		 *
+		 * @return 要素の取得中に発生した例外。発生していない場合は <code>null</code>
+		 */
+		public Throwable getFailure() {
+			return failure;
+		}
+	}
+	
+	/**
+	 * ストリームの受信を終了する要求コマンド<br>
+	 * 受信側が送信側に送り、送信側は未送信の要素を破棄します。応答はありません
+	 */
+	public static final class StreamClose extends CommandRequest {
+		/** serialVersionUID */
+		private static final long serialVersionUID = 2470153468924517509L;
+		
+		/** ストリームID */
+		private final long streamId;
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param streamId ストリームID
+		 */
+		public StreamClose(long streamId) {
+			super();
+			this.streamId = streamId;
+		}
+		
+		/**
+		 * streamId を取得します
+		 *
+		 * @return ストリームID
+		 */
+		public long getStreamId() {
+			return streamId;
+		}
+	}
+	
+	/**
+	 * {@link ArrayView} の内容を読み込む要求コマンド<br>
+	 * 呼び出し先が呼び出し元に送ります
+	 */
+	public static final class ArrayRead extends CommandRequest {
+		/** serialVersionUID */
+		private static final long serialVersionUID = -1380436455370237390L;
+		
+		/** ビューID */
+		private final long viewId;
+		
+		/** 読み込みを開始する配列のインデックス */
+		private final int index;
+		
+		/** 読み込む要素の数 */
+		private final int length;
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param viewId ビューID
+		 * @param index 読み込みを開始する配列のインデックス
+		 * @param length 読み込む要素の数
+		 */
+		public ArrayRead(long viewId, int index, int length) {
+			this(0L, viewId, index, length);
+		}
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param messageId メッセージID
+		 * @param viewId ビューID
+		 * @param index 読み込みを開始する配列のインデックス
+		 * @param length 読み込む要素の数
+		 */
+		ArrayRead(long messageId, long viewId, int index, int length) {
+			super(messageId);
+			this.viewId = viewId;
+			this.index = index;
+			this.length = length;
+		}
+		
+		/**
+		 * viewId を取得します
+		 *
+		 * @return ビューID
+		 */
+		public long getViewId() {
+			return viewId;
+		}
+		
+		/**
+		 * index を取得します
+		 *
+		 * @return 読み込みを開始する配列のインデックス
+		 */
+		public int getIndex() {
+			return index;
+		}
+		
+		/**
+		 * length を取得します
+		 *
+		 * @return 読み込む要素の数
+		 */
+		public int getLength() {
+			return length;
+		}
+	}
+	
+	/**
+	 * {@link ArrayView} に書き込む要求コマンド<br>
+	 * 呼び出し先が呼び出し元に送ります
+	 */
+	public static final class ArrayWrite extends CommandRequest {
+		/** serialVersionUID */
+		private static final long serialVersionUID = 6051412840364126563L;
+		
+		/** ビューID */
+		private final long viewId;
+		
+		/** 書き込みを開始する配列のインデックス */
+		private final int index;
+		
+		/** 書き込む内容の配列 */
+		private final Object data;
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param viewId ビューID
+		 * @param index 書き込みを開始する配列のインデックス
+		 * @param data 書き込む内容の配列
+		 */
+		public ArrayWrite(long viewId, int index, Object data) {
+			this(0L, viewId, index, data);
+		}
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param messageId メッセージID
+		 * @param viewId ビューID
+		 * @param index 書き込みを開始する配列のインデックス
+		 * @param data 書き込む内容の配列
+		 */
+		ArrayWrite(long messageId, long viewId, int index, Object data) {
+			super(messageId);
+			this.viewId = viewId;
+			this.index = index;
+			this.data = data;
+		}
+		
+		/**
+		 * viewId を取得します
+		 *
+		 * @return ビューID
+		 */
+		public long getViewId() {
+			return viewId;
+		}
+		
+		/**
+		 * index を取得します
+		 *
+		 * @return 書き込みを開始する配列のインデックス
+		 */
+		public int getIndex() {
+			return index;
+		}
+		
+		/**
+		 * data を取得します
+		 *
+		 * @return 書き込む内容の配列
+		 */
+		public Object getData() {
+			return data;
+		}
 	}
 }
@@ -1,7 +1,6 @@
 package com.xxuz.piclane.jdrpc;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.UUID;
 
 /**
  * 
@@ -13,14 +12,17 @@ public abstract class CommandResponse implements Command {
 	private static final long serialVersionUID = 636424130375503817L;
 	
 	/** メッセージID */
-	private final UUID messageId;
+	private final long messageId;
+	
+	/** 論理チャネルのID。多重化されていない場合は 0 */
+	private int channelId;
 	
 	/**
 	 * コンストラクタ
 	 * 
 	 * @param messageId メッセージID
 	 */
-	private CommandResponse(UUID messageId) {
+	private CommandResponse(long messageId) {
 		super();
 		this.messageId = messageId;
 	}
@@ -30,10 +32,26 @@ public abstract class CommandResponse implements Command {
 	 *
 	 * @return messageId
 	 */
-	public UUID getMessageId() {
+	public long getMessageId() {
 		return messageId;
 	}
 	
+	/**
+	 * @see com.xxuz.piclane.jdrpc.Command#getChannelId()
+	 */
+	@Override
+	public int getChannelId() {
+		return channelId;
+	}
+	
+	/**
+	 * @see com.xxuz.piclane.jdrpc.Command#setChannelId(int)
+	 */
+	@Override
+	public void setChannelId(int channelId) {
+		this.channelId = channelId;
+	}
+	
 	public static final class Register extends CommandResponse {
 		/** serialVersionUID */
 		private static final long serialVersionUID = -8440850760342954599L;
@@ -43,7 +61,7 @@ public abstract class CommandResponse implements Command {
 		 * 
 		 * @param messageId メッセージID
 		 */
-		public Register(UUID messageId) {
+		public Register(long messageId) {
 			super(messageId);
 		}
 	}	
@@ -60,7 +78,7 @@ public abstract class CommandResponse implements Command {
 		 * 
 		 * @param messageId メッセージID
 		 */
-		public Deregister(UUID messageId) {
+		public Deregister(long messageId) {
 			super(messageId);
 		}
 	}
@@ -85,7 +103,7 @@ public abstract class CommandResponse implements Command {
 		 * @param objectType {@link #returnValue} の内容
 		 * @param returnValue 返値、もしくは実行中に発生した例外
 		 */
-		public Invoke(UUID messageId, ObjectType objectType, Object returnValue) {
+		public Invoke(long messageId, ObjectType objectType, Object returnValue) {
 			this(messageId, objectType, returnValue, null);
 		}
 		
@@ -97,7 +115,7 @@ public abstract class CommandResponse implements Command {
 		 * @param returnValue 返値、もしくは実行中に発生した例外
 		 * @param referenceParams 参照渡しされた引数
 		 */
-		public Invoke(UUID messageId, ObjectType objectType, Object returnValue, ReferenceArray[] referenceParams) {
+		public Invoke(long messageId, ObjectType objectType, Object returnValue, ReferenceArray[] referenceParams) {
 			super(messageId);
 			this.objectType = objectType;
 			this.returnValue = returnValue;
@@ -123,6 +141,24 @@ public abstract class CommandResponse implements Command {
 			}
 		}
 		
+		/**
+		 * objectType を取得します
+		 *
+		 * @return objectType
+		 */
+		ObjectType getObjectType() {
+			return objectType;
+		}
+		
+		/**
+		 * 例外を送出せずに returnValue を取得します
+		 *
+		 * @return returnValue
+		 */
+		Object getRawValue() {
+			return returnValue;
+		}
+		
 		/**
 		 * referenceParams を取得します
 		 *
@@ -156,7 +192,7 @@ public abstract class CommandResponse implements Command {
 		 * 
 		 * @param messageId メッセージID
 		 */
-		public AddRpcOverride(UUID messageId) {
+		public AddRpcOverride(long messageId) {
 			super(messageId);
 		}
 	}
@@ -170,7 +206,7 @@ public abstract class CommandResponse implements Command {
 		 * 
 		 * @param messageId メッセージID
 		 */
-		public RemoveRpcOverride(UUID messageId) {
+		public RemoveRpcOverride(long messageId) {
 			super(messageId);
 		}
 	}
@@ -187,8 +223,84 @@ public abstract class CommandResponse implements Command {
 		 * 
 		 * @param messageId メッセージID
 		 */
-		public Exit(UUID messageId) {
+		public Exit(long messageId) {
 			super(messageId);
 		}
 	}
+	
+	/**
+	 * {@link ArrayView} の内容の読み込み
+	 */
+	public static final class ArrayRead extends CommandResponse {
+		/** serialVersionUID */
+		private static final long serialVersionUID = 2984126853040963147L;
+		
+		/** 読み込んだ内容の配列。失敗した場合は <code>null</code> */
+		private final Object data;
+		
+		/** 読み込み中に発生した例外。発生していない場合は <code>null</code> */
+		private final Throwable failure;
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param messageId メッセージID
+		 * @param data 読み込んだ内容の配列。失敗した場合は <code>null</code>
+		 * @param failure 読み込み中に発生した例外。発生していない場合は <code>null</code>
+		 */
+		public ArrayRead(long messageId, Object data, Throwable failure) {
+			super(messageId);
+			this.data = data;
+			this.failure = failure;
+		}
+		
+		/**
+		 * data を取得します
+		 *
+		 * @return 読み込んだ内容の配列。失敗した場合は <code>null</code>
+		 */
+		public Object getData() {
+			return data;
+		}
+		
+		/**
+		 * failure を取得します
+		 *
+		 * @return 読み込み中に発生した例外。発生していない場合は <code>null</code>
+		 */
+		public Throwable getFailure() {
+			return failure;
+		}
+	}
+	
+	/**
+	 * {@link ArrayView} への書き込み
+	 */
+	public static final class ArrayWrite extends CommandResponse {
+		/** serialVersionUID */
+		private static final long serialVersionUID = -7702457006513840216L;
+		
+		/** 書き込み中に発生した例外。発生していない場合は <code>null</code> */
+		private final Throwable failure;
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param messageId メッセージID
+		 * @param failure 書き込み中に発生した例外。発生していない場合は <code>null</code>
+		 */
+		public ArrayWrite(long messageId, Throwable failure) {
+			super(messageId);
+			this.failure = failure;
+		}
+		
+		/**
+		 * failure を取得します
+		 *
+		 * @return 書き込み中に発生した例外。発生していない場合は <code>null</code>
+		 */
+		public Throwable getFailure() {
+			return failure;
+		}
+	}
 }
@@ -1,22 +1,35 @@
 package com.xxuz.piclane.jdrpc;
 
-import java.lang.annotation.Annotation;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 import com.xxuz.piclane.jdrpc.CommandResponse.Invoke.ObjectType;
 import com.xxuz.piclane.jdrpc.InstanceContainer.Dynamic;
@@ -29,6 +42,36 @@ import com.xxuz.piclane.jdrpc.InstanceContainer.Dynamic;
 public class CommandRunner implements AutoCloseable {
 	/** 匿名インスタンス名の接頭辞 */
 	protected static final String ANONYMOUS_INSTANCE_HEADER = "anonymous-";
+	
+	/** 1 つの {@link CommandRequest.DeregisterMany} で登録解除するインスタンスの最大数 */
+	private static final int DEREGISTER_BATCH_SIZE = 1024;
+	
+	/** 1 つの {@link CommandRequest.RenewLeases} で更新するリースの最大数 */
+	private static final int RENEW_BATCH_SIZE = 1024;
+	
+	/** リースの期間の既定値 (ナノ秒) */
+	private static final long DEFAULT_LEASE_NANOS = TimeUnit.MINUTES.toNanos(10L);
+	
+	/** リースの更新と期限切れの確認を行うスケジューラー。全ての {@link CommandRunner} で共有します */
+	private static final ScheduledThreadPoolExecutor LEASE_SCHEDULER;
+	
+	static {
+		LEASE_SCHEDULER = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "CommandRunner-Lease");
+			t.setDaemon(true);
+			return t;
+		});
+		LEASE_SCHEDULER.setRemoveOnCancelPolicy(true);
+	}
+	
+	/** 受信済みで消費されていないストリームの要素の最大数の既定値 */
+	private static final int DEFAULT_STREAM_WINDOW = 256;
+	
+	/** {@link ArrayView} の 1 ページの要素の数の既定値 */
+	private static final int DEFAULT_VIEW_PAGE_SIZE = 4096;
+	
+	/** {@link ArrayView} でキャッシュするページの最大数の既定値 */
+	private static final int DEFAULT_VIEW_CACHE_PAGES = 16;
 
 	/** {@link ExecutorService} */
 	private final ExecutorService es;
@@ -42,14 +85,105 @@ public class CommandRunner implements AutoCloseable {
 	/** 登録された名前付きインスタンス */
 	protected final ConcurrentHashMap<String, InstanceContainer> namedInstances;
 	
+	/**
+	 * 登録を待っている名前付きインスタンス
+	 * Key:   インスタンス名
+	 * Value: 登録で完了する {@link CompletableFuture}
+	 */
+	private final ConcurrentHashMap<String, CompletableFuture<InstanceContainer>> namedWaiters;
+	
+	/**
+	 * 登録を待っているインスタンス
+	 * Key:   インスタンスID
+	 * Value: 登録で完了する {@link CompletableFuture}
+	 */
+	private final ConcurrentHashMap<UUID, CompletableFuture<InstanceContainer>> instanceWaiters;
+	
 	/** {@link CommandStream} */
 	protected final CommandStream stream;
 	
 	/** プロクシクラスの参照キュー */
 	private final ReferenceQueue<Object> refQueue;
 	
-	/** {@link RpcOverride} の集合 */
-	private final Set<RpcOverride> overrides;
+	/** {@link RpcOverride} の集合。変更は新しい {@link OverrideTable} への置き換えで行います */
+	private volatile OverrideTable overrides;
+	
+	/** {@link #overrides} の置き換えを同期するロック */
+	private final Object overridesLock;
+	
+	/**
+	 * 呼び出し方法のキャッシュ。生成時と異なる {@link OverrideTable} に対しては作り直します
+	 * Key:   メソッド
+	 * Value: {@link InvocationPlan}
+	 */
+	private final ConcurrentHashMap<Method, InvocationPlan> plans;
+	
+	/** {@link MethodTable} */
+	private final MethodTable methodTable;
+	
+	/** 名前を付けずにリモートに渡したインスタンスの {@link Reference} */
+	private final ExportTable exportTable;
+	
+	/** {@link CommandDispatcher} */
+	private final CommandDispatcher dispatcher;
+	
+	/**
+	 * リモートから受け付けて応答していないメソッド呼び出し
+	 * Key:   メッセージID
+	 * Value: {@link Invocation}
+	 */
+	private final ConcurrentHashMap<Long, Invocation> invocations;
+	
+	/** リモートから受け付けた一方向呼び出し。先頭は実行中の呼び出しです */
+	private final ArrayDeque<CommandRequest.Invoke> oneWays;
+	
+	/**
+	 * リモートに要素を送信中のストリーム
+	 * Key:   ストリームID
+	 * Value: {@link StreamExport}
+	 */
+	private final ConcurrentHashMap<Long, StreamExport> exports;
+	
+	/**
+	 * リモートから要素を受信中のストリーム
+	 * Key:   リモートが採番したストリームID
+	 * Value: {@link RemoteIterator} の弱参照
+	 */
+	private final ConcurrentHashMap<Long, RemoteIterator.Handle> imports;
+	
+	/** 最後に採番したストリームID */
+	private final AtomicLong lastStreamId;
+	
+	/**
+	 * リモートのメソッド呼び出しに渡している {@link ArrayView}
+	 * Key:   ビューID
+	 * Value: {@link ArrayView}
+	 */
+	private final ConcurrentHashMap<Long, ArrayView<?>> views;
+	
+	/** 最後に採番したビューID */
+	private final AtomicLong lastViewId;
+	
+	/** リモートから渡された {@link ArrayView} の 1 ページの要素の数 */
+	private volatile int viewPageSize = DEFAULT_VIEW_PAGE_SIZE;
+	
+	/** リモートから渡された {@link ArrayView} でキャッシュするページの最大数 */
+	private volatile int viewCachePages = DEFAULT_VIEW_CACHE_PAGES;
+	
+	/** 受信済みで消費されていないストリームの要素の最大数 */
+	private volatile int streamWindow = DEFAULT_STREAM_WINDOW;
+	
+	/** 名前を付けずにリモートに渡したインスタンスのリースの期間 (ナノ秒) */
+	private volatile long leaseNanos = DEFAULT_LEASE_NANOS;
+	
+	/** 更新されずに期限切れとなったリースの数 */
+	private final AtomicLong expiredLeases;
+	
+	/** {@link LeaseKeeper} */
+	private final LeaseKeeper leaseKeeper;
+	
+	/** {@link RpcTimeout} が無いメソッドの応答を待つ時間 (ナノ秒)。0 の場合は無制限 */
+	private volatile long defaultTimeoutNanos = 0L;
 	
 	/** 終了されている場合 true */
 	private volatile boolean isClosed = false;
@@ -70,6 +204,17 @@ public class CommandRunner implements AutoCloseable {
 	 * @param stream {@link CommandStream}
 	 */
 	public CommandRunner(String name, CommandStream stream) {
+		this(name, stream, CommandDispatcher.cached());
+	}
+	
+	/**
+	 * コンストラクタ
+	 * 
+	 * @param name 名前
+	 * @param stream {@link CommandStream}
+	 * @param dispatcher リモートから受け付けたメソッド呼び出しを実行する {@link CommandDispatcher}
+	 */
+	public CommandRunner(String name, CommandStream stream, CommandDispatcher dispatcher) {
 		this.es = Executors.newCachedThreadPool(new ThreadFactory() {
 			@Override
 			public Thread newThread(Runnable r) {
@@ -81,12 +226,29 @@ public class CommandRunner implements AutoCloseable {
 		this.name = name != null && !name.isEmpty() ? name + "-" : "";
 		this.instances = new ConcurrentHashMap<>();
 		this.namedInstances = new ConcurrentHashMap<>();
+		this.namedWaiters = new ConcurrentHashMap<>();
+		this.instanceWaiters = new ConcurrentHashMap<>();
 		this.stream = stream;
 		this.refQueue = new ReferenceQueue<Object>();
-		this.overrides = new HashSet<>();
+		this.overrides = OverrideTable.EMPTY;
+		this.overridesLock = new Object();
+		this.plans = new ConcurrentHashMap<>();
+		this.methodTable = new MethodTable();
+		this.exportTable = new ExportTable();
+		this.dispatcher = dispatcher;
+		this.invocations = new ConcurrentHashMap<>();
+		this.oneWays = new ArrayDeque<>();
+		this.exports = new ConcurrentHashMap<>();
+		this.imports = new ConcurrentHashMap<>();
+		this.lastStreamId = new AtomicLong();
+		this.views = new ConcurrentHashMap<>();
+		this.lastViewId = new AtomicLong();
+		this.expiredLeases = new AtomicLong();
+		this.leaseKeeper = new LeaseKeeper();
 		
 		es.submit(new CommandPump());
 		es.submit(new ProxyFinalizer());
+		leaseKeeper.start();
 	}
 	
 	/**
@@ -103,6 +265,55 @@ public class CommandRunner implements AutoCloseable {
 		return named.getInstance();
 	}
 	
+	/**
+	 * 名前付きインスタンスを取得します。<br>
+	 * このメソッドは名前付きインスタンスが登録されるまで、最大で指定された時間ブロックします
+	 * 
+	 * @param name インスタンス名
+	 * @param timeout 待機する時間
+	 * @param unit timeout の単位
+	 * @return インスタンス
+	 * @throws InterruptedException 割込例外が発生した場合
+	 * @throws TimeoutException 時間内に登録されなかった場合
+	 */
+	public <T> T get(String name, long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+		validate();
+		try {
+			return getInstanceContainerAsync(name).get(timeout, unit).getInstance();
+		} catch (ExecutionException e) {
+			throw (RuntimeException)e.getCause();
+		}
+	}
+	
+	/**
+	 * 名前付きインスタンスを非同期に取得します。<br>
+	 * このメソッドはブロックせず、名前付きインスタンスが登録された時点で完了する {@link CompletableFuture} を返します。
+	 * 返値の完了処理は受信スレッドでは実行されません
+	 * 
+	 * @param name インスタンス名
+	 * @return インスタンスを取得する非同期計算の結果。登録される前に終了した場合は {@link IllegalStateException} で例外的に完了します
+	 */
+	public <T> CompletableFuture<T> getAsync(String name) {
+		validate();
+		CompletableFuture<InstanceContainer> named = getInstanceContainerAsync(name);
+		CompletableFuture<T> future = new CompletableFuture<>();
+		if(named.isDone() && !named.isCompletedExceptionally()) {
+			future.complete(named.join().getInstance());
+			return future;
+		}
+		named.whenComplete((container, t) -> {
+			// 登録した受信スレッドで利用者の処理が実行されないよう、完了処理は別スレッドで行う
+			executeCompletion(() -> {
+				if(t != null) {
+					future.completeExceptionally(t);
+				} else {
+					future.complete(container.getInstance());
+				}
+			});
+		});
+		return future;
+	}
+	
 	/**
 	 * インスタンスを取得します。<br>
 	 * このメソッドは名前付きインスタンスが登録されるまでブロックします
@@ -175,8 +386,14 @@ public class CommandRunner implements AutoCloseable {
 	public UUID register(String name, Object object, Class<?>... interfaces) throws InterruptedException {
 		validate();
 		UUID instanceId = UUID.randomUUID();
+		boolean anonymous = name == null;
 		name = putInstance(name, instanceId, interfaces, object);
-		stream.call(new CommandRequest.Register(name, instanceId, interfaces));
+		long leaseNanos = 0L;
+		if(anonymous) {
+			leaseNanos = this.leaseNanos;
+			instances.get(instanceId).lease(leaseNanos);
+		}
+		stream.call(new CommandRequest.Register(name, instanceId, interfaces, methodTable.export(interfaces), MethodTable.fingerprintsOf(interfaces), leaseNanos));
 		return instanceId;
 	}
 	
@@ -215,43 +432,222 @@ public class CommandRunner implements AutoCloseable {
 		return invoke(named.getId(), method, args);
 	}
 
+	/**
+	 * リモートのメソッドを実行します<br>
+	 * {@link RpcTimeout} もしくは {@link #setDefaultTimeout(long, TimeUnit)} で応答を待つ時間が指定されている場合、
+	 * 時間内に応答が無ければリモートの実行を取り消して {@link RpcTimeoutException} を送出します<br>
+	 * {@link RpcOneWay} が指定されている場合は応答を待たずに <code>null</code> を返します
+	 * 
+	 * @param instanceId インスタンスID、static メソッドの場合は <code>null</code>
+	 * @param method メソッド
+	 * @param args 引数
+	 * @return 返値
+	 * @throws InvocationTargetException リモートで例外が発生した場合
+	 * @throws InterruptedException 割込例外が発生した場合
+	 * @throws RpcTimeoutException 時間内に応答が無かった場合
+	 */
 	public Object invoke(UUID instanceId, Method method, Object... args) throws InvocationTargetException, InterruptedException {
+		return invoke(instanceId, planOf(method), args);
+	}
+	
+	/**
+	 * リモートのメソッドを実行します
+	 * 
+	 * @param instanceId インスタンスID、static メソッドの場合は <code>null</code>
+	 * @param plan 実行するメソッドの {@link InvocationPlan}
+	 * @param args 引数
+	 * @return 返値
+	 * @throws InvocationTargetException リモートで例外が発生した場合
+	 * @throws InterruptedException 割込例外が発生した場合
+	 * @throws RpcTimeoutException 時間内に応答が無かった場合
+	 * @see #invoke(UUID, Method, Object...)
+	 */
+	private Object invoke(UUID instanceId, InvocationPlan plan, Object[] args) throws InvocationTargetException, InterruptedException {
+		CommandRequest.Invoke req = newInvokeRequest(instanceId, plan, args);
+		if(plan.isOneWay()) {
+			// 戻った後に呼び出し元が引数を変更しても送信内容が変わらないよう、戻る前に符号化する
+			stream.postDetached(req);
+			return null;
+		}
+		long timeoutNanos = req.getTimeoutNanos();
+		CommandResponse.Invoke resp;
+		try {
+			if(timeoutNanos > 0L) {
+				try {
+					resp = (CommandResponse.Invoke)stream.call(req, timeoutNanos, TimeUnit.NANOSECONDS);
+				} catch (TimeoutException e) {
+					throw new RpcTimeoutException(plan.getMethod() + " timed out after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms");
+				}
+			} else {
+				resp = (CommandResponse.Invoke)stream.call(req);
+			}
+		} finally {
+			unexportArrayViews(req.getArguments());
+		}
+		return completeInvoke(plan, args, resp);
+	}
+	
+	/**
+	 * リモートのメソッドを非同期に実行します<br>
+	 * このメソッドは応答を待機せず、応答を待機するスレッドも使用しません。
+	 * リモートのメソッドが {@link CompletionStage} を返す場合、その完了後の値で完了します<br>
+	 * 応答を待つ時間はリモートに伝えられ、期限を過ぎた呼び出しは実行されません。
+	 * 時間内に応答が無い場合はリモートの実行を取り消し、{@link RpcTimeoutException} で例外的に完了します。
+	 * 返値を取り消した場合はリモートの実行も取り消されます
+	 * 
+	 * @param instanceId インスタンスID、static メソッドの場合は <code>null</code>
+	 * @param method メソッド
+	 * @param args 引数
+	 * @return 返値を取得する非同期計算の結果。リモートで例外が発生した場合はその例外で例外的に完了します
+	 * @throws InterruptedException 割込例外が発生した場合
+	 */
+	public CompletableFuture<Object> invokeAsync(UUID instanceId, Method method, Object... args) throws InterruptedException {
+		return invokeAsync(instanceId, planOf(method), args);
+	}
+	
+	/**
+	 * リモートのメソッドを非同期に実行します
+	 * 
+	 * @param instanceId インスタンスID、static メソッドの場合は <code>null</code>
+	 * @param plan 実行するメソッドの {@link InvocationPlan}
+	 * @param args 引数
+	 * @return 返値を取得する非同期計算の結果
+	 * @throws InterruptedException 割込例外が発生した場合
+	 * @see #invokeAsync(UUID, Method, Object...)
+	 */
+	private CompletableFuture<Object> invokeAsync(UUID instanceId, InvocationPlan plan, Object[] args) throws InterruptedException {
+		CommandRequest.Invoke req = newInvokeRequest(instanceId, plan, args);
+		long timeoutNanos = req.getTimeoutNanos();
+		CompletableFuture<CommandResponse> respFuture = timeoutNanos > 0L ?
+			stream.callAsync(req, timeoutNanos, TimeUnit.NANOSECONDS) :
+			stream.callAsync(req);
+		CompletableFuture<Object> future = new CompletableFuture<Object>() {
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				respFuture.cancel(mayInterruptIfRunning);
+				return super.cancel(mayInterruptIfRunning);
+			}
+		};
+		respFuture.whenComplete((resp, t) -> {
+			unexportArrayViews(req.getArguments());
+			// 受信スレッドで利用者の処理が実行されないよう、完了処理は別スレッドで行う
+			executeCompletion(() -> {
+				try {
+					if(t instanceof TimeoutException) {
+						future.completeExceptionally(new RpcTimeoutException(plan.getMethod() + " timed out after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms"));
+					} else if(t != null) {
+						future.completeExceptionally(t);
+					} else {
+						future.complete(completeInvoke(plan, args, (CommandResponse.Invoke)resp));
+					}
+				} catch (InvocationTargetException e) {
+					future.completeExceptionally(e.getTargetException());
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		});
+		return future;
+	}
+	
+	/**
+	 * メソッド呼び出しの要求コマンドを生成します
+	 * 
+	 * @param instanceId インスタンスID、static メソッドの場合は <code>null</code>
+	 * @param plan 実行するメソッドの {@link InvocationPlan}
+	 * @param args 引数
+	 * @return 要求コマンド
+	 * @throws InterruptedException 割込例外が発生した場合
+	 */
+	private CommandRequest.Invoke newInvokeRequest(UUID instanceId, InvocationPlan plan, Object[] args) throws InterruptedException {
 		validate();
-		if(instanceId == null && (method.getModifiers() & Modifier.STATIC) == 0) {
+		Method method = plan.getMethod();
+		if(instanceId == null && !plan.isStatic()) {
 			throw new IllegalArgumentException(method + " is not static method");
 		}
 		
 		// 引数のリファレンス化
-		int paramCount = method.getParameterCount();
-		Object[] reqArgs = new Object[paramCount];
-		Class<?>[] paramClasses = method.getParameterTypes();
-		Annotation[][] paramAnnos = method.getParameterAnnotations();
-		for(int i=0; i<paramCount; i++) {
-			Object arg = reqArgs[i] = args[i];
-			Class<?> paramCls = paramClasses[i];
-			if(arg != null &&
-			   hasAnnotation(paramAnnos[i], RpcParam.class) || 
-			   overrides.contains(RpcOverride.forMethodParameter(i, method))) {
-				if(paramCls.isArray()) {
+		Object[] reqArgs = args != null ? args : new Object[0];
+		if(plan.hasReferenceParameter()) {
+			reqArgs = reqArgs.clone();
+			for(int i=0; i<reqArgs.length; i++) {
+				Object arg = reqArgs[i];
+				if(arg == null) {
+					continue;
+				}
+				switch(plan.getParameterMode(i)) {
+				case InvocationPlan.PARAM_ARRAY:
 					reqArgs[i] = new ReferenceArray(i, arg);
-				} else {
-					if(!paramCls.isInterface()) {
-						throw new IllegalArgumentException();
-					}
-					reqArgs[i] = new Reference(register(null, arg, paramCls));
+					break;
+				case InvocationPlan.PARAM_OUTPUT_ARRAY:
+					reqArgs[i] = ReferenceArray.forOutput(i, Array.getLength(arg));
+					break;
+				case InvocationPlan.PARAM_ARRAY_VIEW:
+					reqArgs[i] = exportArrayView((ArrayView<?>)arg);
+					break;
+				case InvocationPlan.PARAM_REFERENCE:
+					reqArgs[i] = export(arg, plan.getParameterType(i));
+					break;
+				case InvocationPlan.PARAM_INVALID:
+					throw new IllegalArgumentException("Parameter " + i + " of " + method + " must be an array or an interface to be passed by reference");
 				}
 			}
 		}
 		
-		// 実行
-		CommandRequest req = new CommandRequest.Invoke(
-			instanceId,
-			method.getDeclaringClass(),
-			method.getName(),
-			method.getParameterTypes(),
-			reqArgs);
-		CommandResponse.Invoke resp = 
-			(CommandResponse.Invoke)stream.call(req);
+		int methodId = plan.getMethodId(methodTable);
+		CommandRequest.Invoke req = methodId >= 0 ?
+			new CommandRequest.Invoke(instanceId, methodId, reqArgs) :
+			new CommandRequest.Invoke(
+				instanceId,
+				method.getDeclaringClass(),
+				method.getName(),
+				method.getParameterTypes(),
+				reqArgs);
+		// 一方向呼び出しは応答を待たないため期限を設けない
+		long timeoutNanos = plan.isOneWay() ? 0L : plan.getTimeoutNanos();
+		req.setTimeoutNanos(timeoutNanos >= 0L ? timeoutNanos : defaultTimeoutNanos);
+		return req;
+	}
+	
+	/**
+	 * メソッドの呼び出し方法を取得します
+	 * 
+	 * @param method メソッド
+	 * @return {@link InvocationPlan}
+	 */
+	InvocationPlan planOf(Method method) {
+		OverrideTable overrides = this.overrides;
+		InvocationPlan plan = plans.get(method);
+		if(plan == null || plan.getOverrides() != overrides) {
+			// 生成中に置き換えられても、次の呼び出しで新しい OverrideTable から作り直される
+			plan = new InvocationPlan(method, overrides);
+			plans.put(method, plan);
+		}
+		return plan;
+	}
+	
+	/**
+	 * {@link InvocationPlan} が現在の {@link RpcOverride} の集合から生成されたものかどうかを取得します<br>
+	 * {@link #planOf(Method)} の結果を保持する呼び出し元は、これが false の場合に取得し直します
+	 * 
+	 * @param plan {@link InvocationPlan}
+	 * @return 現在の {@link RpcOverride} の集合から生成された場合 true
+	 */
+	boolean isCurrentPlan(InvocationPlan plan) {
+		return plan.getOverrides() == overrides;
+	}
+	
+	/**
+	 * メソッド呼び出しの応答コマンドから返値を取得します<br>
+	 * 分割して送信される返値は、要素の受信を開始して {@link RemoteStream} もしくは {@link Stream} として返します
+	 * 
+	 * @param plan 実行したメソッドの {@link InvocationPlan}
+	 * @param args 引数
+	 * @param resp 応答コマンド
+	 * @return 返値
+	 * @throws InvocationTargetException リモートで例外が発生した場合
+	 */
+	private Object completeInvoke(InvocationPlan plan, Object[] args, CommandResponse.Invoke resp) throws InvocationTargetException {
 		Object result = resp.getReturnValue();
 		
 		// 参照渡しされた引数を戻す
@@ -262,14 +658,217 @@ public class CommandRunner implements AutoCloseable {
 		// 返値のリファレンス解除
 		if(result instanceof Reference) {
 			Reference ref = (Reference)result;
-			if(ref != null) {
-				result = tryGet(ref.getInstanceId());
-			}
+			Object proxy = importReference(ref);
+			result = proxy != null ? proxy : tryGet(ref.getInstanceId());
+		}
+		
+		// 分割して送信される返値の受信開始
+		if(result instanceof StreamReference) {
+			RemoteIterator<Object> it = importStream(((StreamReference)result).getStreamId());
+			result = plan.getResultType() == Stream.class ? it.stream() : it;
 		}
 		
 		return result;
 	}
 	
+	/**
+	 * リモートが送信するストリームの受信を開始します
+	 * 
+	 * @param streamId リモートが採番したストリームID
+	 * @return {@link RemoteIterator}
+	 */
+	private RemoteIterator<Object> importStream(long streamId) {
+		RemoteIterator<Object> it = new RemoteIterator<>(streamId, stream, streamWindow, imports, refQueue);
+		try {
+			it.open();
+		} catch (RuntimeException e) {
+			it.abort(e);
+		}
+		return it;
+	}
+	
+	/**
+	 * 返値を分割して送信するストリームを開始します<br>
+	 * 要素はリモートから送信を許可されてから送信します
+	 * 
+	 * @param result {@link Iterator} もしくは {@link Stream}
+	 * @return {@link StreamReference}
+	 */
+	private StreamReference exportStream(Object result) {
+		Iterator<?> iterator;
+		AutoCloseable resource;
+		if(result instanceof Stream) {
+			iterator = ((Stream<?>)result).iterator();
+			resource = (Stream<?>)result;
+		} else {
+			iterator = (Iterator<?>)result;
+			resource = result instanceof AutoCloseable ? (AutoCloseable)result : null;
+		}
+		long streamId = lastStreamId.incrementAndGet();
+		exports.put(streamId, new StreamExport(streamId, iterator, resource, stream, es, exports));
+		return new StreamReference(streamId);
+	}
+	
+	/**
+	 * {@link ArrayView} をリモートのメソッド呼び出しの間だけ読み書きできるようにします
+	 * 
+	 * @param view {@link ArrayView}
+	 * @return {@link ArrayViewReference}
+	 */
+	private ArrayViewReference exportArrayView(ArrayView<?> view) {
+		long viewId = lastViewId.incrementAndGet();
+		views.put(viewId, view);
+		return new ArrayViewReference(viewId, view.length(), view.getComponentType());
+	}
+	
+	/**
+	 * メソッド呼び出しの要求コマンドの引数に含まれる {@link ArrayView} を読み書きできないようにします
+	 * 
+	 * @param reqArgs 要求コマンドの引数
+	 */
+	private void unexportArrayViews(Object[] reqArgs) {
+		for(Object arg: reqArgs) {
+			if(arg instanceof ArrayViewReference) {
+				views.remove(((ArrayViewReference)arg).getViewId());
+			}
+		}
+	}
+	
+	/**
+	 * 送受信中の全てのストリームを終了します
+	 */
+	private void closeStreams() {
+		for(StreamExport export: exports.values()) {
+			export.close();
+		}
+		IllegalStateException cause = new IllegalStateException("CommandRunner has been closed.");
+		for(RemoteIterator.Handle handle: imports.values()) {
+			RemoteIterator<?> it = handle.get();
+			if(it != null) {
+				it.abort(cause);
+			}
+		}
+	}
+	
+	/**
+	 * 非同期呼び出しの完了処理を実行します<br>
+	 * 終了後で実行できない場合は呼び出し元のスレッドで実行します
+	 * 
+	 * @param task 完了処理
+	 */
+	private void executeCompletion(Runnable task) {
+		try {
+			es.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.run();
+		}
+	}
+	
+	/**
+	 * {@link RpcTimeout} が指定されていないメソッドの応答を待つ時間を設定します
+	 * 
+	 * @param timeout 応答を待つ時間。0 の場合は無制限
+	 * @param unit timeout の単位
+	 * @throws IllegalArgumentException timeout が負の場合
+	 */
+	public void setDefaultTimeout(long timeout, TimeUnit unit) {
+		if(timeout < 0L) {
+			throw new IllegalArgumentException("timeout must not be negative: " + timeout);
+		}
+		this.defaultTimeoutNanos = unit.toNanos(timeout);
+	}
+	
+	/**
+	 * {@link Iterator}, {@link Stream}, {@link RemoteStream} を返すメソッドで、
+	 * 受信済みで消費されていない要素の最大数を設定します<br>
+	 * 以降に開始したストリームに適用されます
+	 * 
+	 * @param window 受信済みで消費されていない要素の最大数
+	 * @throws IllegalArgumentException window が 2 未満の場合
+	 */
+	public void setStreamWindow(int window) {
+		if(window < 2) {
+			throw new IllegalArgumentException("window must be at least 2: " + window);
+		}
+		this.streamWindow = window;
+	}
+	
+	/**
+	 * リモートから渡された {@link ArrayView} のキャッシュを設定します<br>
+	 * 以降に受け付けたメソッド呼び出しに適用されます
+	 * 
+	 * @param pageSize 1 度に読み込む要素の数
+	 * @param pages キャッシュするページの最大数
+	 * @throws IllegalArgumentException pageSize もしくは pages が 1 未満の場合
+	 */
+	public void setArrayViewCache(int pageSize, int pages) {
+		if(pageSize < 1) {
+			throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+		}
+		if(pages < 1) {
+			throw new IllegalArgumentException("pages must be positive: " + pages);
+		}
+		this.viewPageSize = pageSize;
+		this.viewCachePages = pages;
+	}
+	
+	/**
+	 * 名前を付けずにリモートに渡したインスタンスのリースの期間を設定します<br>
+	 * 期間はインスタンスと共にリモートに伝えられ、リモートはその 1/3 毎にリースを更新します。
+	 * 期間内に更新されなかったインスタンスは、リモートが保持していないものとして登録解除します。
+	 * 変更は以降に渡したインスタンスに適用されます
+	 * 
+	 * @param duration リースの期間
+	 * @param unit duration の単位
+	 * @throws IllegalArgumentException duration が正でない場合
+	 */
+	public void setLeaseDuration(long duration, TimeUnit unit) {
+		if(duration <= 0L) {
+			throw new IllegalArgumentException("duration must be positive: " + duration);
+		}
+		this.leaseNanos = unit.toNanos(duration);
+		leaseKeeper.wakeBy(System.nanoTime());
+	}
+	
+	/**
+	 * 名前を付けずにリモートに渡し、リモートが保持しているインスタンスの数を取得します
+	 * 
+	 * @return リースのあるインスタンスの数
+	 */
+	public int getExportedInstanceCount() {
+		int count = 0;
+		for(InstanceContainer container: instances.values()) {
+			if(container.isLeased()) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * リモートから名前を付けずに渡され、リースを更新しているインスタンスの数を取得します
+	 * 
+	 * @return リースを更新しているインスタンスの数
+	 */
+	public int getImportedInstanceCount() {
+		int count = 0;
+		for(InstanceContainer container: instances.values()) {
+			if(container.getDynamic() instanceof LazyProxy) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * 更新されずに期限切れとなり、登録解除したインスタンスの数を取得します
+	 * 
+	 * @return 期限切れとなったリースの累計
+	 */
+	public long getExpiredLeaseCount() {
+		return expiredLeases.get();
+	}
+	
 	/**
 	 * 終了しているかどうかを取得します
 	 * 
@@ -290,20 +889,17 @@ public class CommandRunner implements AutoCloseable {
 		}
 		isClosed = true;
 		
-		stream.call(new CommandRequest.Exit());
-		
-		es.shutdownNow();
-		es.awaitTermination(10L, TimeUnit.SECONDS);
-	}
-	
-	private void closeWithoutCall() throws InterruptedException {
-		if(isClosed) {
-			return;
+		try {
+			stream.call(new CommandRequest.Exit());
+		} catch (IllegalStateException e) {
+			// ストリームが既に終了している
 		}
-		isClosed = true;
 		
+		dispatcher.shutdown();
+		leaseKeeper.stop();
 		es.shutdownNow();
 		es.awaitTermination(10L, TimeUnit.SECONDS);
+		failWaiters();
 	}
 	
 	private void validate() {
@@ -320,7 +916,7 @@ public class CommandRunner implements AutoCloseable {
 	 */
 	public void addRpcOverride(RpcOverride override) throws InterruptedException {
 		stream.call(new CommandRequest.AddRpcOverride(override));
-		overrides.add(override);
+		updateRpcOverride(override, true);
 	}
 	
 	/**
@@ -331,54 +927,191 @@ public class CommandRunner implements AutoCloseable {
 	 */
 	public void removeRpcOverride(RpcOverride override) throws InterruptedException {
 		stream.call(new CommandRequest.RemoveRpcOverride(override));
-		overrides.remove(override);
+		updateRpcOverride(override, false);
 	}
 	
-	protected final InstanceContainer getInstanceContainer(String name) throws InterruptedException {
-		InstanceContainer named = new InstanceContainer();
-		InstanceContainer namedPrev = namedInstances.putIfAbsent(name, named);
-		if(namedPrev != null) {
-			named = namedPrev;
-		}
-		if(!named.isSettled()) {
-			synchronized (named) {
-				if(!named.isSettled()) {
-					named.wait();
-				}
-			}
+	/**
+	 * {@link RpcOverride} の集合を変更します<br>
+	 * 呼び出し方法のキャッシュは参照時に {@link OverrideTable} の置き換えを検出して作り直されます
+	 * 
+	 * @param override {@link RpcOverride}
+	 * @param add 追加する場合 true、削除する場合 false
+	 */
+	private void updateRpcOverride(RpcOverride override, boolean add) {
+		synchronized (overridesLock) {
+			overrides = overrides.with(override, add);
 		}
-		return named;
 	}
 	
-	protected final InstanceContainer getInstanceContainer(UUID instanceId) throws InterruptedException {
-		InstanceContainer named = new InstanceContainer();
-		InstanceContainer namedPrev = instances.putIfAbsent(instanceId, named);
-		if(namedPrev != null) {
-			named = namedPrev;
-		}
-		if(!named.isSettled()) {
-			synchronized (named) {
-				if(!named.isSettled()) {
-					named.wait();
-				}
-			}
-		}
-		return named;
-	}
-
-	protected final InstanceContainer tryGetInstanceContainer(String name) {
-		return namedInstances.get(name);
+	protected final InstanceContainer getInstanceContainer(String name) throws InterruptedException {
+		return await(getInstanceContainerAsync(name));
 	}
 	
-	protected final InstanceContainer tryGetInstanceContainer(UUID instanceId) {
-		return instances.get(instanceId);
+	protected final InstanceContainer getInstanceContainer(UUID instanceId) throws InterruptedException {
+		return await(getInstanceContainerAsync(instanceId));
 	}
 	
 	/**
-	 * インスタンスを登録解除します
+	 * 名前付きインスタンスのコンテナを非同期に取得します
 	 * 
 	 * @param name インスタンス名
-	 * @throws InterruptedException 割込例外が発生した場合
+	 * @return 登録された時点で完了する {@link CompletableFuture}
+	 */
+	protected final CompletableFuture<InstanceContainer> getInstanceContainerAsync(String name) {
+		return awaitContainer(name, namedInstances, namedWaiters);
+	}
+	
+	/**
+	 * インスタンスのコンテナを非同期に取得します
+	 * 
+	 * @param instanceId インスタンスID
+	 * @return 登録された時点で完了する {@link CompletableFuture}
+	 */
+	protected final CompletableFuture<InstanceContainer> getInstanceContainerAsync(UUID instanceId) {
+		return awaitContainer(instanceId, instances, instanceWaiters);
+	}
+	
+	/**
+	 * コンテナの登録を待ちます<br>
+	 * 同じキーを待つ呼び出しは 1 つの {@link CompletableFuture} を共有します
+	 * 
+	 * @param key インスタンス名もしくはインスタンスID
+	 * @param containers 登録されたコンテナ
+	 * @param waiters 登録を待っているコンテナ
+	 * @return 登録された時点で完了する {@link CompletableFuture}
+	 */
+	private <K> CompletableFuture<InstanceContainer> awaitContainer(
+			K key,
+			ConcurrentHashMap<K, InstanceContainer> containers,
+			ConcurrentHashMap<K, CompletableFuture<InstanceContainer>> waiters) {
+		InstanceContainer container = containers.get(key);
+		if(container != null) {
+			return CompletableFuture.completedFuture(container);
+		}
+		CompletableFuture<InstanceContainer> future = waiters.computeIfAbsent(key, k -> new CompletableFuture<>());
+		// 待機を登録する前に登録されていた場合は自身で完了する
+		container = containers.get(key);
+		if(container != null) {
+			future.complete(container);
+			waiters.remove(key, future);
+		} else if(isClosed) {
+			future.completeExceptionally(new IllegalStateException("CommandRunner has been closed."));
+		}
+		return future;
+	}
+	
+	/**
+	 * コンテナの登録を待ち、割り込み以外の例外は非検査例外として送出します
+	 * 
+	 * @param future 登録された時点で完了する {@link CompletableFuture}
+	 * @return コンテナ
+	 * @throws InterruptedException 割込例外が発生した場合
+	 */
+	private static InstanceContainer await(CompletableFuture<InstanceContainer> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw (RuntimeException)e.getCause();
+		}
+	}
+	
+	/**
+	 * 登録を待っている全ての呼び出しを例外的に完了します
+	 */
+	private void failWaiters() {
+		IllegalStateException cause = new IllegalStateException("CommandRunner has been closed.");
+		for(CompletableFuture<InstanceContainer> future: namedWaiters.values()) {
+			future.completeExceptionally(cause);
+		}
+		for(CompletableFuture<InstanceContainer> future: instanceWaiters.values()) {
+			future.completeExceptionally(cause);
+		}
+	}
+
+	protected final InstanceContainer tryGetInstanceContainer(String name) {
+		return namedInstances.get(name);
+	}
+	
+	protected final InstanceContainer tryGetInstanceContainer(UUID instanceId) {
+		return instances.get(instanceId);
+	}
+	
+	/**
+	 * 名前を付けずにインスタンスをリモートに渡します<br>
+	 * 登録に必要な情報を {@link Reference} に含めるため、登録の応答を待ちません。
+	 * 既に同じインターフェイスとして渡しているインスタンスはインスタンスIDを再利用します<br>
+	 * 渡す度に送信世代を進めるため、リモートがこれより前に送った登録解除は無視されます
+	 * 
+	 * @param object インスタンス
+	 * @param iface リモートに公開するインターフェイス
+	 * @return {@link Reference}
+	 */
+	private Reference export(Object object, Class<?> iface) {
+		Reference ref = exportTable.lookup(object, iface);
+		if(ref != null) {
+			UUID instanceId = ref.getInstanceId();
+			InstanceContainer container = instances.get(instanceId);
+			if(container != null) {
+				// 登録解除やリースの期限切れと競合しないよう、登録の確認と送信世代の更新をコンテナで同期して行う
+				synchronized (container) {
+					if(instances.get(instanceId) == container) {
+						long leaseNanos = this.leaseNanos;
+						container.lease(leaseNanos);
+						return new Reference(instanceId, ref.getInterfaces(), ref.getMethodBases(), ref.getMethodFingerprints(), container.nextExportGeneration(), leaseNanos);
+					}
+				}
+			}
+		}
+		UUID instanceId = UUID.randomUUID();
+		Class<?>[] interfaces = new Class<?>[] {iface};
+		putInstance(null, instanceId, interfaces, object);
+		InstanceContainer container = instances.get(instanceId);
+		long leaseNanos = this.leaseNanos;
+		long generation;
+		synchronized (container) {
+			container.lease(leaseNanos);
+			generation = container.nextExportGeneration();
+		}
+		ref = new Reference(instanceId, interfaces, methodTable.export(interfaces), MethodTable.fingerprintsOf(interfaces), generation, leaseNanos);
+		exportTable.put(object, ref);
+		return ref;
+	}
+	
+	/**
+	 * {@link Reference} に含まれる情報でリモートのインスタンスを登録し、プロクシを取得します<br>
+	 * 既に登録されている場合は受け取った送信世代を記録します。
+	 * プロクシは {@link ProxyFinalizer} と同じロックの中で取得するため、返値を保持している間は登録解除されません
+	 * 
+	 * @param ref {@link Reference}
+	 * @return プロクシ。登録に必要な情報を含まない {@link Reference} の場合は <code>null</code>
+	 */
+	private Object importReference(Reference ref) {
+		Class<?>[] interfaces = ref.getInterfaces();
+		if(interfaces == null) {
+			return null;
+		}
+		UUID instanceId = ref.getInstanceId();
+		// 受信スレッドと応答を待つスレッド、ProxyFinalizer が同時に登録・登録解除しないよう同期する
+		synchronized (instances) {
+			InstanceContainer container = instances.get(instanceId);
+			if(container == null) {
+				methodTable.importInterfaces(interfaces, ref.getMethodBases(), ref.getMethodFingerprints());
+				putInstance(ANONYMOUS_INSTANCE_HEADER + instanceId, instanceId, interfaces, new LazyProxy());
+				container = instances.get(instanceId);
+			}
+			Dynamic dynamic = container.getDynamic();
+			if(dynamic instanceof LazyProxy) {
+				leaseKeeper.wakeBy(((LazyProxy)dynamic).observe(ref.getGeneration(), ref.getLeaseNanos()));
+			}
+			return container.getInstance();
+		}
+	}
+	
+	/**
+	 * インスタンスを登録解除します
+	 * 
+	 * @param name インスタンス名
+	 * @throws InterruptedException 割込例外が発生した場合
 	 */
 	protected final void removeInstance(String name) throws InterruptedException {
 		InstanceContainer named = namedInstances.get(name);
@@ -399,7 +1132,7 @@ public class CommandRunner implements AutoCloseable {
 		
 		InstanceContainer container = instances.remove(instanceId);
 		if(container != null) {
-			namedInstances.remove(container.getName());
+			namedInstances.remove(container.getName(), container);
 		}
 	}
 	
@@ -416,21 +1149,17 @@ public class CommandRunner implements AutoCloseable {
 			name = ANONYMOUS_INSTANCE_HEADER + instanceId;
 		}
 		
-		InstanceContainer containerNew = new InstanceContainer(name, instanceId, interfaces, object);
-		InstanceContainer containerPrev;
-		containerPrev = namedInstances.putIfAbsent(name, containerNew);
-		if(containerPrev != null) {
-			synchronized (containerPrev) {
-				containerPrev.set(name, instanceId, interfaces, object);
-				containerPrev.notifyAll();
-			}
+		// 登録後に待機中の呼び出しを完了する。待機の登録と競合した場合は待機側が完了する
+		InstanceContainer container = new InstanceContainer(name, instanceId, interfaces, object);
+		namedInstances.put(name, container);
+		instances.put(instanceId, container);
+		CompletableFuture<InstanceContainer> named = namedWaiters.remove(name);
+		if(named != null) {
+			named.complete(container);
 		}
-		containerPrev = instances.putIfAbsent(instanceId, containerNew);
-		if(containerPrev != null) {
-			synchronized (containerPrev) {
-				containerPrev.set(name, instanceId, interfaces, object);
-				containerPrev.notifyAll();
-			}
+		CompletableFuture<InstanceContainer> waiter = instanceWaiters.remove(instanceId);
+		if(waiter != null) {
+			waiter.complete(container);
 		}
 		return name;
 	}
@@ -452,6 +1181,10 @@ public class CommandRunner implements AutoCloseable {
 			return processAddRpcOverride((CommandRequest.AddRpcOverride)req);
 		} else if(req instanceof CommandRequest.RemoveRpcOverride) {
 			return processRemoveRpcOverride((CommandRequest.RemoveRpcOverride)req);
+		} else if(req instanceof CommandRequest.ArrayRead) {
+			return processArrayRead((CommandRequest.ArrayRead)req);
+		} else if(req instanceof CommandRequest.ArrayWrite) {
+			return processArrayWrite((CommandRequest.ArrayWrite)req);
 		} else if(req instanceof CommandRequest.Exit) {
 			return processExit((CommandRequest.Exit)req);
 		} else {
@@ -463,10 +1196,17 @@ public class CommandRunner implements AutoCloseable {
 		Class<?>[] interfaces = req.getInterfaces();
 		UUID instanceId = req.getInstanceId();
 		String name = req.getName();
-		Object object = 
-			name.startsWith(ANONYMOUS_INSTANCE_HEADER) ?
-				new LazyProxy() :
-				newProxy(interfaces, instanceId);
+		Object object;
+		if(name.startsWith(ANONYMOUS_INSTANCE_HEADER)) {
+			LazyProxy lazyProxy = new LazyProxy();
+			leaseKeeper.wakeBy(lazyProxy.observe(0L, req.getLeaseNanos()));
+			object = lazyProxy;
+		} else {
+			object = newProxy(interfaces, instanceId);
+		}
+		
+		// メソッドIDを取り込み
+		methodTable.importInterfaces(interfaces, req.getMethodBases(), req.getMethodFingerprints());
 				
 		// インスタンスを登録
 		putInstance(name, instanceId, interfaces, object);
@@ -474,37 +1214,115 @@ public class CommandRunner implements AutoCloseable {
 		return new CommandResponse.Register(req.getMessageId());
 	}
 	
+	/**
+	 * 複数のインスタンスの登録解除の要求コマンドを処理します<br>
+	 * 応答はありません
+	 * 
+	 * @param req 要求コマンド
+	 */
+	protected void processDeregisterMany(CommandRequest.DeregisterMany req) {
+		UUID[] instanceIds = req.getInstanceIds();
+		long[] generations = req.getGenerations();
+		for(int i=0; i<instanceIds.length; i++) {
+			UUID instanceId = instanceIds[i];
+			InstanceContainer container = instances.get(instanceId);
+			if(container == null) {
+				exportTable.remove(instanceId);
+				continue;
+			}
+			synchronized (container) {
+				// 要求の送信後に再び渡している場合、リモートはそれを受け取って登録し直すため維持する
+				if(generations[i] < container.getExportGeneration() || !instances.remove(instanceId, container)) {
+					continue;
+				}
+			}
+			exportTable.remove(instanceId);
+			namedInstances.remove(container.getName(), container);
+		}
+	}
+	
+	/**
+	 * リースの更新の要求コマンドを処理します<br>
+	 * 応答はありません
+	 * 
+	 * @param req 要求コマンド
+	 */
+	protected void processRenewLeases(CommandRequest.RenewLeases req) {
+		long now = System.nanoTime();
+		for(UUID instanceId: req.getInstanceIds()) {
+			InstanceContainer container = instances.get(instanceId);
+			if(container != null && container.isLeased()) {
+				// リモートに伝えた期間で延長する
+				container.setLeaseDeadline(now + container.getLeaseDuration());
+			}
+		}
+	}
+	
 	protected CommandResponse.Deregister processDeregister(CommandRequest.Deregister req) {
+		exportTable.remove(req.getInstanceId());
 		InstanceContainer container = instances.remove(req.getInstanceId());
 		if(container != null) {
-			namedInstances.remove(container.getName());
+			namedInstances.remove(container.getName(), container);
 		}
 		
 		return new CommandResponse.Deregister(req.getMessageId());
 	}
 	
 	protected CommandResponse.Invoke processInvoke(CommandRequest.Invoke req) {
-		UUID messageId = req.getMessageId();
+		return processInvokeAsync(req).join();
+	}
+	
+	/**
+	 * メソッド呼び出しの要求コマンドを処理します<br>
+	 * 実行したメソッドが {@link CompletionStage} を返す場合、スレッドをブロックせずにその完了後に応答が完了します
+	 * 
+	 * @param req 要求コマンド
+	 * @return 応答コマンドを取得する非同期計算の結果。例外的に完了することはありません
+	 */
+	protected CompletableFuture<CommandResponse.Invoke> processInvokeAsync(CommandRequest.Invoke req) {
+		long messageId = req.getMessageId();
 		UUID instanceId = req.getInstanceId();
 		
+		// 取り消された呼び出しと期限を過ぎた呼び出しは実行しない
+		Invocation invocation = invocations.get(messageId);
+		if(invocation != null && !invocation.start()) {
+			return CompletableFuture.completedFuture(new CommandResponse.Invoke(messageId, ObjectType.InvocationException,
+				new RpcTimeoutException("Invocation was cancelled or its deadline has passed")));
+		}
+		
 		try {
 			Object[] args = req.getArguments();
-			Class<?> cls = req.getDeclaringClass();
-			Method method = cls.getDeclaredMethod(req.getMethodName(), req.getParameterTypes());
+			Method method;
+			if(req.getMethodId() >= 0) {
+				method = methodTable.resolve(req.getMethodId());
+			} else {
+				Class<?> cls = req.getDeclaringClass();
+				method = cls.getDeclaredMethod(req.getMethodName(), req.getParameterTypes());
+			}
+			
+			InvocationPlan plan = planOf(method);
 			
 			// 引数のリファレンス解除
-			int paramCount = method.getParameterCount();
-			int refParamCount = 0;
+			int paramCount = plan.getParameterCount();
 			Object[] reqArgs = new Object[paramCount];
+			Object[] snapshots = null;
 			for(int i=0; i<paramCount; i++) {
 				Object arg = args[i];
 				if(arg instanceof Reference) {
 					Reference ref = (Reference)arg;
 					reqArgs[i] = tryGet(ref.getInstanceId());
+				} else if(arg instanceof ArrayViewReference) {
+					reqArgs[i] = new RemoteArrayView<>((ArrayViewReference)arg, stream, viewPageSize, viewCachePages);
 				} else if(arg instanceof ReferenceArray) {
 					ReferenceArray ref = (ReferenceArray)arg;
-					reqArgs[i] = ref.getArray();
-					refParamCount++;
+					reqArgs[i] = ref.toArgument(plan.getParameterType(i).getComponentType());
+					// 変更された範囲のみを書き戻すため、実行前の内容を保持する
+					if(ref.getKind() == ReferenceArray.KIND_FULL && !req.isOneWay()) {
+						if(snapshots == null) {
+							snapshots = new Object[paramCount];
+						}
+						snapshots[i] = ReferenceArray.snapshot(reqArgs[i]);
+					}
 				} else {
 					reqArgs[i] = arg;
 				}
@@ -512,62 +1330,254 @@ public class CommandRunner implements AutoCloseable {
 			
 			// インスタンス取得
 			Object object = null;
-			if((method.getModifiers() & Modifier.STATIC) == 0) {
-				object = tryGet(instanceId);
+			MethodInvoker invoker;
+			if(!plan.isStatic()) {
+				InstanceContainer container = tryGetInstanceContainer(instanceId);
+				object = container != null ? container.getInstance() : null;
 				if(object == null) {
 					throw new NullPointerException();
 				}
+				invoker = container.getInvoker(method);
+			} else {
+				invoker = MethodInvoker.forStatic(method);
 			}
 
 			// 実行
-			Object result = method.invoke(object, reqArgs);
+			Object result;
+			try {
+				result = invoker.invoke(object, reqArgs);
+			} finally {
+				if(invocation != null) {
+					invocation.finish();
+				}
+			}
+			
+			// 非同期メソッドは完了後に応答する
+			if(result instanceof CompletionStage && plan.isAsyncResult()) {
+				if(invocation != null) {
+					invocation.attach((CompletionStage<?>)result);
+				}
+				CompletableFuture<CommandResponse.Invoke> future = new CompletableFuture<>();
+				Object[] asyncSnapshots = snapshots;
+				((CompletionStage<?>)result).whenComplete((value, t) -> {
+					// 返値のリファレンス化で呼び出しを行うため、完了したスレッドをブロックしない
+					executeCompletion(() -> {
+						if(t != null) {
+							Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+							future.complete(new CommandResponse.Invoke(messageId, ObjectType.InvocationException, cause));
+						} else {
+							future.complete(newInvokeResponse(messageId, plan, args, reqArgs, asyncSnapshots, value));
+						}
+					});
+				});
+				return future;
+			}
+			
+			return CompletableFuture.completedFuture(newInvokeResponse(messageId, plan, args, reqArgs, snapshots, result));
+		} catch (InvocationTargetException e) {
+			return CompletableFuture.completedFuture(new CommandResponse.Invoke(messageId, ObjectType.InvocationException, e.getTargetException()));
+		} catch (Exception e) {
+			return CompletableFuture.completedFuture(new CommandResponse.Invoke(messageId, ObjectType.InternalError, e));
+		}
+	}
+	
+	/**
+	 * メソッド呼び出しの応答コマンドを生成します
+	 * 
+	 * @param messageId メッセージID
+	 * @param plan 実行したメソッドの {@link InvocationPlan}
+	 * @param args 要求コマンドの引数
+	 * @param reqArgs リファレンス解除した引数
+	 * @param snapshots 参照渡しされた配列の実行前の内容。無い場合は <code>null</code>
+	 * @param result 返値。非同期メソッドの場合は完了後の値
+	 * @return 応答コマンド
+	 */
+	private CommandResponse.Invoke newInvokeResponse(long messageId, InvocationPlan plan, Object[] args, Object[] reqArgs, Object[] snapshots, Object result) {
+		try {
+			// ArrayView への書き込みを応答より先に反映する
+			for(Object reqArg: reqArgs) {
+				if(reqArg instanceof RemoteArrayView) {
+					((RemoteArrayView<?>)reqArg).close();
+				}
+			}
 			
 			// 参照渡し引数のリファレンス化
+			int refParamCount = 0;
+			for(Object arg: args) {
+				if(arg instanceof ReferenceArray) {
+					refParamCount++;
+				}
+			}
 			ReferenceArray[] refParams = new ReferenceArray[refParamCount];
-			for(int i=0, ri=0; i<paramCount; i++) {
+			for(int i=0, ri=0; i<args.length; i++) {
 				Object arg = args[i];
 				if(arg instanceof ReferenceArray) {
 					ReferenceArray ref = (ReferenceArray)arg;
-					refParams[ri++] = new ReferenceArray(ref.getParameterIndex(), reqArgs[i]);
+					Object snapshot = snapshots != null ? snapshots[i] : null;
+					// 実行前の内容が分かる配列は変更された範囲のみを書き戻す
+					refParams[ri++] = ref.getKind() == ReferenceArray.KIND_OUTPUT || snapshot != null ?
+						ReferenceArray.diff(ref.getParameterIndex(), snapshot, reqArgs[i]) :
+						new ReferenceArray(ref.getParameterIndex(), reqArgs[i]);
 				}
 			}
 			
 			// 返値のリファレンス化
-			if(result != null &&
-			   method.isAnnotationPresent(RpcResult.class) || 
-			   overrides.contains(RpcOverride.forMethod(method))) {
-				result = new Reference(register(null, result, method.getReturnType()));
+			if(result != null && plan.isReferenceResult()) {
+				result = export(result, plan.getResultType());
+			}
+			
+			// 返値の分割送信
+			if(result != null && plan.isStreamResult()) {
+				result = exportStream(result);
 			}
 			
 			return new CommandResponse.Invoke(messageId, ObjectType.Result, result, refParams);
-		} catch (InvocationTargetException e) {
-			return new CommandResponse.Invoke(messageId, ObjectType.InvocationException, e.getTargetException());
 		} catch (Exception e) {
 			return new CommandResponse.Invoke(messageId, ObjectType.InternalError, e);
 		}
 	}
 	
 	protected CommandResponse.AddRpcOverride processAddRpcOverride(CommandRequest.AddRpcOverride req) {
-		overrides.add(req.getOverride());
+		updateRpcOverride(req.getOverride(), true);
 		return new CommandResponse.AddRpcOverride(req.getMessageId());
 	}
 	
 	protected CommandResponse.RemoveRpcOverride processRemoveRpcOverride(CommandRequest.RemoveRpcOverride req) {
-		overrides.remove(req.getOverride());
+		updateRpcOverride(req.getOverride(), false);
 		return new CommandResponse.RemoveRpcOverride(req.getMessageId());
 	}
 	
-	protected CommandResponse.Exit processExit(CommandRequest.Exit req) {
-		return new CommandResponse.Exit(req.getMessageId());
+	/**
+	 * 実行の取り消しの要求コマンドを処理します<br>
+	 * 実行中のスレッドに割り込むか、実行したメソッドが返した {@link CompletionStage} を取り消します。
+	 * 応答はありません
+	 * 
+	 * @param req 要求コマンド
+	 */
+	protected void processCancel(CommandRequest.Cancel req) {
+		Invocation invocation = invocations.get(req.getTargetMessageId());
+		if(invocation != null) {
+			invocation.cancel();
+		}
 	}
 	
-	private boolean hasAnnotation(Annotation[] annos, Class<? extends Annotation> annotationClass) {
-		for(Annotation anno: annos) {
-			if(annotationClass.isInstance(anno)) {
-				return true;
+	/**
+	 * 一方向呼び出しの要求コマンドを受信した順に実行します<br>
+	 * 実行中の一方向呼び出しがある場合はその完了後に実行します。応答はありません
+	 * 
+	 * @param req 要求コマンド
+	 */
+	private void dispatchOneWay(CommandRequest.Invoke req) {
+		synchronized (oneWays) {
+			boolean running = !oneWays.isEmpty();
+			oneWays.add(req);
+			if(running) {
+				return;
 			}
 		}
-		return false;
+		dispatcher.dispatch(req, new Runnable() {
+			@Override
+			public void run() {
+				CommandRequest.Invoke next = req;
+				while(next != null) {
+					// 例外は応答コマンドに変換済みで、送信先が無いため破棄する
+					processInvokeAsync(next);
+					synchronized (oneWays) {
+						oneWays.poll();
+						next = oneWays.peek();
+					}
+				}
+			}
+		});
+	}
+	
+	/**
+	 * ストリームの要素の送信を許可する要求コマンドを処理します<br>
+	 * 応答はありません
+	 * 
+	 * @param req 要求コマンド
+	 */
+	protected void processStreamCredit(CommandRequest.StreamCredit req) {
+		StreamExport export = exports.get(req.getStreamId());
+		if(export != null) {
+			export.grant(req.getCredit());
+		}
+	}
+	
+	/**
+	 * ストリームの要素を送信する要求コマンドを処理します<br>
+	 * 応答はありません
+	 * 
+	 * @param req 要求コマンド
+	 */
+	protected void processStreamChunk(CommandRequest.StreamChunk req) {
+		// GC された受信側の要素は破棄する。送信の終了は ProxyFinalizer が要求する
+		RemoteIterator.Handle handle = imports.get(req.getStreamId());
+		RemoteIterator<?> it = handle != null ? handle.get() : null;
+		if(it != null) {
+			it.received(req);
+		}
+	}
+	
+	/**
+	 * ストリームの受信を終了する要求コマンドを処理します<br>
+	 * 応答はありません
+	 * 
+	 * @param req 要求コマンド
+	 */
+	protected void processStreamClose(CommandRequest.StreamClose req) {
+		StreamExport export = exports.get(req.getStreamId());
+		if(export != null) {
+			export.close();
+		}
+	}
+	
+	/**
+	 * {@link ArrayView} の内容を読み込む要求コマンドを処理します
+	 * 
+	 * @param req 要求コマンド
+	 * @return 応答コマンド
+	 */
+	@SuppressWarnings("unchecked")
+	protected CommandResponse.ArrayRead processArrayRead(CommandRequest.ArrayRead req) {
+		ArrayView<Object> view = (ArrayView<Object>)views.get(req.getViewId());
+		if(view == null) {
+			return new CommandResponse.ArrayRead(req.getMessageId(), null, new IllegalStateException("ArrayView is no longer available"));
+		}
+		try {
+			Object data = Array.newInstance(view.getComponentType(), req.getLength());
+			view.get(req.getIndex(), data, 0, req.getLength());
+			return new CommandResponse.ArrayRead(req.getMessageId(), data, null);
+		} catch (RuntimeException e) {
+			return new CommandResponse.ArrayRead(req.getMessageId(), null, e);
+		}
+	}
+	
+	/**
+	 * {@link ArrayView} に書き込む要求コマンドを処理します
+	 * 
+	 * @param req 要求コマンド
+	 * @return 応答コマンド
+	 */
+	@SuppressWarnings("unchecked")
+	protected CommandResponse.ArrayWrite processArrayWrite(CommandRequest.ArrayWrite req) {
+		ArrayView<Object> view = (ArrayView<Object>)views.get(req.getViewId());
+		if(view == null) {
+			return new CommandResponse.ArrayWrite(req.getMessageId(), new IllegalStateException("ArrayView is no longer available"));
+		}
+		try {
+			Object data = req.getData();
+			view.set(req.getIndex(), data, 0, Array.getLength(data));
+			return new CommandResponse.ArrayWrite(req.getMessageId(), null);
+		} catch (RuntimeException e) {
+			return new CommandResponse.ArrayWrite(req.getMessageId(), e);
+		}
+	}
+	
+	protected CommandResponse.Exit processExit(CommandRequest.Exit req) {
+		// 応答がリモートに届く前に終了済みとする
+		isClosed = true;
+		return new CommandResponse.Exit(req.getMessageId());
 	}
 	
 	/**
@@ -581,22 +1591,200 @@ public class CommandRunner implements AutoCloseable {
 		public Void call() throws Exception {
 			Thread.currentThread().setName(name + "CommandRunner-CommandPump");
 			
+			try {
+				pump();
+			} finally {
+				// 以降はストリームの要素を送受信できない
+				closeStreams();
+				failWaiters();
+			}
+			return null;
+		}
+		
+		/**
+		 * 終了要求コマンドを受信するまでコマンドを実行します
+		 * 
+		 * @throws InterruptedException 割込例外が発生した場合
+		 */
+		private void pump() throws InterruptedException {
 			while(true) {
 				CommandRequest req = stream.take();
+				
+				// 取り消しは実行中の呼び出しに即座に伝える
+				if(req instanceof CommandRequest.Cancel) {
+					processCancel((CommandRequest.Cancel)req);
+					continue;
+				}
+				
+				// 応答の無い登録解除とリースの更新
+				if(req instanceof CommandRequest.DeregisterMany) {
+					processDeregisterMany((CommandRequest.DeregisterMany)req);
+					continue;
+				}
+				if(req instanceof CommandRequest.RenewLeases) {
+					processRenewLeases((CommandRequest.RenewLeases)req);
+					continue;
+				}
+				
+				// ストリームの制御はブロックしないため受信スレッドで処理する
+				if(req instanceof CommandRequest.StreamChunk) {
+					processStreamChunk((CommandRequest.StreamChunk)req);
+					continue;
+				}
+				if(req instanceof CommandRequest.StreamCredit) {
+					processStreamCredit((CommandRequest.StreamCredit)req);
+					continue;
+				}
+				if(req instanceof CommandRequest.StreamClose) {
+					processStreamClose((CommandRequest.StreamClose)req);
+					continue;
+				}
+				
+				// 引数で渡されたインスタンスは、以降のコマンドが参照できるよう受信順に登録する。
+				// 実行までにプロクシが登録解除されないよう、プロクシに置き換えて保持する
+				if(req instanceof CommandRequest.Invoke) {
+					Object[] args = ((CommandRequest.Invoke)req).getArguments();
+					for(int i=0; i<args.length; i++) {
+						if(args[i] instanceof Reference) {
+							Object proxy = importReference((Reference)args[i]);
+							if(proxy != null) {
+								args[i] = proxy;
+							}
+						}
+					}
+				}
+				
+				// 一方向呼び出しは受信順に実行し、応答しない
+				if(req instanceof CommandRequest.Invoke && ((CommandRequest.Invoke)req).isOneWay()) {
+					dispatchOneWay((CommandRequest.Invoke)req);
+					continue;
+				}
+				
+				// メソッド呼び出しは並列に実行し、完了した順に応答する
+				if(req instanceof CommandRequest.Invoke) {
+					// 期限は受信時点から計る
+					long messageId = req.getMessageId();
+					invocations.put(messageId, new Invocation(((CommandRequest.Invoke)req).getTimeoutNanos()));
+					dispatcher.dispatch(req, new Runnable() {
+						@Override
+						public void run() {
+							processInvokeAsync((CommandRequest.Invoke)req).thenAccept(resp -> {
+								invocations.remove(messageId);
+								try {
+									stream.put(resp);
+								} catch (InterruptedException e) {
+									Thread.currentThread().interrupt();
+								}
+							});
+						}
+					});
+					continue;
+				}
+				
+				// 登録等は受信順に実行する
 				CommandResponse resp = process(req);
 				stream.put(resp);
 				
 				// 終了要求コマンドで新規送出停止
 				if(resp instanceof CommandResponse.Exit) {
-					CommandRunner.this.closeWithoutCall();
-					return null;
+					dispatcher.shutdown();
+					es.shutdownNow();
+					return;
 				}
 			}
 		}
 	}
 	
 	/**
-	 * プロクシが GC される事を検知して登録解除するスレッド
+	 * リモートから受け付けたメソッド呼び出しの実行状態
+	 */
+	private static class Invocation {
+		/** 期限 ({@link System#nanoTime()} 基準)。期限が無い場合は {@link Long#MAX_VALUE} */
+		private final long deadline;
+		
+		/** 実行中のスレッド */
+		private Thread thread;
+		
+		/** 実行したメソッドが返した {@link CompletionStage} */
+		private CompletionStage<?> stage;
+		
+		/** 取り消された場合 true */
+		private boolean cancelled;
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param timeoutNanos 受信時点からの期限 (ナノ秒)。0 の場合は無制限
+		 */
+		public Invocation(long timeoutNanos) {
+			this.deadline = timeoutNanos > 0L ? System.nanoTime() + timeoutNanos : Long.MAX_VALUE;
+		}
+		
+		/**
+		 * 現在のスレッドで実行を開始します
+		 * 
+		 * @return 実行できる場合 true、取り消されたか期限を過ぎている場合 false
+		 */
+		public synchronized boolean start() {
+			if(cancelled || (deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0L)) {
+				return false;
+			}
+			thread = Thread.currentThread();
+			return true;
+		}
+		
+		/**
+		 * 現在のスレッドでの実行を終了します<br>
+		 * 取り消しによる割り込みが残っている場合は解除します
+		 */
+		public synchronized void finish() {
+			thread = null;
+			if(cancelled) {
+				Thread.interrupted();
+			}
+		}
+		
+		/**
+		 * 実行したメソッドが返した {@link CompletionStage} を関連付けます
+		 * 
+		 * @param stage {@link CompletionStage}
+		 */
+		public synchronized void attach(CompletionStage<?> stage) {
+			this.stage = stage;
+			if(cancelled) {
+				cancelStage();
+			}
+		}
+		
+		/**
+		 * 実行を取り消します
+		 */
+		public synchronized void cancel() {
+			cancelled = true;
+			if(thread != null) {
+				thread.interrupt();
+			}
+			if(stage != null) {
+				cancelStage();
+			}
+		}
+		
+		/**
+		 * 関連付けられた {@link CompletionStage} を取り消します
+		 */
+		private void cancelStage() {
+			try {
+				stage.toCompletableFuture().cancel(true);
+			} catch (UnsupportedOperationException e) {
+				// CompletableFuture に変換できない CompletionStage は取り消せない
+			}
+		}
+	}
+	
+	/**
+	 * プロクシが GC される事を検知して登録解除するスレッド<br>
+	 * キューに溜まったプロクシをまとめて、応答を待たずに登録解除します。
+	 * 閉じられずに GC された {@link RemoteIterator} は、送信側に送信の終了を要求します
 	 */
 	private class ProxyFinalizer implements Callable<Void> {
 		/**
@@ -606,41 +1794,354 @@ public class CommandRunner implements AutoCloseable {
 		public Void call() throws Exception {
 			Thread.currentThread().setName(name + "CommandRunner-ProxyFinalizer");
 			
+			Map<UUID, Long> instanceIds = new LinkedHashMap<>();
 			try {
 				while(true) {
 					java.lang.ref.Reference<?> r = refQueue.remove();
-					if(r instanceof WeakProxyReference) {
-						WeakProxyReference wpr = (WeakProxyReference)r;
-						removeInstance(wpr.getInstanceId());
-					}
+					do {
+						if(r instanceof WeakProxyReference) {
+							UUID instanceId = ((WeakProxyReference)r).getInstanceId();
+							InstanceContainer container;
+							long generation = Long.MAX_VALUE;
+							synchronized (instances) {
+								// プロクシが作り直されている場合は登録を維持する
+								container = instances.get(instanceId);
+								Dynamic dynamic = container != null ? container.getDynamic() : null;
+								if(dynamic instanceof LazyProxy) {
+									LazyProxy lazyProxy = (LazyProxy)dynamic;
+									if(!lazyProxy.release((WeakProxyReference)r)) {
+										continue;
+									}
+									generation = lazyProxy.getGeneration();
+								}
+								instances.remove(instanceId);
+							}
+							if(container != null) {
+								namedInstances.remove(container.getName(), container);
+							}
+							instanceIds.put(instanceId, generation);
+							if(instanceIds.size() >= DEREGISTER_BATCH_SIZE) {
+								deregisterMany(instanceIds);
+							}
+						} else if(r instanceof RemoteIterator.Handle) {
+							closeStream((RemoteIterator.Handle)r);
+						}
+					} while((r = refQueue.poll()) != null);
+					deregisterMany(instanceIds);
 				}
 			} catch (InterruptedException e) {
 				return null;
 			}
 		}
+		
+		/**
+		 * 閉じられずに GC された {@link RemoteIterator} の送信の終了を要求します<br>
+		 * 最後の要素を受信済みの場合は何もしません
+		 * 
+		 * @param handle GC された {@link RemoteIterator} の弱参照
+		 */
+		private void closeStream(RemoteIterator.Handle handle) {
+			long streamId = handle.getStreamId();
+			if(!imports.remove(streamId, handle)) {
+				return;
+			}
+			try {
+				stream.post(new CommandRequest.StreamClose(streamId));
+			} catch (RuntimeException e) {
+				// ストリームが終了している場合は送信側も終了している
+			}
+		}
+		
+		/**
+		 * リモートのインスタンスをまとめて登録解除します
+		 * 
+		 * @param instanceIds 登録解除するインスタンスIDと最後に受け取った送信世代。送信後に空になります
+		 */
+		private void deregisterMany(Map<UUID, Long> instanceIds) {
+			if(instanceIds.isEmpty()) {
+				return;
+			}
+			UUID[] ids = new UUID[instanceIds.size()];
+			long[] generations = new long[ids.length];
+			int i = 0;
+			for(Map.Entry<UUID, Long> entry: instanceIds.entrySet()) {
+				ids[i] = entry.getKey();
+				generations[i] = entry.getValue();
+				i++;
+			}
+			try {
+				stream.post(new CommandRequest.DeregisterMany(ids, generations));
+			} catch (RuntimeException e) {
+				// ストリームが終了している場合はリモートのインスタンスも破棄されている
+			}
+			instanceIds.clear();
+		}
+	}
+	
+	/**
+	 * リースを管理するタスク<br>
+	 * リモートから渡されたインスタンスのリースをまとめて更新し、
+	 * リモートに渡したインスタンスのうち期限までに更新されなかったものを登録解除します。
+	 * 専用のスレッドを持たず、全ての {@link CommandRunner} で共有する {@link #LEASE_SCHEDULER} で実行します
+	 */
+	private class LeaseKeeper implements Runnable {
+		/** 予定している実行 */
+		private ScheduledFuture<?> task;
+		
+		/** 予定している実行の時刻 ({@link System#nanoTime()} 基準) */
+		private volatile long nextRun;
+		
+		/** 実行を予定し直す度に増やす番号 */
+		private long sequence;
+		
+		/** 終了している場合 true */
+		private boolean stopped;
+		
+		/**
+		 * 実行を開始します
+		 */
+		public synchronized void start() {
+			schedule(System.nanoTime() + leaseNanos / 3L);
+		}
+		
+		/**
+		 * 実行を終了します
+		 */
+		public synchronized void stop() {
+			stopped = true;
+			if(task != null) {
+				task.cancel(false);
+			}
+		}
+		
+		/**
+		 * 指定された時刻までに実行されるよう予定し直します
+		 * 
+		 * @param time 時刻 ({@link System#nanoTime()} 基準)
+		 */
+		public void wakeBy(long time) {
+			if(time - nextRun >= 0L) {
+				return;
+			}
+			synchronized (this) {
+				if(!stopped && time - nextRun < 0L) {
+					schedule(time);
+				}
+			}
+		}
+		
+		/**
+		 * 実行を予定します。呼び出し元は自身で同期しなければなりません
+		 * 
+		 * @param time 時刻 ({@link System#nanoTime()} 基準)
+		 */
+		private void schedule(long time) {
+			if(task != null) {
+				task.cancel(false);
+			}
+			sequence++;
+			nextRun = time;
+			task = LEASE_SCHEDULER.schedule(this, time - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+		
+		/**
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			long now = System.nanoTime();
+			long next = now + leaseNanos / 3L;
+			long sequence;
+			synchronized (this) {
+				if(stopped) {
+					return;
+				}
+				// 実行中に更新の時刻が早いインスタンスを受け取った場合は wakeBy で予定し直される
+				nextRun = next;
+				sequence = this.sequence;
+			}
+			try {
+				next = renewLeases(now, next);
+				expireLeases();
+			} finally {
+				synchronized (this) {
+					if(!stopped && (this.sequence == sequence || next - nextRun < 0L)) {
+						schedule(next);
+					}
+				}
+			}
+		}
+		
+		/**
+		 * リモートから渡されたインスタンスのうち、更新の時刻を過ぎたもののリースをまとめて更新します
+		 * 
+		 * @param now 現在の時刻 ({@link System#nanoTime()} 基準)
+		 * @param next 次に実行する時刻 ({@link System#nanoTime()} 基準)
+		 * @return 次に更新するリースがある場合は、その時刻と next のうち早い方
+		 */
+		private long renewLeases(long now, long next) {
+			List<UUID> instanceIds = new ArrayList<>();
+			for(InstanceContainer container: instances.values()) {
+				Dynamic dynamic = container.getDynamic();
+				if(dynamic instanceof LazyProxy) {
+					LazyProxy lazyProxy = (LazyProxy)dynamic;
+					if(lazyProxy.isReleased()) {
+						continue;
+					}
+					if(lazyProxy.renewIfDue(now)) {
+						instanceIds.add(container.getId());
+					}
+					long renewAt = lazyProxy.getRenewAt();
+					if(renewAt - next < 0L) {
+						next = renewAt;
+					}
+				}
+			}
+			try {
+				for(int i=0; i<instanceIds.size(); i+=RENEW_BATCH_SIZE) {
+					List<UUID> batch = instanceIds.subList(i, Math.min(i + RENEW_BATCH_SIZE, instanceIds.size()));
+					stream.post(new CommandRequest.RenewLeases(batch.toArray(new UUID[batch.size()])));
+				}
+			} catch (RuntimeException e) {
+				// ストリームが終了している場合はリモートのインスタンスも破棄されている
+			}
+			return next;
+		}
+		
+		/**
+		 * リモートに渡したインスタンスのうち、期限までにリースが更新されなかったものを登録解除します
+		 */
+		private void expireLeases() {
+			long now = System.nanoTime();
+			for(InstanceContainer container: instances.values()) {
+				UUID instanceId = container.getId();
+				// 同時に再び渡されてリースが延長されていないことをコンテナで同期して確認する
+				synchronized (container) {
+					if(!container.isLeased() || container.getLeaseDeadline() - now > 0L || !instances.remove(instanceId, container)) {
+						continue;
+					}
+				}
+				namedInstances.remove(container.getName(), container);
+				exportTable.remove(instanceId);
+				expiredLeases.incrementAndGet();
+			}
+		}
 	}
 	
 	private class LazyProxy implements Dynamic {
 		/** プロクシインスタンスへの弱参照 */
 		private WeakProxyReference proxyRef = null;
+		
+		/** 登録解除が決まっている場合 true */
+		private boolean released = false;
+		
+		/** 最後に受け取った送信世代 */
+		private long generation = 0L;
+		
+		/** 渡した側のリースの期間 (ナノ秒)。0 の場合は自身のリースの期間を使用します */
+		private long remoteLeaseNanos = 0L;
+		
+		/** 次にリースを更新する時刻 ({@link System#nanoTime()} 基準) */
+		private long renewAt;
 
 		/**
+		 * プロクシが GC された後に再び渡された場合はプロクシを作り直します
+		 * 
 		 * @see com.xxuz.piclane.jdrpc.InstanceContainer.Dynamic#get(com.xxuz.piclane.jdrpc.InstanceContainer)
 		 */
 		@Override
-		public Object get(InstanceContainer container) {
-			Object proxy;
-			WeakProxyReference proxyRef = this.proxyRef;
-			if(proxyRef == null) {
+		public synchronized Object get(InstanceContainer container) {
+			Object proxy = proxyRef != null ? proxyRef.get() : null;
+			if(proxy == null && !released) {
 				Class<?>[] interfaces = container.getInterfaces();
 				UUID instanceId = container.getId();
 				proxy = newProxy(interfaces, instanceId);
-				proxyRef = this.proxyRef = new WeakProxyReference(instanceId, proxy, refQueue);
-			} else {
-				proxy = proxyRef.get();
+				proxyRef = new WeakProxyReference(instanceId, proxy, refQueue);
 			}
 			return proxy;
 		}
+		
+		/**
+		 * GC されたプロクシの登録解除を確定します
+		 * 
+		 * @param r GC されたプロクシの弱参照
+		 * @return 登録解除する場合 true、プロクシが作り直されている場合 false
+		 */
+		public synchronized boolean release(WeakProxyReference r) {
+			if(proxyRef != r) {
+				return false;
+			}
+			released = true;
+			return true;
+		}
+		
+		/**
+		 * 登録解除が決まっているかどうかを取得します
+		 * 
+		 * @return 登録解除が決まっている場合 true
+		 */
+		public synchronized boolean isReleased() {
+			return released;
+		}
+		
+		/**
+		 * 受け取った {@link Reference} の送信世代とリースの期間を記録します<br>
+		 * 応答と引数は順不同に処理されるため、最も新しい送信世代を保持します。
+		 * 渡した側は送信時にリースを延長しているため、次の更新は今から期間の 1/3 後とします
+		 * 
+		 * @param generation 送信世代
+		 * @param leaseNanos 渡した側のリースの期間 (ナノ秒)。不明な場合は 0
+		 * @return 次にリースを更新する時刻 ({@link System#nanoTime()} 基準)
+		 */
+		public synchronized long observe(long generation, long leaseNanos) {
+			this.generation = Math.max(this.generation, generation);
+			if(leaseNanos > 0L) {
+				this.remoteLeaseNanos = leaseNanos;
+			}
+			this.renewAt = System.nanoTime() + renewalNanos();
+			return renewAt;
+		}
+		
+		/**
+		 * 更新の時刻を過ぎている場合、次の更新の時刻を進めます
+		 * 
+		 * @param now 現在の時刻 ({@link System#nanoTime()} 基準)
+		 * @return リースを更新する場合 true
+		 */
+		public synchronized boolean renewIfDue(long now) {
+			if(released || renewAt - now > 0L) {
+				return false;
+			}
+			renewAt = now + renewalNanos();
+			return true;
+		}
+		
+		/**
+		 * 次にリースを更新する時刻を取得します
+		 * 
+		 * @return 次にリースを更新する時刻 ({@link System#nanoTime()} 基準)
+		 */
+		public synchronized long getRenewAt() {
+			return renewAt;
+		}
+		
+		/**
+		 * リースを更新する間隔を取得します
+		 * 
+		 * @return 渡した側のリースの期間の 1/3 (ナノ秒)
+		 */
+		private long renewalNanos() {
+			return (remoteLeaseNanos > 0L ? remoteLeaseNanos : leaseNanos) / 3L;
+		}
+		
+		/**
+		 * 最後に受け取った送信世代を取得します
+		 * 
+		 * @return 送信世代
+		 */
+		public synchronized long getGeneration() {
+			return generation;
+		}
 	}
 	
 	/**
@@ -672,29 +2173,60 @@ public class CommandRunner implements AutoCloseable {
 	}
 	
 	private Object newProxy(Class<?>[] interfaces, UUID instanceId) {
+		// 生成されたスタブクラスがあればそれを使う
+		if(interfaces.length == 1) {
+			Object stub = AbstractRpcStub.newStub(interfaces[0], this, instanceId);
+			if(stub != null) {
+				return stub;
+			}
+		}
+		
 		return Proxy.newProxyInstance(
 			Thread.currentThread().getContextClassLoader(), 
 			interfaces,
 			new InvocationHandler() {
 				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-					try {
-						// リモートでメソッド実行
-						return CommandRunner.this.invoke(instanceId, method, args);
-					} catch (InvocationTargetException e) {
-						Class<?> declaringClass = method.getDeclaringClass();
-						
-						Throwable t = e.getTargetException();
-						StackTraceElement[] ts1 = t.getStackTrace();
-						StackTraceElement[] ts2 = Thread.currentThread().getStackTrace();
-						StackTraceElement[] ts = new StackTraceElement[ts1.length + ts2.length - 1];
-						System.arraycopy(ts1, 0, ts, 0, ts1.length);
-						ts[ts1.length + 0] = new StackTraceElement(".", "........................ RPC ..........................", null, 0);
-						ts[ts1.length + 1] = new StackTraceElement(declaringClass.getName(), method.getName(), null, -1);
-						System.arraycopy(ts2, 3, ts, ts1.length + 2, ts2.length - 3);
-						t.setStackTrace(ts);
-						throw t;
-					}
+					return invokeProxy(instanceId, planOf(method), args);
 				};
 			});
 	}
+	
+	/**
+	 * プロクシもしくはスタブクラスからリモートのメソッドを実行します<br>
+	 * リモートで発生した例外には、呼び出し元のスタックトレースを連結して送出します<br>
+	 * 呼び出し毎に {@link InvocationPlan} を 1 度だけ取得し、以降の処理に引き渡します
+	 * 
+	 * @param instanceId インスタンスID
+	 * @param plan 実行するメソッドの {@link InvocationPlan}
+	 * @param args 引数
+	 * @return 返値
+	 * @throws Throwable リモートで発生した例外
+	 */
+	Object invokeProxy(UUID instanceId, InvocationPlan plan, Object[] args) throws Throwable {
+		Method method = plan.getMethod();
+		try {
+			// 非同期メソッドは応答を待たずに返す
+			if(plan.isAsyncInvocation()) {
+				return invokeAsync(instanceId, plan, args);
+			}
+			
+			// リモートでメソッド実行
+			return invoke(instanceId, plan, args);
+		} catch (InvocationTargetException e) {
+			Class<?> declaringClass = method.getDeclaringClass();
+			
+			// このメソッド、プロクシ (もしくはスタブクラス) のフレームを除いた呼び出し元のスタックトレース
+			Throwable t = e.getTargetException();
+			StackTraceElement[] ts1 = t.getStackTrace();
+			StackTraceElement[] ts2 = Thread.currentThread().getStackTrace();
+			int skip = Math.min(4, ts2.length);
+			StackTraceElement[] ts = new StackTraceElement[ts1.length + 2 + ts2.length - skip];
+			System.arraycopy(ts1, 0, ts, 0, ts1.length);
+			ts[ts1.length + 0] = new StackTraceElement(".", "........................ RPC ..........................", null, 0);
+			ts[ts1.length + 1] = new StackTraceElement(declaringClass.getName(), method.getName(), null, -1);
+			System.arraycopy(ts2, skip, ts, ts1.length + 2, ts2.length - skip);
+			t.setStackTrace(ts);
+			throw t;
+		}
+	}
 }
@@ -1,6 +1,8 @@
 package com.xxuz.piclane.jdrpc;
 
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 
@@ -39,17 +41,69 @@ public interface CommandStream extends AutoCloseable {
 	 * @param cmd {@link CommandRequest}
 	 * @return {@link CommandResponse}
 	 * @throws InterruptedException 割込例外が発生した場合
+	 * @throws IllegalStateException 応答を受け取る前にストリームが終了した場合
 	 */
 	public CommandResponse call(CommandRequest cmd) throws InterruptedException;
 	
 	/**
 	 * リモートにコマンドを実行させます<br>
-	 * このメソッドはコマンドのレスポンスが返えるまでブロックしません
+	 * このメソッドはコマンドのレスポンスが返るか、タイムアウトするまでブロックします。
+	 * タイムアウトもしくは割り込みで待機をやめた場合、リモートに実行の取り消しを要求します
+	 * 
+	 * @param cmd {@link CommandRequest}
+	 * @param timeout タイムアウト
+	 * @param unit timeout の単位
+	 * @return {@link CommandResponse}
+	 * @throws InterruptedException 割込例外が発生した場合
+	 * @throws TimeoutException タイムアウトした場合
+	 * @throws IllegalStateException 応答を受け取る前にストリームが終了した場合
+	 */
+	public CommandResponse call(CommandRequest cmd, long timeout, TimeUnit unit) throws InterruptedException, TimeoutException;
+	
+	/**
+	 * リモートにコマンドを実行させます<br>
+	 * このメソッドはコマンドのレスポンスが返えるまでブロックしません<br>
+	 * 応答を待機するスレッドは使用せず、応答を受信したスレッド上で結果が完了します。
+	 * 応答を受け取る前にストリームが終了した場合は {@link IllegalStateException} で例外的に完了します。
+	 * 結果を取り消した場合、リモートに実行の取り消しを要求します
 	 * 
 	 * @param cmd {@link CommandRequest}
 	 * @return {@link CommandResponse} を取得する非同期計算の結果
+	 * @throws IllegalStateException ストリームが既に終了している場合
+	 */
+	public CompletableFuture<CommandResponse> callAsync(CommandRequest cmd);
+	
+	/**
+	 * リモートにコマンドを実行させます<br>
+	 * {@link #callAsync(CommandRequest)} と同様ですが、指定された時間内に応答が無い場合は
+	 * 応答待ちの登録を解除してリモートに実行の取り消しを要求し、{@link TimeoutException} で例外的に完了します
+	 * 
+	 * @param cmd {@link CommandRequest}
+	 * @param timeout 応答を待つ時間
+	 * @param unit timeout の単位
+	 * @return {@link CommandResponse} を取得する非同期計算の結果
+	 * @throws IllegalStateException ストリームが既に終了している場合
+	 */
+	public CompletableFuture<CommandResponse> callAsync(CommandRequest cmd, long timeout, TimeUnit unit);
+	
+	/**
+	 * リモートに応答の無い要求コマンドを送信します<br>
+	 * このメソッドは送信を待機せず、リモートでの実行結果も通知されません
+	 * 
+	 * @param cmd 応答の無い {@link CommandRequest}
+	 */
+	public void post(CommandRequest cmd);
+	
+	/**
+	 * リモートに応答の無い要求コマンドを送信します<br>
+	 * {@link #post(CommandRequest)} と異なり、このメソッドが戻る前に呼び出し元のスレッドでコマンドを符号化します。
+	 * そのため、戻った後に呼び出し元が引数の配列やコレクションを変更しても送信される内容は変わりません。
+	 * 符号化に失敗した場合は例外を送出し、ストリームは影響を受けません
+	 * 
+	 * @param cmd 応答の無い {@link CommandRequest}
+	 * @throws java.io.UncheckedIOException 符号化に失敗した場合
 	 */
-	public Future<CommandResponse> callAsync(CommandRequest cmd);
+	public void postDetached(CommandRequest cmd);
 	
 	/**
 	 * @see java.lang.AutoCloseable#close()
@@ -0,0 +1,93 @@
+package com.xxuz.piclane.jdrpc;
+
+/**
+ * {@link DefaultCommandStream} がフレームを圧縮する方法を表現します<br>
+ * 閾値以上の大きさのフレームを高速な圧縮方式で圧縮して送信します。
+ * 大きな文字列やリストを返すメソッドを、帯域の狭い接続越しに呼び出す場合に有効です<br>
+ * 圧縮を有効にしたストリームは開始時にリモートへ圧縮されたフレームを受信できることを通知し、
+ * 双方が圧縮を有効にしている場合のみ圧縮されたフレームが送信されます。
+ * 圧縮しても小さくならないフレームと、{@link java.nio.ByteBuffer} 等の大きなバイト列を含むフレームは圧縮せずに送信します
+ *
+ * @author piclane
+ */
+public final class CompressionPolicy {
+	/** 既定の圧縮するフレームの最小の大きさ */
+	private static final int DEFAULT_THRESHOLD = 1024;
+
+	/** 圧縮を行わない {@link CompressionPolicy} */
+	private static final CompressionPolicy NONE = new CompressionPolicy(-1);
+
+	/** 既定の {@link CompressionPolicy} */
+	private static final CompressionPolicy DEFAULT = new CompressionPolicy(DEFAULT_THRESHOLD);
+
+	/** 圧縮するフレームの最小の大きさ (バイト)。圧縮を行わない場合は -1 */
+	private final int threshold;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param threshold 圧縮するフレームの最小の大きさ (バイト)。圧縮を行わない場合は -1
+	 */
+	private CompressionPolicy(int threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * 圧縮を行わない {@link CompressionPolicy} を取得します
+	 *
+	 * @return {@link CompressionPolicy}
+	 */
+	public static CompressionPolicy none() {
+		return NONE;
+	}
+
+	/**
+	 * 既定の {@link CompressionPolicy} を取得します<br>
+	 * {@value #DEFAULT_THRESHOLD} バイト以上のフレームを圧縮します
+	 *
+	 * @return {@link CompressionPolicy}
+	 */
+	public static CompressionPolicy defaults() {
+		return DEFAULT;
+	}
+
+	/**
+	 * {@link CompressionPolicy} を生成します
+	 *
+	 * @param threshold 圧縮するフレームの最小の大きさ (バイト)
+	 * @return {@link CompressionPolicy}
+	 * @throws IllegalArgumentException 引数が範囲外の場合
+	 */
+	public static CompressionPolicy of(int threshold) {
+		if(threshold < 0) {
+			throw new IllegalArgumentException("threshold must not be negative: " + threshold);
+		}
+		return new CompressionPolicy(threshold);
+	}
+
+	/**
+	 * 圧縮を行うかどうかを取得します
+	 *
+	 * @return 圧縮を行う場合 true
+	 */
+	public boolean isEnabled() {
+		return threshold >= 0;
+	}
+
+	/**
+	 * 圧縮するフレームの最小の大きさを取得します
+	 *
+	 * @return 圧縮するフレームの最小の大きさ (バイト)。圧縮を行わない場合は -1
+	 */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "CompressionPolicy [threshold=" + threshold + "]";
+	}
+}
@@ -1,17 +1,22 @@
 package com.xxuz.piclane.jdrpc;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.OutputStream;
-import java.util.UUID;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
@@ -21,31 +26,28 @@ import java.util.concurrent.TimeUnit;
  * 
  * @author yohei_hina
  */
-public class DefaultCommandStream implements CommandStream {
+public class DefaultCommandStream extends AbstractCommandStream {
 	/** {@link ExecutorService} */
 	private final ExecutorService es;
 	
-	/** 名前 */
-	private final String name;
-	
 	/** 入力ストリーム */
 	private final InputStream is;
 	
 	/** 出力ストリーム */
 	private final OutputStream os;
 	
-	/** 入力コマンドキュー */
-	private final BlockingQueue<CommandRequest> incomingCommands;
+	/** {@link BatchPolicy} */
+	private final BatchPolicy batchPolicy;
+	
+	/** {@link CompressionPolicy} */
+	private final CompressionPolicy compressionPolicy;
+	
+	/** リモートが圧縮されたフレームを受信できる場合 true */
+	private volatile boolean remoteAcceptsCompression;
 	
 	/** 出力コマンドキュー */
 	private final BlockingQueue<Command> outgoingCommands;
 	
-	/**
-	 * Key:   メッセージID
-	 * Value: {@link ResponseContainer}
-	 */
-	private final ConcurrentHashMap<UUID, ResponseContainer> responseContainers;
-	
 	/**
 	 * コンストラクタ
 	 * 
@@ -66,6 +68,49 @@ public class DefaultCommandStream implements CommandStream {
 	 * @throws IOException 入出力例外が発生した場合
 	 */
 	public DefaultCommandStream(String name, InputStream is, OutputStream os) throws IOException {
+		this(name, is, os, new BinaryCommandCodec());
+	}
+	
+	/**
+	 * コンストラクタ
+	 * 
+	 * @param name 名前
+	 * @param is 入力ストリーム
+	 * @param os 出力ストリーム
+	 * @param codec {@link CommandCodec}
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	public DefaultCommandStream(String name, InputStream is, OutputStream os, CommandCodec codec) throws IOException {
+		this(name, is, os, codec, BatchPolicy.defaults());
+	}
+	
+	/**
+	 * コンストラクタ
+	 * 
+	 * @param name 名前
+	 * @param is 入力ストリーム
+	 * @param os 出力ストリーム
+	 * @param codec {@link CommandCodec}
+	 * @param batchPolicy コマンドをまとめて送信する方法
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	public DefaultCommandStream(String name, InputStream is, OutputStream os, CommandCodec codec, BatchPolicy batchPolicy) throws IOException {
+		this(name, is, os, codec, batchPolicy, CompressionPolicy.none());
+	}
+	
+	/**
+	 * コンストラクタ
+	 * 
+	 * @param name 名前
+	 * @param is 入力ストリーム
+	 * @param os 出力ストリーム
+	 * @param codec {@link CommandCodec}
+	 * @param batchPolicy コマンドをまとめて送信する方法
+	 * @param compressionPolicy フレームを圧縮する方法
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	public DefaultCommandStream(String name, InputStream is, OutputStream os, CommandCodec codec, BatchPolicy batchPolicy, CompressionPolicy compressionPolicy) throws IOException {
+		super(name, codec);
 		this.es = Executors.newCachedThreadPool(new ThreadFactory() {
 			@Override
 			public Thread newThread(Runnable r) {
@@ -74,12 +119,11 @@ public class DefaultCommandStream implements CommandStream {
 				return t;
 			}
 		});
-		this.name = name != null && !name.isEmpty() ? name + "-" : "";
 		this.is = is;
 		this.os = os;
-		this.incomingCommands = new LinkedBlockingQueue<>();
+		this.batchPolicy = batchPolicy;
+		this.compressionPolicy = compressionPolicy;
 		this.outgoingCommands = new LinkedBlockingQueue<>();
-		this.responseContainers = new ConcurrentHashMap<>();
 
 		es.submit(new InputPump());
 		es.submit(new OutputPump());
@@ -93,58 +137,11 @@ public class DefaultCommandStream implements CommandStream {
 	}
 	
 	/**
-	 * @see com.xxuz.piclane.jdrpc.CommandStream#take()
+	 * @see com.xxuz.piclane.jdrpc.AbstractCommandStream#send(com.xxuz.piclane.jdrpc.Command)
 	 */
 	@Override
-	public CommandRequest take() throws InterruptedException {
-		return incomingCommands.take();
-	}
-	
-	/**
-	 * @see com.xxuz.piclane.jdrpc.CommandStream#put(com.xxuz.piclane.jdrpc.CommandResponse)
-	 */
-	@Override
-	public void put(CommandResponse resp) throws InterruptedException {
-		outgoingCommands.put(resp);
-	}
-	
-	/**
-	 * @see com.xxuz.piclane.jdrpc.CommandStream#call(com.xxuz.piclane.jdrpc.CommandRequest)
-	 */
-	public CommandResponse call(CommandRequest cmd) throws InterruptedException {
-		ResponseContainer rc = new ResponseContainer();
-		responseContainers.put(cmd.getMessageId(), rc);
+	protected void send(Command cmd) {
 		outgoingCommands.add(cmd);
-		synchronized (rc) {
-			rc.wait();
-			if(rc.response != null) {
-				return rc.response;
-			} else {
-				throw new IllegalStateException();
-			}
-		}
-	}
-	
-	/**
-	 * @see com.xxuz.piclane.jdrpc.CommandStream#callAsync(com.xxuz.piclane.jdrpc.CommandRequest)
-	 */
-	public Future<CommandResponse> callAsync(CommandRequest cmd) {
-		ResponseContainer rc = new ResponseContainer();
-		responseContainers.put(cmd.getMessageId(), rc);
-		outgoingCommands.add(cmd);
-		return es.submit(new Callable<CommandResponse>() {
-			@Override
-			public CommandResponse call() throws Exception {
-				synchronized (rc) {
-					rc.wait();
-					if(rc.response != null) {
-						return rc.response;
-					} else {
-						throw new IllegalStateException();
-					}
-				}
-			}
-		});
 	}
 	
 	/**
@@ -152,18 +149,11 @@ public class DefaultCommandStream implements CommandStream {
 	 */
 	@Override
 	public void close() throws InterruptedException {
+		closePendingCalls();
 		es.shutdownNow();
 		es.awaitTermination(10L, TimeUnit.SECONDS);
 	}
 	
-	/**
-	 * {@link CommandResponse} の受け渡し時の同期を補助するクラス
-	 */
-	private static class ResponseContainer {
-		/** {@link CommandResponse} */
-		public CommandResponse response = null;
-	}
-	
 	/**
 	 * 入力ストリームからコマンドを取得していくスレッド
 	 */
@@ -175,24 +165,29 @@ public class DefaultCommandStream implements CommandStream {
 		public Void call() throws Exception {
 			Thread.currentThread().setName(name + "CommandStream-InputPump");
 			
-			try(ObjectInputStream ois = new ObjectInputStream(is)) {
+			// まとめて送信されたフレームを 1 回の読み込みで受け取る
+			int bufferSize = Math.max(batchPolicy.getMaxBytes(), 8192);
+			try(DataInputStream dis = new DataInputStream(new BufferedInputStream(is, bufferSize))) {
+				FrameInputStream frame = new FrameInputStream();
+				DataInputStream fis = new FrameDataInputStream(frame);
 				while(true) {
-					Command cmd = (Command)ois.readUnshared();
-					if(cmd instanceof CommandResponse) {
-						ResponseContainer rc = responseContainers.get(cmd.getMessageId());
-						if(rc != null) {
-							synchronized (rc) {
-								rc.response = (CommandResponse)cmd;
-								rc.notifyAll();
-							}
-						}
-					} else if(cmd instanceof CommandRequest.Exit) { // 終了要求コマンドで新規受付停止
-						incomingCommands.add((CommandRequest)cmd);
+					int length = dis.readInt();
+					if(length == FrameCompressor.ACCEPT_COMPRESSION) {
+						remoteAcceptsCompression = true;
+						continue;
+					}
+					if((length & FrameCompressor.COMPRESSED) != 0) {
+						frame.fillCompressed(dis, length & ~FrameCompressor.COMPRESSED);
+					} else {
+						frame.fill(dis, length);
+					}
+					if(!received(codec.decode(fis))) {
 						return null;
-					} else if(cmd instanceof CommandRequest) {
-						incomingCommands.add((CommandRequest)cmd);
 					}
 				}
+			} finally {
+				// 以降の応答は受信できないため応答待ちの呼び出しを失敗させる
+				closePendingCalls();
 			}
 		}
 	}
@@ -208,15 +203,59 @@ public class DefaultCommandStream implements CommandStream {
 		public Void call() throws Exception {
 			Thread.currentThread().setName(name + "CommandStream-OutputPump");
 			
-			try(ObjectOutputStream oos = new ObjectOutputStream(os)) {
+			int maxCommands = batchPolicy.getMaxCommands();
+			int maxBytes = batchPolicy.getMaxBytes();
+			long maxLatencyNanos = batchPolicy.getMaxLatency(TimeUnit.NANOSECONDS);
+			int threshold = compressionPolicy.getThreshold();
+			try(OutputStream out = os) {
+				FrameOutputStream batch = new FrameOutputStream(Math.max(maxBytes, 256));
+				DataOutputStream bos = new FrameDataOutputStream(batch);
+				FrameCompressor compressor = null;
+				if(compressionPolicy.isEnabled()) {
+					// 圧縮されたフレームを受信できることを最初に通知する
+					compressor = new FrameCompressor();
+					bos.writeInt(FrameCompressor.ACCEPT_COMPRESSION);
+					batch.writeTo(out);
+					out.flush();
+					batch.reset();
+				}
 				while(true) {
 					Command cmd = outgoingCommands.take();
-					oos.writeUnshared(cmd);
-					oos.reset();
-					oos.flush();
+					long deadline = System.nanoTime() + maxLatencyNanos;
+					boolean exit = false;
+					batch.reset();
+					for(int count=1; ; count++) {
+						int start = batch.beginFrame();
+						encode(cmd, bos);
+						if(compressor == null || !remoteAcceptsCompression ||
+						   !batch.endCompressedFrame(start, threshold, compressor)) {
+							batch.endFrame(start);
+						}
+						
+						// 終了要求コマンドで新規送出停止
+						if(isExitResponse(cmd)) {
+							exit = true;
+							break;
+						}
+						if(count >= maxCommands || batch.size() >= maxBytes) {
+							break;
+						}
+						
+						// 上限に達するか待ち時間が過ぎるまで後続のコマンドをまとめる
+						if(maxLatencyNanos > 0L) {
+							long remaining = deadline - System.nanoTime();
+							cmd = remaining > 0L ? outgoingCommands.poll(remaining, TimeUnit.NANOSECONDS) : outgoingCommands.poll();
+						} else {
+							cmd = outgoingCommands.poll();
+						}
+						if(cmd == null) {
+							break;
+						}
+					}
+					batch.writeTo(out);
+					out.flush();
 					
-					// 終了要求コマンドで新規送出停止
-					if(cmd instanceof CommandResponse.Exit) {
+					if(exit) {
 						close();
 						return null;
 					}
@@ -224,4 +263,251 @@ public class DefaultCommandStream implements CommandStream {
 			}
 		}
 	}
+	
+	/**
+	 * 長さ付きのフレームを連結して保持する出力ストリーム<br>
+	 * バッファーはバッチ間で再利用されます。
+	 * {@link #writeBulk(ByteBuffer)} に渡されたバイト列はバッファーにコピーせず、出力時に直接書き込みます
+	 */
+	private static class FrameOutputStream extends ByteArrayOutputStream implements BulkDataOutput {
+		/** 連結したバイト列 */
+		private final List<ByteBuffer> segments;
+		
+		/** {@link #segments} の各バイト列を書き込むバッファー上の位置 */
+		private int[] offsets;
+		
+		/** 連結したバイト列の合計の長さ */
+		private int bulkSize;
+		
+		/** 書き込み中のフレームの開始時点の {@link #bulkSize} */
+		private int frameBulkSize;
+		
+		/**
+		 * コンストラクタ
+		 * 
+		 * @param size 初期容量
+		 */
+		public FrameOutputStream(int size) {
+			super(size);
+			this.segments = new ArrayList<>();
+			this.offsets = new int[8];
+		}
+		
+		/**
+		 * @see com.xxuz.piclane.jdrpc.BulkDataOutput#writeBulk(java.nio.ByteBuffer)
+		 */
+		@Override
+		public void writeBulk(ByteBuffer src) {
+			int n = segments.size();
+			if(n == offsets.length) {
+				offsets = Arrays.copyOf(offsets, n * 2);
+			}
+			offsets[n] = count;
+			segments.add(src.duplicate());
+			bulkSize += src.remaining();
+		}
+		
+		/**
+		 * @see java.io.ByteArrayOutputStream#size()
+		 */
+		@Override
+		public synchronized int size() {
+			return count + bulkSize;
+		}
+		
+		/**
+		 * @see java.io.ByteArrayOutputStream#reset()
+		 */
+		@Override
+		public synchronized void reset() {
+			super.reset();
+			segments.clear();
+			bulkSize = 0;
+			frameBulkSize = 0;
+		}
+		
+		/**
+		 * @see java.io.ByteArrayOutputStream#writeTo(java.io.OutputStream)
+		 */
+		@Override
+		public synchronized void writeTo(OutputStream out) throws IOException {
+			int pos = 0;
+			for(int i=0; i<segments.size(); i++) {
+				out.write(buf, pos, offsets[i] - pos);
+				FrameDataOutputStream.write(out, segments.get(i));
+				pos = offsets[i];
+			}
+			out.write(buf, pos, count - pos);
+		}
+		
+		/**
+		 * フレームの長さを書き込む領域を確保します
+		 * 
+		 * @return フレームの開始位置
+		 */
+		public int beginFrame() {
+			int start = count;
+			frameBulkSize = bulkSize;
+			write(0);
+			write(0);
+			write(0);
+			write(0);
+			return start;
+		}
+		
+		/**
+		 * フレームの長さを書き込みます
+		 * 
+		 * @param start {@link #beginFrame()} が返したフレームの開始位置
+		 */
+		public void endFrame(int start) {
+			writeLength(start, count - start - 4 + bulkSize - frameBulkSize);
+		}
+		
+		/**
+		 * フレームを圧縮して長さを書き込みます<br>
+		 * 閾値未満のフレーム、連結したバイト列を含むフレーム、圧縮しても小さくならないフレームは何もしません
+		 * 
+		 * @param start {@link #beginFrame()} が返したフレームの開始位置
+		 * @param threshold 圧縮するフレームの最小の大きさ
+		 * @param compressor {@link FrameCompressor}
+		 * @return 圧縮した場合 true
+		 */
+		public boolean endCompressedFrame(int start, int threshold, FrameCompressor compressor) {
+			int length = count - start - 4;
+			if(length < threshold || bulkSize != frameBulkSize) {
+				return false;
+			}
+			int compressed = compressor.compress(buf, start + 4, length);
+			if(compressed + 4 >= length) {
+				return false;
+			}
+			count = start + 4;
+			writeLength(count, length);
+			count += 4;
+			write(compressor.buffer(), 0, compressed);
+			writeLength(start, FrameCompressor.COMPRESSED | (compressed + 4));
+			return true;
+		}
+		
+		/**
+		 * バッファー上の位置に長さを書き込みます
+		 * 
+		 * @param pos 位置
+		 * @param length 長さ
+		 */
+		private void writeLength(int pos, int length) {
+			buf[pos    ] = (byte)(length >>> 24);
+			buf[pos + 1] = (byte)(length >>> 16);
+			buf[pos + 2] = (byte)(length >>>  8);
+			buf[pos + 3] = (byte)(length       );
+		}
+	}
+	
+	/**
+	 * 1 フレーム分のペイロードを保持する入力ストリーム<br>
+	 * バッファーはフレーム間で再利用されます。
+	 * ただし {@link #MAX_SHARED_SIZE} を超えるフレームはフレーム毎に確保し、{@link #readBulk(int)} で共有します。
+	 * 圧縮されたフレームは伸長してから保持します
+	 */
+	private static class FrameInputStream extends ByteArrayInputStream implements BulkDataInput {
+		/** 再利用するバッファーの最大の大きさ */
+		private static final int MAX_SHARED_SIZE = 64 * 1024;
+		
+		/** 再利用するバッファー */
+		private byte[] shared;
+		
+		/** 圧縮されたペイロードを読み込む、再利用するバッファー */
+		private byte[] compressed;
+		
+		/**
+		 * コンストラクタ
+		 */
+		public FrameInputStream() {
+			super(new byte[256], 0, 0);
+			this.shared = buf;
+			this.compressed = new byte[0];
+		}
+		
+		/**
+		 * 入力ストリームから 1 フレーム分のペイロードを読み込みます
+		 * 
+		 * @param in 入力ストリーム
+		 * @param length ペイロードの長さ
+		 * @throws IOException 入出力例外が発生した場合
+		 */
+		public void fill(DataInputStream in, int length) throws IOException {
+			prepare(length);
+			in.readFully(buf, 0, length);
+		}
+		
+		/**
+		 * 入力ストリームから 1 フレーム分の圧縮されたペイロードを読み込んで伸長します
+		 * 
+		 * @param in 入力ストリーム
+		 * @param length 圧縮されたペイロードの長さ。先頭の伸長後の長さを含みます
+		 * @throws IOException 入出力例外が発生した場合
+		 */
+		public void fillCompressed(DataInputStream in, int length) throws IOException {
+			if(length < 4) {
+				throw new IOException("Invalid frame length: " + length);
+			}
+			int rawLength = in.readInt();
+			int n = length - 4;
+			byte[] src = compressed;
+			if(src.length < n) {
+				src = new byte[n];
+				if(n <= MAX_SHARED_SIZE) {
+					compressed = src;
+				}
+			}
+			in.readFully(src, 0, n);
+			prepare(rawLength);
+			FrameCompressor.decompress(src, 0, n, buf, 0, rawLength);
+		}
+		
+		/**
+		 * 1 フレーム分のペイロードを保持するバッファーを用意します
+		 * 
+		 * @param length ペイロードの長さ
+		 * @throws IOException 長さが不正な場合
+		 */
+		private void prepare(int length) throws IOException {
+			if(length < 0) {
+				throw new IOException("Invalid frame length: " + length);
+			}
+			if(length > MAX_SHARED_SIZE) {
+				// 大きなフレームはデコードしたコマンドと共有するため再利用しない
+				buf = new byte[length];
+			} else {
+				if(shared.length < length) {
+					shared = new byte[Math.min(Math.max(length, shared.length * 2), MAX_SHARED_SIZE)];
+				}
+				buf = shared;
+			}
+			pos = 0;
+			count = length;
+			mark = 0;
+		}
+		
+		/**
+		 * @see com.xxuz.piclane.jdrpc.BulkDataInput#readBulk(int)
+		 */
+		@Override
+		public synchronized ByteBuffer readBulk(int length) throws IOException {
+			if(length > count - pos) {
+				throw new EOFException();
+			}
+			ByteBuffer dst;
+			if(buf != shared) {
+				dst = ByteBuffer.wrap(buf, pos, length).slice();
+			} else {
+				dst = ByteBuffer.allocate(length);
+				dst.put(buf, pos, length);
+				dst.flip();
+			}
+			pos += length;
+			return dst;
+		}
+	}
 }
@@ -0,0 +1,80 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 固定長のダイレクトバッファーのプール<br>
+ * ダイレクトバッファーの確保と解放は高価なため、フレームの送受信に使用したバッファーを再利用します
+ *
+ * @author piclane
+ */
+final class DirectBufferPool {
+	/** バッファーの容量 */
+	private final int chunkSize;
+
+	/** プールするバッファーの最大数 */
+	private final int maxPooled;
+
+	/** 再利用可能なバッファー */
+	private final ConcurrentLinkedQueue<ByteBuffer> pool;
+
+	/** {@link #pool} 内の要素数 */
+	private final AtomicInteger pooled;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param chunkSize バッファーの容量
+	 * @param maxPooled プールするバッファーの最大数
+	 */
+	public DirectBufferPool(int chunkSize, int maxPooled) {
+		this.chunkSize = chunkSize;
+		this.maxPooled = maxPooled;
+		this.pool = new ConcurrentLinkedQueue<>();
+		this.pooled = new AtomicInteger();
+	}
+
+	/**
+	 * バッファーの容量を取得します
+	 *
+	 * @return バッファーの容量
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * バッファーを取得します<br>
+	 * 取得したバッファーはクリアされています
+	 *
+	 * @return バッファー
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buf = pool.poll();
+		if(buf == null) {
+			return ByteBuffer.allocateDirect(chunkSize);
+		}
+		pooled.decrementAndGet();
+		buf.clear();
+		return buf;
+	}
+
+	/**
+	 * バッファーをプールに戻します<br>
+	 * 戻したバッファーは以降使用しないでください
+	 *
+	 * @param buf {@link #acquire()} で取得したバッファー
+	 */
+	public void release(ByteBuffer buf) {
+		if(!buf.isDirect() || buf.capacity() != chunkSize) {
+			return;
+		}
+		if(pooled.incrementAndGet() <= maxPooled) {
+			pool.add(buf);
+		} else {
+			pooled.decrementAndGet();
+		}
+	}
+}
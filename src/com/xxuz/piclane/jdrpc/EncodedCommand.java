@@ -0,0 +1,112 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 符号化済みのフレームのペイロードを保持するコマンド<br>
+ * 送信時は {@link CommandCodec} を通さず、ペイロードをそのまま書き込みます。
+ * チャネルIDは符号化時点で確定し、ペイロードに含まれます
+ *
+ * @author piclane
+ */
+final class EncodedCommand implements Command {
+	/** serialVersionUID */
+	private static final long serialVersionUID = -3580621748930127465L;
+
+	/** 符号化したコマンドのメッセージID */
+	private final long messageId;
+
+	/** 符号化したコマンドのチャネルID */
+	private final int channelId;
+
+	/** ペイロードを保持するバッファー */
+	private final byte[] payload;
+
+	/** ペイロードの長さ */
+	private final int length;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param messageId メッセージID
+	 * @param channelId チャネルID
+	 * @param payload ペイロードを保持するバッファー
+	 * @param length ペイロードの長さ
+	 */
+	private EncodedCommand(long messageId, int channelId, byte[] payload, int length) {
+		this.messageId = messageId;
+		this.channelId = channelId;
+		this.payload = payload;
+		this.length = length;
+	}
+
+	/**
+	 * コマンドを符号化します<br>
+	 * 呼び出し元が保持するバイト列は参照せず、全てコピーします
+	 *
+	 * @param cmd 符号化するコマンド
+	 * @param codec {@link CommandCodec}
+	 * @return 符号化したコマンド
+	 * @throws IOException 符号化に失敗した場合
+	 */
+	static EncodedCommand encode(Command cmd, CommandCodec codec) throws IOException {
+		PayloadOutputStream out = new PayloadOutputStream();
+		codec.encode(cmd, new FrameDataOutputStream(out));
+		return new EncodedCommand(cmd.getMessageId(), cmd.getChannelId(), out.buffer(), out.size());
+	}
+
+	/**
+	 * ペイロードを書き込みます
+	 *
+	 * @param out 出力先
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	void writeTo(DataOutput out) throws IOException {
+		out.write(payload, 0, length);
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.Command#getMessageId()
+	 */
+	@Override
+	public long getMessageId() {
+		return messageId;
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.Command#getChannelId()
+	 */
+	@Override
+	public int getChannelId() {
+		return channelId;
+	}
+
+	/**
+	 * チャネルIDはペイロードに含まれるため変更できません
+	 *
+	 * @see com.xxuz.piclane.jdrpc.Command#setChannelId(int)
+	 * @throws IllegalStateException 符号化時点と異なるチャネルIDを指定した場合
+	 */
+	@Override
+	public void setChannelId(int channelId) {
+		if(channelId != this.channelId) {
+			throw new IllegalStateException("Channel of an encoded command cannot be changed.");
+		}
+	}
+
+	/**
+	 * 内部のバッファーをコピーせずに参照できる {@link ByteArrayOutputStream}
+	 */
+	private static class PayloadOutputStream extends ByteArrayOutputStream {
+		/**
+		 * 内部のバッファーを取得します
+		 *
+		 * @return 内部のバッファー
+		 */
+		public byte[] buffer() {
+			return buf;
+		}
+	}
+}
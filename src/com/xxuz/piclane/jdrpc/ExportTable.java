@@ -0,0 +1,148 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.UUID;
+
+/**
+ * 名前を付けずにリモートに渡したインスタンスの {@link Reference} の表<br>
+ * 同じインスタンスを繰り返し渡す場合に、インスタンスIDを採番し直さずに再利用するために使用します。
+ * インスタンスは同一性で比較し、弱参照で保持するため表がインスタンスの GC を妨げることはありません
+ *
+ * @author piclane
+ */
+final class ExportTable {
+	/** GC されたインスタンスのキーが登録されるキュー */
+	private final ReferenceQueue<Object> queue;
+
+	/**
+	 * Key:   インスタンスのキー
+	 * Value: {@link Reference}
+	 */
+	private final HashMap<IdentityKey, Reference> references;
+
+	/**
+	 * Key:   インスタンスID
+	 * Value: インスタンスのキー
+	 */
+	private final HashMap<UUID, IdentityKey> keys;
+
+	/**
+	 * コンストラクタ
+	 */
+	public ExportTable() {
+		this.queue = new ReferenceQueue<>();
+		this.references = new HashMap<>();
+		this.keys = new HashMap<>();
+	}
+
+	/**
+	 * インスタンスの {@link Reference} を取得します
+	 *
+	 * @param object インスタンス
+	 * @param iface リモートに公開するインターフェイス
+	 * @return {@link Reference}。インスタンスが iface として渡されていない場合は <code>null</code>
+	 */
+	public synchronized Reference lookup(Object object, Class<?> iface) {
+		expunge();
+		Reference ref = references.get(new IdentityKey(object, null));
+		return ref != null && ref.getInterfaces()[0] == iface ? ref : null;
+	}
+
+	/**
+	 * インスタンスの {@link Reference} を追加します<br>
+	 * インスタンスが別のインターフェイスとして追加されている場合は置き換えます
+	 *
+	 * @param object インスタンス
+	 * @param ref {@link Reference}
+	 */
+	public synchronized void put(Object object, Reference ref) {
+		expunge();
+		IdentityKey key = new IdentityKey(object, queue);
+		Reference prev = references.put(key, ref);
+		if(prev != null) {
+			keys.remove(prev.getInstanceId());
+		}
+		keys.put(ref.getInstanceId(), key);
+	}
+
+	/**
+	 * リモートで登録解除されたインスタンスを削除します
+	 *
+	 * @param instanceId インスタンスID
+	 */
+	public synchronized void remove(UUID instanceId) {
+		IdentityKey key = keys.remove(instanceId);
+		if(key != null) {
+			references.remove(key);
+		}
+	}
+
+	/**
+	 * 表にあるインスタンスの数を取得します
+	 *
+	 * @return インスタンスの数
+	 */
+	public synchronized int size() {
+		expunge();
+		return references.size();
+	}
+
+	/**
+	 * GC されたインスタンスを削除します
+	 */
+	private void expunge() {
+		java.lang.ref.Reference<?> r;
+		while((r = queue.poll()) != null) {
+			Reference ref = references.remove(r);
+			if(ref != null) {
+				keys.remove(ref.getInstanceId());
+			}
+		}
+	}
+
+	/**
+	 * インスタンスを同一性で比較するキー
+	 */
+	private static final class IdentityKey extends WeakReference<Object> {
+		/** インスタンスの同一性ハッシュコード */
+		private final int hash;
+
+		/**
+		 * コンストラクタ
+		 *
+		 * @param referent インスタンス
+		 * @param q 参照が登録されるキュー。登録が必要ない場合は <code>null</code>
+		 */
+		IdentityKey(Object referent, ReferenceQueue<Object> q) {
+			super(referent, q);
+			this.hash = System.identityHashCode(referent);
+		}
+
+		/**
+		 * @see java.lang.Object#hashCode()
+		 */
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		/**
+		 * GC されたキーは自身とのみ等しくなります
+		 *
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		@Override
+		public boolean equals(Object obj) {
+			if(obj == this) {
+				return true;
+			}
+			if(!(obj instanceof IdentityKey)) {
+				return false;
+			}
+			Object referent = get();
+			return referent != null && referent == ((IdentityKey)obj).get();
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * フレームのペイロードを圧縮・伸長します<br>
+ * LZ4 のブロック形式に倣った、ハッシュ表で一致を探すだけの高速な圧縮を行います。
+ * 圧縮に使用するハッシュ表と出力バッファーはインスタンス毎に保持して再利用するため、
+ * 1 つのインスタンスを複数のスレッドから同時に使用してはいけません<br>
+ * 圧縮されたフレームは長さの最上位ビットを立てて送信し、ペイロードの先頭に伸長後の長さを付加します。
+ * 最上位ビットのみを立てた長さ 0 のフレームは、送信元が圧縮されたフレームを受信できることを表します
+ *
+ * @author piclane
+ */
+final class FrameCompressor {
+	/** 圧縮されたフレームを表す長さのビット */
+	static final int COMPRESSED = 0x80000000;
+
+	/** 圧縮されたフレームを受信できることを表す長さ */
+	static final int ACCEPT_COMPRESSION = COMPRESSED;
+
+	/** ハッシュ表の大きさの 2 の対数 */
+	private static final int HASH_LOG = 12;
+
+	/** 一致の最小の長さ */
+	private static final int MIN_MATCH = 4;
+
+	/** 一致を参照できる最大の距離 */
+	private static final int MAX_OFFSET = 0xffff;
+
+	/** 末尾で一致を探さない範囲 */
+	private static final int MF_LIMIT = 12;
+
+	/** 末尾で必ずリテラルとして出力する範囲 */
+	private static final int LAST_LITERALS = 5;
+
+	/** 一致が見つからない間に探索の間隔を広げる割合の 2 の対数 */
+	private static final int SKIP_TRIGGER = 6;
+
+	/** 4 バイトの値から最後に出現した位置を引くハッシュ表 */
+	private final int[] hashTable;
+
+	/** 圧縮したバイト列を保持するバッファー */
+	private byte[] buffer;
+
+	/**
+	 * コンストラクタ
+	 */
+	FrameCompressor() {
+		this.hashTable = new int[1 << HASH_LOG];
+		this.buffer = new byte[256];
+	}
+
+	/**
+	 * バイト列を圧縮します<br>
+	 * 圧縮したバイト列は {@link #buffer()} の先頭に、次の呼び出しまで保持されます
+	 *
+	 * @param src 圧縮するバイト列
+	 * @param off 圧縮するバイト列の開始位置
+	 * @param len 圧縮するバイト列の長さ
+	 * @return 圧縮したバイト列の長さ
+	 */
+	int compress(byte[] src, int off, int len) {
+		int maxLength = len + len / 255 + 16;
+		if(buffer.length < maxLength) {
+			buffer = new byte[maxLength];
+		}
+		byte[] dst = buffer;
+		int end = off + len;
+		int anchor = off;
+		int op = 0;
+
+		if(len > MF_LIMIT) {
+			Arrays.fill(hashTable, -1);
+			int ipLimit = end - MF_LIMIT;
+			int matchLimit = end - LAST_LITERALS;
+			int ip = off;
+			while(ip < ipLimit) {
+				int seq = readInt(src, ip);
+				int h = hash(seq);
+				int ref = hashTable[h];
+				hashTable[h] = ip;
+				if(ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != seq) {
+					// 圧縮できないデータでは探索の間隔を徐々に広げる
+					ip += 1 + ((ip - anchor) >>> SKIP_TRIGGER);
+					continue;
+				}
+
+				// 一致を前後に伸ばす
+				while(ip > anchor && ref > off && src[ip - 1] == src[ref - 1]) {
+					ip--;
+					ref--;
+				}
+				int matchLength = MIN_MATCH;
+				while(ip + matchLength < matchLimit && src[ip + matchLength] == src[ref + matchLength]) {
+					matchLength++;
+				}
+
+				op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength);
+				ip += matchLength;
+				anchor = ip;
+			}
+		}
+
+		// 末尾はリテラルのみのシーケンスで終える
+		return writeSequence(src, anchor, end - anchor, dst, op, 0, 0);
+	}
+
+	/**
+	 * 圧縮したバイト列を保持するバッファーを取得します
+	 *
+	 * @return バッファー
+	 */
+	byte[] buffer() {
+		return buffer;
+	}
+
+	/**
+	 * 圧縮されたバイト列を伸長します
+	 *
+	 * @param src 圧縮されたバイト列
+	 * @param off 圧縮されたバイト列の開始位置
+	 * @param len 圧縮されたバイト列の長さ
+	 * @param dst 伸長先のバッファー
+	 * @param dstOff 伸長先のバッファーの開始位置
+	 * @param dstLen 伸長後の長さ
+	 * @throws IOException 圧縮されたバイト列が壊れている場合
+	 */
+	static void decompress(byte[] src, int off, int len, byte[] dst, int dstOff, int dstLen) throws IOException {
+		int ip = off;
+		int end = off + len;
+		int op = dstOff;
+		int dstEnd = dstOff + dstLen;
+		try {
+			while(true) {
+				int token = src[ip++] & 0xff;
+
+				int literalLength = token >>> 4;
+				if(literalLength == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xff;
+						literalLength += b;
+					} while(b == 255);
+				}
+				if(literalLength < 0 || literalLength > end - ip || literalLength > dstEnd - op) {
+					throw new IOException("Corrupted compressed frame");
+				}
+				System.arraycopy(src, ip, dst, op, literalLength);
+				ip += literalLength;
+				op += literalLength;
+				if(ip == end) {
+					break;
+				}
+
+				int offset = (src[ip] & 0xff) | (src[ip + 1] & 0xff) << 8;
+				ip += 2;
+				int matchLength = token & 0x0f;
+				if(matchLength == 15) {
+					int b;
+					do {
+						b = src[ip++] & 0xff;
+						matchLength += b;
+					} while(b == 255);
+				}
+				matchLength += MIN_MATCH;
+				int ref = op - offset;
+				if(offset == 0 || ref < dstOff || matchLength < 0 || matchLength > dstEnd - op) {
+					throw new IOException("Corrupted compressed frame");
+				}
+				if(offset >= matchLength) {
+					System.arraycopy(dst, ref, dst, op, matchLength);
+				} else {
+					// 重なる一致は繰り返しとして 1 バイトずつ複写する
+					for(int i=0; i<matchLength; i++) {
+						dst[op + i] = dst[ref + i];
+					}
+				}
+				op += matchLength;
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Corrupted compressed frame", e);
+		}
+		if(op != dstEnd) {
+			throw new IOException("Corrupted compressed frame");
+		}
+	}
+
+	/**
+	 * リテラルと一致からなるシーケンスを書き込みます
+	 *
+	 * @param src 圧縮するバイト列
+	 * @param literalOff リテラルの開始位置
+	 * @param literalLength リテラルの長さ
+	 * @param dst 出力先
+	 * @param op 出力先の書き込み位置
+	 * @param offset 一致の距離
+	 * @param matchLength 一致の長さ。リテラルのみのシーケンスの場合は 0
+	 * @return 書き込み後の出力先の位置
+	 */
+	private static int writeSequence(byte[] src, int literalOff, int literalLength, byte[] dst, int op, int offset, int matchLength) {
+		int tokenPos = op++;
+		int token;
+		if(literalLength >= 15) {
+			token = 15 << 4;
+			op = writeLength(literalLength - 15, dst, op);
+		} else {
+			token = literalLength << 4;
+		}
+		System.arraycopy(src, literalOff, dst, op, literalLength);
+		op += literalLength;
+
+		if(matchLength > 0) {
+			dst[op++] = (byte)offset;
+			dst[op++] = (byte)(offset >>> 8);
+			int m = matchLength - MIN_MATCH;
+			if(m >= 15) {
+				token |= 15;
+				op = writeLength(m - 15, dst, op);
+			} else {
+				token |= m;
+			}
+		}
+		dst[tokenPos] = (byte)token;
+		return op;
+	}
+
+	/**
+	 * 15 以上の長さの残りを書き込みます
+	 *
+	 * @param length 長さから 15 を引いた値
+	 * @param dst 出力先
+	 * @param op 出力先の書き込み位置
+	 * @return 書き込み後の出力先の位置
+	 */
+	private static int writeLength(int length, byte[] dst, int op) {
+		while(length >= 255) {
+			dst[op++] = (byte)255;
+			length -= 255;
+		}
+		dst[op++] = (byte)length;
+		return op;
+	}
+
+	/**
+	 * 4 バイトの値を読み込みます
+	 *
+	 * @param b バイト列
+	 * @param i 位置
+	 * @return 値
+	 */
+	private static int readInt(byte[] b, int i) {
+		return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+	}
+
+	/**
+	 * 4 バイトの値のハッシュ値を求めます
+	 *
+	 * @param seq 値
+	 * @return ハッシュ表のインデックス
+	 */
+	private static int hash(int seq) {
+		return (seq * -1640531535) >>> (32 - HASH_LOG);
+	}
+}
@@ -0,0 +1,36 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link CommandCodec} にフレームを読み込ませる {@link DataInputStream}<br>
+ * 入力元が {@link BulkDataInput} の場合、大きなバイト列をフレームのバッファーから直接取り出します
+ *
+ * @author piclane
+ */
+final class FrameDataInputStream extends DataInputStream implements BulkDataInput {
+	/**
+	 * コンストラクタ
+	 *
+	 * @param in 入力元
+	 */
+	public FrameDataInputStream(InputStream in) {
+		super(in);
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.BulkDataInput#readBulk(int)
+	 */
+	@Override
+	public ByteBuffer readBulk(int length) throws IOException {
+		if(in instanceof BulkDataInput) {
+			return ((BulkDataInput)in).readBulk(length);
+		}
+		byte[] b = new byte[length];
+		readFully(b);
+		return ByteBuffer.wrap(b);
+	}
+}
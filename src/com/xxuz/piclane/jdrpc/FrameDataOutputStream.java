@@ -0,0 +1,61 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link CommandCodec} にフレームを書き込ませる {@link DataOutputStream}<br>
+ * 出力先が {@link BulkDataOutput} の場合、大きなバイト列をコピーせずに連結します
+ *
+ * @author piclane
+ */
+final class FrameDataOutputStream extends DataOutputStream implements BulkDataOutput {
+	/** コピーに使用する一時バッファーの大きさ */
+	private static final int COPY_BUFFER_SIZE = 8192;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param out 出力先
+	 */
+	public FrameDataOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.BulkDataOutput#writeBulk(java.nio.ByteBuffer)
+	 */
+	@Override
+	public void writeBulk(ByteBuffer src) throws IOException {
+		int length = src.remaining();
+		if(out instanceof BulkDataOutput) {
+			((BulkDataOutput)out).writeBulk(src);
+			written += length;
+			return;
+		}
+		write(this, src);
+	}
+
+	/**
+	 * バッファーの残りのバイトをコピーして書き込みます
+	 *
+	 * @param out 出力先
+	 * @param src 書き込むバッファー。position は変更されません
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	static void write(OutputStream out, ByteBuffer src) throws IOException {
+		if(src.hasArray()) {
+			out.write(src.array(), src.arrayOffset() + src.position(), src.remaining());
+			return;
+		}
+		ByteBuffer buf = src.duplicate();
+		byte[] tmp = new byte[Math.min(buf.remaining(), COPY_BUFFER_SIZE)];
+		while(buf.hasRemaining()) {
+			int n = Math.min(buf.remaining(), tmp.length);
+			buf.get(tmp, 0, n);
+			out.write(tmp, 0, n);
+		}
+	}
+}
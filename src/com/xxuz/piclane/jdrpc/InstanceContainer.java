@@ -1,35 +1,36 @@
 package com.xxuz.piclane.jdrpc;
 
+import java.lang.reflect.Method;
 import java.util.UUID;
 
 /**
- * インスタンスのコンテナ
+ * インスタンスのコンテナ<br>
+ * 登録された内容は変更されません。同じ名前もしくはIDで登録し直す場合は新しいコンテナに置き換えます
  */
 final class InstanceContainer {
-	/** インスタンスが確定している場合は true そうで無い場合は false */
-	private boolean settled;
-	
 	/** インスタンス名 */
-	private String name;
+	private final String name;
 	
 	/** インスタンスID */
-	private UUID id;
+	private final UUID id;
 	
 	/** インターフェイス */
-	private Class<?>[] interfaces;
+	private final Class<?>[] interfaces;
 	
 	/** インスタンス */
-	private Object instance;
+	private final Object instance;
 	
-	/**
-	 * コンストラクタ
-	 */
-	public InstanceContainer() {
-		this.settled = false;
-		this.name = null;
-		this.id = null;
-		this.instance = null;
-	}
+	/** インスタンスの実装クラスの {@link MethodInvoker.Table}。{@link Dynamic} の場合は <code>null</code> */
+	private final MethodInvoker.Table invokers;
+	
+	/** リースの期限 ({@link System#nanoTime()} 基準)。リースが無い場合は {@link Long#MAX_VALUE} */
+	private volatile long leaseDeadline = Long.MAX_VALUE;
+	
+	/** リースの期間 (ナノ秒)。最後にリモートに伝えた期間で延長します */
+	private volatile long leaseDuration;
+	
+	/** 名前を付けずにリモートに渡した回数 (送信世代)。コンテナで同期して参照します */
+	private long exportGeneration;
 	
 	/**
 	 * コンストラクタ
@@ -40,38 +41,23 @@ final class InstanceContainer {
 	 * @param instance インスタンス
 	 */
 	public InstanceContainer(String name, UUID instanceId, Class<?>[] interfaces, Object instance) {
-		this.settled = true;
 		this.name = name;
 		this.id = instanceId;
 		this.interfaces = interfaces;
 		this.instance = instance;
+		this.invokers = invokersOf(instance);
 	}
 
 	/**
-	 * 値を設定します
+	 * インスタンスの実装クラスの {@link MethodInvoker.Table} を取得します
 	 * 
-	 * @param インスタンス名
-	 * @param instanceId インスタンスID
-	 * @param interfaces インターフェイス
 	 * @param instance インスタンス
+	 * @return {@link MethodInvoker.Table}、{@link Dynamic} の場合は <code>null</code>
 	 */
-	public synchronized void set(String name, UUID instanceId, Class<?>[] interfaces, Object instance) {
-		this.settled = true;
-		this.name = name;
-		this.id = instanceId;
-		this.interfaces = interfaces;
-		this.instance = instance;
+	private static MethodInvoker.Table invokersOf(Object instance) {
+		return instance == null || instance instanceof Dynamic ? null : MethodInvoker.tableOf(instance.getClass());
 	}
 	
-	/**
-	 * settled を取得します
-	 *
-	 * @return settled
-	 */
-	public boolean isSettled() {
-		return settled;
-	}
-
 	/**
 	 * name を取得します
 	 *
@@ -99,15 +85,6 @@ final class InstanceContainer {
 		return interfaces;
 	}
 
-	/**
-	 * interfaces を設定します
-	 * 
-	 * @param interfaces interfaces
-	 */
-	public void setInterfaces(Class<?>[] interfaces) {
-		this.interfaces = interfaces;
-	}
-
 	/**
 	 * instance を取得します
 	 *
@@ -122,6 +99,97 @@ final class InstanceContainer {
 		}
 	}
 	
+	/**
+	 * リースの期限を取得します
+	 *
+	 * @return リースの期限 ({@link System#nanoTime()} 基準)。リースが無い場合は {@link Long#MAX_VALUE}
+	 */
+	public long getLeaseDeadline() {
+		return leaseDeadline;
+	}
+	
+	/**
+	 * リースの期限を設定します
+	 *
+	 * @param leaseDeadline リースの期限 ({@link System#nanoTime()} 基準)
+	 */
+	public void setLeaseDeadline(long leaseDeadline) {
+		this.leaseDeadline = leaseDeadline;
+	}
+	
+	/**
+	 * リースの期間を取得します
+	 *
+	 * @return リースの期間 (ナノ秒)
+	 */
+	public long getLeaseDuration() {
+		return leaseDuration;
+	}
+	
+	/**
+	 * リースの期間を設定し、今から期間の分だけリースを延長します
+	 *
+	 * @param leaseDuration リースの期間 (ナノ秒)
+	 */
+	public void lease(long leaseDuration) {
+		this.leaseDuration = leaseDuration;
+		this.leaseDeadline = System.nanoTime() + leaseDuration;
+	}
+	
+	/**
+	 * リースがあるかどうかを取得します
+	 *
+	 * @return リースがある場合 true
+	 */
+	public boolean isLeased() {
+		return leaseDeadline != Long.MAX_VALUE;
+	}
+	
+	/**
+	 * 送信世代を進めます<br>
+	 * 呼び出し元はコンテナで同期しなければなりません
+	 *
+	 * @return 新しい送信世代
+	 */
+	public long nextExportGeneration() {
+		return ++exportGeneration;
+	}
+	
+	/**
+	 * 送信世代を取得します<br>
+	 * 呼び出し元はコンテナで同期しなければなりません
+	 *
+	 * @return 送信世代。リモートに渡していない場合は 0
+	 */
+	public long getExportGeneration() {
+		return exportGeneration;
+	}
+	
+	/**
+	 * instance が {@link Dynamic} の場合に取得します
+	 *
+	 * @return {@link Dynamic}、そうでない場合は <code>null</code>
+	 */
+	public Dynamic getDynamic() {
+		Object instance = this.instance;
+		return instance instanceof Dynamic ? (Dynamic)instance : null;
+	}
+	
+	/**
+	 * インスタンスのメソッドを実行する {@link MethodInvoker} を取得します
+	 * 
+	 * @param method メソッド
+	 * @return {@link MethodInvoker}
+	 * @throws NullPointerException インスタンスが確定していない場合
+	 */
+	public MethodInvoker getInvoker(Method method) {
+		MethodInvoker.Table invokers = this.invokers;
+		if(invokers == null) {
+			invokers = MethodInvoker.tableOf(getInstance().getClass());
+		}
+		return invokers.get(method);
+	}
+	
 	public interface Dynamic {
 		Object get(InstanceContainer container);
 	}
@@ -0,0 +1,336 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
+
+/**
+ * メソッド毎に事前計算した呼び出し方法<br>
+ * 呼び出しの度にリフレクションや {@link RpcOverride} の生成を行わないよう、
+ * 引数と返値の渡し方を {@link RpcParam}, {@link RpcResult}, {@link RpcOverride} から決定して保持します<br>
+ * {@link OverrideTable} が変更された場合は作り直す必要があります
+ *
+ * @author piclane
+ */
+final class InvocationPlan {
+	/** 値渡しの引数 */
+	static final int PARAM_VALUE = 0;
+
+	/** 参照渡しの配列 ({@link ReferenceArray}) の引数 */
+	static final int PARAM_ARRAY = 1;
+
+	/** 長さのみを送信し、書き戻しのみを行う配列 ({@link RpcParam.Direction#OUT}) の引数 */
+	static final int PARAM_OUTPUT_ARRAY = 4;
+
+	/** 内容を送信せず、呼び出し先が必要な範囲のみを読み書きする {@link ArrayView} の引数 */
+	static final int PARAM_ARRAY_VIEW = 5;
+
+	/** リモートに登録するインスタンス ({@link Reference}) の引数 */
+	static final int PARAM_REFERENCE = 2;
+
+	/** 参照渡しが指定されているが、配列でもインターフェイスでもない引数 */
+	static final int PARAM_INVALID = 3;
+
+	/** メソッド */
+	private final Method method;
+
+	/** 呼び出し方法の決定に使用した {@link OverrideTable} */
+	private final OverrideTable overrides;
+
+	/** static メソッドの場合 true */
+	private final boolean isStatic;
+
+	/** 引数の型 */
+	private final Class<?>[] parameterTypes;
+
+	/** 引数毎の渡し方 */
+	private final int[] parameterModes;
+
+	/** 値渡し以外の引数がある場合 true */
+	private final boolean hasReferenceParameter;
+
+	/** 返値をリモートに登録するインスタンスとして返す場合 true */
+	private final boolean referenceResult;
+
+	/** 返値の型。{@link CompletionStage} を返すメソッドの場合は完了後の値の型 */
+	private final Class<?> resultType;
+
+	/** 返値を {@link StreamReference} で分割して送信する場合 true */
+	private final boolean streamResult;
+
+	/** 返値が {@link CompletionStage} の場合 true */
+	private final boolean asyncResult;
+
+	/** プロクシが応答を待たずに {@link CompletableFuture} を返せる場合 true */
+	private final boolean asyncInvocation;
+
+	/** {@link RpcOneWay} が指定されている場合 true */
+	private final boolean oneWay;
+
+	/** {@link RpcTimeout} で指定された応答を待つ時間 (ナノ秒)。指定されていない場合は -1 */
+	private final long timeoutNanos;
+
+	/** リモートが割り当てたメソッドID。割り当てを確認できていない場合は -1 */
+	private volatile int methodId;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param method メソッド
+	 * @param overrides {@link OverrideTable}
+	 * @throws IllegalArgumentException 返値のあるメソッド、もしくは {@link ArrayView} か参照渡しの配列を受け取るメソッドに {@link RpcOneWay} が指定されている場合
+	 */
+	InvocationPlan(Method method, OverrideTable overrides) {
+		this.method = method;
+		this.overrides = overrides;
+		this.isStatic = (method.getModifiers() & Modifier.STATIC) != 0;
+		this.parameterTypes = method.getParameterTypes();
+
+		Annotation[][] paramAnnos = method.getParameterAnnotations();
+		boolean hasReferenceParameter = false;
+		this.parameterModes = new int[parameterTypes.length];
+		for(int i=0; i<parameterTypes.length; i++) {
+			// ArrayView は注釈に関わらず内容を送信しない
+			if(parameterTypes[i] == ArrayView.class) {
+				parameterModes[i] = PARAM_ARRAY_VIEW;
+				hasReferenceParameter = true;
+				continue;
+			}
+			RpcParam rpcParam = findAnnotation(paramAnnos[i], RpcParam.class);
+			if(rpcParam == null &&
+			   !overrides.isParameterOverridden(method, i)) {
+				continue;
+			}
+			Class<?> paramCls = parameterTypes[i];
+			if(paramCls.isArray()) {
+				parameterModes[i] = rpcParam != null && rpcParam.direction() == RpcParam.Direction.OUT ?
+					PARAM_OUTPUT_ARRAY : PARAM_ARRAY;
+			} else if(paramCls.isInterface()) {
+				parameterModes[i] = PARAM_REFERENCE;
+			} else {
+				parameterModes[i] = PARAM_INVALID;
+			}
+			hasReferenceParameter = true;
+		}
+		this.hasReferenceParameter = hasReferenceParameter;
+
+		Class<?> returnType = method.getReturnType();
+		this.referenceResult =
+			method.isAnnotationPresent(RpcResult.class) ||
+			overrides.isResultOverridden(method);
+		this.asyncResult = CompletionStage.class.isAssignableFrom(returnType);
+		this.asyncInvocation = asyncResult && returnType.isAssignableFrom(CompletableFuture.class);
+		this.resultType = asyncResult ? completionType(method) : returnType;
+		this.streamResult = !referenceResult &&
+			(resultType == Iterator.class || resultType == Stream.class || resultType == RemoteStream.class);
+
+		this.oneWay = method.isAnnotationPresent(RpcOneWay.class);
+		if(oneWay && returnType != void.class) {
+			throw new IllegalArgumentException("@RpcOneWay method must return void: " + method);
+		}
+		for(int i=0; oneWay && i<parameterModes.length; i++) {
+			// 応答が無いため、呼び出し元は ArrayView の公開を終了できず、配列の書き戻しも受け取れない
+			switch(parameterModes[i]) {
+			case PARAM_ARRAY_VIEW:
+				throw new IllegalArgumentException("@RpcOneWay method cannot take ArrayView: " + method);
+			case PARAM_ARRAY:
+			case PARAM_OUTPUT_ARRAY:
+				throw new IllegalArgumentException("@RpcOneWay method cannot take a by-reference array: " + method);
+			default:
+				break;
+			}
+		}
+
+		RpcTimeout timeout = method.getAnnotation(RpcTimeout.class);
+		this.timeoutNanos = timeout != null ? Math.max(timeout.unit().toNanos(timeout.value()), 0L) : -1L;
+		this.methodId = -1;
+	}
+
+	/**
+	 * {@link CompletionStage} を返すメソッドの完了後の値の型を取得します
+	 *
+	 * @param method メソッド
+	 * @return 完了後の値の型。型引数から決定できない場合は返値の型
+	 */
+	private static Class<?> completionType(Method method) {
+		Type type = method.getGenericReturnType();
+		if(type instanceof ParameterizedType) {
+			Type arg = ((ParameterizedType)type).getActualTypeArguments()[0];
+			if(arg instanceof ParameterizedType) {
+				arg = ((ParameterizedType)arg).getRawType();
+			}
+			if(arg instanceof Class) {
+				return (Class<?>)arg;
+			}
+		}
+		return method.getReturnType();
+	}
+
+	/**
+	 * 注釈の配列から指定された型の注釈を取得します
+	 *
+	 * @param annos 注釈の配列
+	 * @param annotationClass 注釈の型
+	 * @return 注釈。見つからない場合は <code>null</code>
+	 */
+	private static <A extends Annotation> A findAnnotation(Annotation[] annos, Class<A> annotationClass) {
+		for(Annotation anno: annos) {
+			if(annotationClass.isInstance(anno)) {
+				return annotationClass.cast(anno);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * メソッドを取得します
+	 *
+	 * @return メソッド
+	 */
+	public Method getMethod() {
+		return method;
+	}
+
+	/**
+	 * 呼び出し方法の決定に使用した {@link OverrideTable} を取得します
+	 *
+	 * @return {@link OverrideTable}
+	 */
+	public OverrideTable getOverrides() {
+		return overrides;
+	}
+
+	/**
+	 * static メソッドかどうかを取得します
+	 *
+	 * @return static メソッドの場合 true
+	 */
+	public boolean isStatic() {
+		return isStatic;
+	}
+
+	/**
+	 * 引数の数を取得します
+	 *
+	 * @return 引数の数
+	 */
+	public int getParameterCount() {
+		return parameterTypes.length;
+	}
+
+	/**
+	 * 引数の型を取得します
+	 *
+	 * @param index 引数のインデックス
+	 * @return 引数の型
+	 */
+	public Class<?> getParameterType(int index) {
+		return parameterTypes[index];
+	}
+
+	/**
+	 * 引数の渡し方を取得します
+	 *
+	 * @param index 引数のインデックス
+	 * @return {@link #PARAM_VALUE}, {@link #PARAM_ARRAY}, {@link #PARAM_OUTPUT_ARRAY}, {@link #PARAM_ARRAY_VIEW}, {@link #PARAM_REFERENCE}, {@link #PARAM_INVALID} のいずれか
+	 */
+	public int getParameterMode(int index) {
+		return parameterModes[index];
+	}
+
+	/**
+	 * 値渡し以外の引数があるかどうかを取得します
+	 *
+	 * @return 値渡し以外の引数がある場合 true
+	 */
+	public boolean hasReferenceParameter() {
+		return hasReferenceParameter;
+	}
+
+	/**
+	 * 返値をリモートに登録するインスタンスとして返すかどうかを取得します
+	 *
+	 * @return {@link RpcResult} もしくは {@link RpcOverride} が指定されている場合 true
+	 */
+	public boolean isReferenceResult() {
+		return referenceResult;
+	}
+
+	/**
+	 * 返値の型を取得します
+	 *
+	 * @return 返値の型。{@link CompletionStage} を返すメソッドの場合は完了後の値の型
+	 */
+	public Class<?> getResultType() {
+		return resultType;
+	}
+
+	/**
+	 * 返値を分割して送信するかどうかを取得します
+	 *
+	 * @return 返値の型が {@link Iterator}, {@link Stream}, {@link RemoteStream} のいずれかで、参照渡しでない場合 true
+	 */
+	public boolean isStreamResult() {
+		return streamResult;
+	}
+
+	/**
+	 * 返値が {@link CompletionStage} かどうかを取得します
+	 *
+	 * @return 返値が {@link CompletionStage} の場合 true
+	 */
+	public boolean isAsyncResult() {
+		return asyncResult;
+	}
+
+	/**
+	 * プロクシが応答を待たずに {@link CompletableFuture} を返せるかどうかを取得します
+	 *
+	 * @return 返値の型に {@link CompletableFuture} を代入できる {@link CompletionStage} の場合 true
+	 */
+	public boolean isAsyncInvocation() {
+		return asyncInvocation;
+	}
+
+	/**
+	 * 応答を待たずに実行するかどうかを取得します
+	 *
+	 * @return {@link RpcOneWay} が指定されている場合 true
+	 */
+	public boolean isOneWay() {
+		return oneWay;
+	}
+
+	/**
+	 * {@link RpcTimeout} で指定された応答を待つ時間を取得します
+	 *
+	 * @return 応答を待つ時間 (ナノ秒)。指定されていない場合は -1
+	 */
+	public long getTimeoutNanos() {
+		return timeoutNanos;
+	}
+
+	/**
+	 * リモートが割り当てたメソッドIDを取得します<br>
+	 * 一度割り当てを確認できたIDは変わらないため、以降は {@link MethodTable} を参照しません
+	 *
+	 * @param methodTable {@link MethodTable}
+	 * @return メソッドID、IDが割り当てられていない場合は -1
+	 */
+	public int getMethodId(MethodTable methodTable) {
+		int methodId = this.methodId;
+		if(methodId < 0) {
+			methodId = methodTable.lookup(method);
+			if(methodId >= 0) {
+				this.methodId = methodId;
+			}
+		}
+		return methodId;
+	}
+}
@@ -0,0 +1,61 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.lang.reflect.Array;
+import java.util.Objects;
+
+/**
+ * ローカルの配列を参照する {@link ArrayView}
+ *
+ * @author piclane
+ * @param <A> 配列の型
+ */
+class LocalArrayView<A> implements ArrayView<A> {
+	/** 配列 */
+	private final A array;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param array 配列
+	 * @throws IllegalArgumentException array が配列でない場合
+	 */
+	LocalArrayView(A array) {
+		Objects.requireNonNull(array);
+		if(!array.getClass().isArray()) {
+			throw new IllegalArgumentException("Not an array: " + array.getClass().getName());
+		}
+		this.array = array;
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.ArrayView#length()
+	 */
+	@Override
+	public int length() {
+		return Array.getLength(array);
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.ArrayView#getComponentType()
+	 */
+	@Override
+	public Class<?> getComponentType() {
+		return array.getClass().getComponentType();
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.ArrayView#get(int, java.lang.Object, int, int)
+	 */
+	@Override
+	public void get(int index, A dst, int offset, int length) {
+		System.arraycopy(array, index, dst, offset, length);
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.ArrayView#set(int, java.lang.Object, int, int)
+	 */
+	@Override
+	public void set(int index, A src, int offset, int length) {
+		System.arraycopy(src, offset, array, index, length);
+	}
+}
@@ -0,0 +1,199 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.util.Arrays;
+
+/**
+ * long をキーとするオープンアドレス法のハッシュマップ<br>
+ * キーのボクシングを行いません。スレッドセーフではありません
+ *
+ * @param <V> 値の型
+ * @author piclane
+ */
+final class LongHashMap<V> {
+	/** 最大負荷率 */
+	private static final float LOAD_FACTOR = 0.5f;
+
+	/** キー */
+	private long[] keys;
+
+	/** 値。<code>null</code> のスロットは空 */
+	private Object[] values;
+
+	/** 要素数 */
+	private int size;
+
+	/**
+	 * コンストラクタ
+	 */
+	public LongHashMap() {
+		this(16);
+	}
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param initialCapacity 初期容量
+	 */
+	public LongHashMap(int initialCapacity) {
+		int capacity = Integer.highestOneBit(Math.max(initialCapacity, 2) * 2 - 1);
+		this.keys = new long[capacity];
+		this.values = new Object[capacity];
+		this.size = 0;
+	}
+
+	/**
+	 * 要素数を取得します
+	 *
+	 * @return 要素数
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * 値を取得します
+	 *
+	 * @param key キー
+	 * @return 値、存在しない場合は <code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		int mask = keys.length - 1;
+		for(int i=index(key, mask); values[i] != null; i=(i + 1) & mask) {
+			if(keys[i] == key) {
+				return (V)values[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 値を設定します
+	 *
+	 * @param key キー
+	 * @param value 値
+	 * @return 以前の値、存在しない場合は <code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if(value == null) {
+			throw new NullPointerException();
+		}
+		int mask = keys.length - 1;
+		int i = index(key, mask);
+		for(; values[i] != null; i=(i + 1) & mask) {
+			if(keys[i] == key) {
+				V prev = (V)values[i];
+				values[i] = value;
+				return prev;
+			}
+		}
+		keys[i] = key;
+		values[i] = value;
+		if(++size > keys.length * LOAD_FACTOR) {
+			rehash(keys.length * 2);
+		}
+		return null;
+	}
+
+	/**
+	 * 値を削除します
+	 *
+	 * @param key キー
+	 * @return 削除された値、存在しない場合は <code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		int mask = keys.length - 1;
+		for(int i=index(key, mask); values[i] != null; i=(i + 1) & mask) {
+			if(keys[i] == key) {
+				V prev = (V)values[i];
+				values[i] = null;
+				size--;
+				shiftBack(i, mask);
+				return prev;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 全ての値を削除して返します
+	 *
+	 * @param a 返す配列の型を示す配列
+	 * @return 削除された値
+	 */
+	@SuppressWarnings("unchecked")
+	public V[] drain(V[] a) {
+		a = Arrays.copyOf(a, size);
+		for(int i=0, j=0; i<values.length; i++) {
+			if(values[i] != null) {
+				a[j++] = (V)values[i];
+			}
+		}
+		clear();
+		return a;
+	}
+
+	/**
+	 * 全ての値を削除します
+	 */
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	/**
+	 * 削除されたスロット以降の連続したエントリーを詰め直します
+	 *
+	 * @param hole 削除されたスロット
+	 * @param mask インデックスのマスク
+	 */
+	private void shiftBack(int hole, int mask) {
+		for(int i=(hole + 1) & mask; values[i] != null; i=(i + 1) & mask) {
+			int home = index(keys[i], mask);
+			// home が (hole, i] の範囲外であれば hole に移動できる
+			if(((i - home) & mask) >= ((i - hole) & mask)) {
+				keys[hole] = keys[i];
+				values[hole] = values[i];
+				values[i] = null;
+				hole = i;
+			}
+		}
+	}
+
+	/**
+	 * 容量を変更します
+	 *
+	 * @param capacity 新しい容量
+	 */
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		int mask = capacity - 1;
+		for(int j=0; j<oldKeys.length; j++) {
+			if(oldValues[j] != null) {
+				int i = index(oldKeys[j], mask);
+				while(values[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+			}
+		}
+	}
+
+	/**
+	 * キーのハッシュからスロットのインデックスを求めます
+	 *
+	 * @param key キー
+	 * @param mask インデックスのマスク
+	 * @return インデックス
+	 */
+	private static int index(long key, int mask) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h >>> 32)) & mask;
+	}
+}
@@ -0,0 +1,261 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link MethodHandle} でメソッドを実行します<br>
+ * 実装クラスのメソッドを直接指す {@link MethodHandle} を (実装クラス, メソッド) 毎に 1 度だけ生成し、
+ * {@link Method#invoke(Object, Object...)} のアクセスチェックと呼び出し箇所の多相化を避けます
+ *
+ * @author piclane
+ */
+final class MethodInvoker {
+	/** 全ての {@link MethodInvoker} が共有する型 */
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+	/**
+	 * Key:   ラッパークラス
+	 * Value: プリミティブ型
+	 */
+	private static final Map<Class<?>, Class<?>> PRIMITIVES = new HashMap<>();
+	static {
+		PRIMITIVES.put(Boolean.class, boolean.class);
+		PRIMITIVES.put(Byte.class, byte.class);
+		PRIMITIVES.put(Short.class, short.class);
+		PRIMITIVES.put(Character.class, char.class);
+		PRIMITIVES.put(Integer.class, int.class);
+		PRIMITIVES.put(Long.class, long.class);
+		PRIMITIVES.put(Float.class, float.class);
+		PRIMITIVES.put(Double.class, double.class);
+	}
+
+	/** 実装クラス毎の {@link Table} */
+	private static final ClassValue<Table> TABLES = new ClassValue<Table>() {
+		@Override
+		protected Table computeValue(Class<?> type) {
+			return new Table(type);
+		}
+	};
+
+	/** (Object, Object[])Object に変換した {@link MethodHandle} */
+	private final MethodHandle handle;
+
+	/** 引数の型 */
+	private final Class<?>[] parameterTypes;
+
+	/** static メソッドの場合 true */
+	private final boolean isStatic;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param implClass 実装クラス。static メソッドの場合はメソッドを宣言しているクラス
+	 * @param method 実行するメソッド
+	 */
+	private MethodInvoker(Class<?> implClass, Method method) {
+		this.parameterTypes = method.getParameterTypes();
+		this.isStatic = (method.getModifiers() & Modifier.STATIC) != 0;
+
+		MethodHandle handle = unreflect(isStatic ? method : implementationOf(implClass, method));
+		if(handle == null) {
+			handle = unreflect(method);
+		}
+		if(handle == null) {
+			throw new IllegalArgumentException(method + " is not accessible");
+		}
+		if(isStatic) {
+			handle = MethodHandles.dropArguments(handle, 0, Object.class);
+		}
+		this.handle = handle
+			.asSpreader(Object[].class, parameterTypes.length)
+			.asType(INVOKER_TYPE);
+	}
+
+	/**
+	 * 実装クラスがメソッドを実装しているメソッドを取得します
+	 *
+	 * @param implClass 実装クラス
+	 * @param method インターフェイスのメソッド
+	 * @return 実装クラスのメソッド。取得できない場合はインターフェイスのメソッド
+	 */
+	private static Method implementationOf(Class<?> implClass, Method method) {
+		if(implClass == null || implClass == method.getDeclaringClass()) {
+			return method;
+		}
+		try {
+			return implClass.getMethod(method.getName(), method.getParameterTypes());
+		} catch (NoSuchMethodException e) {
+			return method;
+		}
+	}
+
+	/**
+	 * メソッドの {@link MethodHandle} を生成します<br>
+	 * 公開されていないクラスのメソッドはアクセスチェックを抑止して生成します
+	 *
+	 * @param method メソッド
+	 * @return {@link MethodHandle}、アクセスできない場合は <code>null</code>
+	 */
+	private static MethodHandle unreflect(Method method) {
+		try {
+			return MethodHandles.publicLookup().unreflect(method);
+		} catch (IllegalAccessException e) {
+			// 公開されていないクラスのメソッド
+		}
+		try {
+			method.setAccessible(true);
+			return MethodHandles.lookup().unreflect(method);
+		} catch (IllegalAccessException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * 実装クラスの {@link Table} を取得します
+	 *
+	 * @param implClass 実装クラス
+	 * @return {@link Table}
+	 */
+	static Table tableOf(Class<?> implClass) {
+		return TABLES.get(implClass);
+	}
+
+	/**
+	 * static メソッドの {@link MethodInvoker} を取得します
+	 *
+	 * @param method static メソッド
+	 * @return {@link MethodInvoker}
+	 */
+	static MethodInvoker forStatic(Method method) {
+		return tableOf(method.getDeclaringClass()).get(method);
+	}
+
+	/**
+	 * メソッドを実行します<br>
+	 * {@link Method#invoke(Object, Object...)} と同様に、引数を変換できない場合はメソッドを実行せずに
+	 * {@link IllegalArgumentException} をスローします
+	 *
+	 * @param target 対象のインスタンス。static メソッドの場合は無視されます
+	 * @param args 引数
+	 * @return 返値。void の場合は <code>null</code>
+	 * @throws IllegalArgumentException 引数の数もしくは型が一致しない場合、もしくはインスタンスが指定されていない場合
+	 * @throws InvocationTargetException メソッドが例外をスローした場合
+	 */
+	public Object invoke(Object target, Object[] args) throws InvocationTargetException {
+		int argCount = args != null ? args.length : 0;
+		if(argCount != parameterTypes.length) {
+			throw new IllegalArgumentException("wrong number of arguments: " + argCount + " expected: " + parameterTypes.length);
+		}
+		if(target == null && !isStatic) {
+			throw new IllegalArgumentException("target is null");
+		}
+		for(int i=0; i<argCount; i++) {
+			if(!isAssignable(parameterTypes[i], args[i])) {
+				throw new IllegalArgumentException("argument type mismatch: parameter " + i + " expected: " + parameterTypes[i].getName()
+					+ " actual: " + (args[i] != null ? args[i].getClass().getName() : "null"));
+			}
+		}
+		// 以降の変換は失敗しないため、スローされた例外は全てメソッドがスローしたもの
+		try {
+			return (Object)handle.invokeExact(target, args);
+		} catch (Throwable t) {
+			throw new InvocationTargetException(t);
+		}
+	}
+
+	/**
+	 * 引数を引数の型に変換できるかどうかを取得します<br>
+	 * プリミティブ型の引数は {@link Method#invoke(Object, Object...)} と同様にアンボクシングと拡大変換を許します
+	 *
+	 * @param type 引数の型
+	 * @param arg 引数
+	 * @return 変換できる場合 true
+	 */
+	private static boolean isAssignable(Class<?> type, Object arg) {
+		if(!type.isPrimitive()) {
+			return arg == null || type.isInstance(arg);
+		}
+		if(arg == null) {
+			return false;
+		}
+		Class<?> primitive = PRIMITIVES.get(arg.getClass());
+		return primitive != null && isWidening(primitive, type);
+	}
+
+	/**
+	 * プリミティブ型が同じ型もしくは拡大変換できる型かどうかを取得します
+	 *
+	 * @param from 変換元の型
+	 * @param to 変換先の型
+	 * @return 変換できる場合 true
+	 */
+	private static boolean isWidening(Class<?> from, Class<?> to) {
+		if(from == to) {
+			return true;
+		}
+		if(from == byte.class) {
+			return isWidening(short.class, to);
+		}
+		if(from == short.class || from == char.class) {
+			return isWidening(int.class, to);
+		}
+		if(from == int.class) {
+			return isWidening(long.class, to);
+		}
+		if(from == long.class) {
+			return isWidening(float.class, to);
+		}
+		if(from == float.class) {
+			return to == double.class;
+		}
+		return false;
+	}
+
+	/**
+	 * 実装クラス毎の {@link MethodInvoker} のキャッシュ<br>
+	 * {@link MethodInvoker} は最初に実行される時に生成します
+	 */
+	static final class Table {
+		/** 実装クラス */
+		private final Class<?> implClass;
+
+		/**
+		 * Key:   メソッド
+		 * Value: {@link MethodInvoker}
+		 */
+		private final ConcurrentHashMap<Method, MethodInvoker> invokers;
+
+		/**
+		 * コンストラクタ
+		 *
+		 * @param implClass 実装クラス
+		 */
+		private Table(Class<?> implClass) {
+			this.implClass = implClass;
+			this.invokers = new ConcurrentHashMap<>();
+		}
+
+		/**
+		 * メソッドの {@link MethodInvoker} を取得します
+		 *
+		 * @param method メソッド
+		 * @return {@link MethodInvoker}
+		 * @throws IllegalArgumentException メソッドにアクセスできない場合
+		 */
+		public MethodInvoker get(Method method) {
+			MethodInvoker invoker = invokers.get(method);
+			if(invoker == null) {
+				invoker = invokers.computeIfAbsent(method, m -> new MethodInvoker(implClass, m));
+			}
+			return invoker;
+		}
+	}
+}
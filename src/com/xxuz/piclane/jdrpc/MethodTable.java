@@ -0,0 +1,171 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * セッション単位のメソッドテーブル<br>
+ * インターフェイスが初めて登録された時点でそのメソッドに小さな整数のIDを割り当て、
+ * 以降の {@link CommandRequest.Invoke} ではクラスやメソッド名の代わりにIDを送受信します<br>
+ * 各インターフェイスのメソッドは両端で同一の順序に整列されるため、
+ * 登録時にはインターフェイス毎の先頭ID (ベースID) のみを送信します<br>
+ * 両端でインターフェイスのバージョンが異なるとIDがずれるため、ベースIDと共に整列したメソッドのシグネチャのハッシュ値
+ * (フィンガープリント) を送信し、一致するインターフェイスのみIDを使用します。
+ * 一致しないインターフェイスはクラス、メソッド名、引数の型でメソッドを指定します
+ *
+ * @author piclane
+ */
+final class MethodTable {
+	/** メソッドの整列順 */
+	private static final Comparator<Method> METHOD_ORDER = Comparator
+		.comparing((Method m) -> m.getDeclaringClass().getName())
+		.thenComparing(Method::getName)
+		.thenComparing(m -> Arrays.toString(m.getParameterTypes()));
+
+	/** インターフェイス毎のフィンガープリント */
+	private static final ClassValue<Integer> FINGERPRINTS = new ClassValue<Integer>() {
+		@Override
+		protected Integer computeValue(Class<?> type) {
+			int hash = 1;
+			for(Method method: methodsOf(type)) {
+				hash = 31 * hash + method.getDeclaringClass().getName().hashCode();
+				hash = 31 * hash + method.getName().hashCode();
+				for(Class<?> parameterType: method.getParameterTypes()) {
+					hash = 31 * hash + parameterType.getName().hashCode();
+				}
+				hash = 31 * hash + method.getReturnType().getName().hashCode();
+			}
+			return hash;
+		}
+	};
+
+	/** エクスポートしたメソッド。インデックスがメソッドID */
+	private volatile Method[] exported;
+
+	/**
+	 * Key:   エクスポートしたインターフェイス
+	 * Value: ベースID
+	 */
+	private final Map<Class<?>, Integer> exportedBases;
+
+	/**
+	 * Key:   リモートがエクスポートしたメソッド
+	 * Value: メソッドID
+	 */
+	private final ConcurrentHashMap<Method, Integer> imported;
+
+	/**
+	 * コンストラクタ
+	 */
+	public MethodTable() {
+		this.exported = new Method[0];
+		this.exportedBases = new HashMap<>();
+		this.imported = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * インターフェイスのメソッドを整列された順序で取得します
+	 *
+	 * @param iface インターフェイス
+	 * @return 整列されたメソッド
+	 */
+	static Method[] methodsOf(Class<?> iface) {
+		Method[] methods = iface.getMethods();
+		Arrays.sort(methods, METHOD_ORDER);
+		return methods;
+	}
+
+	/**
+	 * インターフェイスのフィンガープリントを取得します<br>
+	 * 整列したメソッドの宣言クラス、名前、引数の型、返値の型から求めます
+	 *
+	 * @param interfaces インターフェイス
+	 * @return インターフェイス毎のフィンガープリント
+	 */
+	public static int[] fingerprintsOf(Class<?>[] interfaces) {
+		int[] fingerprints = new int[interfaces.length];
+		for(int i=0; i<interfaces.length; i++) {
+			fingerprints[i] = FINGERPRINTS.get(interfaces[i]);
+		}
+		return fingerprints;
+	}
+
+	/**
+	 * インターフェイスをエクスポートし、ベースIDを割り当てます<br>
+	 * 既にエクスポートされている場合は割り当て済みのベースIDを返します
+	 *
+	 * @param interfaces インターフェイス
+	 * @return インターフェイス毎のベースID
+	 */
+	public synchronized int[] export(Class<?>[] interfaces) {
+		int[] bases = new int[interfaces.length];
+		for(int i=0; i<interfaces.length; i++) {
+			Class<?> iface = interfaces[i];
+			Integer base = exportedBases.get(iface);
+			if(base == null) {
+				Method[] methods = methodsOf(iface);
+				Method[] exported = this.exported;
+				Method[] exportedNew = Arrays.copyOf(exported, exported.length + methods.length);
+				System.arraycopy(methods, 0, exportedNew, exported.length, methods.length);
+				base = exported.length;
+				exportedBases.put(iface, base);
+				this.exported = exportedNew;
+			}
+			bases[i] = base;
+		}
+		return bases;
+	}
+
+	/**
+	 * メソッドIDからエクスポートしたメソッドを取得します
+	 *
+	 * @param methodId メソッドID
+	 * @return メソッド
+	 * @throws NoSuchMethodException メソッドIDが割り当てられていない場合
+	 */
+	public Method resolve(int methodId) throws NoSuchMethodException {
+		Method[] exported = this.exported;
+		if(methodId < 0 || methodId >= exported.length) {
+			throw new NoSuchMethodException("Unknown method id: " + methodId);
+		}
+		return exported[methodId];
+	}
+
+	/**
+	 * リモートがエクスポートしたインターフェイスを取り込みます<br>
+	 * フィンガープリントが一致しないインターフェイスはIDを取り込みません
+	 *
+	 * @param interfaces インターフェイス
+	 * @param bases インターフェイス毎のベースID。<code>null</code> の場合は何もしません
+	 * @param fingerprints インターフェイス毎のフィンガープリント。<code>null</code> の場合は何もしません
+	 */
+	public void importInterfaces(Class<?>[] interfaces, int[] bases, int[] fingerprints) {
+		if(bases == null || fingerprints == null) {
+			return;
+		}
+		for(int i=0; i<interfaces.length; i++) {
+			if(fingerprints[i] != FINGERPRINTS.get(interfaces[i])) {
+				continue;
+			}
+			Method[] methods = methodsOf(interfaces[i]);
+			for(int j=0; j<methods.length; j++) {
+				imported.putIfAbsent(methods[j], bases[i] + j);
+			}
+		}
+	}
+
+	/**
+	 * リモートがエクスポートしたメソッドのIDを取得します
+	 *
+	 * @param method メソッド
+	 * @return メソッドID、IDが割り当てられていない場合は -1
+	 */
+	public int lookup(Method method) {
+		Integer methodId = imported.get(method);
+		return methodId != null ? methodId : -1;
+	}
+}
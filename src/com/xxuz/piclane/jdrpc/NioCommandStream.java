@@ -0,0 +1,464 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.xxuz.piclane.jdrpc.NioSelectorGroup.SelectorLoop;
+
+/**
+ * {@link SocketChannel} 上のコマンドのストリームを表現します<br>
+ * 接続毎のスレッドを持たず、{@link NioSelectorGroup} のセレクタースレッドが読み書きを行います。
+ * フレームは呼び出し元のスレッドでプールされたダイレクトバッファーに直接エンコードされ、
+ * 送信待ちのフレームはまとめてギャザー書き込みされます。
+ * 大きなダイレクトバッファーはコピーせずに送信しますが、呼び出し元が送信の完了を待たない場合はコピーします<br>
+ * フレームの形式は {@link DefaultCommandStream} と同一です。
+ * ただしフレームの圧縮には対応しないため、リモートに圧縮されたフレームを受信できることを通知しません
+ *
+ * @author piclane
+ */
+public class NioCommandStream extends AbstractCommandStream {
+	/** 1 回のギャザー書き込みで書き込む最大バッファー数 */
+	private static final int MAX_GATHER = 64;
+
+	/** {@link SocketChannel} */
+	private final SocketChannel channel;
+
+	/** フレームの送受信に使用するバッファーのプール */
+	private final DirectBufferPool bufferPool;
+
+	/** 割り当てられたセレクタースレッド */
+	private final SelectorLoop loop;
+
+	/** 送信待ちのフレーム */
+	private final ConcurrentLinkedQueue<Frame> outgoingFrames;
+
+	/** セレクタースレッドに書き込みを依頼済みの場合 true */
+	private final AtomicBoolean writeScheduled;
+
+	/** 終了している場合 true */
+	private final AtomicBoolean closed;
+
+	/** 終了を待つための {@link CountDownLatch} */
+	private final CountDownLatch terminated;
+
+	/** 書き込み中のフレーム。セレクタースレッドからのみ使用します */
+	private final ArrayDeque<Frame> writingFrames;
+
+	/** ギャザー書き込みするバッファー。セレクタースレッドからのみ使用します */
+	private final ByteBuffer[] gather;
+
+	/** フレームを読み出す入力ストリーム。セレクタースレッドからのみ使用します */
+	private final ByteBufferInputStream frameIn;
+
+	/** {@link #frameIn} を読み出す {@link DataInputStream} */
+	private final DataInputStream frameData;
+
+	/** {@link SelectionKey}。セレクタースレッドからのみ使用します */
+	private SelectionKey key;
+
+	/** 受信バッファー。セレクタースレッドからのみ使用します */
+	private ByteBuffer readBuffer;
+
+	/** 受信バッファーに収まらないフレーム。セレクタースレッドからのみ使用します */
+	private ByteBuffer largeFrame;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param channel 接続済みの {@link SocketChannel}
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	public NioCommandStream(SocketChannel channel) throws IOException {
+		this(null, channel);
+	}
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param name 名前
+	 * @param channel 接続済みの {@link SocketChannel}
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	public NioCommandStream(String name, SocketChannel channel) throws IOException {
+		this(name, channel, new BinaryCommandCodec());
+	}
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param name 名前
+	 * @param channel 接続済みの {@link SocketChannel}
+	 * @param codec {@link CommandCodec}
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	public NioCommandStream(String name, SocketChannel channel, CommandCodec codec) throws IOException {
+		this(name, channel, codec, NioSelectorGroup.getDefault());
+	}
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param name 名前
+	 * @param channel 接続済みの {@link SocketChannel}
+	 * @param codec {@link CommandCodec}
+	 * @param group 読み書きを行う {@link NioSelectorGroup}
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	public NioCommandStream(String name, SocketChannel channel, CommandCodec codec, NioSelectorGroup group) throws IOException {
+		super(name, codec);
+		this.channel = channel;
+		this.bufferPool = group.bufferPool;
+		this.outgoingFrames = new ConcurrentLinkedQueue<>();
+		this.writeScheduled = new AtomicBoolean();
+		this.closed = new AtomicBoolean();
+		this.terminated = new CountDownLatch(1);
+		this.writingFrames = new ArrayDeque<>();
+		this.gather = new ByteBuffer[MAX_GATHER];
+		this.frameIn = new ByteBufferInputStream();
+		this.frameData = new FrameDataInputStream(frameIn);
+
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		this.loop = group.register(this, channel);
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.CommandStream#join()
+	 */
+	@Override
+	public void join() throws InterruptedException {
+		terminated.await();
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.AbstractCommandStream#send(com.xxuz.piclane.jdrpc.Command)
+	 */
+	@Override
+	protected void send(Command cmd) {
+		send(cmd, true);
+	}
+
+	/**
+	 * 戻った後に呼び出し元がダイレクトバッファーを変更しても送信内容が変わらないよう、コピーして送信します
+	 *
+	 * @see com.xxuz.piclane.jdrpc.AbstractCommandStream#sendUnawaited(com.xxuz.piclane.jdrpc.Command)
+	 */
+	@Override
+	protected void sendUnawaited(Command cmd) {
+		send(cmd, false);
+	}
+
+	/**
+	 * 呼び出し元のスレッドでエンコードするため、{@link #sendUnawaited(Command)} と同様に送信します
+	 *
+	 * @see com.xxuz.piclane.jdrpc.AbstractCommandStream#postDetached(com.xxuz.piclane.jdrpc.CommandRequest)
+	 */
+	@Override
+	public void postDetached(CommandRequest cmd) {
+		send(cmd, false);
+	}
+
+	/**
+	 * 呼び出し元のスレッドでコマンドをエンコードし、送信待ちのフレームに追加します
+	 *
+	 * @param cmd {@link Command}
+	 * @param linkDirect 大きなダイレクトバッファーをコピーせずに送信する場合 true
+	 */
+	private void send(Command cmd, boolean linkDirect) {
+		if(closed.get()) {
+			return;
+		}
+
+		ByteBufferOutputStream out = new ByteBufferOutputStream(bufferPool, linkDirect);
+		try {
+			encode(cmd, new FrameDataOutputStream(out));
+		} catch (IOException e) {
+			out.discard();
+			throw new UncheckedIOException(e);
+		} catch (RuntimeException e) {
+			out.discard();
+			throw e;
+		}
+		outgoingFrames.add(new Frame(out.finish(), out.pooledBuffers(), isExitResponse(cmd)));
+
+		if(writeScheduled.compareAndSet(false, true)) {
+			if(!loop.execute(this::flush)) {
+				close();
+			}
+		}
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.CommandStream#close()
+	 */
+	@Override
+	public void close() {
+		if(!closed.compareAndSet(false, true)) {
+			return;
+		}
+		closePendingCalls();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// nop
+		}
+		// バッファーはセレクタースレッドが使用し終えてから戻す
+		if(loop == null || !loop.execute(this::releaseBuffers)) {
+			outgoingFrames.clear();
+		}
+		terminated.countDown();
+	}
+
+	/**
+	 * セレクターへの登録が完了した時に呼ばれます
+	 *
+	 * @param key {@link SelectionKey}
+	 */
+	void registered(SelectionKey key) {
+		this.key = key;
+		if(closed.get()) {
+			key.cancel();
+		}
+	}
+
+	/**
+	 * 読み込み可能になった時に呼ばれます
+	 */
+	void readable() {
+		if(closed.get()) {
+			return;
+		}
+		if(readBuffer == null) {
+			readBuffer = bufferPool.acquire();
+		}
+		try {
+			if(channel.read(readBuffer) < 0) {
+				close();
+				return;
+			}
+			readBuffer.flip();
+			boolean more = decodeFrames();
+			readBuffer.compact();
+
+			// 終了要求コマンドで新規受付停止
+			if(!more) {
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+			}
+		} catch (IOException | RuntimeException e) {
+			close();
+		}
+	}
+
+	/**
+	 * 書き込み可能になった時に呼ばれます
+	 */
+	void writable() {
+		flush();
+	}
+
+	/**
+	 * 受信バッファー内の完全なフレームをデコードします
+	 *
+	 * @return 受信を続ける場合 true、終了要求コマンドを受信した場合 false
+	 * @throws IOException デコードに失敗した場合
+	 */
+	private boolean decodeFrames() throws IOException {
+		ByteBuffer rb = readBuffer;
+		while(true) {
+			if(largeFrame != null) {
+				int n = Math.min(rb.remaining(), largeFrame.remaining());
+				ByteBuffer src = rb.duplicate();
+				src.limit(rb.position() + n);
+				largeFrame.put(src);
+				rb.position(rb.position() + n);
+				if(largeFrame.hasRemaining()) {
+					return true;
+				}
+				ByteBuffer frame = largeFrame;
+				largeFrame = null;
+				frame.flip();
+				if(!decode(frame, true)) {
+					return false;
+				}
+				continue;
+			}
+
+			if(rb.remaining() < 4) {
+				return true;
+			}
+			int length = rb.getInt(rb.position());
+			if(length == FrameCompressor.ACCEPT_COMPRESSION) {
+				// 通知しない限り圧縮されたフレームは送信されないため読み捨てる
+				rb.position(rb.position() + 4);
+				continue;
+			}
+			if(length < 0) {
+				throw new IOException("Invalid frame length: " + length);
+			}
+			if(length > rb.capacity() - 4) {
+				// 受信バッファーに収まらないフレームは専用のバッファーに集める
+				rb.position(rb.position() + 4);
+				largeFrame = ByteBuffer.allocate(length);
+				continue;
+			}
+			if(rb.remaining() < 4 + length) {
+				return true;
+			}
+			ByteBuffer frame = rb.duplicate();
+			frame.position(rb.position() + 4);
+			frame.limit(rb.position() + 4 + length);
+			rb.position(rb.position() + 4 + length);
+			if(!decode(frame, false)) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * 1 フレームをデコードして振り分けます
+	 *
+	 * @param frame フレームのペイロード
+	 * @param detachable frame が以降再利用されず、デコードしたコマンドと共有できる場合 true
+	 * @return 受信を続ける場合 true、終了要求コマンドを受信した場合 false
+	 * @throws IOException デコードに失敗した場合
+	 */
+	private boolean decode(ByteBuffer frame, boolean detachable) throws IOException {
+		frameIn.reset(frame, detachable);
+		return received(codec.decode(frameData));
+	}
+
+	/**
+	 * 送信待ちのフレームをギャザー書き込みします<br>
+	 * ソケットの送信バッファーが一杯の場合は書き込み可能になるまで待ちます
+	 */
+	private void flush() {
+		if(key == null || !key.isValid()) {
+			return;
+		}
+		try {
+			while(true) {
+				Frame f;
+				while(writingFrames.size() < MAX_GATHER && (f = outgoingFrames.poll()) != null) {
+					writingFrames.add(f);
+				}
+				if(writingFrames.isEmpty()) {
+					key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+					writeScheduled.set(false);
+					// 依頼済みフラグを下ろす間に追加されたフレームを取りこぼさない
+					if(outgoingFrames.isEmpty() || !writeScheduled.compareAndSet(false, true)) {
+						return;
+					}
+					continue;
+				}
+
+				int n = 0;
+				gathering:
+				for(Frame wf: writingFrames) {
+					for(ByteBuffer buf: wf.buffers) {
+						if(n == gather.length) {
+							break gathering;
+						}
+						if(buf.hasRemaining()) {
+							gather[n++] = buf;
+						}
+					}
+				}
+				channel.write(gather, 0, n);
+				Arrays.fill(gather, 0, n, null);
+
+				// 書き終えたフレームのバッファーをプールに戻す
+				while(!writingFrames.isEmpty() && writingFrames.peek().isWritten()) {
+					Frame done = writingFrames.poll();
+					done.release(bufferPool);
+
+					// 終了応答コマンドの送出で終了
+					if(done.exit) {
+						close();
+						return;
+					}
+				}
+				if(!writingFrames.isEmpty()) {
+					key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+					return;
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			close();
+		}
+	}
+
+	/**
+	 * バッファーをプールに戻します
+	 */
+	private void releaseBuffers() {
+		if(readBuffer != null) {
+			bufferPool.release(readBuffer);
+			readBuffer = null;
+		}
+		largeFrame = null;
+		Frame f;
+		while((f = writingFrames.poll()) != null) {
+			f.release(bufferPool);
+		}
+		while((f = outgoingFrames.poll()) != null) {
+			f.release(bufferPool);
+		}
+	}
+
+	/**
+	 * 送信待ちのフレーム
+	 */
+	private static class Frame {
+		/** 長さを含むフレームのバッファー */
+		private final ByteBuffer[] buffers;
+
+		/** {@link #buffers} のうちプールから取得したバッファー */
+		private final ByteBuffer[] pooled;
+
+		/** 終了応答コマンドの場合 true */
+		private final boolean exit;
+
+		/**
+		 * コンストラクタ
+		 *
+		 * @param buffers 長さを含むフレームのバッファー
+		 * @param pooled buffers のうちプールから取得したバッファー
+		 * @param exit 終了応答コマンドの場合 true
+		 */
+		public Frame(ByteBuffer[] buffers, ByteBuffer[] pooled, boolean exit) {
+			this.buffers = buffers;
+			this.pooled = pooled;
+			this.exit = exit;
+		}
+
+		/**
+		 * 全て書き込まれたかどうかを取得します
+		 *
+		 * @return 全て書き込まれた場合 true
+		 */
+		public boolean isWritten() {
+			return !buffers[buffers.length - 1].hasRemaining();
+		}
+
+		/**
+		 * バッファーをプールに戻します
+		 *
+		 * @param pool {@link DirectBufferPool}
+		 */
+		public void release(DirectBufferPool pool) {
+			for(ByteBuffer buf: pooled) {
+				pool.release(buf);
+			}
+		}
+	}
+}
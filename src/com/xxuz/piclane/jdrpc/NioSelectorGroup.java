@@ -0,0 +1,217 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link NioCommandStream} の入出力を行うセレクタースレッドのグループ<br>
+ * 少数のスレッドで多数の接続を処理します。接続はいずれかのスレッドに割り当てられ、
+ * その接続の読み書きは全て割り当てられたスレッド上で行われます
+ *
+ * @author piclane
+ */
+public final class NioSelectorGroup implements AutoCloseable {
+	/** フレームの送受信に使用するバッファーの容量 */
+	private static final int CHUNK_SIZE = 16 * 1024;
+
+	/** プールするバッファーの最大数 */
+	private static final int MAX_POOLED_CHUNKS = 1024;
+
+	/** 既定の {@link NioSelectorGroup} */
+	private static volatile NioSelectorGroup defaultGroup;
+
+	/** セレクタースレッド */
+	private final SelectorLoop[] loops;
+
+	/** 次に接続を割り当てるセレクタースレッド */
+	private final AtomicInteger next;
+
+	/** フレームの送受信に使用するバッファーのプール */
+	final DirectBufferPool bufferPool;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param nThreads セレクタースレッドの数
+	 * @throws IOException セレクターを開けなかった場合
+	 */
+	public NioSelectorGroup(int nThreads) throws IOException {
+		if(nThreads < 1) {
+			throw new IllegalArgumentException("nThreads must be positive: " + nThreads);
+		}
+		this.loops = new SelectorLoop[nThreads];
+		this.next = new AtomicInteger();
+		this.bufferPool = new DirectBufferPool(CHUNK_SIZE, MAX_POOLED_CHUNKS);
+		try {
+			for(int i=0; i<nThreads; i++) {
+				loops[i] = new SelectorLoop(i);
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+		for(SelectorLoop loop: loops) {
+			loop.thread.start();
+		}
+	}
+
+	/**
+	 * JVM 内で共有する既定の {@link NioSelectorGroup} を取得します<br>
+	 * スレッドの数はプロセッサー数 (最大 4) で、デーモンスレッドのため終了する必要はありません
+	 *
+	 * @return {@link NioSelectorGroup}
+	 * @throws IOException セレクターを開けなかった場合
+	 */
+	public static NioSelectorGroup getDefault() throws IOException {
+		NioSelectorGroup group = defaultGroup;
+		if(group == null) {
+			synchronized (NioSelectorGroup.class) {
+				group = defaultGroup;
+				if(group == null) {
+					group = defaultGroup = new NioSelectorGroup(Math.min(Runtime.getRuntime().availableProcessors(), 4));
+				}
+			}
+		}
+		return group;
+	}
+
+	/**
+	 * 接続をいずれかのセレクタースレッドに割り当てます
+	 *
+	 * @param stream {@link NioCommandStream}
+	 * @param channel ノンブロッキングモードの {@link SocketChannel}
+	 * @return 割り当てたセレクタースレッド
+	 */
+	SelectorLoop register(NioCommandStream stream, SocketChannel channel) {
+		SelectorLoop loop = loops[Math.floorMod(next.getAndIncrement(), loops.length)];
+		loop.execute(() -> {
+			try {
+				stream.registered(channel.register(loop.selector, SelectionKey.OP_READ, stream));
+			} catch (IOException e) {
+				stream.close();
+			}
+		});
+		return loop;
+	}
+
+	/**
+	 * 全てのセレクタースレッドを停止します<br>
+	 * 割り当てられている接続は読み書きされなくなります
+	 */
+	@Override
+	public void close() {
+		for(SelectorLoop loop: loops) {
+			if(loop != null) {
+				loop.close();
+			}
+		}
+	}
+
+	/**
+	 * 1 つのセレクターで複数の接続の読み書きを行うスレッド
+	 */
+	final class SelectorLoop implements Runnable {
+		/** {@link Selector} */
+		private final Selector selector;
+
+		/** スレッド */
+		private final Thread thread;
+
+		/** セレクタースレッドで実行するタスク */
+		private final ConcurrentLinkedQueue<Runnable> tasks;
+
+		/** 停止している場合 true */
+		private volatile boolean closed;
+
+		/**
+		 * コンストラクタ
+		 *
+		 * @param index スレッド番号
+		 * @throws IOException セレクターを開けなかった場合
+		 */
+		private SelectorLoop(int index) throws IOException {
+			this.selector = Selector.open();
+			this.tasks = new ConcurrentLinkedQueue<>();
+			this.thread = new Thread(this, "NioSelectorGroup-" + index);
+			this.thread.setDaemon(true);
+		}
+
+		/**
+		 * タスクをセレクタースレッドで実行します
+		 *
+		 * @param task タスク
+		 * @return 実行を受け付けた場合 true、停止している場合 false
+		 */
+		boolean execute(Runnable task) {
+			if(closed) {
+				return false;
+			}
+			tasks.add(task);
+			if(Thread.currentThread() != thread) {
+				selector.wakeup();
+			}
+			return true;
+		}
+
+		/**
+		 * @see java.lang.Runnable#run()
+		 */
+		@Override
+		public void run() {
+			try {
+				while(!closed) {
+					selector.select();
+					Runnable task;
+					while((task = tasks.poll()) != null) {
+						task.run();
+					}
+					Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+					while(it.hasNext()) {
+						SelectionKey key = it.next();
+						it.remove();
+						NioCommandStream stream = (NioCommandStream)key.attachment();
+						try {
+							if(key.isReadable()) {
+								stream.readable();
+							}
+							if(key.isValid() && key.isWritable()) {
+								stream.writable();
+							}
+						} catch (CancelledKeyException e) {
+							// ストリームが終了している
+						}
+					}
+				}
+			} catch (IOException e) {
+				// セレクターが使用できなくなった
+			} finally {
+				closed = true;
+				for(SelectionKey key: selector.keys()) {
+					Object stream = key.attachment();
+					if(stream instanceof NioCommandStream) {
+						((NioCommandStream)stream).close();
+					}
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					// nop
+				}
+			}
+		}
+
+		/**
+		 * 停止します
+		 */
+		private void close() {
+			closed = true;
+			selector.wakeup();
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@link RpcOverride} の集合の不変なスナップショット<br>
+ * メソッド毎に参照渡しとする引数と返値をビットマスクとして事前計算して保持します。
+ * 変更は {@link #with(RpcOverride, boolean)} で新しいスナップショットを生成して行うため、
+ * 参照側は同期せずに読み込むことができます
+ *
+ * @author piclane
+ */
+final class OverrideTable {
+	/** {@link RpcOverride} を持たない表 */
+	static final OverrideTable EMPTY = new OverrideTable(Collections.emptySet());
+
+	/** 返値を表すビット */
+	private static final int RESULT_BIT = 0;
+
+	/** {@link RpcOverride} の集合 */
+	private final Set<RpcOverride> overrides;
+
+	/**
+	 * Key:   メソッド
+	 * Value: 参照渡しとするビットのマスク。ビット 0 は返値、ビット i + 1 は i 番目の引数を表します
+	 */
+	private final Map<Method, long[]> masks;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param overrides {@link RpcOverride} の集合。以降変更してはいけません
+	 */
+	private OverrideTable(Set<RpcOverride> overrides) {
+		Map<Method, long[]> masks = new HashMap<>();
+		for(RpcOverride override: overrides) {
+			Method method = override.getMethod();
+			long[] mask = masks.computeIfAbsent(method, m -> new long[(m.getParameterCount() >>> 6) + 1]);
+			int bit = override.getParameterIndex() + 1;
+			mask[bit >>> 6] |= 1L << bit;
+		}
+		this.overrides = overrides;
+		this.masks = masks;
+	}
+
+	/**
+	 * {@link RpcOverride} を追加もしくは削除した表を生成します
+	 *
+	 * @param override {@link RpcOverride}
+	 * @param add 追加する場合 true、削除する場合 false
+	 * @return 変更後の表。変更が無い場合は自身
+	 */
+	OverrideTable with(RpcOverride override, boolean add) {
+		if(overrides.contains(override) == add) {
+			return this;
+		}
+		Set<RpcOverride> overrides = new HashSet<>(this.overrides);
+		if(add) {
+			overrides.add(override);
+		} else {
+			overrides.remove(override);
+		}
+		return new OverrideTable(Collections.unmodifiableSet(overrides));
+	}
+
+	/**
+	 * メソッドの返値が参照渡しに指定されているかどうかを取得します
+	 *
+	 * @param method メソッド
+	 * @return {@link RpcOverride#forMethod(Method)} が含まれる場合 true
+	 */
+	boolean isResultOverridden(Method method) {
+		return test(method, RESULT_BIT);
+	}
+
+	/**
+	 * メソッドの引数が参照渡しに指定されているかどうかを取得します
+	 *
+	 * @param method メソッド
+	 * @param parameterIndex 引数のインデックス
+	 * @return {@link RpcOverride#forMethodParameter(int, Method)} が含まれる場合 true
+	 */
+	boolean isParameterOverridden(Method method, int parameterIndex) {
+		return test(method, parameterIndex + 1);
+	}
+
+	/**
+	 * メソッドのビットを確認します
+	 *
+	 * @param method メソッド
+	 * @param bit ビット
+	 * @return ビットが立っている場合 true
+	 */
+	private boolean test(Method method, int bit) {
+		long[] mask = masks.get(method);
+		return mask != null && (mask[bit >>> 6] & (1L << bit)) != 0L;
+	}
+}
@@ -0,0 +1,371 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 応答待ちの呼び出しを管理します<br>
+ * メッセージIDの採番と {@link PendingCall} の割り当てを行い、
+ * 応答の受信、タイムアウト、ストリームの終了のいずれかで必ず登録を解除します<br>
+ * 解除された {@link PendingCall} はプールに戻されて再利用されるため、
+ * 定常状態の呼び出しでは相関付けのためのオブジェクトを確保しません
+ *
+ * @author piclane
+ */
+final class PendingCalls {
+	/** プールする {@link PendingCall} の最大数 */
+	private static final int MAX_POOL_SIZE = 256;
+
+	/** 空の配列 */
+	private static final PendingCall[] EMPTY_ARRAY = new PendingCall[0];
+
+	/**
+	 * Key:   メッセージID
+	 * Value: {@link PendingCall}
+	 */
+	private final LongHashMap<PendingCall> calls;
+
+	/** 再利用可能な {@link PendingCall} */
+	private final PendingCall[] pool;
+
+	/** {@link #pool} 内の要素数 */
+	private int pooled;
+
+	/** 最後に採番したメッセージID */
+	private long lastMessageId;
+
+	/** 終了している場合 true */
+	private boolean closed;
+
+	/**
+	 * コンストラクタ
+	 */
+	public PendingCalls() {
+		this.calls = new LongHashMap<>(64);
+		this.pool = new PendingCall[MAX_POOL_SIZE];
+		this.pooled = 0;
+		this.lastMessageId = 0L;
+		this.closed = false;
+	}
+
+	/**
+	 * 要求コマンドにメッセージIDを採番し、応答待ちとして登録します
+	 *
+	 * @param cmd 要求コマンド
+	 * @return {@link PendingCall}
+	 * @throws IllegalStateException 既に終了している場合
+	 */
+	public synchronized PendingCall register(CommandRequest cmd) {
+		return register(cmd, null);
+	}
+	
+	/**
+	 * 要求コマンドにメッセージIDを採番し、応答を {@link CompletableFuture} で受け取る呼び出しとして登録します<br>
+	 * 応答は受信スレッド上で引き渡されます
+	 *
+	 * @param cmd 要求コマンド
+	 * @return 応答コマンドを受け取る {@link CompletableFuture}
+	 * @throws IllegalStateException 既に終了している場合
+	 */
+	public synchronized CompletableFuture<CommandResponse> registerAsync(CommandRequest cmd) {
+		PendingFuture future = new PendingFuture();
+		future.messageId = register(cmd, future).messageId;
+		return future;
+	}
+	
+	/**
+	 * 要求コマンドにメッセージIDを採番し、応答待ちとして登録します
+	 *
+	 * @param cmd 要求コマンド
+	 * @param future 応答を受け取る {@link CompletableFuture}、待機する場合は <code>null</code>
+	 * @return {@link PendingCall}
+	 * @throws IllegalStateException 既に終了している場合
+	 */
+	private PendingCall register(CommandRequest cmd, PendingFuture future) {
+		if(closed) {
+			throw new IllegalStateException("CommandStream has been closed.");
+		}
+		long messageId = ++lastMessageId;
+		PendingCall pc;
+		if(pooled > 0) {
+			pc = pool[--pooled];
+			pool[pooled] = null;
+		} else {
+			pc = new PendingCall();
+		}
+		pc.reset(messageId);
+		pc.future = future;
+		calls.put(messageId, pc);
+		cmd.setMessageId(messageId);
+		return pc;
+	}
+
+	/**
+	 * 応答コマンドを対応する呼び出しに引き渡します
+	 *
+	 * @param resp 応答コマンド
+	 * @return 対応する呼び出しが存在した場合 true
+	 */
+	public boolean complete(CommandResponse resp) {
+		PendingCall pc;
+		synchronized (this) {
+			pc = calls.remove(resp.getMessageId());
+		}
+		if(pc == null) {
+			return false;
+		}
+		PendingFuture future = pc.future;
+		if(future != null) {
+			// 待機しているスレッドは存在しないので即座にプールへ戻す
+			release(pc);
+			future.complete(resp);
+		} else {
+			pc.complete(resp);
+		}
+		return true;
+	}
+
+	/**
+	 * 応答が届くまで待機します<br>
+	 * 応答を受け取った {@link PendingCall} はプールに戻されます
+	 *
+	 * @param pc {@link PendingCall}
+	 * @return 応答コマンド
+	 * @throws InterruptedException 割込例外が発生した場合
+	 * @throws IllegalStateException 応答を受け取る前にストリームが終了した場合
+	 */
+	public CommandResponse await(PendingCall pc) throws InterruptedException {
+		try {
+			pc.await(0L);
+		} catch (InterruptedException e) {
+			abandon(pc);
+			throw e;
+		}
+		return take(pc);
+	}
+
+	/**
+	 * 応答が届くか、タイムアウトするまで待機します<br>
+	 * タイムアウトした場合、呼び出しの登録は解除されます
+	 *
+	 * @param pc {@link PendingCall}
+	 * @param timeout タイムアウト
+	 * @param unit timeout の単位
+	 * @return 応答コマンド、タイムアウトした場合は <code>null</code>
+	 * @throws InterruptedException 割込例外が発生した場合
+	 * @throws IllegalStateException 応答を受け取る前にストリームが終了した場合
+	 */
+	public CommandResponse await(PendingCall pc, long timeout, TimeUnit unit) throws InterruptedException {
+		try {
+			if(!pc.await(Math.max(unit.toNanos(timeout), 1L))) {
+				if(abandon(pc)) {
+					return null;
+				}
+				// 応答の引き渡しと競合した場合は引き渡しを待つ
+				pc.await(0L);
+			}
+		} catch (InterruptedException e) {
+			abandon(pc);
+			throw e;
+		}
+		return take(pc);
+	}
+
+	/**
+	 * 呼び出しの登録を解除します<br>
+	 * 登録解除できた {@link PendingCall} はプールに戻されます
+	 *
+	 * @param pc {@link PendingCall}
+	 * @return 登録解除できた場合 true、既に応答の引き渡しが始まっていた場合は false
+	 */
+	public boolean abandon(PendingCall pc) {
+		return abandon(pc.messageId);
+	}
+	
+	/**
+	 * 呼び出しの登録を解除します<br>
+	 * 登録解除できた {@link PendingCall} はプールに戻されます
+	 *
+	 * @param messageId メッセージID
+	 * @return 登録解除できた場合 true、既に応答の引き渡しが始まっていた場合は false
+	 */
+	private boolean abandon(long messageId) {
+		PendingCall pc;
+		synchronized (this) {
+			pc = calls.remove(messageId);
+		}
+		if(pc == null) {
+			return false;
+		}
+		release(pc);
+		return true;
+	}
+
+	/**
+	 * {@link #registerAsync(CommandRequest)} で登録した呼び出しを期限切れにします<br>
+	 * 登録を解除できた場合は future を cause で例外的に完了します
+	 *
+	 * @param future {@link #registerAsync(CommandRequest)} が返した {@link CompletableFuture}
+	 * @param cause 完了させる例外
+	 * @return 登録解除できた場合 true、既に応答の引き渡しが始まっていた場合は false
+	 */
+	public boolean expire(CompletableFuture<CommandResponse> future, Throwable cause) {
+		PendingFuture pf = (PendingFuture)future;
+		if(!abandon(pf.messageId)) {
+			return false;
+		}
+		pf.completeExceptionally(cause);
+		return true;
+	}
+
+	/**
+	 * 応答待ちの呼び出しの数を取得します
+	 *
+	 * @return 応答待ちの呼び出しの数
+	 */
+	public synchronized int size() {
+		return calls.size();
+	}
+
+	/**
+	 * 終了します<br>
+	 * 応答待ちの全ての呼び出しは失敗し、以降の登録は拒否されます
+	 */
+	public void close() {
+		PendingCall[] pcs;
+		synchronized (this) {
+			closed = true;
+			pcs = calls.drain(EMPTY_ARRAY);
+		}
+		for(PendingCall pc: pcs) {
+			PendingFuture future = pc.future;
+			if(future != null) {
+				future.completeExceptionally(new IllegalStateException("CommandStream has been closed."));
+			} else {
+				pc.complete(null);
+			}
+		}
+	}
+
+	/**
+	 * 応答を取り出し、{@link PendingCall} をプールに戻します
+	 *
+	 * @param pc 応答済みの {@link PendingCall}
+	 * @return 応答コマンド
+	 * @throws IllegalStateException 応答を受け取る前にストリームが終了した場合
+	 */
+	private CommandResponse take(PendingCall pc) {
+		CommandResponse resp = pc.response;
+		release(pc);
+		if(resp == null) {
+			throw new IllegalStateException("CommandStream has been closed.");
+		}
+		return resp;
+	}
+
+	/**
+	 * {@link PendingCall} をプールに戻します
+	 *
+	 * @param pc {@link PendingCall}
+	 */
+	private synchronized void release(PendingCall pc) {
+		pc.reset(0L);
+		pc.future = null;
+		if(pooled < pool.length) {
+			pool[pooled++] = pc;
+		}
+	}
+
+	/**
+	 * 応答待ちの呼び出し
+	 */
+	static final class PendingCall {
+		/** メッセージID */
+		private long messageId;
+
+		/** 応答が引き渡された場合 true */
+		private boolean done;
+
+		/** 応答コマンド。ストリームが終了した場合は <code>null</code> */
+		private CommandResponse response;
+		
+		/** 応答を受け取る {@link CompletableFuture}。待機する場合は <code>null</code> */
+		private PendingFuture future;
+
+		/**
+		 * 状態を初期化します
+		 *
+		 * @param messageId メッセージID
+		 */
+		private synchronized void reset(long messageId) {
+			this.messageId = messageId;
+			this.done = false;
+			this.response = null;
+		}
+
+		/**
+		 * 応答を引き渡します
+		 *
+		 * @param response 応答コマンド、ストリームが終了した場合は <code>null</code>
+		 */
+		private synchronized void complete(CommandResponse response) {
+			this.response = response;
+			this.done = true;
+			notifyAll();
+		}
+
+		/**
+		 * 応答が引き渡されるまで待機します
+		 *
+		 * @param timeoutNanos タイムアウト (ナノ秒)。0 の場合は無期限
+		 * @return 応答が引き渡された場合 true、タイムアウトした場合 false
+		 * @throws InterruptedException 割込例外が発生した場合
+		 */
+		private synchronized boolean await(long timeoutNanos) throws InterruptedException {
+			if(timeoutNanos <= 0L) {
+				while(!done) {
+					wait();
+				}
+				return true;
+			}
+			long deadline = System.nanoTime() + timeoutNanos;
+			while(!done) {
+				long remaining = deadline - System.nanoTime();
+				if(remaining <= 0L) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			}
+			return true;
+		}
+
+		/**
+		 * messageId を取得します
+		 *
+		 * @return messageId
+		 */
+		public synchronized long getMessageId() {
+			return messageId;
+		}
+	}
+	
+	/**
+	 * 取り消されると呼び出しの登録を解除する {@link CompletableFuture}
+	 */
+	private final class PendingFuture extends CompletableFuture<CommandResponse> {
+		/** メッセージID */
+		private long messageId;
+		
+		/**
+		 * @see java.util.concurrent.CompletableFuture#cancel(boolean)
+		 */
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if(cancelled) {
+				abandon(messageId);
+			}
+			return cancelled;
+		}
+	}
+}
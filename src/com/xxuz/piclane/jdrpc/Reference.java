@@ -15,14 +15,49 @@ class Reference implements Serializable {
 	/** インスタンスID */
 	private final UUID instanceId;
 
+	/** 受信側が登録に使用するインターフェイス。登録済みのインスタンスを指す場合は <code>null</code> */
+	private final Class<?>[] interfaces;
+
+	/** インターフェイス毎のベースID。登録済みのインスタンスを指す場合は <code>null</code> */
+	private final int[] methodBases;
+
+	/** インターフェイス毎のフィンガープリント。登録済みのインスタンスを指す場合は <code>null</code> */
+	private final int[] methodFingerprints;
+
+	/** 送信世代。渡した側がインスタンスを送信する度に増やします。登録済みのインスタンスを指す場合は 0 */
+	private final long generation;
+
+	/** 渡した側のリースの期間 (ナノ秒)。登録済みのインスタンスを指す場合は 0 */
+	private final long leaseNanos;
+
 	/**
 	 * コンストラクタ
 	 * 
 	 * @param instanceId インスタンスID
 	 */
 	public Reference(UUID instanceId) {
+		this(instanceId, null, null, null, 0L, 0L);
+	}
+
+	/**
+	 * コンストラクタ<br>
+	 * 受信側は {@link CommandRequest.Register} を受信した場合と同様にインスタンスを登録します
+	 * 
+	 * @param instanceId インスタンスID
+	 * @param interfaces 受信側が登録に使用するインターフェイス
+	 * @param methodBases インターフェイス毎のベースID
+	 * @param methodFingerprints インターフェイス毎のフィンガープリント
+	 * @param generation 送信世代
+	 * @param leaseNanos 渡した側のリースの期間 (ナノ秒)
+	 */
+	public Reference(UUID instanceId, Class<?>[] interfaces, int[] methodBases, int[] methodFingerprints, long generation, long leaseNanos) {
 		super();
 		this.instanceId = instanceId;
+		this.interfaces = interfaces;
+		this.methodBases = methodBases;
+		this.methodFingerprints = methodFingerprints;
+		this.generation = generation;
+		this.leaseNanos = leaseNanos;
 	}
 
 	/**
@@ -33,4 +68,51 @@ class Reference implements Serializable {
 	public UUID getInstanceId() {
 		return instanceId;
 	}
+
+	/**
+	 * interfaces を取得します
+	 *
+	 * @return 受信側が登録に使用するインターフェイス。登録済みのインスタンスを指す場合は <code>null</code>
+	 */
+	public Class<?>[] getInterfaces() {
+		return interfaces;
+	}
+
+	/**
+	 * methodBases を取得します
+	 *
+	 * @return インターフェイス毎のベースID。登録済みのインスタンスを指す場合は <code>null</code>
+	 */
+	public int[] getMethodBases() {
+		return methodBases;
+	}
+
+	/**
+	 * methodFingerprints を取得します
+	 *
+	 * @return インターフェイス毎のフィンガープリント。登録済みのインスタンスを指す場合は <code>null</code>
+	 */
+	public int[] getMethodFingerprints() {
+		return methodFingerprints;
+	}
+
+	/**
+	 * generation を取得します<br>
+	 * 受信側は受け取った最大の送信世代を登録解除時に返し、渡した側はそれより後に送信している場合は登録解除を無視します
+	 *
+	 * @return 送信世代。登録済みのインスタンスを指す場合は 0
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * leaseNanos を取得します<br>
+	 * 受信側はこの期間の 1/3 毎にリースを更新します
+	 *
+	 * @return 渡した側のリースの期間 (ナノ秒)。登録済みのインスタンスを指す場合は 0
+	 */
+	public long getLeaseNanos() {
+		return leaseNanos;
+	}
 }
@@ -2,6 +2,8 @@ package com.xxuz.piclane.jdrpc;
 
 import java.io.Serializable;
 import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
 
 /**
  * 
@@ -11,26 +13,188 @@ import java.lang.reflect.Array;
 class ReferenceArray implements Serializable {
 	/** serialVersionUID */
 	private static final long serialVersionUID = -2062283685564104315L;
-	
+
 	/** an empty array */
 	public static final ReferenceArray[] EMPTY_ARRAY = new ReferenceArray[0];
-	
+
+	/** kind: the whole array */
+	static final int KIND_FULL = 0;
+
+	/** kind: only the length of a write-only array */
+	static final int KIND_OUTPUT = 1;
+
+	/** kind: modified ranges of the array */
+	static final int KIND_DELTA = 2;
+
+	/** kind: modified ranges of the array, applied after clearing the whole array */
+	static final int KIND_DELTA_CLEARED = 3;
+
+	/** unmodified gaps shorter than this are merged into the surrounding ranges */
+	private static final int MERGE_GAP = 16;
+
 	/** an index of the parameter */
 	private final int parameterIndex;
-	
-	/** an array object */
+
+	/** one of {@link #KIND_FULL}, {@link #KIND_OUTPUT}, {@link #KIND_DELTA}, {@link #KIND_DELTA_CLEARED} */
+	private final int kind;
+
+	/** an array object. the concatenated modified ranges for a delta, <code>null</code> for a write-only array */
 	private final Object array;
 
+	/** the length of the whole array */
+	private final int length;
+
+	/** the start offsets and lengths of the modified ranges, alternately. <code>null</code> unless a delta */
+	private final int[] ranges;
+
 	/**
 	 * Constructor
-	 * 
+	 *
 	 * @param parameterIndex an index of the parameter
 	 * @param array an array object
 	 */
 	public ReferenceArray(int parameterIndex, Object array) {
+		this(parameterIndex, KIND_FULL, array, Array.getLength(array), null);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param parameterIndex an index of the parameter
+	 * @param kind one of {@link #KIND_FULL}, {@link #KIND_OUTPUT}, {@link #KIND_DELTA}, {@link #KIND_DELTA_CLEARED}
+	 * @param array an array object
+	 * @param length the length of the whole array
+	 * @param ranges the start offsets and lengths of the modified ranges, alternately
+	 */
+	ReferenceArray(int parameterIndex, int kind, Object array, int length, int[] ranges) {
 		super();
 		this.parameterIndex = parameterIndex;
+		this.kind = kind;
 		this.array = array;
+		this.length = length;
+		this.ranges = ranges;
+	}
+
+	/**
+	 * Creates a write-only array which carries only its length
+	 *
+	 * @param parameterIndex an index of the parameter
+	 * @param length the length of the array
+	 * @return {@link ReferenceArray}
+	 */
+	public static ReferenceArray forOutput(int parameterIndex, int length) {
+		return new ReferenceArray(parameterIndex, KIND_OUTPUT, null, length, null);
+	}
+
+	/**
+	 * Creates the write-back of an array, which carries only the ranges modified since the snapshot.<br>
+	 * Arrays of objects are always written back entirely,
+	 * because elements modified in place cannot be detected.
+	 *
+	 * @param parameterIndex an index of the parameter
+	 * @param snapshot a copy of the array taken before the invocation, <code>null</code> if the array was created with default values
+	 * @param array the array after the invocation
+	 * @return {@link ReferenceArray}
+	 */
+	public static ReferenceArray diff(int parameterIndex, Object snapshot, Object array) {
+		IntPredicate same = sameAt(snapshot, array);
+		if(same == null) {
+			return new ReferenceArray(parameterIndex, array);
+		}
+
+		int length = Array.getLength(array);
+		int[] ranges = new int[8];
+		int rangeCount = 0;
+		int total = 0;
+		for(int i=0; i<length; ) {
+			if(same.test(i)) {
+				i++;
+				continue;
+			}
+			int start = i;
+			int end = ++i;
+			while(i < length && i - end < MERGE_GAP) {
+				if(!same.test(i)) {
+					end = i + 1;
+				}
+				i++;
+			}
+			i = end;
+			if(rangeCount + 2 > ranges.length) {
+				ranges = Arrays.copyOf(ranges, ranges.length * 2);
+			}
+			ranges[rangeCount++] = start;
+			ranges[rangeCount++] = end - start;
+			total += end - start;
+		}
+
+		Object packed = Array.newInstance(array.getClass().getComponentType(), total);
+		for(int r=0, pos=0; r<rangeCount; r+=2) {
+			System.arraycopy(array, ranges[r], packed, pos, ranges[r + 1]);
+			pos += ranges[r + 1];
+		}
+		return new ReferenceArray(
+			parameterIndex,
+			snapshot == null ? KIND_DELTA_CLEARED : KIND_DELTA,
+			packed,
+			length,
+			Arrays.copyOf(ranges, rangeCount));
+	}
+
+	/**
+	 * Returns a predicate which tests whether an element is unmodified
+	 *
+	 * @param snapshot a copy of the array taken before the invocation, <code>null</code> to compare with default values
+	 * @param array the array after the invocation
+	 * @return the predicate, <code>null</code> if the array is not an array of primitives
+	 */
+	private static IntPredicate sameAt(Object snapshot, Object array) {
+		Class<?> componentType = array.getClass().getComponentType();
+		if(!componentType.isPrimitive()) {
+			return null;
+		}
+		Object base = snapshot != null ? snapshot : Array.newInstance(componentType, Array.getLength(array));
+		if(componentType == byte.class) {
+			byte[] a = (byte[])base, b = (byte[])array;
+			return i -> a[i] == b[i];
+		} else if(componentType == int.class) {
+			int[] a = (int[])base, b = (int[])array;
+			return i -> a[i] == b[i];
+		} else if(componentType == long.class) {
+			long[] a = (long[])base, b = (long[])array;
+			return i -> a[i] == b[i];
+		} else if(componentType == char.class) {
+			char[] a = (char[])base, b = (char[])array;
+			return i -> a[i] == b[i];
+		} else if(componentType == short.class) {
+			short[] a = (short[])base, b = (short[])array;
+			return i -> a[i] == b[i];
+		} else if(componentType == boolean.class) {
+			boolean[] a = (boolean[])base, b = (boolean[])array;
+			return i -> a[i] == b[i];
+		} else if(componentType == float.class) {
+			float[] a = (float[])base, b = (float[])array;
+			return i -> Float.floatToRawIntBits(a[i]) == Float.floatToRawIntBits(b[i]);
+		} else {
+			double[] a = (double[])base, b = (double[])array;
+			return i -> Double.doubleToRawLongBits(a[i]) == Double.doubleToRawLongBits(b[i]);
+		}
+	}
+
+	/**
+	 * Returns a copy of the array to be compared after the invocation
+	 *
+	 * @param array an array object
+	 * @return the copy, <code>null</code> if the array is not an array of primitives
+	 */
+	public static Object snapshot(Object array) {
+		if(!array.getClass().getComponentType().isPrimitive()) {
+			return null;
+		}
+		int length = Array.getLength(array);
+		Object copy = Array.newInstance(array.getClass().getComponentType(), length);
+		System.arraycopy(array, 0, copy, 0, length);
+		return copy;
 	}
 
 	/**
@@ -42,28 +206,58 @@ class ReferenceArray implements Serializable {
 		return parameterIndex;
 	}
 
+	/**
+	 * Returns the kind
+	 *
+	 * @return one of {@link #KIND_FULL}, {@link #KIND_OUTPUT}, {@link #KIND_DELTA}, {@link #KIND_DELTA_CLEARED}
+	 */
+	public int getKind() {
+		return kind;
+	}
+
 	/**
 	 * Returns an array object
 	 *
-	 * @return array
+	 * @return array, the concatenated modified ranges for a delta, <code>null</code> for a write-only array
 	 */
 	public Object getArray() {
 		return array;
 	}
-	
+
+	/**
+	 * Returns the start offsets and lengths of the modified ranges, alternately
+	 *
+	 * @return the ranges, <code>null</code> unless a delta
+	 */
+	public int[] getRanges() {
+		return ranges;
+	}
+
     /**
-     * Returns the length of the specified array object, as an {@code int}.
+     * Returns the length of the whole array, as an {@code int}.
      *
-     * @param array the array
      * @return the length of the array
      */
 	public int length() {
-		return Array.getLength(array);
+		return length;
 	}
-	
+
+	/**
+	 * Returns the array to be passed to the method
+	 *
+	 * @param componentType the component type of the parameter, used to create a write-only array
+	 * @return the array, newly created with default values for a write-only array
+	 */
+	public Object toArgument(Class<?> componentType) {
+		if(kind == KIND_OUTPUT) {
+			return Array.newInstance(componentType, length);
+		}
+		return array;
+	}
+
 	/**
 	 * Copy into another array object
-	 * 
+	 *
 	 * @param other another array object
 	 */
 	public void copyInto(Object other) {
@@ -73,6 +267,58 @@ class ReferenceArray implements Serializable {
 		if(!other.getClass().isArray()) {
 			throw new IllegalArgumentException();
 		}
-		System.arraycopy(array, 0, other, 0, length());
+		switch(kind) {
+		case KIND_FULL:
+			System.arraycopy(array, 0, other, 0, length);
+			break;
+		case KIND_DELTA_CLEARED:
+			clear(other);
+			copyRanges(other);
+			break;
+		case KIND_DELTA:
+			copyRanges(other);
+			break;
+		default:
+			throw new IllegalStateException("Write-only array cannot be copied");
+		}
+	}
+
+	/**
+	 * Copies the modified ranges into another array object
+	 *
+	 * @param other another array object
+	 */
+	private void copyRanges(Object other) {
+		for(int r=0, pos=0; r<ranges.length; r+=2) {
+			System.arraycopy(array, pos, other, ranges[r], ranges[r + 1]);
+			pos += ranges[r + 1];
+		}
+	}
+
+	/**
+	 * Fills the array with default values
+	 *
+	 * @param array an array object
+	 */
+	private static void clear(Object array) {
+		if(array instanceof byte[]) {
+			Arrays.fill((byte[])array, (byte)0);
+		} else if(array instanceof int[]) {
+			Arrays.fill((int[])array, 0);
+		} else if(array instanceof long[]) {
+			Arrays.fill((long[])array, 0L);
+		} else if(array instanceof char[]) {
+			Arrays.fill((char[])array, '\0');
+		} else if(array instanceof short[]) {
+			Arrays.fill((short[])array, (short)0);
+		} else if(array instanceof boolean[]) {
+			Arrays.fill((boolean[])array, false);
+		} else if(array instanceof float[]) {
+			Arrays.fill((float[])array, 0f);
+		} else if(array instanceof double[]) {
+			Arrays.fill((double[])array, 0d);
+		} else {
+			Arrays.fill((Object[])array, null);
+		}
 	}
 }
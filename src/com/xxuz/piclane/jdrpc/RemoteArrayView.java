@@ -0,0 +1,290 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 呼び出し元の配列をページ単位で読み書きする {@link ArrayView}<br>
+ * 読み込んだページは最近参照された順に一定数までキャッシュし、
+ * 書き込まれたページはキャッシュから追い出される時か {@link #close()} で呼び出し元に書き戻します。
+ * ページ内は書き込まれた範囲のみを書き戻します
+ *
+ * @author piclane
+ * @param <A> 配列の型
+ */
+class RemoteArrayView<A> implements ArrayView<A> {
+	/** ビューID */
+	private final long viewId;
+
+	/** 配列の長さ */
+	private final int length;
+
+	/** 配列の要素の型 */
+	private final Class<?> componentType;
+
+	/** 1 ページの要素の数 */
+	private final int pageSize;
+
+	/** キャッシュするページの最大数 */
+	private final int maxPages;
+
+	/** 読み書きに使用する {@link CommandStream} */
+	private final CommandStream stream;
+
+	/**
+	 * キャッシュしているページ。最近参照された順に並びます
+	 * Key:   ページ番号
+	 * Value: {@link Page}
+	 */
+	private final LinkedHashMap<Integer, Page> pages;
+
+	/** 終了している場合 true */
+	private boolean closed;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param ref {@link ArrayViewReference}
+	 * @param stream 読み書きに使用する {@link CommandStream}
+	 * @param pageSize 1 ページの要素の数
+	 * @param maxPages キャッシュするページの最大数
+	 */
+	RemoteArrayView(ArrayViewReference ref, CommandStream stream, int pageSize, int maxPages) {
+		this.viewId = ref.getViewId();
+		this.length = ref.getLength();
+		this.componentType = ref.getComponentType();
+		this.pageSize = pageSize;
+		this.maxPages = maxPages;
+		this.stream = stream;
+		this.pages = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.ArrayView#length()
+	 */
+	@Override
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.ArrayView#getComponentType()
+	 */
+	@Override
+	public Class<?> getComponentType() {
+		return componentType;
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.ArrayView#get(int, java.lang.Object, int, int)
+	 */
+	@Override
+	public synchronized void get(int index, A dst, int offset, int length) {
+		checkRange(index, length);
+		while(length > 0) {
+			int pageNo = index / pageSize;
+			int pos = index - pageNo * pageSize;
+			Page page = page(pageNo, false);
+			int n = Math.min(length, page.size - pos);
+			System.arraycopy(page.data, pos, dst, offset, n);
+			index += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.ArrayView#set(int, java.lang.Object, int, int)
+	 */
+	@Override
+	public synchronized void set(int index, A src, int offset, int length) {
+		checkRange(index, length);
+		while(length > 0) {
+			int pageNo = index / pageSize;
+			int pos = index - pageNo * pageSize;
+			int pageLength = Math.min(pageSize, this.length - pageNo * pageSize);
+			int n = Math.min(length, pageLength - pos);
+			// ページ全体を上書きする場合は読み込まない
+			Page page = page(pageNo, pos == 0 && n == pageLength);
+			System.arraycopy(src, offset, page.data, pos, n);
+			page.markDirty(pos, pos + n);
+			index += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	/**
+	 * 書き込まれたページを書き戻し、以降の読み書きを禁止します
+	 */
+	public synchronized void close() {
+		if(closed) {
+			return;
+		}
+		try {
+			for(Page page: pages.values()) {
+				writeBack(page);
+			}
+		} finally {
+			closed = true;
+			pages.clear();
+		}
+	}
+
+	/**
+	 * 範囲が配列の内側にあることを確認します
+	 *
+	 * @param index 開始位置
+	 * @param length 要素の数
+	 */
+	private void checkRange(int index, int length) {
+		if(closed) {
+			throw new IllegalStateException("ArrayView is no longer available");
+		}
+		if(index < 0 || length < 0 || index > this.length - length) {
+			throw new IndexOutOfBoundsException("index: " + index + ", length: " + length + ", array length: " + this.length);
+		}
+	}
+
+	/**
+	 * ページを取得します<br>
+	 * キャッシュに無い場合は呼び出し元から読み込み、最も長く参照されていないページを追い出します
+	 *
+	 * @param pageNo ページ番号
+	 * @param overwrite ページ全体を上書きするため読み込みが不要な場合 true
+	 * @return {@link Page}
+	 */
+	private Page page(int pageNo, boolean overwrite) {
+		Page page = pages.get(pageNo);
+		if(page != null) {
+			return page;
+		}
+
+		int start = pageNo * pageSize;
+		int size = Math.min(pageSize, length - start);
+		Object data = overwrite ? Array.newInstance(componentType, size) : read(start, size);
+		page = new Page(start, size, data);
+		if(pages.size() >= maxPages) {
+			Iterator<Page> it = pages.values().iterator();
+			Page eldest = it.next();
+			it.remove();
+			writeBack(eldest);
+		}
+		pages.put(pageNo, page);
+		return page;
+	}
+
+	/**
+	 * 呼び出し元の配列を読み込みます
+	 *
+	 * @param index 読み込みを開始する配列のインデックス
+	 * @param size 読み込む要素の数
+	 * @return 読み込んだ内容の配列
+	 */
+	private Object read(int index, int size) {
+		CommandResponse.ArrayRead resp = (CommandResponse.ArrayRead)call(new CommandRequest.ArrayRead(viewId, index, size));
+		rethrow(resp.getFailure());
+		return resp.getData();
+	}
+
+	/**
+	 * ページの書き込まれた範囲を呼び出し元に書き戻します
+	 *
+	 * @param page {@link Page}
+	 */
+	private void writeBack(Page page) {
+		if(page.dirtyFrom >= page.dirtyTo) {
+			return;
+		}
+		int n = page.dirtyTo - page.dirtyFrom;
+		Object data = page.data;
+		if(n < page.size) {
+			data = Array.newInstance(componentType, n);
+			System.arraycopy(page.data, page.dirtyFrom, data, 0, n);
+		}
+		CommandResponse.ArrayWrite resp = (CommandResponse.ArrayWrite)call(new CommandRequest.ArrayWrite(viewId, page.start + page.dirtyFrom, data));
+		rethrow(resp.getFailure());
+		page.dirtyFrom = page.dirtyTo = 0;
+	}
+
+	/**
+	 * 要求コマンドを送信して応答を待ちます
+	 *
+	 * @param req 要求コマンド
+	 * @return 応答コマンド
+	 */
+	private CommandResponse call(CommandRequest req) {
+		try {
+			return stream.call(req);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while accessing remote array", e);
+		}
+	}
+
+	/**
+	 * 呼び出し元で発生した例外を送出します
+	 *
+	 * @param failure 呼び出し元で発生した例外。発生していない場合は <code>null</code>
+	 */
+	private static void rethrow(Throwable failure) {
+		if(failure instanceof RuntimeException) {
+			throw (RuntimeException)failure;
+		} else if(failure instanceof Error) {
+			throw (Error)failure;
+		} else if(failure != null) {
+			throw new UndeclaredThrowableException(failure);
+		}
+	}
+
+	/**
+	 * キャッシュしているページ
+	 */
+	private static class Page {
+		/** ページの先頭の配列のインデックス */
+		final int start;
+
+		/** ページの要素の数 */
+		final int size;
+
+		/** ページの内容 */
+		final Object data;
+
+		/** 書き込まれた範囲の開始位置 (ページ内) */
+		int dirtyFrom;
+
+		/** 書き込まれた範囲の終了位置 (ページ内)。書き込まれていない場合は {@link #dirtyFrom} 以下 */
+		int dirtyTo;
+
+		/**
+		 * コンストラクタ
+		 *
+		 * @param start ページの先頭の配列のインデックス
+		 * @param size ページの要素の数
+		 * @param data ページの内容
+		 */
+		Page(int start, int size, Object data) {
+			this.start = start;
+			this.size = size;
+			this.data = data;
+		}
+
+		/**
+		 * 書き込まれた範囲を追加します
+		 *
+		 * @param from 開始位置 (ページ内)
+		 * @param to 終了位置 (ページ内)
+		 */
+		void markDirty(int from, int to) {
+			if(dirtyFrom >= dirtyTo) {
+				dirtyFrom = from;
+				dirtyTo = to;
+			} else {
+				dirtyFrom = Math.min(dirtyFrom, from);
+				dirtyTo = Math.max(dirtyTo, to);
+			}
+		}
+	}
+}
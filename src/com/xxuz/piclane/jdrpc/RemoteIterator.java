@@ -0,0 +1,226 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * リモートから要素を受信する {@link RemoteStream}<br>
+ * 受信済みで消費されていない要素が window を超えないよう、消費した分だけ送信側に送信を許可します<br>
+ * 受信中のストリームには {@link Handle} で弱参照として登録するため、
+ * 閉じられずに GC された場合は {@link Handle} が参照キューに登録され、受信側で送信の終了を要求します
+ *
+ * @author piclane
+ * @param <E> 要素の型
+ */
+final class RemoteIterator<E> implements RemoteStream<E> {
+	/** ストリームID */
+	private final long streamId;
+
+	/** {@link CommandStream} */
+	private final CommandStream stream;
+
+	/** 受信済みで消費されていない要素の最大数 */
+	private final int window;
+
+	/** 受信中のストリーム。終了時に自身を取り除きます */
+	private final Map<Long, Handle> imports;
+
+	/** 受信中のストリームに登録する自身の弱参照 */
+	private final Handle handle;
+
+	/** 受信済みで消費されていない要素 */
+	private final ArrayDeque<Object> buffer;
+
+	/** 消費したが、まだ送信側に送信を許可していない要素の数 */
+	private int consumed;
+
+	/** 最後の要素を受信した場合 true */
+	private boolean ended;
+
+	/** 要素の取得中に送信側で発生した例外。発生していない場合は <code>null</code> */
+	private Throwable failure;
+
+	/** {@link #close()} が呼び出された場合 true */
+	private boolean closed;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param streamId ストリームID
+	 * @param stream {@link CommandStream}
+	 * @param window 受信済みで消費されていない要素の最大数
+	 * @param imports 受信中のストリーム
+	 * @param queue GC された事を検知する参照キュー
+	 */
+	RemoteIterator(long streamId, CommandStream stream, int window, Map<Long, Handle> imports, ReferenceQueue<Object> queue) {
+		this.streamId = streamId;
+		this.stream = stream;
+		this.window = window;
+		this.imports = imports;
+		this.handle = new Handle(this, streamId, queue);
+		this.buffer = new ArrayDeque<>();
+	}
+
+	/**
+	 * 受信を開始します<br>
+	 * 要素を受信する前に受信中のストリームに登録し、送信側に window 分の要素の送信を許可します
+	 */
+	void open() {
+		imports.put(streamId, handle);
+		stream.post(new CommandRequest.StreamCredit(streamId, window));
+	}
+
+	/**
+	 * 受信した要素を追加します
+	 *
+	 * @param chunk 要素を送信する要求コマンド
+	 */
+	void received(CommandRequest.StreamChunk chunk) {
+		synchronized (this) {
+			if(closed) {
+				return;
+			}
+			Collections.addAll(buffer, chunk.getElements());
+			if(chunk.isLast()) {
+				ended = true;
+				failure = chunk.getFailure();
+			}
+			notifyAll();
+		}
+		if(chunk.isLast()) {
+			imports.remove(streamId, handle);
+		}
+	}
+
+	/**
+	 * 以降の要素を受信できなくなったことを通知します
+	 *
+	 * @param cause 受信できない理由
+	 */
+	void abort(Throwable cause) {
+		synchronized (this) {
+			if(!ended) {
+				ended = true;
+				failure = cause;
+				notifyAll();
+			}
+		}
+		imports.remove(streamId, handle);
+	}
+
+	/**
+	 * @see java.util.Iterator#hasNext()
+	 */
+	@Override
+	public synchronized boolean hasNext() {
+		while(buffer.isEmpty() && !ended) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for remote stream", e);
+			}
+		}
+		if(!buffer.isEmpty()) {
+			return true;
+		}
+		if(failure instanceof RuntimeException) {
+			throw (RuntimeException)failure;
+		} else if(failure instanceof Error) {
+			throw (Error)failure;
+		} else if(failure != null) {
+			throw new UndeclaredThrowableException(failure);
+		}
+		return false;
+	}
+
+	/**
+	 * @see java.util.Iterator#next()
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public E next() {
+		Object element;
+		int grant = 0;
+		synchronized (this) {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			element = buffer.poll();
+			// window の半分を消費する毎に、消費した分の送信を許可する
+			if(!ended && ++consumed >= Math.max(window / 2, 1)) {
+				grant = consumed;
+				consumed = 0;
+			}
+		}
+		if(grant > 0) {
+			try {
+				stream.post(new CommandRequest.StreamCredit(streamId, grant));
+			} catch (RuntimeException e) {
+				abort(e);
+			}
+		}
+		return (E)element;
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.RemoteStream#close()
+	 */
+	@Override
+	public void close() {
+		boolean notify;
+		synchronized (this) {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			notify = !ended;
+			ended = true;
+			buffer.clear();
+			notifyAll();
+		}
+		imports.remove(streamId, handle);
+		if(notify) {
+			try {
+				stream.post(new CommandRequest.StreamClose(streamId));
+			} catch (RuntimeException e) {
+				// ストリームが既に終了している
+			}
+		}
+	}
+
+	/**
+	 * 受信中のストリームに登録する {@link RemoteIterator} の弱参照<br>
+	 * 受信の終了時に登録が取り除かれるため、登録されたまま参照キューに登録された場合は閉じられずに GC されたことを表します
+	 */
+	static final class Handle extends WeakReference<RemoteIterator<?>> {
+		/** ストリームID */
+		private final long streamId;
+
+		/**
+		 * コンストラクタ
+		 *
+		 * @param referent {@link RemoteIterator}
+		 * @param streamId ストリームID
+		 * @param queue 参照キュー
+		 */
+		private Handle(RemoteIterator<?> referent, long streamId, ReferenceQueue<Object> queue) {
+			super(referent, queue);
+			this.streamId = streamId;
+		}
+
+		/**
+		 * ストリームIDを取得します
+		 *
+		 * @return ストリームID
+		 */
+		long getStreamId() {
+			return streamId;
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * リモートから要素を順に受信する {@link Iterator}<br>
+ * {@link Iterator}, {@link Stream}, {@link RemoteStream} を返すメソッドの返値は一括では送信されず、
+ * 呼び出し元が消費した分だけ要素が分割して送信されます。
+ * そのため、巨大な結果も一定のメモリで受信できます<br>
+ * 最後まで消費しない場合は {@link #close()} を呼び出してください。送信側の {@link Iterator} を解放します
+ *
+ * @author piclane
+ * @param <E> 要素の型
+ */
+public interface RemoteStream<E> extends Iterator<E>, AutoCloseable {
+	/**
+	 * 要素の受信を終了します<br>
+	 * 送信側にも終了が伝えられ、未送信の要素は破棄されます
+	 *
+	 * @see java.lang.AutoCloseable#close()
+	 */
+	@Override
+	public void close();
+
+	/**
+	 * 残りの要素の {@link Stream} を取得します<br>
+	 * {@link Stream#close()} でこの {@link RemoteStream} も終了します
+	 *
+	 * @return {@link Stream}
+	 */
+	public default Stream<E> stream() {
+		return StreamSupport
+			.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+			.onClose(this::close);
+	}
+
+	/**
+	 * {@link Iterator} を返値として送信する {@link RemoteStream} を生成します<br>
+	 * iterator が {@link AutoCloseable} の場合、受信側の終了時に閉じられます
+	 *
+	 * @param <E> 要素の型
+	 * @param iterator 送信する要素の {@link Iterator}
+	 * @return {@link RemoteStream}
+	 */
+	public static <E> RemoteStream<E> of(Iterator<? extends E> iterator) {
+		Objects.requireNonNull(iterator);
+		return new RemoteStream<E>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public E next() {
+				return iterator.next();
+			}
+
+			@Override
+			public void close() {
+				if(iterator instanceof AutoCloseable) {
+					try {
+						((AutoCloseable)iterator).close();
+					} catch (RuntimeException e) {
+						throw e;
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * {@link Stream} を返値として送信する {@link RemoteStream} を生成します<br>
+	 * stream は受信側の終了時に閉じられます
+	 *
+	 * @param <E> 要素の型
+	 * @param stream 送信する要素の {@link Stream}
+	 * @return {@link RemoteStream}
+	 */
+	public static <E> RemoteStream<E> of(Stream<? extends E> stream) {
+		Iterator<? extends E> iterator = stream.iterator();
+		return new RemoteStream<E>() {
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public E next() {
+				return iterator.next();
+			}
+
+			@Override
+			public void close() {
+				stream.close();
+			}
+		};
+	}
+}
@@ -0,0 +1,21 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * リモートのメソッドを応答を待たずに実行することを指定します<br>
+ * 呼び出し元は要求を送信した時点で戻り、呼び出し先は応答を送信しません。
+ * 同じ接続の一方向呼び出しは、送信した順に 1 件ずつ実行されます<br>
+ * 引数は呼び出し元に戻る前に符号化するため、戻った後に引数の配列やコレクションを再利用・変更しても構いません<br>
+ * 返値の無いメソッドにのみ指定できます。{@link ArrayView} と参照渡しの配列 ({@link RpcParam}, {@link RpcOverride}) は
+ * 書き戻しを受け取れないため、引数に含めることはできません。呼び出し先で発生した例外は呼び出し元に通知されません
+ *
+ * @author piclane
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RpcOneWay {
+}
@@ -101,6 +101,49 @@ public class RpcOverride implements Serializable {
 		this.parameterTypes = method.getParameterTypes();
 		this.parameterIndex = parameterIndex;
 	}
+	
+	/**
+	 * コンストラクタ
+	 * 
+	 * @param declaringClass 宣言されているクラス
+	 * @param methodName メソッド名
+	 * @param parameterTypes メソッドの引数
+	 * @param parameterIndex パラメーターのインデックス
+	 */
+	RpcOverride(Class<?> declaringClass, String methodName, Class<?>[] parameterTypes, int parameterIndex) {
+		super();
+		this.declaringClass = declaringClass;
+		this.methodName = methodName;
+		this.parameterTypes = parameterTypes;
+		this.parameterIndex = parameterIndex;
+	}
+
+	/**
+	 * declaringClass を取得します
+	 *
+	 * @return declaringClass
+	 */
+	Class<?> getDeclaringClass() {
+		return declaringClass;
+	}
+
+	/**
+	 * methodName を取得します
+	 *
+	 * @return methodName
+	 */
+	String getMethodName() {
+		return methodName;
+	}
+
+	/**
+	 * parameterTypes を取得します
+	 *
+	 * @return parameterTypes
+	 */
+	Class<?>[] getParameterTypes() {
+		return parameterTypes;
+	}
 
 	/**
 	 * method を取得します
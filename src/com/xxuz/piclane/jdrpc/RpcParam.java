@@ -13,5 +13,28 @@ import java.lang.annotation.Target;
 @Target(ElementType.PARAMETER)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface RpcParam {
+	/**
+	 * 参照渡しする配列の受け渡し方向<br>
+	 * インターフェイスの引数には影響しません
+	 *
+	 * @return 受け渡し方向
+	 */
+	Direction direction() default Direction.IN_OUT;
 
+	/**
+	 * 参照渡しする配列の受け渡し方向
+	 */
+	public static enum Direction {
+		/**
+		 * 配列の内容を呼び出し先に送信し、呼び出し先で変更された範囲のみを書き戻します
+		 */
+		IN_OUT,
+
+		/**
+		 * 配列の長さのみを送信し、呼び出し先は既定値で初期化された配列を受け取ります<br>
+		 * 呼び出し元の配列は、呼び出し先の配列と同じ内容に書き戻されます。
+		 * 呼び出し先が読み込まない出力用の配列 (読み込みバッファー等) に指定します
+		 */
+		OUT,
+	}
 }
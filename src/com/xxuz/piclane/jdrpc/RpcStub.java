@@ -0,0 +1,21 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * インターフェイスのスタブクラスをコンパイル時に生成することを指定します<br>
+ * {@link RpcStubProcessor} が <code>インターフェイスのバイナリ名 + "_RpcStub"</code> という名前の
+ * {@link AbstractRpcStub} のサブクラスを生成し、{@link CommandRunner} はこのインターフェイスのプロクシとして
+ * {@link java.lang.reflect.Proxy} の代わりにスタブクラスを使用します<br>
+ * スタブクラスは {@link Object} のメソッドをリモートに転送しません
+ *
+ * @author piclane
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RpcStub {
+
+}
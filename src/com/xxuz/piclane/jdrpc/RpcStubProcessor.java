@@ -0,0 +1,240 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * {@link RpcStub} が指定されたインターフェイスのスタブクラスを生成する注釈プロセッサ<br>
+ * jdrpc の JAR をクラスパスに含めてコンパイルすると自動的に実行されます。
+ * 生成されるスタブクラスは {@link AbstractRpcStub} を継承し、
+ * {@link Object} と static を除く全てのメソッドをリモートに転送します
+ *
+ * @author piclane
+ */
+public class RpcStubProcessor extends AbstractProcessor {
+	/**
+	 * @see javax.annotation.processing.AbstractProcessor#getSupportedAnnotationTypes()
+	 */
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Collections.singleton(RpcStub.class.getName());
+	}
+
+	/**
+	 * @see javax.annotation.processing.AbstractProcessor#getSupportedSourceVersion()
+	 */
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	/**
+	 * @see javax.annotation.processing.AbstractProcessor#process(java.util.Set, javax.annotation.processing.RoundEnvironment)
+	 */
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for(Element element: roundEnv.getElementsAnnotatedWith(RpcStub.class)) {
+			if(element.getKind() != ElementKind.INTERFACE) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "@RpcStub can only be applied to interfaces", element);
+				continue;
+			}
+			try {
+				generate((TypeElement)element);
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to generate stub: " + e, element);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * スタブクラスのソースを生成します
+	 *
+	 * @param iface インターフェイス
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	private void generate(TypeElement iface) throws IOException {
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(iface);
+		String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+		String binaryName = processingEnv.getElementUtils().getBinaryName(iface).toString();
+		String stubName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + AbstractRpcStub.STUB_SUFFIX;
+		String ifaceName = iface.getQualifiedName().toString();
+
+		// 複数のスーパーインターフェイスが宣言する同じシグネチャのメソッドは 1 つにまとめる
+		List<ExecutableElement> methods = new ArrayList<>();
+		Set<String> signatures = new HashSet<>();
+		for(ExecutableElement method: ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(iface))) {
+			if(method.getModifiers().contains(Modifier.STATIC) ||
+			   ((TypeElement)method.getEnclosingElement()).getQualifiedName().contentEquals(Object.class.getName())) {
+				continue;
+			}
+			StringBuilder signature = new StringBuilder(method.getSimpleName());
+			for(VariableElement param: method.getParameters()) {
+				signature.append(',').append(erasure(param.asType()));
+			}
+			if(signatures.add(signature.toString())) {
+				methods.add(method);
+			}
+		}
+
+		String typeParams = typeParameters(iface.getTypeParameters());
+		String typeArgs = typeArguments(iface.getTypeParameters());
+		try(Writer writer = processingEnv.getFiler().createSourceFile(
+				(packageName.isEmpty() ? "" : packageName + ".") + stubName, iface).openWriter();
+			PrintWriter out = new PrintWriter(writer)) {
+			if(!packageName.isEmpty()) {
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+			// 生成先の文字コードは環境に依存するため ASCII のみを出力する
+			out.println("/**");
+			out.println(" * Stub of {@link " + ifaceName + "} generated by " + RpcStubProcessor.class.getName());
+			out.println(" */");
+			out.println("@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+			out.println("public final class " + stubName + typeParams
+				+ " extends " + AbstractRpcStub.class.getName()
+				+ " implements " + ifaceName + typeArgs + " {");
+			for(int i=0; i<methods.size(); i++) {
+				ExecutableElement method = methods.get(i);
+				StringBuilder paramTypes = new StringBuilder();
+				for(VariableElement param: method.getParameters()) {
+					paramTypes.append(", ").append(erasure(param.asType())).append(".class");
+				}
+				out.println("\tprivate static final java.lang.reflect.Method M" + i + " = method("
+					+ ifaceName + ".class, \"" + method.getSimpleName() + "\"" + paramTypes + ");");
+			}
+			out.println();
+			out.println("\tpublic " + stubName + "(" + CommandRunner.class.getName() + " runner, java.util.UUID instanceId) {");
+			out.println("\t\tsuper(runner, instanceId);");
+			out.println("\t}");
+			for(int i=0; i<methods.size(); i++) {
+				out.println();
+				writeMethod(out, iface, methods.get(i), i);
+			}
+			out.println("}");
+		}
+	}
+
+	/**
+	 * メソッドを出力します
+	 *
+	 * @param out 出力先
+	 * @param iface インターフェイス
+	 * @param method メソッド
+	 * @param slot メソッドの番号。メソッドを保持する定数の名前の接尾辞
+	 */
+	private void writeMethod(PrintWriter out, TypeElement iface, ExecutableElement method, int slot) {
+		// スーパーインターフェイスの型引数を置き換えた型
+		ExecutableType type = (ExecutableType)processingEnv.getTypeUtils().asMemberOf((DeclaredType)iface.asType(), method);
+		
+		StringBuilder params = new StringBuilder();
+		StringBuilder args = new StringBuilder();
+		List<? extends TypeMirror> parameterTypes = type.getParameterTypes();
+		for(int i=0; i<parameterTypes.size(); i++) {
+			if(i > 0) {
+				params.append(", ");
+			}
+			params.append(parameterTypes.get(i)).append(" p").append(i);
+			args.append(", p").append(i);
+		}
+		StringBuilder throwsClause = new StringBuilder();
+		for(TypeMirror thrown: type.getThrownTypes()) {
+			throwsClause.append(throwsClause.length() == 0 ? " throws " : ", ").append(thrown);
+		}
+
+		TypeMirror returnType = type.getReturnType();
+		String typeParams = typeParameters(method.getTypeParameters());
+		out.println("\t@Override");
+		out.println("\tpublic " + (typeParams.isEmpty() ? "" : typeParams + " ") + returnType + " "
+			+ method.getSimpleName() + "(" + params + ")" + throwsClause + " {");
+		String call = "invoke(" + slot + ", M" + slot + ", new Object[] {" + (args.length() > 0 ? args.substring(2) : "") + "})";
+		if(returnType.getKind() == TypeKind.VOID) {
+			out.println("\t\t" + call + ";");
+		} else {
+			out.println("\t\treturn (" + returnType + ")" + call + ";");
+		}
+		out.println("\t}");
+	}
+
+	/**
+	 * 型引数の宣言を生成します
+	 *
+	 * @param typeParameters 型パラメータ
+	 * @return 型引数の宣言。型パラメータが無い場合は空文字列
+	 */
+	private static String typeParameters(List<? extends TypeParameterElement> typeParameters) {
+		if(typeParameters.isEmpty()) {
+			return "";
+		}
+		StringBuilder buf = new StringBuilder("<");
+		for(TypeParameterElement typeParameter: typeParameters) {
+			if(buf.length() > 1) {
+				buf.append(", ");
+			}
+			buf.append(typeParameter.getSimpleName());
+			String sep = " extends ";
+			for(TypeMirror bound: typeParameter.getBounds()) {
+				if(bound.toString().equals(Object.class.getName())) {
+					continue;
+				}
+				buf.append(sep).append(bound);
+				sep = " & ";
+			}
+		}
+		return buf.append(">").toString();
+	}
+
+	/**
+	 * 型引数を生成します
+	 *
+	 * @param typeParameters 型パラメータ
+	 * @return 型引数。型パラメータが無い場合は空文字列
+	 */
+	private static String typeArguments(List<? extends TypeParameterElement> typeParameters) {
+		if(typeParameters.isEmpty()) {
+			return "";
+		}
+		StringBuilder buf = new StringBuilder("<");
+		for(TypeParameterElement typeParameter: typeParameters) {
+			if(buf.length() > 1) {
+				buf.append(", ");
+			}
+			buf.append(typeParameter.getSimpleName());
+		}
+		return buf.append(">").toString();
+	}
+
+	/**
+	 * 型消去後の型名を取得します
+	 *
+	 * @param type 型
+	 * @return 型消去後の型名
+	 */
+	private String erasure(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type).toString();
+	}
+}
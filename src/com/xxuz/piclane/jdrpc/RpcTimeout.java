@@ -0,0 +1,32 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * リモートのメソッドの応答を待つ時間を指定します<br>
+ * 時間内に応答が無い場合、呼び出し元には {@link RpcTimeoutException} が送出され、
+ * 呼び出し先の実行は取り消されます
+ *
+ * @author piclane
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RpcTimeout {
+	/**
+	 * 応答を待つ時間
+	 *
+	 * @return 応答を待つ時間
+	 */
+	long value();
+
+	/**
+	 * {@link #value()} の単位
+	 *
+	 * @return {@link #value()} の単位
+	 */
+	TimeUnit unit() default TimeUnit.MILLISECONDS;
+}
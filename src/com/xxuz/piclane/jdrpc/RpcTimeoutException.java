@@ -0,0 +1,21 @@
+package com.xxuz.piclane.jdrpc;
+
+/**
+ * リモートのメソッドが期限までに応答しなかった場合に送出されます<br>
+ * 呼び出し元で待機がタイムアウトした場合と、呼び出し先で期限を過ぎた呼び出しの実行を取りやめた場合があります
+ *
+ * @author piclane
+ */
+public class RpcTimeoutException extends RuntimeException {
+	/** serialVersionUID */
+	private static final long serialVersionUID = -6427139578417358096L;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param message 詳細メッセージ
+	 */
+	public RpcTimeoutException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,67 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Java のシリアライズでコマンドを符号化する {@link CommandCodec}<br>
+ * フレーム毎にクラス記述子を送出するため低速ですが、任意の {@link Command} を扱えます
+ *
+ * @author piclane
+ */
+public class SerializableCommandCodec implements CommandCodec {
+	/**
+	 * @see com.xxuz.piclane.jdrpc.CommandCodec#encode(com.xxuz.piclane.jdrpc.Command, java.io.DataOutput)
+	 */
+	@Override
+	public void encode(Command cmd, DataOutput out) throws IOException {
+		byte[] bytes = serialize(cmd);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * @see com.xxuz.piclane.jdrpc.CommandCodec#decode(java.io.DataInput)
+	 */
+	@Override
+	public Command decode(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return (Command)deserialize(bytes);
+	}
+
+	/**
+	 * オブジェクトを Java のシリアライズでバイト列に変換します
+	 *
+	 * @param obj オブジェクト
+	 * @return バイト列
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	static byte[] serialize(Object obj) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try(ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+			oos.writeUnshared(obj);
+		}
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Java のシリアライズ形式のバイト列をオブジェクトに変換します
+	 *
+	 * @param bytes バイト列
+	 * @return オブジェクト
+	 * @throws IOException 入出力例外が発生した場合
+	 */
+	static Object deserialize(byte[] bytes) throws IOException {
+		try(ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return ois.readUnshared();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+}
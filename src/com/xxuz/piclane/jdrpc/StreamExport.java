@@ -0,0 +1,181 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * リモートに要素を送信するストリーム<br>
+ * 受信側から許可 ({@link CommandRequest.StreamCredit}) された数まで {@link Iterator} から要素を取り出し、
+ * {@link CommandRequest.StreamChunk} に分割して送信します。
+ * 許可が無い間は要素を取り出さないため、受信側の消費より先に要素が溜まることはありません
+ *
+ * @author piclane
+ */
+final class StreamExport implements Runnable {
+	/** 1 つの {@link CommandRequest.StreamChunk} で送信する要素の最大数 */
+	static final int MAX_CHUNK_SIZE = 64;
+
+	/** ストリームID */
+	private final long streamId;
+
+	/** 送信する要素の {@link Iterator} */
+	private final Iterator<?> iterator;
+
+	/** 終了時に閉じるリソース。無い場合は <code>null</code> */
+	private final AutoCloseable resource;
+
+	/** {@link CommandStream} */
+	private final CommandStream stream;
+
+	/** 要素を取り出すスレッドの {@link Executor} */
+	private final Executor executor;
+
+	/** 送信中のストリーム。終了時に自身を取り除きます */
+	private final Map<Long, StreamExport> exports;
+
+	/** 送信を許可されている残りの要素の数 */
+	private long credit;
+
+	/** 要素を取り出すタスクが実行中の場合 true */
+	private boolean running;
+
+	/** 終了している場合 true */
+	private boolean finished;
+
+	/** リソースを解放した場合 true */
+	private boolean released;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param streamId ストリームID
+	 * @param iterator 送信する要素の {@link Iterator}
+	 * @param resource 終了時に閉じるリソース。無い場合は <code>null</code>
+	 * @param stream {@link CommandStream}
+	 * @param executor 要素を取り出すスレッドの {@link Executor}
+	 * @param exports 送信中のストリーム
+	 */
+	StreamExport(long streamId, Iterator<?> iterator, AutoCloseable resource, CommandStream stream, Executor executor, Map<Long, StreamExport> exports) {
+		this.streamId = streamId;
+		this.iterator = iterator;
+		this.resource = resource;
+		this.stream = stream;
+		this.executor = executor;
+		this.exports = exports;
+	}
+
+	/**
+	 * 要素の送信を許可します
+	 *
+	 * @param n 追加で送信を許可する要素の数
+	 */
+	public void grant(int n) {
+		synchronized (this) {
+			if(finished || n <= 0) {
+				return;
+			}
+			credit += n;
+			if(running) {
+				return;
+			}
+			running = true;
+		}
+		try {
+			executor.execute(this);
+		} catch (RejectedExecutionException e) {
+			close();
+		}
+	}
+
+	/**
+	 * 送信を終了します<br>
+	 * 要素を取り出している最中の場合、取り出しを終えてからリソースを解放します
+	 */
+	public void close() {
+		synchronized (this) {
+			finished = true;
+			if(running) {
+				return;
+			}
+		}
+		release();
+	}
+
+	/**
+	 * 許可された数まで要素を取り出して送信します
+	 *
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		while(true) {
+			int n;
+			synchronized (this) {
+				if(finished || credit == 0L) {
+					running = false;
+					if(!finished) {
+						return;
+					}
+					break;
+				}
+				n = (int)Math.min(credit, MAX_CHUNK_SIZE);
+				credit -= n;
+			}
+
+			List<Object> elements = new ArrayList<>(n);
+			boolean last = false;
+			Throwable failure = null;
+			try {
+				while(elements.size() < n) {
+					if(!iterator.hasNext()) {
+						last = true;
+						break;
+					}
+					elements.add(iterator.next());
+				}
+			} catch (Throwable t) {
+				last = true;
+				failure = t;
+			}
+
+			try {
+				stream.post(new CommandRequest.StreamChunk(streamId, elements.toArray(), last, failure));
+			} catch (RuntimeException e) {
+				// ストリームが既に終了している
+				last = true;
+			}
+			if(last) {
+				synchronized (this) {
+					finished = true;
+					running = false;
+				}
+				break;
+			}
+		}
+		release();
+	}
+
+	/**
+	 * リソースを解放し、送信中のストリームから取り除きます
+	 */
+	private void release() {
+		synchronized (this) {
+			if(released) {
+				return;
+			}
+			released = true;
+		}
+		exports.remove(streamId, this);
+		if(resource != null) {
+			try {
+				resource.close();
+			} catch (Exception e) {
+				// 送信先が無いため破棄する
+			}
+		}
+	}
+}
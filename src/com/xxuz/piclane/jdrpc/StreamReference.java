@@ -0,0 +1,37 @@
+package com.xxuz.piclane.jdrpc;
+
+import java.io.Serializable;
+
+/**
+ * リモートから要素を順に受信する返値<br>
+ * {@link java.util.Iterator} や {@link java.util.stream.Stream} を返すメソッドの返値の代わりに応答され、
+ * 要素は {@link CommandRequest.StreamChunk} で送信されます
+ *
+ * @author piclane
+ */
+class StreamReference implements Serializable {
+	/** serialVersionUID */
+	private static final long serialVersionUID = -2716533907457261938L;
+
+	/** ストリームID。送信側で一意な値です */
+	private final long streamId;
+
+	/**
+	 * コンストラクタ
+	 *
+	 * @param streamId ストリームID
+	 */
+	public StreamReference(long streamId) {
+		super();
+		this.streamId = streamId;
+	}
+
+	/**
+	 * streamId を取得します
+	 *
+	 * @return ストリームID
+	 */
+	public long getStreamId() {
+		return streamId;
+	}
+}
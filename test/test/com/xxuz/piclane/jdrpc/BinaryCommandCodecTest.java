@@ -0,0 +1,182 @@
+package test.com.xxuz.piclane.jdrpc;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.xxuz.piclane.jdrpc.BinaryCommandCodec;
+import com.xxuz.piclane.jdrpc.Command;
+import com.xxuz.piclane.jdrpc.CommandCodec;
+import com.xxuz.piclane.jdrpc.CommandRequest;
+import com.xxuz.piclane.jdrpc.CommandResponse;
+import com.xxuz.piclane.jdrpc.RpcOverride;
+import com.xxuz.piclane.jdrpc.SerializableCommandCodec;
+
+/**
+ *
+ *
+ * @author piclane
+ */
+public class BinaryCommandCodecTest {
+	private final CommandCodec codec = new BinaryCommandCodec();
+
+	@SuppressWarnings("unchecked")
+	private <T extends Command> T roundTrip(CommandCodec codec, T cmd) throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		codec.encode(cmd, new DataOutputStream(baos));
+		Command decoded = codec.decode(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())));
+		assertEquals(cmd.getClass(), decoded.getClass());
+		assertEquals(cmd.getMessageId(), decoded.getMessageId());
+		return (T)decoded;
+	}
+
+	@Test
+	public void testInvoke() throws Exception {
+		List<Object> list = new ArrayList<>(Arrays.asList(1, "a", null, 2L));
+		Map<String, Object> map = new HashMap<>();
+		map.put("k", new int[] {1, 2, 3});
+		Object[] args = {
+			Integer.MIN_VALUE, Long.MAX_VALUE, 'c', (byte)-1, (short)2, 1.5f, 2.5d, true,
+			"日本語", UUID.randomUUID(), TimeUnit.SECONDS, String.class, int.class,
+			new byte[] {1, 2}, new long[] {3L}, new String[] {"x", null}, list, map,
+		};
+		CommandRequest.Invoke req = new CommandRequest.Invoke(
+			UUID.randomUUID(),
+			TestApi.class,
+			"test1_Sum",
+			new Class<?>[] {int.class, int.class},
+			args);
+		req.setMessageId(1L);
+
+		CommandRequest.Invoke decoded = roundTrip(codec, req);
+		assertEquals(req.getInstanceId(), decoded.getInstanceId());
+		assertEquals(TestApi.class, decoded.getDeclaringClass());
+		assertEquals("test1_Sum", decoded.getMethodName());
+		assertArrayEquals(req.getParameterTypes(), decoded.getParameterTypes());
+		assertArrayEquals(Arrays.copyOf(args, 13), Arrays.copyOf(decoded.getArguments(), 13));
+		assertArrayEquals((byte[])args[13], (byte[])decoded.getArguments()[13]);
+		assertArrayEquals((long[])args[14], (long[])decoded.getArguments()[14]);
+		assertArrayEquals((String[])args[15], (String[])decoded.getArguments()[15]);
+		assertEquals(list, decoded.getArguments()[16]);
+		assertArrayEquals(new int[] {1, 2, 3}, (int[])((Map<?, ?>)decoded.getArguments()[17]).get("k"));
+	}
+
+	@Test
+	public void testInvokeByMethodId() throws Exception {
+		CommandRequest.Invoke req = new CommandRequest.Invoke(UUID.randomUUID(), 3, new Object[] {1, 2});
+
+		CommandRequest.Invoke decoded = roundTrip(codec, req);
+		assertEquals(3, decoded.getMethodId());
+		assertNull(decoded.getDeclaringClass());
+		assertNull(decoded.getMethodName());
+		assertArrayEquals(req.getArguments(), decoded.getArguments());
+	}
+
+	@Test
+	public void testRegister() throws Exception {
+		CommandRequest.Register req = new CommandRequest.Register("api", UUID.randomUUID(), new Class<?>[] {TestApi.class}, new int[] {5}, new int[] {-7}, 300000000L);
+
+		CommandRequest.Register decoded = roundTrip(codec, req);
+		assertEquals("api", decoded.getName());
+		assertEquals(req.getInstanceId(), decoded.getInstanceId());
+		assertArrayEquals(req.getInterfaces(), decoded.getInterfaces());
+		assertArrayEquals(new int[] {5}, decoded.getMethodBases());
+		assertArrayEquals(new int[] {-7}, decoded.getMethodFingerprints());
+		assertEquals(300000000L, decoded.getLeaseNanos());
+	}
+
+	@Test
+	public void testDeregisterMany() throws Exception {
+		UUID[] instanceIds = {UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()};
+		CommandRequest.DeregisterMany decoded = roundTrip(codec, new CommandRequest.DeregisterMany(instanceIds, new long[] {1L, 0L, Long.MAX_VALUE}));
+		assertArrayEquals(instanceIds, decoded.getInstanceIds());
+		assertArrayEquals(new long[] {1L, 0L, Long.MAX_VALUE}, decoded.getGenerations());
+	}
+
+	@Test
+	public void testStreamChunk() throws Exception {
+		Object[] elements = {1, "a", null, new int[] {2, 3}};
+		CommandRequest.StreamChunk decoded = roundTrip(codec, new CommandRequest.StreamChunk(Long.MAX_VALUE, elements, true, new IllegalStateException("test")));
+		assertEquals(Long.MAX_VALUE, decoded.getStreamId());
+		assertEquals(4, decoded.getElements().length);
+		assertEquals("a", decoded.getElements()[1]);
+		assertArrayEquals(new int[] {2, 3}, (int[])decoded.getElements()[3]);
+		assertTrue(decoded.isLast());
+		assertEquals("test", decoded.getFailure().getMessage());
+
+		CommandRequest.StreamCredit credit = roundTrip(codec, new CommandRequest.StreamCredit(7L, 256));
+		assertEquals(7L, credit.getStreamId());
+		assertEquals(256, credit.getCredit());
+		assertEquals(7L, roundTrip(codec, new CommandRequest.StreamClose(7L)).getStreamId());
+	}
+
+	@Test
+	public void testArrayAccess() throws Exception {
+		CommandRequest.ArrayRead read = roundTrip(codec, new CommandRequest.ArrayRead(3L, 4096, 1024));
+		assertEquals(3L, read.getViewId());
+		assertEquals(4096, read.getIndex());
+		assertEquals(1024, read.getLength());
+
+		CommandRequest.ArrayWrite write = roundTrip(codec, new CommandRequest.ArrayWrite(3L, 10, new long[] {1L, 2L}));
+		assertEquals(3L, write.getViewId());
+		assertEquals(10, write.getIndex());
+		assertArrayEquals(new long[] {1L, 2L}, (long[])write.getData());
+
+		CommandResponse.ArrayRead resp = roundTrip(codec, new CommandResponse.ArrayRead(5L, new byte[] {1, 2}, null));
+		assertEquals(5L, resp.getMessageId());
+		assertArrayEquals(new byte[] {1, 2}, (byte[])resp.getData());
+		assertNull(resp.getFailure());
+		assertEquals("gone", roundTrip(codec, new CommandResponse.ArrayWrite(6L, new IllegalStateException("gone"))).getFailure().getMessage());
+	}
+
+	@Test(expected=SQLException.class)
+	public void testInvokeResponse() throws Exception {
+		CommandResponse.Invoke resp = new CommandResponse.Invoke(
+			Long.MAX_VALUE,
+			CommandResponse.Invoke.ObjectType.InvocationException,
+			new SQLException("test"));
+
+		CommandResponse.Invoke decoded = roundTrip(codec, resp);
+		try {
+			decoded.getReturnValue();
+		} catch (java.lang.reflect.InvocationTargetException e) {
+			throw (Exception)e.getTargetException();
+		}
+	}
+
+	@Test
+	public void testRpcOverride() throws Exception {
+		RpcOverride override = RpcOverride.forMethodParameter(1, TestApi.class, "test6_Sum", java.util.function.Supplier.class, java.util.function.Supplier.class);
+		CommandRequest.AddRpcOverride decoded = roundTrip(codec, new CommandRequest.AddRpcOverride(override));
+		assertEquals(override, decoded.getOverride());
+	}
+
+	@Test
+	public void testChannelId() throws Exception {
+		CommandResponse.Exit resp = new CommandResponse.Exit(7L);
+		resp.setChannelId(300);
+		assertEquals(300, roundTrip(codec, resp).getChannelId());
+		assertEquals(0, roundTrip(codec, new CommandRequest.Exit()).getChannelId());
+	}
+	
+	@Test
+	public void testSerializableCodec() throws Exception {
+		CommandRequest.Register req = new CommandRequest.Register("api", UUID.randomUUID(), new Class<?>[] {TestApi.class});
+		CommandRequest.Register decoded = roundTrip(new SerializableCommandCodec(), req);
+		assertEquals("api", decoded.getName());
+		assertArrayEquals(req.getInterfaces(), decoded.getInterfaces());
+	}
+}
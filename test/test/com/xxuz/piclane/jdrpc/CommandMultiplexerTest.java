@@ -0,0 +1,190 @@
+package test.com.xxuz.piclane.jdrpc;
+
+import static org.junit.Assert.*;
+
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.xxuz.piclane.jdrpc.CommandMultiplexer;
+import com.xxuz.piclane.jdrpc.CommandMultiplexer.Channel;
+import com.xxuz.piclane.jdrpc.CommandMultiplexer.Role;
+import com.xxuz.piclane.jdrpc.CommandMultiplexerPool;
+import com.xxuz.piclane.jdrpc.CommandRunner;
+import com.xxuz.piclane.jdrpc.DefaultCommandStream;
+
+/**
+ *
+ *
+ * @author piclane
+ */
+public class CommandMultiplexerTest {
+	private static final ExecutorService es = Executors.newCachedThreadPool();
+
+	private final List<DefaultCommandStream> initiators = new ArrayList<>();
+
+	private final List<DefaultCommandStream> acceptors = new ArrayList<>();
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		for(int i=0; i<2; i++) {
+			PipedInputStream is1to2 = new PipedInputStream();
+			PipedOutputStream os1to2 = new PipedOutputStream(is1to2);
+			PipedInputStream is2to1 = new PipedInputStream();
+			PipedOutputStream os2to1 = new PipedOutputStream(is2to1);
+			initiators.add(new DefaultCommandStream("i" + i, is2to1, os1to2));
+			acceptors.add(new DefaultCommandStream("a" + i, is1to2, os2to1));
+		}
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		for(DefaultCommandStream stream: initiators) {
+			stream.close();
+		}
+		for(DefaultCommandStream stream: acceptors) {
+			stream.close();
+		}
+	}
+
+	/**
+	 * 受け付けた論理チャネル毎に、チャネルIDを加算する "api" を登録します
+	 */
+	private Future<Void> serve(CommandMultiplexerPool pool, int channels) {
+		return es.submit(() -> {
+			for(int i=0; i<channels; i++) {
+				Channel channel = pool.accept();
+				int offset = channel.getChannelId();
+				CommandRunner runner = new CommandRunner(channel);
+				runner.register("api", new TestApiImpl() {
+					@Override
+					public int test1_Sum(int a, int b) {
+						return a + b + offset;
+					}
+				}, TestApi.class);
+			}
+			return null;
+		});
+	}
+
+	@Test(timeout=10000)
+	public void testChannels() throws Exception {
+		CommandMultiplexer mux1 = new CommandMultiplexer(initiators.get(0), Role.INITIATOR);
+		CommandMultiplexer mux2 = new CommandMultiplexer(acceptors.get(0), Role.ACCEPTOR);
+
+		List<CommandRunner> runners = new ArrayList<>();
+		for(int i=0; i<3; i++) {
+			runners.add(new CommandRunner(mux1.openChannel()));
+		}
+		for(int i=0; i<3; i++) {
+			Channel channel = mux2.accept();
+			int offset = channel.getChannelId();
+			new CommandRunner(channel).register("api", new TestApiImpl() {
+				@Override
+				public int test1_Sum(int a, int b) {
+					return a + b + offset;
+				}
+			}, TestApi.class);
+		}
+
+		// 論理チャネル毎に名前空間が分かれている
+		for(int i=0; i<3; i++) {
+			TestApi api = runners.get(i).get("api");
+			assertEquals(3 + i * 2 + 1, api.test1_Sum(1, 2));
+		}
+
+		// 論理チャネルを閉じても物理ストリームは使用できる
+		runners.get(0).close();
+		TestApi api = runners.get(1).get("api");
+		assertEquals(6, api.test1_Sum(1, 2));
+		assertEquals(2, mux1.getChannelCount());
+	}
+
+	@Test(timeout=10000)
+	public void testOneWay() throws Exception {
+		CommandMultiplexer mux1 = new CommandMultiplexer(initiators.get(0), Role.INITIATOR);
+		CommandMultiplexer mux2 = new CommandMultiplexer(acceptors.get(0), Role.ACCEPTOR);
+
+		List<CommandRunner> runners = new ArrayList<>();
+		for(int i=0; i<2; i++) {
+			runners.add(new CommandRunner(mux1.openChannel()));
+		}
+		List<List<Integer>> received = new ArrayList<>();
+		for(int i=0; i<2; i++) {
+			List<Integer> values = Collections.synchronizedList(new ArrayList<>());
+			received.add(values);
+			new CommandRunner(mux2.accept()).register("api", new TestApiImpl() {
+				@Override
+				public void test14_Append(int value) {
+					values.add(value);
+				}
+			}, TestApi.class);
+		}
+
+		// 符号化済みの一方向呼び出しも呼び出した論理チャネルに届く
+		for(int i=0; i<2; i++) {
+			TestApi api = runners.get(i).get("api");
+			for(int j=0; j<10; j++) {
+				api.test14_Append(i * 100 + j);
+			}
+			assertEquals(3, api.test1_Sum(1, 2));
+		}
+		for(int i=0; i<2; i++) {
+			while(received.get(i).size() < 10) {
+				Thread.sleep(10);
+			}
+			for(int j=0; j<10; j++) {
+				assertEquals(i * 100 + j, received.get(i).get(j).intValue());
+			}
+		}
+	}
+
+	@Test(timeout=10000)
+	public void testPool() throws Exception {
+		CommandMultiplexerPool pool1 = new CommandMultiplexerPool(initiators, Role.INITIATOR);
+		CommandMultiplexerPool pool2 = new CommandMultiplexerPool(acceptors, Role.ACCEPTOR);
+		Future<Void> server = serve(pool2, 4);
+
+		List<CommandRunner> runners = new ArrayList<>();
+		List<Channel> channels = new ArrayList<>();
+		for(int i=0; i<4; i++) {
+			Channel channel = pool1.openChannel();
+			channels.add(channel);
+			runners.add(new CommandRunner(channel));
+		}
+
+		// 2 本の物理ストリームに均等に分散される
+		assertEquals(1, channels.get(0).getChannelId());
+		assertEquals(1, channels.get(1).getChannelId());
+		assertEquals(3, channels.get(2).getChannelId());
+		assertEquals(3, channels.get(3).getChannelId());
+
+		for(int i=0; i<4; i++) {
+			TestApi api = runners.get(i).get("api");
+			assertEquals(3 + channels.get(i).getChannelId(), api.test1_Sum(1, 2));
+		}
+		server.get();
+
+		// 物理ストリームの終了で論理チャネルも終了する
+		pool1.close();
+		for(Channel channel: channels) {
+			channel.join();
+		}
+		assertEquals(0, pool1.getChannelCount());
+	}
+}
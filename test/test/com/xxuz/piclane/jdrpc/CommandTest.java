@@ -2,14 +2,35 @@ package test.com.xxuz.piclane.jdrpc;
 
 import static org.junit.Assert.*;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -17,9 +38,18 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.xxuz.piclane.jdrpc.ArrayView;
+import com.xxuz.piclane.jdrpc.BatchPolicy;
+import com.xxuz.piclane.jdrpc.BinaryCommandCodec;
+import com.xxuz.piclane.jdrpc.Command;
+import com.xxuz.piclane.jdrpc.CommandRequest;
+import com.xxuz.piclane.jdrpc.CommandResponse;
 import com.xxuz.piclane.jdrpc.CommandRunner;
+import com.xxuz.piclane.jdrpc.CompressionPolicy;
 import com.xxuz.piclane.jdrpc.DefaultCommandStream;
+import com.xxuz.piclane.jdrpc.RemoteStream;
 import com.xxuz.piclane.jdrpc.RpcOverride;
+import com.xxuz.piclane.jdrpc.RpcTimeoutException;
 
 /**
  * 
@@ -165,10 +195,706 @@ public class CommandTest {
 		assertArrayEquals(d_expected, d);
 	}
 	
+	@Test(timeout=5000)
+	public void test9() throws Exception {
+		TestApi api = runner2.get("api");
+		
+		// 遅いメソッドが他の呼び出しを止めない
+		long start = System.nanoTime();
+		Future<?> f = es.submit(() -> { api.test9_Sleep(1000); return null; });
+		Thread.sleep(100);
+		assertEquals(3, api.test1_Sum(1, 2));
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(800));
+		f.get();
+	}
+	
+	@Test(timeout=5000)
+	public void test10() throws Exception {
+		TestApi api = runner2.get("api");
+		
+		// 2 → 1 → 2 → 1 と再入する
+		assertEquals(6, api.test10_Reenter(1, a -> api.test1_Sum(a, 5)));
+	}
+	
+	@Test(timeout=5000)
+	public void test11() throws Exception {
+		TestApi api = runner2.get("api");
+		
+		// 応答を待つスレッドを使わずに多数の呼び出しを同時に実行する
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		CompletableFuture<Integer>[] futures = new CompletableFuture[1000];
+		for(int i=0; i<futures.length; i++) {
+			futures[i] = api.test11_AsyncSum(i, 1, 200);
+		}
+		for(int i=0; i<futures.length; i++) {
+			assertEquals(i + 1, futures[i].get().intValue());
+		}
+		assertEquals(0, stream2.getPendingCallCount());
+	}
+	
+	@Test(timeout=5000)
+	public void test11_Exception() throws Exception {
+		TestApi api = runner2.get("api");
+		try {
+			api.test11_AsyncSum(-1, 1, 0).get();
+			fail();
+		} catch (ExecutionException e) {
+			assertEquals(IllegalArgumentException.class, e.getCause().getClass());
+		}
+	}
+	
+	@Test(timeout=5000)
+	public void test12() throws Exception {
+		TestApi api = runner2.get("api");
+		int interrupted = TestApiImpl.interrupted.get();
+		
+		// 応答を待たずに送出し、リモートの実行は割り込まれる
+		long start = System.nanoTime();
+		try {
+			api.test12_Timeout(3000);
+			fail();
+		} catch (RpcTimeoutException e) {
+			assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+		}
+		while(TestApiImpl.interrupted.get() == interrupted) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, stream2.getPendingCallCount());
+		
+		// CompletableFuture を返すメソッドも応答を待たずに例外的に完了する
+		start = System.nanoTime();
+		CompletableFuture<Integer> future = api.test12_AsyncTimeout(3000);
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertEquals(RpcTimeoutException.class, e.getCause().getClass());
+			assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1000));
+		}
+		assertEquals(0, stream2.getPendingCallCount());
+		assertEquals(3, api.test1_Sum(1, 2));
+	}
+	
+	@Test(timeout=5000)
+	public void test12_DefaultTimeout() throws Exception {
+		TestApi api = runner2.get("api");
+		runner2.setDefaultTimeout(100, TimeUnit.MILLISECONDS);
+		try {
+			api.test9_Sleep(3000);
+			fail();
+		} catch (RpcTimeoutException e) {
+			// OK
+		}
+		
+		// 時間内に応答するメソッドには影響しない
+		assertEquals(3, api.test1_Sum(1, 2));
+	}
+	
+	@Test
+	public void test13() throws Exception {
+		TestApi api = runner2.get("api");
+		int[] a = new int[4];
+		
+		// 値渡しでは書き戻されない
+		api.test13_Fill(a, 1);
+		assertArrayEquals(new int[4], a);
+		
+		// RpcOverride の変更後は変更前に決定した渡し方を使わない
+		RpcOverride override = RpcOverride.forMethodParameter(0, TestApi.class, "test13_Fill", int[].class, int.class);
+		runner2.addRpcOverride(override);
+		api.test13_Fill(a, 2);
+		assertArrayEquals(new int[] {2, 2, 2, 2}, a);
+		
+		runner2.removeRpcOverride(override);
+		api.test13_Fill(a, 3);
+		assertArrayEquals(new int[] {2, 2, 2, 2}, a);
+	}
+	
+	@Test(timeout=5000)
+	public void test14() throws Exception {
+		TestApi api = runner2.get("api");
+		TestApiImpl.appended.clear();
+		
+		// 応答を待たずに戻り、送信した順に実行される。例外は後続の呼び出しに影響しない
+		for(int i=0; i<100; i++) {
+			api.test14_Append(i);
+			if(i == 50) {
+				api.test14_Append(-1);
+			}
+		}
+		assertEquals(0, stream2.getPendingCallCount());
+		while(TestApiImpl.appended.size() < 100) {
+			Thread.sleep(10);
+		}
+		for(int i=0; i<100; i++) {
+			assertEquals(i, TestApiImpl.appended.get(i).intValue());
+		}
+		assertEquals(3, api.test1_Sum(1, 2));
+	}
+	
+	@Test(timeout=5000)
+	public void test14_Detached() throws Exception {
+		TestApi api = runner2.get("api");
+		TestApiImpl.appended.clear();
+		
+		// 戻った直後に引数を再利用しても、呼び出し時点の内容が送信される
+		List<Integer> values = new ArrayList<>();
+		for(int i=0; i<100; i++) {
+			values.clear();
+			for(int j=0; j<1000; j++) {
+				values.add(i);
+			}
+			api.test14_AppendAll(values);
+		}
+		values.clear();
+		while(TestApiImpl.appended.size() < 100000) {
+			Thread.sleep(10);
+		}
+		for(int k=0; k<100000; k++) {
+			assertEquals(k / 1000, TestApiImpl.appended.get(k).intValue());
+		}
+		
+		// 参照渡しの配列は書き戻しを受け取れないため一方向呼び出しに指定できない
+		try {
+			api.test14_Fill(new int[1]);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// OK
+		}
+		assertEquals(3, api.test1_Sum(1, 2));
+	}
+	
+	@Test(timeout=5000)
+	public void test14_EncodedOnce() throws Exception {
+		PipedInputStream is1to2 = new PipedInputStream();
+		PipedOutputStream os1to2 = new PipedOutputStream(is1to2);
+		PipedInputStream is2to1 = new PipedInputStream();
+		PipedOutputStream os2to1 = new PipedOutputStream(is2to1);
+		AtomicLong encoded = new AtomicLong();
+		AtomicLong decoded = new AtomicLong();
+		BinaryCommandCodec codec = new BinaryCommandCodec() {
+			@Override
+			public void encode(Command cmd, DataOutput out) throws IOException {
+				encoded.incrementAndGet();
+				super.encode(cmd, out);
+			}
+			
+			@Override
+			public Command decode(DataInput in) throws IOException {
+				decoded.incrementAndGet();
+				return super.decode(in);
+			}
+		};
+		
+		try(DefaultCommandStream s1 = new DefaultCommandStream("e1", is2to1, os1to2, codec);
+			DefaultCommandStream s2 = new DefaultCommandStream("e2", is1to2, os2to1);
+			CommandRunner r1 = new CommandRunner("e1", s1);
+			CommandRunner r2 = new CommandRunner("e2", s2)) {
+			r2.register("api", new TestApiImpl(), TestApi.class);
+			TestApi api = r1.get("api");
+			TestApiImpl.appended.clear();
+			
+			// 一方向呼び出しは呼び出し元のスレッドで 1 度だけ符号化され、送信時に符号化し直されない
+			long encodedBefore = encoded.get();
+			long decodedBefore = decoded.get();
+			for(int i=0; i<10; i++) {
+				api.test14_AppendAll(Arrays.asList(i, i));
+			}
+			assertEquals(3, api.test1_Sum(1, 2));
+			assertEquals(11L, encoded.get() - encodedBefore);
+			assertEquals(1L, decoded.get() - decodedBefore);
+			while(TestApiImpl.appended.size() < 20) {
+				Thread.sleep(10);
+			}
+			for(int k=0; k<20; k++) {
+				assertEquals(k / 2, TestApiImpl.appended.get(k).intValue());
+			}
+		}
+	}
+	
+	@Test(timeout=10000)
+	public void test15() throws Exception {
+		TestApi api = runner2.get("api");
+		
+		// 全ての要素を送信順に受信する
+		Iterator<Integer> it = api.test15_Range(0, 100000);
+		assertTrue(it instanceof RemoteStream);
+		for(int i=0; i<100000; i++) {
+			assertTrue(it.hasNext());
+			assertEquals(i, it.next().intValue());
+		}
+		assertFalse(it.hasNext());
+		
+		// Stream は消費後に送信側でも閉じられる
+		TestApiImpl.closed.set(0);
+		try(Stream<String> s = api.test15_Strings(1000)) {
+			assertEquals(1000, s.count());
+		}
+		while(TestApiImpl.closed.get() == 0) {
+			Thread.sleep(10);
+		}
+		
+		// 送信側の例外は受信済みの要素の後に送出される
+		RemoteStream<Integer> failing = api.test15_Failing(300);
+		for(int i=0; i<300; i++) {
+			assertEquals(i, failing.next().intValue());
+		}
+		try {
+			failing.hasNext();
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("failed at 300", e.getMessage());
+		}
+	}
+	
+	@Test(timeout=10000)
+	public void test15_Abandoned() throws Exception {
+		TestApi api = runner2.get("api");
+		TestApiImpl.closed.set(0);
+		
+		// 閉じずに手放した Stream は GC された後に送信側で閉じられる
+		assertEquals("0", firstString(api));
+		while(TestApiImpl.closed.get() == 0) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertEquals(3, api.test1_Sum(1, 2));
+	}
+	
+	/**
+	 * 閉じずに先頭の要素のみを取り出します
+	 * 
+	 * @param api {@link TestApi}
+	 * @return 先頭の要素
+	 */
+	private static String firstString(TestApi api) {
+		return api.test15_Strings(100000).findFirst().get();
+	}
+	
+	@Test(timeout=5000)
+	public void test15_Backpressure() throws Exception {
+		TestApi api = runner2.get("api");
+		runner2.setStreamWindow(32);
+		TestApiImpl.produced.set(0);
+		
+		// 許可された分しか取り出されず、終了後は取り出されない
+		RemoteStream<Integer> it = (RemoteStream<Integer>)api.test15_Range(0, Integer.MAX_VALUE);
+		for(int i=0; i<10; i++) {
+			assertEquals(i, it.next().intValue());
+		}
+		Thread.sleep(100);
+		assertEquals(32, TestApiImpl.produced.get());
+		it.close();
+		assertFalse(it.hasNext());
+		Thread.sleep(100);
+		assertEquals(32, TestApiImpl.produced.get());
+		assertEquals(3, api.test1_Sum(1, 2));
+	}
+	
+	@Test(timeout=5000)
+	public void test16() throws Exception {
+		TestApi api = runner2.get("api");
+		
+		// 小さいバッファーとフレームに連結される大きいバッファー
+		for(int size: new int[] {10, 1024 * 1024}) {
+			for(boolean direct: new boolean[] {false, true}) {
+				ByteBuffer buf = direct ? ByteBuffer.allocateDirect(size + 2) : ByteBuffer.allocate(size + 2);
+				for(int i=0; i<buf.capacity(); i++) {
+					buf.put(i, (byte)i);
+				}
+				buf.position(1).limit(size + 1);
+				
+				ByteBuffer result = api.test16_Reverse(buf);
+				assertEquals(1, buf.position());
+				assertEquals(size, result.remaining());
+				for(int i=0; i<size; i++) {
+					assertEquals((byte)(size - i), result.get(i));
+				}
+			}
+		}
+	}
+	
+	@Test(timeout=5000)
+	public void test17() throws Exception {
+		TestApi api = runner2.get("api");
+		
+		// 書き込み専用の配列は内容を送信せず、呼び出し先が書き込んだ内容に置き換えられる
+		byte[] buf = new byte[1024];
+		Arrays.fill(buf, (byte)9);
+		assertEquals(3, api.test17_Read(buf, 3));
+		byte[] buf_expected = new byte[1024];
+		buf_expected[0] = 1;
+		buf_expected[1] = 2;
+		buf_expected[2] = 3;
+		assertArrayEquals(buf_expected, buf);
+		
+		// 変更された範囲のみが書き戻され、それ以外の要素は保持される
+		int[] a = new int[1000];
+		for(int i=0; i<a.length; i++) {
+			a[i] = i;
+		}
+		api.test17_Set(a, 0, -1);
+		api.test17_Set(a, 500, 0);
+		api.test17_Set(a, 999, -999);
+		for(int i=0; i<a.length; i++) {
+			int expected = i == 0 ? -1 : i == 500 ? 0 : i == 999 ? -999 : i;
+			assertEquals(expected, a[i]);
+		}
+	}
+	
+	@Test(timeout=5000)
+	public void test18() throws Exception {
+		TestApi api = runner2.get("api");
+		
+		// 呼び出し先が参照した範囲のみが転送される
+		int[] a = new int[4 * 1024 * 1024];
+		for(int i=0; i<a.length; i++) {
+			a[i] = i;
+		}
+		assertEquals((1000L + 1999L) * 1000L / 2L, api.test18_Sum(ArrayView.of(a), 1000, 2000));
+		
+		// キャッシュから追い出されたページも書き戻される
+		runner1.setArrayViewCache(16, 2);
+		byte[] b = new byte[1000];
+		api.test18_Fill(ArrayView.of(b), 10, 990, (byte)7);
+		for(int i=0; i<b.length; i++) {
+			assertEquals(i >= 10 && i < 990 ? 7 : 0, b[i]);
+		}
+	}
+	
+	@Test(timeout=5000)
+	public void test19() throws Exception {
+		TestApi api = runner2.get("api");
+		
+		// 同じインスタンスはインスタンスIDが再利用され、呼び出し先では同じプロクシになる
+		Supplier<Integer> s = () -> 19;
+		api.test19_Same(s);
+		for(int i=0; i<100; i++) {
+			assertTrue(api.test19_Same(s));
+		}
+		assertFalse(api.test19_Same(() -> 19));
+	}
+	
+	@Test(timeout=5000)
+	public void testLease() throws Exception {
+		PipedInputStream is1to2 = new PipedInputStream();
+		PipedOutputStream os1to2 = new PipedOutputStream(is1to2);
+		PipedInputStream is2to1 = new PipedInputStream();
+		PipedOutputStream os2to1 = new PipedOutputStream(is2to1);
+		AtomicBoolean renewing = new AtomicBoolean(true);
+		
+		try(DefaultCommandStream s1 = new DefaultCommandStream("l1", is2to1, os1to2) {
+				@Override
+				public void post(CommandRequest cmd) {
+					if(cmd instanceof CommandRequest.RenewLeases && !renewing.get()) {
+						return;
+					}
+					super.post(cmd);
+				}
+			};
+			DefaultCommandStream s2 = new DefaultCommandStream("l2", is1to2, os2to1);
+			CommandRunner r1 = new CommandRunner("l1", s1);
+			CommandRunner r2 = new CommandRunner("l2", s2)) {
+			r1.register("api", new TestApiImpl(), TestApi.class);
+			TestApi api = r2.get("api");
+			
+			// 渡した側だけが短い期間を設定しても、保持している側はその期間に合わせてリースを更新する
+			r2.setLeaseDuration(300L, TimeUnit.MILLISECONDS);
+			Supplier<Integer> s = () -> 19;
+			api.test19_Same(s);
+			assertEquals(1, r2.getExportedInstanceCount());
+			assertEquals(1, r1.getImportedInstanceCount());
+			Thread.sleep(1000L);
+			assertTrue(api.test19_Same(s));
+			assertEquals(0L, r2.getExpiredLeaseCount());
+			
+			// 更新が途絶えると期限切れとなり登録解除される
+			renewing.set(false);
+			while(r2.getExportedInstanceCount() > 0) {
+				Thread.sleep(50L);
+			}
+			assertEquals(1L, r2.getExpiredLeaseCount());
+		}
+	}
+	
+	@Test(timeout=5000)
+	public void testMethodFingerprint() throws Exception {
+		PipedInputStream is1to2 = new PipedInputStream();
+		PipedOutputStream os1to2 = new PipedOutputStream(is1to2);
+		PipedInputStream is2to1 = new PipedInputStream();
+		PipedOutputStream os2to1 = new PipedOutputStream(is2to1);
+		
+		// 異なるバージョンのインターフェイスを持つ相手を模して、ずれたベースIDと異なるフィンガープリントを送信する
+		try(DefaultCommandStream s1 = new DefaultCommandStream("f1", is2to1, os1to2) {
+				@Override
+				public CommandResponse call(CommandRequest cmd) throws InterruptedException {
+					if(cmd instanceof CommandRequest.Register) {
+						CommandRequest.Register req = (CommandRequest.Register)cmd;
+						int[] bases = req.getMethodBases().clone();
+						int[] fingerprints = req.getMethodFingerprints().clone();
+						for(int i=0; i<bases.length; i++) {
+							bases[i]++;
+							fingerprints[i] = ~fingerprints[i];
+						}
+						cmd = new CommandRequest.Register(req.getName(), req.getInstanceId(), req.getInterfaces(), bases, fingerprints, req.getLeaseNanos());
+					}
+					return super.call(cmd);
+				}
+			};
+			DefaultCommandStream s2 = new DefaultCommandStream("f2", is1to2, os2to1);
+			CommandRunner r1 = new CommandRunner("f1", s1);
+			CommandRunner r2 = new CommandRunner("f2", s2)) {
+			r1.register("api", new TestApiImpl(), TestApi.class);
+			TestApi api = r2.get("api");
+			
+			// フィンガープリントが一致しないためIDは使用されず、名前と引数の型で正しいメソッドが呼び出される
+			assertEquals(3, api.test1_Sum(1, 2));
+			assertEquals(7, api.test5_Sum(3, 4).get().intValue());
+		}
+	}
+	
+	@Test(timeout=5000)
+	public void testGetAsync() throws Exception {
+		// 登録前に要求した取得は登録された時点で完了する
+		CompletableFuture<Supplier<Integer>> future = runner2.getAsync("later");
+		assertFalse(future.isDone());
+		Supplier<Integer> s = () -> 23;
+		runner1.register("later", s, Supplier.class);
+		assertEquals(23, future.get().get().intValue());
+		
+		// 登録済みのインスタンスは待たずに取得できる
+		Supplier<Integer> later = runner2.get("later", 1L, TimeUnit.SECONDS);
+		assertEquals(23, later.get().intValue());
+		
+		// 時間内に登録されなければタイムアウトする
+		try {
+			runner2.get("missing", 100L, TimeUnit.MILLISECONDS);
+			fail();
+		} catch (TimeoutException e) {
+			// OK
+		}
+	}
+	
+	@Test(timeout=5000)
+	public void testBatchPolicy() throws Exception {
+		PipedInputStream is1to2 = new PipedInputStream();
+		PipedOutputStream os1to2 = new PipedOutputStream(is1to2);
+		PipedInputStream is2to1 = new PipedInputStream();
+		PipedOutputStream os2to1 = new PipedOutputStream(is2to1);
+		
+		BatchPolicy policy = BatchPolicy.of(16, 1024, 1, TimeUnit.MILLISECONDS);
+		try(DefaultCommandStream s1 = new DefaultCommandStream("b1", is2to1, os1to2, new BinaryCommandCodec(), policy);
+			DefaultCommandStream s2 = new DefaultCommandStream("b2", is1to2, os2to1, new BinaryCommandCodec(), policy);
+			CommandRunner r1 = new CommandRunner("b1", s1);
+			CommandRunner r2 = new CommandRunner("b2", s2)) {
+			r1.register("api", new TestApiImpl(), TestApi.class);
+			TestApi api = r2.get("api");
+			
+			// 多数の呼び出しがまとめて送信されても全て応答される
+			@SuppressWarnings({"unchecked", "rawtypes"})
+			CompletableFuture<Integer>[] futures = new CompletableFuture[500];
+			for(int i=0; i<futures.length; i++) {
+				futures[i] = api.test11_AsyncSum(i, 1, 0);
+			}
+			for(int i=0; i<futures.length; i++) {
+				assertEquals(i + 1, futures[i].get().intValue());
+			}
+			assertEquals(3, api.test1_Sum(1, 2));
+		}
+	}
+	
+	@Test(timeout=10000)
+	public void testCompression() throws Exception {
+		// 双方が有効にしている場合のみ圧縮される
+		assertTrue(transferredBytes(CompressionPolicy.of(256), CompressionPolicy.of(256)) < 20000L);
+		assertTrue(transferredBytes(CompressionPolicy.of(256), CompressionPolicy.none()) > 300000L);
+		assertTrue(transferredBytes(CompressionPolicy.none(), CompressionPolicy.of(256)) > 300000L);
+	}
+	
+	/**
+	 * 圧縮されやすい返値と圧縮されにくい返値を受け取り、呼び出し先が送信したバイト数を取得します
+	 * 
+	 * @param policy1 呼び出し先の {@link CompressionPolicy}
+	 * @param policy2 呼び出し元の {@link CompressionPolicy}
+	 * @return 呼び出し先が送信したバイト数
+	 */
+	private static long transferredBytes(CompressionPolicy policy1, CompressionPolicy policy2) throws Exception {
+		PipedInputStream is1to2 = new PipedInputStream();
+		PipedOutputStream os1to2 = new PipedOutputStream(is1to2);
+		PipedInputStream is2to1 = new PipedInputStream();
+		PipedOutputStream os2to1 = new PipedOutputStream(is2to1);
+		AtomicLong written = new AtomicLong();
+		OutputStream counting = new FilterOutputStream(os1to2) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				written.addAndGet(len);
+				out.write(b, off, len);
+			}
+		};
+		
+		try(DefaultCommandStream s1 = new DefaultCommandStream("c1", is2to1, counting, new BinaryCommandCodec(), BatchPolicy.defaults(), policy1);
+			DefaultCommandStream s2 = new DefaultCommandStream("c2", is1to2, os2to1, new BinaryCommandCodec(), BatchPolicy.defaults(), policy2);
+			CommandRunner r1 = new CommandRunner("c1", s1);
+			CommandRunner r2 = new CommandRunner("c2", s2)) {
+			r1.register("api", new TestApiImpl(), TestApi.class);
+			TestApi api = r2.get("api");
+			assertEquals(3, api.test1_Sum(1, 2));
+			
+			long before = written.get();
+			for(int n: new int[] {1, 100, 1000, 50000}) {
+				assertEquals(n * 6, api.test20_Repeat("jdrpc ", n).length());
+			}
+			long compressible = written.get() - before;
+			
+			// 圧縮できない内容と 64KiB を超える内容も壊れずに届く
+			Random random = new Random(25L);
+			for(int n: new int[] {300, 5000, 100000}) {
+				char[] cs = new char[n];
+				for(int i=0; i<n; i++) {
+					cs[i] = (char)(0x21 + random.nextInt(0x5e));
+				}
+				String s = new String(cs);
+				assertEquals(s, api.test20_Repeat(s, 1));
+				assertEquals(s + s + s, api.test20_Repeat(s, 3));
+			}
+			return compressible;
+		}
+	}
+	
+	@Test(timeout=5000)
+	public void testDeregisterMany() throws Exception {
+		UUID id1 = runner1.register("x1", new TestApiImpl(), TestApi.class);
+		UUID id2 = runner1.register("x2", new TestApiImpl(), TestApi.class);
+		assertNotNull(runner2.tryGet("x1"));
+		assertNotNull(runner2.tryGet("x2"));
+		
+		// 応答を待たずにまとめて登録解除される
+		stream1.post(new CommandRequest.DeregisterMany(new UUID[] {id1, id2}));
+		while(runner2.tryGet("x1") != null || runner2.tryGet("x2") != null) {
+			Thread.sleep(10);
+		}
+		assertNull(runner2.tryGet(id1));
+		assertEquals(3, runner2.<TestApi>get("api").test1_Sum(1, 2));
+	}
+	
+	@Test(timeout=10000)
+	public void testStaleDeregister() throws Exception {
+		PipedInputStream is1to2 = new PipedInputStream();
+		PipedOutputStream os1to2 = new PipedOutputStream(is1to2);
+		PipedInputStream is2to1 = new PipedInputStream();
+		PipedOutputStream os2to1 = new PipedOutputStream(is2to1);
+		List<CommandRequest> held = new ArrayList<>();
+		
+		// プロクシの登録解除を保留し、再び渡された後に届くようにする
+		try(DefaultCommandStream s1 = new DefaultCommandStream("d1", is2to1, os1to2) {
+				@Override
+				public void post(CommandRequest cmd) {
+					if(cmd instanceof CommandRequest.DeregisterMany) {
+						synchronized (held) {
+							held.add(cmd);
+						}
+						return;
+					}
+					super.post(cmd);
+				}
+			};
+			DefaultCommandStream s2 = new DefaultCommandStream("d2", is1to2, os2to1);
+			CommandRunner r1 = new CommandRunner("d1", s1);
+			CommandRunner r2 = new CommandRunner("d2", s2)) {
+			r1.register("api", new TestApiImpl(), TestApi.class);
+			TestApi api = r2.get("api");
+			
+			Supplier<Integer> s = () -> 19;
+			api.test19_Same(s);
+			api.test19_Same(() -> 0);
+			while(true) {
+				synchronized (held) {
+					if(!held.isEmpty()) {
+						break;
+					}
+				}
+				System.gc();
+				Thread.sleep(10);
+			}
+			
+			// 登録解除より後に再び渡したインスタンスは、古い登録解除が届いても維持される
+			api.test19_Same(s);
+			synchronized (held) {
+				for(CommandRequest cmd: held) {
+					s1.postDetached(cmd);
+				}
+			}
+			assertEquals(3, api.test1_Sum(1, 2));
+			assertEquals(2, r2.getExportedInstanceCount());
+			assertTrue(api.test19_Same(s));
+		}
+	}
+	
+	@Test
+	public void testInvoker() throws Exception {
+		// 公開されていない実装クラス
+		runner1.register("hidden", new HiddenSupplier(), Supplier.class);
+		assertEquals(5, runner2.<Supplier<Integer>>get("hidden").get().intValue());
+		
+		// アクセスできない実装クラスはインターフェイスのメソッドで実行する
+		runner1.register("list", Collections.unmodifiableList(Arrays.asList(1, 2, 3)), List.class);
+		List<?> list = runner2.get("list");
+		assertEquals(3, list.size());
+		assertEquals(2, list.get(1));
+		
+		// static メソッドは拡大変換した引数で実行する
+		assertEquals(5, runner2.invokeStatic(Math.class.getMethod("max", int.class, int.class), 5, 3));
+		assertEquals(5L, runner2.invokeStatic(Math.class.getMethod("max", long.class, long.class), 5, 3));
+	}
+	
+	@Test
+	public void testInvokerArgumentMismatch() throws Exception {
+		runner2.get("api");
+		Method method = TestApi.class.getMethod("test1_Sum", int.class, int.class);
+		
+		// 変換できない引数はメソッドの例外ではなく内部エラーとして報告される
+		for(Object[] args: new Object[][] {{"1", 2}, {null, 2}, {1L, 2}}) {
+			try {
+				runner2.invoke("api", method, args);
+				fail();
+			} catch (InternalError e) {
+				assertEquals(IllegalArgumentException.class, e.getCause().getClass());
+			}
+		}
+		assertEquals(3, runner2.invoke("api", method, 1, 2));
+	}
+	
+	@Test
+	public void testPendingCallsReleased() throws Exception {
+		TestApi api = runner2.get("api");
+		for(int i=0; i<1000; i++) {
+			assertEquals(i + 1, api.test1_Sum(i, 1));
+		}
+		assertEquals(0, stream2.getPendingCallCount());
+		assertEquals(0, stream1.getPendingCallCount());
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void testCallAfterStreamClosed() throws Exception {
+		TestApi api = runner2.get("api");
+		stream2.close();
+		api.test1_Sum(1, 2);
+	}
+	
 	@Test
 	public void testEnd() throws Exception {
 		runner2.close();
 		
 		assertTrue(runner1.isClosed());
 	}
+	
+	/**
+	 * 公開されていない実装クラス
+	 */
+	private static class HiddenSupplier implements Supplier<Integer> {
+		@Override
+		public Integer get() {
+			return 5;
+		}
+	}
 }
@@ -0,0 +1,193 @@
+package test.com.xxuz.piclane.jdrpc;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.xxuz.piclane.jdrpc.BinaryCommandCodec;
+import com.xxuz.piclane.jdrpc.CommandRunner;
+import com.xxuz.piclane.jdrpc.NioCommandStream;
+import com.xxuz.piclane.jdrpc.NioSelectorGroup;
+
+/**
+ *
+ *
+ * @author piclane
+ */
+public class NioCommandStreamTest {
+	private static NioSelectorGroup group;
+
+	private CommandRunner runner1;
+	private NioCommandStream stream1;
+
+	private CommandRunner runner2;
+	private NioCommandStream stream2;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		group = new NioSelectorGroup(2);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception {
+		group.close();
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		SocketChannel ch1, ch2;
+		try(ServerSocketChannel server = ServerSocketChannel.open()) {
+			server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			ch1 = SocketChannel.open(server.getLocalAddress());
+			ch2 = server.accept();
+		}
+
+		this.stream1 = new NioCommandStream("1", ch1, new BinaryCommandCodec(), group);
+		this.runner1 = new CommandRunner("1", stream1);
+
+		this.stream2 = new NioCommandStream("2", ch2, new BinaryCommandCodec(), group);
+		this.runner2 = new CommandRunner("2", stream2);
+
+		runner1.register("api", new TestApiImpl(), TestApi.class);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		runner1.close();
+		runner2.close();
+		stream1.close();
+		stream2.close();
+	}
+
+	@Test
+	public void test1() throws Exception {
+		TestApi api = runner2.get("api");
+		assertEquals(3, api.test1_Sum(1, 2));
+	}
+
+	@Test(expected=SQLException.class)
+	public void test2() throws Exception {
+		TestApi api = runner2.get("api");
+		api.test2_Exception();
+	}
+
+	@Test
+	public void test4() throws Exception {
+		TestApi api = runner2.get("api");
+		assertEquals(3, api.test4_Sum(()->1, ()->2));
+	}
+
+	@Test(timeout=5000)
+	public void testPipelined() throws Exception {
+		TestApi api = runner2.get("api");
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		CompletableFuture<Integer>[] futures = new CompletableFuture[2000];
+		for(int i=0; i<futures.length; i++) {
+			futures[i] = api.test11_AsyncSum(i, 1, 0);
+		}
+		for(int i=0; i<futures.length; i++) {
+			assertEquals(i + 1, futures[i].get().intValue());
+		}
+		assertEquals(0, stream2.getPendingCallCount());
+	}
+
+	@Test(timeout=5000)
+	public void testLargeFrame() throws Exception {
+		TestApi api = runner2.get("api");
+
+		// 受信バッファーより大きいフレーム
+		byte[] a = new byte[100000];
+		int[] b = new int[50000];
+		api.test8_RefCall(a, b, new long[0], new Object[0]);
+		
+		byte[] a_expected = new byte[a.length];
+		Arrays.fill(a_expected, (byte)1);
+		assertArrayEquals(a_expected, a);
+		
+		int[] b_expected = new int[b.length];
+		Arrays.fill(b_expected, 1);
+		assertArrayEquals(b_expected, b);
+	}
+
+	@Test(timeout=5000)
+	public void test16() throws Exception {
+		TestApi api = runner2.get("api");
+		
+		// 小さいバッファーとフレームに連結される大きいバッファー
+		for(int size: new int[] {10, 1024 * 1024}) {
+			for(boolean direct: new boolean[] {false, true}) {
+				ByteBuffer buf = direct ? ByteBuffer.allocateDirect(size + 2) : ByteBuffer.allocate(size + 2);
+				for(int i=0; i<buf.capacity(); i++) {
+					buf.put(i, (byte)i);
+				}
+				buf.position(1).limit(size + 1);
+				
+				ByteBuffer result = api.test16_Reverse(buf);
+				assertEquals(1, buf.position());
+				assertEquals(size, result.remaining());
+				for(int i=0; i<size; i++) {
+					assertEquals((byte)(size - i), result.get(i));
+				}
+			}
+		}
+	}
+	
+	@Test(timeout=10000)
+	public void test14_Detached() throws Exception {
+		TestApi api = runner2.get("api");
+		TestApiImpl.appended.clear();
+		
+		// 連結される大きさのダイレクトバッファーを戻った直後に書き換えても、呼び出し時点の内容が送信される
+		ByteBuffer buf = ByteBuffer.allocateDirect(256 * 1024);
+		for(int i=0; i<100; i++) {
+			for(int j=0; j<buf.capacity(); j++) {
+				buf.put(j, (byte)i);
+			}
+			api.test14_AppendBuffer(buf);
+		}
+		for(int j=0; j<buf.capacity(); j++) {
+			buf.put(j, (byte)-2);
+		}
+		assertEquals(3, api.test1_Sum(1, 2));
+		while(TestApiImpl.appended.size() < 100) {
+			Thread.sleep(10);
+		}
+		for(int i=0; i<100; i++) {
+			assertEquals(i, TestApiImpl.appended.get(i).intValue());
+		}
+	}
+	
+	@Test
+	public void testEnd() throws Exception {
+		runner2.close();
+		stream2.join();
+
+		assertTrue(runner1.isClosed());
+	}
+}
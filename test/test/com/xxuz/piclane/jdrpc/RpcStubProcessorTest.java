@@ -0,0 +1,158 @@
+package test.com.xxuz.piclane.jdrpc;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.xxuz.piclane.jdrpc.AbstractRpcStub;
+import com.xxuz.piclane.jdrpc.BinaryCommandCodec;
+import com.xxuz.piclane.jdrpc.CommandRunner;
+import com.xxuz.piclane.jdrpc.DefaultCommandStream;
+import com.xxuz.piclane.jdrpc.RpcStubProcessor;
+
+/**
+ * {@link RpcStubProcessor} でインターフェイスをコンパイルし、生成されたスタブクラスで呼び出せることを確認します
+ *
+ * @author piclane
+ */
+public class RpcStubProcessorTest {
+	private Path dir;
+
+	private URLClassLoader loader;
+
+	private CommandRunner runner1;
+
+	private CommandRunner runner2;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		Assume.assumeNotNull(compiler);
+
+		dir = Files.createTempDirectory("jdrpc-stub");
+		Path src = Files.createDirectories(dir.resolve("src/stubtest"));
+		Path out = Files.createDirectories(dir.resolve("out"));
+		write(src.resolve("Base.java"),
+			"package stubtest;",
+			"public interface Base<T> {",
+			"	T echo(T value);",
+			"}");
+		write(src.resolve("Calc.java"),
+			"package stubtest;",
+			"@com.xxuz.piclane.jdrpc.RpcStub",
+			"public interface Calc extends Base<String> {",
+			"	int sum(int a, int b);",
+			"	void fail(String message) throws java.io.IOException;",
+			"	java.util.concurrent.CompletableFuture<Integer> sumAsync(int a, int b);",
+			"	<T extends Comparable<T>> T max(T a, T b);",
+			"}");
+		write(src.resolve("CalcImpl.java"),
+			"package stubtest;",
+			"public class CalcImpl implements Calc {",
+			"	public String echo(String value) { return value; }",
+			"	public int sum(int a, int b) { return a + b; }",
+			"	public void fail(String message) throws java.io.IOException { throw new java.io.IOException(message); }",
+			"	public java.util.concurrent.CompletableFuture<Integer> sumAsync(int a, int b) { return java.util.concurrent.CompletableFuture.completedFuture(a + b); }",
+			"	public <T extends Comparable<T>> T max(T a, T b) { return a.compareTo(b) >= 0 ? a : b; }",
+			"}");
+
+		try(StandardJavaFileManager fm = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+			List<String> options = Arrays.asList(
+				"-classpath", System.getProperty("java.class.path"),
+				"-d", out.toString());
+			JavaCompiler.CompilationTask task = compiler.getTask(null, fm, null, options, null,
+				fm.getJavaFileObjects(src.resolve("Base.java").toFile(), src.resolve("Calc.java").toFile(), src.resolve("CalcImpl.java").toFile()));
+			task.setProcessors(Collections.singletonList(new RpcStubProcessor()));
+			assertTrue(task.call());
+		}
+		loader = new URLClassLoader(new URL[] {out.toUri().toURL()}, getClass().getClassLoader());
+
+		PipedInputStream is1to2 = new PipedInputStream();
+		PipedOutputStream os1to2 = new PipedOutputStream(is1to2);
+		PipedInputStream is2to1 = new PipedInputStream();
+		PipedOutputStream os2to1 = new PipedOutputStream(is2to1);
+		runner1 = new CommandRunner("1", new DefaultCommandStream("1", is2to1, os1to2, new BinaryCommandCodec(loader)));
+		runner2 = new CommandRunner("2", new DefaultCommandStream("2", is1to2, os2to1, new BinaryCommandCodec(loader)));
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		if(runner2 != null) {
+			runner2.close();
+		}
+		if(loader != null) {
+			loader.close();
+		}
+		if(dir != null) {
+			List<Path> paths = new ArrayList<>();
+			try(Stream<Path> walk = Files.walk(dir)) {
+				walk.forEach(paths::add);
+			}
+			Collections.reverse(paths);
+			for(Path path: paths) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	private static void write(Path path, String... lines) throws IOException {
+		Files.write(path, Arrays.asList(lines), StandardCharsets.UTF_8);
+	}
+
+	@Test(timeout=10000)
+	public void testStub() throws Exception {
+		Class<?> calcClass = loader.loadClass("stubtest.Calc");
+		runner1.register("calc", loader.loadClass("stubtest.CalcImpl").newInstance(), calcClass);
+		Object calc = runner2.get("calc");
+
+		// java.lang.reflect.Proxy の代わりに生成されたスタブクラスが使われる
+		assertEquals("stubtest.Calc_RpcStub", calc.getClass().getName());
+		assertTrue(calc instanceof AbstractRpcStub);
+
+		assertEquals(3, calcClass.getMethod("sum", int.class, int.class).invoke(calc, 1, 2));
+		assertEquals("hello", calcClass.getMethod("echo", Object.class).invoke(calc, "hello"));
+		assertEquals(5, calcClass.getMethod("max", Comparable.class, Comparable.class).invoke(calc, 5, 2));
+
+		CompletableFuture<?> future = (CompletableFuture<?>)calcClass.getMethod("sumAsync", int.class, int.class).invoke(calc, 2, 3);
+		assertEquals(5, future.get());
+
+		Method fail = calcClass.getMethod("fail", String.class);
+		try {
+			fail.invoke(calc, "test");
+			fail();
+		} catch (InvocationTargetException e) {
+			assertEquals(IOException.class, e.getTargetException().getClass());
+			assertEquals("test", e.getTargetException().getMessage());
+		}
+	}
+}
@@ -1,10 +1,20 @@
 package test.com.xxuz.piclane.jdrpc;
 
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import com.xxuz.piclane.jdrpc.ArrayView;
+import com.xxuz.piclane.jdrpc.RpcOneWay;
+import com.xxuz.piclane.jdrpc.RemoteStream;
 import com.xxuz.piclane.jdrpc.RpcParam;
 import com.xxuz.piclane.jdrpc.RpcResult;
+import com.xxuz.piclane.jdrpc.RpcTimeout;
 
 /**
  * 
@@ -28,4 +38,50 @@ public interface TestApi {
 	public Supplier<Integer> test7_Sum(int a, int b);
 	
 	public void test8_RefCall(@RpcParam byte[] a, @RpcParam int[] b, @RpcParam long[] c, @RpcParam Object[] d);
+	
+	public void test9_Sleep(long millis) throws InterruptedException;
+	
+	public int test10_Reenter(int a, @RpcParam Function<Integer, Integer> f);
+	
+	public CompletableFuture<Integer> test11_AsyncSum(int a, int b, long delayMillis);
+	
+	@RpcTimeout(200)
+	public void test12_Timeout(long millis) throws InterruptedException;
+	
+	@RpcTimeout(200)
+	public CompletableFuture<Integer> test12_AsyncTimeout(long millis);
+	
+	public void test13_Fill(int[] a, int value);
+	
+	@RpcOneWay
+	public void test14_Append(int value);
+	
+	@RpcOneWay
+	public void test14_AppendAll(List<Integer> values);
+	
+	@RpcOneWay
+	public void test14_Fill(@RpcParam int[] a);
+	
+	@RpcOneWay
+	public void test14_AppendBuffer(ByteBuffer buf);
+	
+	public Iterator<Integer> test15_Range(int from, int to);
+	
+	public Stream<String> test15_Strings(int n);
+	
+	public RemoteStream<Integer> test15_Failing(int n);
+	
+	public ByteBuffer test16_Reverse(ByteBuffer buf);
+	
+	public int test17_Read(@RpcParam(direction=RpcParam.Direction.OUT) byte[] buf, int n);
+	
+	public void test17_Set(@RpcParam int[] a, int index, int value);
+	
+	public long test18_Sum(ArrayView<int[]> view, int from, int to);
+	
+	public void test18_Fill(ArrayView<byte[]> view, int from, int to, byte value);
+	
+	public boolean test19_Same(@RpcParam Supplier<Integer> s);
+	
+	public String test20_Repeat(String s, int n);
 }
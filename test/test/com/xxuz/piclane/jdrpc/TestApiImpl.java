@@ -1,8 +1,25 @@
 package test.com.xxuz.piclane.jdrpc;
 
+import java.nio.ByteBuffer;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.xxuz.piclane.jdrpc.ArrayView;
+import com.xxuz.piclane.jdrpc.RemoteStream;
 
 /**
  * 
@@ -10,6 +27,26 @@ import java.util.function.Supplier;
  * @author yohei_hina
  */
 public class TestApiImpl implements TestApi {
+	private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r);
+		t.setDaemon(true);
+		return t;
+	});
+	
+	/** test12_Timeout が取り消しで割り込まれた回数 */
+	public static final AtomicInteger interrupted = new AtomicInteger();
+	
+	/** test14_Append で追加された値 */
+	public static final List<Integer> appended = Collections.synchronizedList(new ArrayList<>());
+	
+	/** test15_Range が取り出された要素の数 */
+	public static final AtomicInteger produced = new AtomicInteger();
+	
+	/** test15_Strings が閉じられた回数 */
+	public static final AtomicInteger closed = new AtomicInteger();
+	
+	/** test19_Same に最後に渡された引数 */
+	private static Supplier<Integer> lastSupplier;
 
 	/**
 	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test1_Sum(int, int)
@@ -79,4 +116,238 @@ public class TestApiImpl implements TestApi {
 		Arrays.fill(c, 1L);
 		Arrays.fill(d, Long.valueOf(1));
 	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test9_Sleep(long)
+	 */
+	@Override
+	public void test9_Sleep(long millis) throws InterruptedException {
+		Thread.sleep(millis);
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test10_Reenter(int, java.util.function.Function)
+	 */
+	@Override
+	public int test10_Reenter(int a, Function<Integer, Integer> f) {
+		return f.apply(a);
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test11_AsyncSum(int, int, long)
+	 */
+	@Override
+	public CompletableFuture<Integer> test11_AsyncSum(int a, int b, long delayMillis) {
+		CompletableFuture<Integer> future = new CompletableFuture<>();
+		timer.schedule(() -> {
+			if(a < 0) {
+				future.completeExceptionally(new IllegalArgumentException("test"));
+			} else {
+				future.complete(a + b);
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+		return future;
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test12_Timeout(long)
+	 */
+	@Override
+	public void test12_Timeout(long millis) throws InterruptedException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			interrupted.incrementAndGet();
+			throw e;
+		}
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test12_AsyncTimeout(long)
+	 */
+	@Override
+	public CompletableFuture<Integer> test12_AsyncTimeout(long millis) {
+		return test11_AsyncSum(1, 2, millis);
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test13_Fill(int[], int)
+	 */
+	@Override
+	public void test13_Fill(int[] a, int value) {
+		Arrays.fill(a, value);
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test14_Append(int)
+	 */
+	@Override
+	public void test14_Append(int value) {
+		if(value < 0) {
+			throw new IllegalArgumentException();
+		}
+		appended.add(value);
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test14_AppendAll(java.util.List)
+	 */
+	@Override
+	public void test14_AppendAll(List<Integer> values) {
+		appended.addAll(values);
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test14_Fill(int[])
+	 */
+	@Override
+	public void test14_Fill(int[] a) {
+		Arrays.fill(a, 14);
+	}
+	
+	/**
+	 * 全てのバイトが等しい場合はその値を、異なる場合は -1 を追加します
+	 * 
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test14_AppendBuffer(java.nio.ByteBuffer)
+	 */
+	@Override
+	public void test14_AppendBuffer(ByteBuffer buf) {
+		byte first = buf.get(buf.position());
+		for(int i=buf.position(); i<buf.limit(); i++) {
+			if(buf.get(i) != first) {
+				appended.add(-1);
+				return;
+			}
+		}
+		appended.add((int)first);
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test15_Range(int, int)
+	 */
+	@Override
+	public Iterator<Integer> test15_Range(int from, int to) {
+		return new Iterator<Integer>() {
+			private int next = from;
+			
+			@Override
+			public boolean hasNext() {
+				return next < to;
+			}
+			
+			@Override
+			public Integer next() {
+				if(next >= to) {
+					throw new NoSuchElementException();
+				}
+				produced.incrementAndGet();
+				return next++;
+			}
+		};
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test15_Strings(int)
+	 */
+	@Override
+	public Stream<String> test15_Strings(int n) {
+		return IntStream.range(0, n).mapToObj(Integer::toString).onClose(closed::incrementAndGet);
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test15_Failing(int)
+	 */
+	@Override
+	public RemoteStream<Integer> test15_Failing(int n) {
+		return RemoteStream.of(IntStream.range(0, n + 1).mapToObj(i -> {
+			if(i == n) {
+				throw new IllegalStateException("failed at " + i);
+			}
+			return i;
+		}));
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test16_Reverse(java.nio.ByteBuffer)
+	 */
+	@Override
+	public ByteBuffer test16_Reverse(ByteBuffer buf) {
+		ByteBuffer result = ByteBuffer.allocateDirect(buf.remaining());
+		for(int i=buf.limit() - 1; i>=buf.position(); i--) {
+			result.put(buf.get(i));
+		}
+		result.flip();
+		return result;
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test17_Read(byte[], int)
+	 */
+	@Override
+	public int test17_Read(byte[] buf, int n) {
+		for(byte b: buf) {
+			if(b != 0) {
+				throw new IllegalStateException();
+			}
+		}
+		for(int i=0; i<n; i++) {
+			buf[i] = (byte)(i + 1);
+		}
+		return n;
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test17_Set(int[], int, int)
+	 */
+	@Override
+	public void test17_Set(int[] a, int index, int value) {
+		a[index] = value;
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test18_Sum(com.xxuz.piclane.jdrpc.ArrayView, int, int)
+	 */
+	@Override
+	public long test18_Sum(ArrayView<int[]> view, int from, int to) {
+		int[] buf = new int[to - from];
+		view.get(from, buf, 0, buf.length);
+		long sum = 0L;
+		for(int v: buf) {
+			sum += v;
+		}
+		return sum;
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test18_Fill(com.xxuz.piclane.jdrpc.ArrayView, int, int, byte)
+	 */
+	@Override
+	public void test18_Fill(ArrayView<byte[]> view, int from, int to, byte value) {
+		byte[] one = new byte[] {value};
+		for(int i=from; i<to; i++) {
+			view.set(i, one, 0, 1);
+		}
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test19_Same(java.util.function.Supplier)
+	 */
+	@Override
+	public synchronized boolean test19_Same(Supplier<Integer> s) {
+		boolean same = s == lastSupplier;
+		lastSupplier = s;
+		return same && s.get() == 19;
+	}
+	
+	/**
+	 * @see test.com.xxuz.piclane.jdrpc.TestApi#test20_Repeat(java.lang.String, int)
+	 */
+	@Override
+	public String test20_Repeat(String s, int n) {
+		StringBuilder buf = new StringBuilder(s.length() * n);
+		for(int i=0; i<n; i++) {
+			buf.append(s);
+		}
+		return buf.toString();
+	}
 }